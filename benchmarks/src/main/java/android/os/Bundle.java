@@ -0,0 +1,64 @@
+package android.os;
+
+import java.util.HashMap;
+
+/**
+ * Stand in for the Android class, a map of the few value types the library
+ * passes between threads.
+ */
+public final class Bundle {
+	private final HashMap<String, Object> mValues = new HashMap<String, Object>();
+
+	public void putString(final String pKey, final String pValue) {
+		this.mValues.put(pKey, pValue);
+	}
+
+	public String getString(final String pKey) {
+		final Object value = this.mValues.get(pKey);
+		return (value instanceof String) ? (String) value : null;
+	}
+
+	public void putInt(final String pKey, final int pValue) {
+		this.mValues.put(pKey, Integer.valueOf(pValue));
+	}
+
+	public int getInt(final String pKey) {
+		return this.getInt(pKey, 0);
+	}
+
+	public int getInt(final String pKey, final int pDefault) {
+		final Object value = this.mValues.get(pKey);
+		return (value instanceof Integer) ? ((Integer) value).intValue() : pDefault;
+	}
+
+	public void putLong(final String pKey, final long pValue) {
+		this.mValues.put(pKey, Long.valueOf(pValue));
+	}
+
+	public long getLong(final String pKey) {
+		final Object value = this.mValues.get(pKey);
+		return (value instanceof Long) ? ((Long) value).longValue() : 0L;
+	}
+
+	public void putBoolean(final String pKey, final boolean pValue) {
+		this.mValues.put(pKey, Boolean.valueOf(pValue));
+	}
+
+	public boolean getBoolean(final String pKey) {
+		return this.getBoolean(pKey, false);
+	}
+
+	public boolean getBoolean(final String pKey, final boolean pDefault) {
+		final Object value = this.mValues.get(pKey);
+		return (value instanceof Boolean) ? ((Boolean) value).booleanValue() : pDefault;
+	}
+
+	public void putByteArray(final String pKey, final byte[] pValue) {
+		this.mValues.put(pKey, pValue);
+	}
+
+	public byte[] getByteArray(final String pKey) {
+		final Object value = this.mValues.get(pKey);
+		return (value instanceof byte[]) ? (byte[]) value : null;
+	}
+}
@@ -0,0 +1,41 @@
+package android.os;
+
+/**
+ * Stand in for the Android class. There is no message queue, so nothing sent
+ * is delivered unless a subclass overrides
+ * {@link #sendMessageAtTime(Message, long)}, the benchmarks measure the
+ * sending side only.
+ */
+public class Handler {
+	public Handler() {
+
+	}
+
+	public Handler(final Looper pLooper) {
+
+	}
+
+	public void handleMessage(final Message pMessage) {
+
+	}
+
+	public void dispatchMessage(final Message pMessage) {
+		this.handleMessage(pMessage);
+	}
+
+	public final Message obtainMessage() {
+		return Message.obtain();
+	}
+
+	public final boolean sendMessage(final Message pMessage) {
+		return this.sendMessageDelayed(pMessage, 0);
+	}
+
+	public final boolean sendMessageDelayed(final Message pMessage, final long pDelayMillis) {
+		return this.sendMessageAtTime(pMessage, SystemClock.uptimeMillis() + Math.max(0, pDelayMillis));
+	}
+
+	public boolean sendMessageAtTime(final Message pMessage, final long pUptimeMillis) {
+		return true;
+	}
+}
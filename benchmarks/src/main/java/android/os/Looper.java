@@ -0,0 +1,31 @@
+package android.os;
+
+/**
+ * Stand in for the Android class, {@link #loop()} returns straight away.
+ */
+public final class Looper {
+	private static final ThreadLocal<Looper> sThreadLooper = new ThreadLocal<Looper>();
+	private static final Looper sMainLooper = new Looper();
+
+	public static void prepare() {
+		if (sThreadLooper.get() == null) {
+			sThreadLooper.set(new Looper());
+		}
+	}
+
+	public static Looper myLooper() {
+		return sThreadLooper.get();
+	}
+
+	public static Looper getMainLooper() {
+		return sMainLooper;
+	}
+
+	public static void loop() {
+
+	}
+
+	public void quit() {
+
+	}
+}
@@ -0,0 +1,35 @@
+package android.os;
+
+/**
+ * Stand in for the Android class.
+ */
+public final class Message {
+	public int what;
+	public int arg1;
+	public int arg2;
+	public Object obj;
+	private Bundle mData;
+
+	public static Message obtain() {
+		return new Message();
+	}
+
+	public Bundle getData() {
+		if (this.mData == null) {
+			this.mData = new Bundle();
+		}
+		return this.mData;
+	}
+
+	public void setData(final Bundle pData) {
+		this.mData = pData;
+	}
+
+	public void recycle() {
+		this.what = 0;
+		this.arg1 = 0;
+		this.arg2 = 0;
+		this.obj = null;
+		this.mData = null;
+	}
+}
@@ -0,0 +1,67 @@
+package android.os;
+
+/**
+ * Stand in for the Android class. Parcelling is not benchmarked, writes are
+ * dropped and reads return nothing.
+ */
+public final class Parcel {
+	public int readInt() {
+		return 0;
+	}
+
+	public void writeInt(final int pValue) {
+
+	}
+
+	public long readLong() {
+		return 0L;
+	}
+
+	public void writeLong(final long pValue) {
+
+	}
+
+	public byte readByte() {
+		return 0;
+	}
+
+	public void writeByte(final byte pValue) {
+
+	}
+
+	public String readString() {
+		return null;
+	}
+
+	public void writeString(final String pValue) {
+
+	}
+
+	public void readByteArray(final byte[] pValue) {
+
+	}
+
+	public byte[] createByteArray() {
+		return new byte[0];
+	}
+
+	public void writeByteArray(final byte[] pValue) {
+
+	}
+
+	public void writeByteArray(final byte[] pValue, final int pOffset, final int pLength) {
+
+	}
+
+	public void readIntArray(final int[] pValue) {
+
+	}
+
+	public int[] createIntArray() {
+		return new int[0];
+	}
+
+	public void writeIntArray(final int[] pValue) {
+
+	}
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Stand in for the Android interface.
+ */
+public interface Parcelable {
+	public int describeContents();
+
+	public void writeToParcel(Parcel pDest, int pFlags);
+
+	public interface Creator<T> {
+		public T createFromParcel(Parcel pSource);
+
+		public T[] newArray(int pSize);
+	}
+}
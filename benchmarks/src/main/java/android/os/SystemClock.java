@@ -0,0 +1,10 @@
+package android.os;
+
+/**
+ * Stand in for the Android class.
+ */
+public final class SystemClock {
+	public static long uptimeMillis() {
+		return System.nanoTime() / 1000000L;
+	}
+}
@@ -0,0 +1,81 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niffy.AndEngineLockStepEngine.packet.ack.AckWindowManager;
+
+/**
+ * One lockstep step of {@link AckWindowManager#slide(int)}: every client has
+ * <code>received</code> reliable packets to ack, the window slides and the
+ * acks which fell out of it are sent as range or multi acks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AckWindowManagerBenchmark {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int STEPS_BEFORE_CRISIS = 2;
+	protected static final int WINDOW_CAPACITY = 64;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	@Param({ "1", "4", "16", "64" })
+	public int clients;
+	@Param({ "16" })
+	public int received;
+
+	protected BenchmarkPacketHandler mParent;
+	protected AckWindowManager mManager;
+	protected int[] mNextSequence;
+	protected int mStep = 0;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	@Setup
+	public void setup() throws UnknownHostException {
+		this.mParent = new BenchmarkPacketHandler(BenchmarkMessages.createPool());
+		this.mManager = new AckWindowManager(this.mParent, STEPS_BEFORE_CRISIS, WINDOW_CAPACITY, this.clients);
+		this.mNextSequence = new int[this.clients];
+		for (int i = 0; i < this.clients; i++) {
+			this.mManager.addClient(i, InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) (i + 1) }));
+		}
+	}
+
+	@Benchmark
+	public long slide() {
+		for (int i = 0; i < this.clients; i++) {
+			int sequence = this.mNextSequence[i];
+			for (int j = 0; j < this.received; j++) {
+				/* Every fifth lost, so the acks are not one solid range */
+				if (j % 5 != 4) {
+					this.mManager.addSentAck(i, sequence);
+				}
+				sequence = (sequence + 1) & 0xFFFF;
+			}
+			this.mNextSequence[i] = sequence;
+		}
+		this.mManager.slide(this.mStep++);
+		return this.mParent.getMessages();
+	}
+}
@@ -0,0 +1,168 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+
+import android.os.Message;
+
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.MessageError;
+import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePool;
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerEvent;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.ITCEvent;
+import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
+import com.niffy.AndEngineLockStepEngine.threads.ICommunicationThread;
+
+/**
+ * Communication thread without a socket or a thread, for driving a
+ * {@link com.niffy.AndEngineLockStepEngine.packet.PacketHandler} from a
+ * benchmark. Messages it is asked to send are serialized and counted, events
+ * handed to the lockstep are counted once drained.
+ */
+public class BenchmarkCommunicationThread implements ICommunicationThread, IHandlerEvent {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final MessagePool<IMessage> mMessagePool = BenchmarkMessages.createPool();
+	protected final WeakThreadHandler<IHandlerMessage> mParentHandler = new WeakThreadHandler<IHandlerMessage>(this);
+	protected final ArrayList<InetAddress> mClients = new ArrayList<InetAddress>();
+	protected final BenchmarkPacketHandler mSent = new BenchmarkPacketHandler(this.mMessagePool);
+	protected IEventTransport mLockstepTransport;
+	protected long mEvents = 0;
+	protected long mEventBytes = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public BenchmarkCommunicationThread() {
+
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public void handlePassedMessage(Message pMessage) {
+
+	}
+
+	@Override
+	public void handlePassedEvent(ITCEvent pEvent) {
+		this.mEvents++;
+		this.mEventBytes += pEvent.mLength;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return true;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return false;
+	}
+
+	@Override
+	public void terminate() {
+
+	}
+
+	@Override
+	public WeakThreadHandler<IHandlerMessage> getParentHandler() {
+		return this.mParentHandler;
+	}
+
+	/**
+	 * @return <code>null</code> so nothing is bundled or scheduled, there is
+	 *         no thread to run it.
+	 */
+	@Override
+	public WeakThreadHandler<IHandlerMessage> getHandler() {
+		return null;
+	}
+
+	@Override
+	public void handleErrorMessage(InetAddress pAddress, MessageError pMessage) {
+
+	}
+
+	@Override
+	public void windowNotEmpty(InetAddress pAddress) {
+
+	}
+
+	@Override
+	public <T extends IMessage> int sendMessage(InetAddress pAddress, T pMessage, boolean pTCP) {
+		return this.mSent.sendMessage(pAddress, pMessage, pTCP);
+	}
+
+	@Override
+	public IMessage obtainMessage(int pFlag) {
+		return this.mMessagePool.obtainMessage(pFlag);
+	}
+
+	@Override
+	public <T extends IMessage> void recycleMessage(T pMessage) {
+		this.mMessagePool.recycleMessage(pMessage);
+	}
+
+	@Override
+	public void addClient(InetAddress pAddress) {
+		this.mClients.add(pAddress);
+	}
+
+	@Override
+	public ArrayList<InetAddress> getClients() {
+		return this.mClients;
+	}
+
+	@Override
+	public void removeClient(InetAddress pAddress) {
+		this.mClients.remove(pAddress);
+	}
+
+	@Override
+	public void setLockstepTransport(IEventTransport pTransport) {
+		this.mLockstepTransport = pTransport;
+	}
+
+	@Override
+	public IEventTransport getLockstepTransport() {
+		return this.mLockstepTransport;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public long getEvents() {
+		return this.mEvents;
+	}
+
+	public long getEventBytes() {
+		return this.mEventBytes;
+	}
+
+	public BenchmarkPacketHandler getSent() {
+		return this.mSent;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Hand everything waiting in the lockstep transport to
+	 * {@link #handlePassedEvent(ITCEvent)}, releasing each buffer.
+	 */
+	public int drainLockstep() {
+		if (this.mLockstepTransport == null) {
+			return 0;
+		}
+		return this.mLockstepTransport.drain(this, Integer.MAX_VALUE);
+	}
+}
@@ -0,0 +1,263 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.util.Random;
+
+import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAck;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAckMulti;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAckRange;
+import com.niffy.AndEngineLockStepEngine.messages.MessageBundle;
+import com.niffy.AndEngineLockStepEngine.messages.MessageClientDisconnect;
+import com.niffy.AndEngineLockStepEngine.messages.MessageClientJoin;
+import com.niffy.AndEngineLockStepEngine.messages.MessageCommand;
+import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulated;
+import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulatedDelta;
+import com.niffy.AndEngineLockStepEngine.messages.MessageError;
+import com.niffy.AndEngineLockStepEngine.messages.MessageMigrate;
+import com.niffy.AndEngineLockStepEngine.messages.MessageOutOfSyncWith;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePing;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePingAck;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePingHighest;
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePool;
+
+/**
+ * Every message type, by the name of its {@link MessageFlag}, filled in with
+ * values the size of those sent in a game.
+ */
+public final class BenchmarkMessages {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	/**
+	 * Names usable as a benchmark parameter.
+	 */
+	public static final String[] TYPES = { "ACK", "ACK_MULTI", "ACK_RANGE", "BUNDLE", "CLIENT_DISCONNECTED",
+			"CLIENT_JOIN", "CLIENT_OUT_OF_SYNC", "COMMAND", "ENCAPSULATED", "ENCAPSULATED_DELTA", "ERROR", "MIGRATE",
+			"PING", "PING_ACK", "PING_HIGHEST" };
+	public static final int VERSION = 1;
+	public static final int PAYLOAD_SIZE = 256;
+	public static final int COMMAND_SIZE = 24;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	private BenchmarkMessages() {
+
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static int getFlag(final String pType) {
+		if ("ACK".equals(pType)) {
+			return MessageFlag.ACK;
+		} else if ("ACK_MULTI".equals(pType)) {
+			return MessageFlag.ACK_MULTI;
+		} else if ("ACK_RANGE".equals(pType)) {
+			return MessageFlag.ACK_RANGE;
+		} else if ("BUNDLE".equals(pType)) {
+			return MessageFlag.BUNDLE;
+		} else if ("CLIENT_DISCONNECTED".equals(pType)) {
+			return MessageFlag.CLIENT_DISCONNECTED;
+		} else if ("CLIENT_JOIN".equals(pType)) {
+			return MessageFlag.CLIENT_JOIN;
+		} else if ("CLIENT_OUT_OF_SYNC".equals(pType)) {
+			return MessageFlag.CLIENT_OUT_OF_SYNC;
+		} else if ("COMMAND".equals(pType)) {
+			return MessageFlag.COMMAND;
+		} else if ("ENCAPSULATED".equals(pType)) {
+			return MessageFlag.ENCAPSULATED;
+		} else if ("ENCAPSULATED_DELTA".equals(pType)) {
+			return MessageFlag.ENCAPSULATED_DELTA;
+		} else if ("ERROR".equals(pType)) {
+			return MessageFlag.ERROR;
+		} else if ("MIGRATE".equals(pType)) {
+			return MessageFlag.MIGRATE;
+		} else if ("PING".equals(pType)) {
+			return MessageFlag.PING;
+		} else if ("PING_ACK".equals(pType)) {
+			return MessageFlag.PING_ACK;
+		} else if ("PING_HIGHEST".equals(pType)) {
+			return MessageFlag.PING_HIGHEST;
+		}
+		throw new IllegalArgumentException("Unknown message type: " + pType);
+	}
+
+	public static IMessageFactory<? extends IMessage> getFactory(final int pFlag) {
+		switch (pFlag) {
+		case MessageFlag.ACK:
+			return MessageAck.FACTORY;
+		case MessageFlag.ACK_MULTI:
+			return MessageAckMulti.FACTORY;
+		case MessageFlag.ACK_RANGE:
+			return MessageAckRange.FACTORY;
+		case MessageFlag.BUNDLE:
+			return MessageBundle.FACTORY;
+		case MessageFlag.CLIENT_DISCONNECTED:
+			return MessageClientDisconnect.FACTORY;
+		case MessageFlag.CLIENT_JOIN:
+			return MessageClientJoin.FACTORY;
+		case MessageFlag.CLIENT_OUT_OF_SYNC:
+			return MessageOutOfSyncWith.FACTORY;
+		case MessageFlag.COMMAND:
+			return MessageCommand.FACTORY;
+		case MessageFlag.ENCAPSULATED:
+			return MessageEncapsulated.FACTORY;
+		case MessageFlag.ENCAPSULATED_DELTA:
+			return MessageEncapsulatedDelta.FACTORY;
+		case MessageFlag.ERROR:
+			return MessageError.FACTORY;
+		case MessageFlag.MIGRATE:
+			return MessageMigrate.FACTORY;
+		case MessageFlag.PING:
+			return MessagePing.FACTORY;
+		case MessageFlag.PING_ACK:
+			return MessagePingAck.FACTORY;
+		case MessageFlag.PING_HIGHEST:
+			return MessagePingHighest.FACTORY;
+		default:
+			throw new IllegalArgumentException("Unknown message flag: " + pFlag);
+		}
+	}
+
+	/**
+	 * @return {@link MessagePool} with every type registered.
+	 */
+	public static MessagePool<IMessage> createPool() {
+		final MessagePool<IMessage> pool = new MessagePool<IMessage>();
+		for (int i = 0; i < TYPES.length; i++) {
+			final int flag = getFlag(TYPES[i]);
+			pool.registerMessage(flag, getFactory(flag));
+		}
+		return pool;
+	}
+
+	/**
+	 * @return {@link IMessage} of the type, empty but for its flag.
+	 */
+	public static IMessage create(final int pFlag) {
+		final IMessage message = getFactory(pFlag).create();
+		message.setMessageFlag(pFlag);
+		return message;
+	}
+
+	/**
+	 * @return {@link IMessage} of the type filled in, ready to write.
+	 */
+	public static IMessage createFilled(final int pFlag) {
+		final Random random = new Random(pFlag);
+		final IMessage message = create(pFlag);
+		switch (pFlag) {
+		case MessageFlag.ACK:
+			((MessageAck) message).setAckForSequnce(1234);
+			break;
+		case MessageFlag.ACK_MULTI:
+			final int[] sequences = new int[16];
+			for (int i = 0; i < sequences.length; i++) {
+				sequences[i] = 1000 + i * 3;
+			}
+			((MessageAckMulti) message).addSequences(sequences);
+			break;
+		case MessageFlag.ACK_RANGE:
+			final int[] sorted = new int[32];
+			for (int i = 0; i < sorted.length; i++) {
+				/* A gap every fourth, as when a few packets are lost */
+				sorted[i] = 1000 + i + i / 4;
+			}
+			((MessageAckRange) message).setSequences(sorted, 0, sorted.length);
+			break;
+		case MessageFlag.BUNDLE:
+			final MessageBundle bundle = new MessageBundle(1400);
+			bundle.setMessageFlag(pFlag);
+			for (int i = 0; i < 4; i++) {
+				final IMessage inner = createFilled(MessageFlag.COMMAND);
+				inner.setSequence(2000 + i);
+				inner.setVersion(VERSION);
+				bundle.add(inner);
+			}
+			return prepare(bundle);
+		case MessageFlag.CLIENT_DISCONNECTED:
+			((MessageClientDisconnect) message).setClientInetAddress("/192.168.1.20");
+			((MessageClientDisconnect) message).setMessage("Left the game");
+			break;
+		case MessageFlag.CLIENT_JOIN:
+			((MessageClientJoin) message).setClientInetAddress("/192.168.1.20");
+			((MessageClientJoin) message).setClientName("Player 2");
+			break;
+		case MessageFlag.CLIENT_OUT_OF_SYNC:
+			((MessageOutOfSyncWith) message).setWhoIsOutOfSync("/192.168.1.20");
+			((MessageOutOfSyncWith) message).setSender("/192.168.1.21");
+			break;
+		case MessageFlag.COMMAND:
+			final byte[] command = new byte[COMMAND_SIZE];
+			random.nextBytes(command);
+			((MessageCommand) message).setStep(100);
+			((MessageCommand) message).setData(command, 0, command.length);
+			break;
+		case MessageFlag.ENCAPSULATED:
+			((MessageEncapsulated) message).setData(payload(PAYLOAD_SIZE, 0));
+			break;
+		case MessageFlag.ENCAPSULATED_DELTA:
+			final byte[] base = payload(PAYLOAD_SIZE, 0);
+			final byte[] next = payload(PAYLOAD_SIZE, 1);
+			if (!((MessageEncapsulatedDelta) message).setDelta(900, base, base.length, next, next.length)) {
+				throw new IllegalStateException("Delta did not encode");
+			}
+			break;
+		case MessageFlag.ERROR:
+			((MessageError) message).setString("Out of sync");
+			((MessageError) message).setErrorCode(3);
+			break;
+		case MessageFlag.MIGRATE:
+			break;
+		case MessageFlag.PING:
+			((MessagePing) message).setTimestamp(System.nanoTime());
+			break;
+		case MessageFlag.PING_ACK:
+			((MessagePingAck) message).setTimestamp(System.nanoTime());
+			break;
+		case MessageFlag.PING_HIGHEST:
+			final MessagePingHighest highest = (MessagePingHighest) message;
+			highest.setInetAddress("/192.168.1.20");
+			highest.setHighestPingTime(42000000L);
+			highest.setTickLength(100L);
+			highest.setChangeOverStep(120);
+			highest.setInputDelay(3);
+			break;
+		}
+		return prepare(message);
+	}
+
+	/**
+	 * A game state like payload, mostly the same from one step to the next.
+	 *
+	 * @param pSize
+	 *            {@link Integer} of bytes.
+	 * @param pStep
+	 *            {@link Integer} step, each changes a few bytes.
+	 */
+	public static byte[] payload(final int pSize, final int pStep) {
+		final byte[] data = new byte[pSize];
+		for (int i = 0; i < pSize; i++) {
+			data[i] = (byte) ((i / 8) * 7 + (i % 8));
+		}
+		final Random random = new Random(pStep);
+		for (int s = 0; s < pStep; s++) {
+			for (int i = 0; i < 8; i++) {
+				data[random.nextInt(pSize)] += (byte) (1 + s);
+			}
+		}
+		return data;
+	}
+
+	protected static IMessage prepare(final IMessage pMessage) {
+		pMessage.setVersion(VERSION);
+		pMessage.setSequence(1234);
+		pMessage.setIntended(IntendedFlag.LOCKSTEP);
+		pMessage.setRequireAck(true);
+		return pMessage;
+	}
+}
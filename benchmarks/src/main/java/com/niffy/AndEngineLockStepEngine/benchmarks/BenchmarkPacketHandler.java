@@ -0,0 +1,150 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePool;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.packet.IPacketHandler;
+
+/**
+ * {@link IPacketHandler} which serializes what it is asked to send in to one
+ * reused buffer and counts it, as far as a send goes without a socket.
+ */
+public class BenchmarkPacketHandler implements IPacketHandler {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final MessagePool<IMessage> mMessagePool;
+	protected final ArrayList<InetAddress> mClients = new ArrayList<InetAddress>();
+	protected final ByteBuffer mBuffer = ByteBuffer.allocate(64 * 1024);
+	protected long mMessages = 0;
+	protected long mBytes = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public BenchmarkPacketHandler(final MessagePool<IMessage> pMessagePool) {
+		this.mMessagePool = pMessagePool;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public <T extends IMessage> int sendMessage(InetAddress pAddress, T pMessage, boolean pTCP) {
+		return this.send(pMessage);
+	}
+
+	@Override
+	public <T extends IMessage> int sendMessage(int pPeerID, T pMessage, boolean pTCP) {
+		return this.send(pMessage);
+	}
+
+	@Override
+	public IMessage obtainMessage(int pFlag) {
+		return this.mMessagePool.obtainMessage(pFlag);
+	}
+
+	@Override
+	public <T extends IMessage> void recycleMessage(T pMessage) {
+		this.mMessagePool.recycleMessage(pMessage);
+	}
+
+	@Override
+	public void windowNotEmpty(InetAddress pAddress) {
+
+	}
+
+	@Override
+	public void reconstructData(int pPeerID, byte[] pData) {
+
+	}
+
+	@Override
+	public void reconstructData(int pPeerID, PooledBuffer pBuffer) {
+
+	}
+
+	@Override
+	public void addClient(InetAddress pAddress) {
+		this.mClients.add(pAddress);
+	}
+
+	@Override
+	public ArrayList<InetAddress> getClients() {
+		return this.mClients;
+	}
+
+	@Override
+	public void removeClient(InetAddress pAddress) {
+		this.mClients.remove(pAddress);
+	}
+
+	@Override
+	public void lockstepIncrement(int pIncrement) {
+
+	}
+
+	@Override
+	public void pingPeers() {
+
+	}
+
+	@Override
+	public void flushBundles() {
+
+	}
+
+	@Override
+	public void retransmit() {
+
+	}
+
+	@Override
+	public void flushLockstep() {
+
+	}
+
+	/**
+	 * As new as a peer can be, so everything the version gates is measured.
+	 */
+	@Override
+	public int getPeerVersion(int pPeerID) {
+		return Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void resend(int pPeerID, byte[] pPacket, int pLength) {
+		this.mMessages++;
+		this.mBytes += pLength;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public long getMessages() {
+		return this.mMessages;
+	}
+
+	public long getBytes() {
+		return this.mBytes;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	protected int send(final IMessage pMessage) {
+		this.mBuffer.clear();
+		pMessage.writeTo(this.mBuffer);
+		this.mMessages++;
+		this.mBytes += this.mBuffer.position();
+		return pMessage.getSequence();
+	}
+}
@@ -0,0 +1,114 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.niffy.AndEngineLockStepEngine.window.IntRingWindow;
+
+/**
+ * Runs {@link IntRingWindow} through random adds, removes, slides and drains
+ * and checks every answer against a model made of {@link HashSet}. Exits
+ * with a non zero status on the first difference.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.niffy.AndEngineLockStepEngine.benchmarks.IntRingWindowModelCheck [operations] [seed]
+ * </pre>
+ */
+public class IntRingWindowModelCheck {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int STEPS_BEFORE_CRISIS = 3;
+	protected static final int WINDOWS = STEPS_BEFORE_CRISIS + 1;
+	/**
+	 * Small, so the windows have to grow.
+	 */
+	protected static final int CAPACITY = 4;
+	protected static final int KEYS = 5000;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static void main(final String[] pArgs) {
+		final int operations = (pArgs.length > 0) ? Integer.parseInt(pArgs[0]) : 2000000;
+		final long seed = (pArgs.length > 1) ? Long.parseLong(pArgs[1]) : 1L;
+		final String failure = check(operations, seed);
+		if (failure != null) {
+			System.out.println("FAILED: " + failure);
+			System.exit(1);
+		}
+		System.out.println("IntRingWindow matched the model for " + operations + " operations, seed " + seed);
+	}
+
+	/**
+	 * @return {@link String} describing the first difference, or
+	 *         <code>null</code> if there was none.
+	 */
+	public static String check(final int pOperations, final long pSeed) {
+		final Random random = new Random(pSeed);
+		final IntRingWindow window = new IntRingWindow(null, STEPS_BEFORE_CRISIS, CAPACITY);
+		final List<Set<Integer>> model = new ArrayList<Set<Integer>>();
+		for (int i = 0; i < WINDOWS; i++) {
+			model.add(new HashSet<Integer>());
+		}
+		final Map<Integer, Integer> where = new HashMap<Integer, Integer>();
+		/* Odd size, so drains take more than one call */
+		final int[] buffer = new int[7];
+		int current = 0;
+		for (int op = 0; op < pOperations; op++) {
+			/* Some negative, as sequences are ints */
+			final int key = random.nextInt(KEYS) - 100;
+			final int choice = random.nextInt(100);
+			if (choice < 50) {
+				window.addInt(key);
+				if (!where.containsKey(key)) {
+					model.get(current).add(key);
+					where.put(key, current);
+				}
+			} else if (choice < 90) {
+				final boolean removed = window.removeInt(key);
+				final Integer in = where.remove(key);
+				if (in != null) {
+					model.get(in).remove(key);
+				}
+				if (removed != (in != null)) {
+					return "removeInt(" + key + ") returned " + removed + " at operation " + op;
+				}
+			} else if (choice < 97) {
+				if (window.currentWindowEmpty() != model.get(current).isEmpty()) {
+					return "currentWindowEmpty differs at operation " + op;
+				}
+			} else if (choice < 99) {
+				window.slide(op);
+				current = (current + 1) % WINDOWS;
+				if (window.currentWindowEmpty() != model.get(current).isEmpty()) {
+					return "currentWindowEmpty differs after slide at operation " + op;
+				}
+			} else {
+				final Set<Integer> last = model.get((current + WINDOWS - 1) % WINDOWS);
+				final Set<Integer> drained = new HashSet<Integer>();
+				int count;
+				do {
+					count = window.getIDsFromLastWindowAndClear(buffer);
+					for (int i = 0; i < count; i++) {
+						drained.add(buffer[i]);
+					}
+				} while (count == buffer.length);
+				if (!drained.equals(last)) {
+					return "getIDsFromLastWindowAndClear gave " + drained.size() + " ids, expected " + last.size()
+							+ " at operation " + op;
+				}
+				for (Integer id : drained) {
+					where.remove(id);
+				}
+				last.clear();
+			}
+		}
+		return null;
+	}
+}
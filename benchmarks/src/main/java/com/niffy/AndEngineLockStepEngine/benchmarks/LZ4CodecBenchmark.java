@@ -0,0 +1,117 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niffy.AndEngineLockStepEngine.packet.compression.LZ4Codec;
+
+/**
+ * {@link LZ4Codec} compressing and decompressing command like payloads of
+ * <code>size</code> bytes. Bytes a second are <code>size</code> over the
+ * time of an operation, the ratio is printed by {@link LZ4CodecCheck}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LZ4CodecBenchmark {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	/**
+	 * Payloads cycled through, so no one input is learnt.
+	 */
+	protected static final int PAYLOADS = 16;
+	protected static final String[] WORDS = { "move", "attack", "build", "unit", "tile", "select", "queue" };
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	@Param({ "256", "1400", "16384", "262144" })
+	public int size;
+
+	protected final LZ4Codec mCodec = new LZ4Codec();
+	protected byte[][] mPayloads;
+	protected byte[][] mCompressed;
+	protected byte[] mDestination;
+	protected byte[] mDecompressed;
+	protected int mNext = 0;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	@Setup
+	public void setup() {
+		final Random random = new Random(1);
+		this.mPayloads = new byte[PAYLOADS][];
+		this.mCompressed = new byte[PAYLOADS][];
+		this.mDestination = new byte[this.mCodec.maxCompressedLength(this.size)];
+		this.mDecompressed = new byte[this.size];
+		for (int i = 0; i < PAYLOADS; i++) {
+			this.mPayloads[i] = commands(random, this.size);
+			final int length = this.mCodec.compress(this.mPayloads[i], 0, this.size, this.mDestination, 0,
+					this.mDestination.length);
+			this.mCompressed[i] = Arrays.copyOf(this.mDestination, length);
+			if (!this.mCodec.decompress(this.mCompressed[i], 0, length, this.mDecompressed, 0, this.size)
+					|| !Arrays.equals(this.mDecompressed, this.mPayloads[i])) {
+				throw new IllegalStateException("Round trip failed for payload " + i);
+			}
+		}
+	}
+
+	@Benchmark
+	public int compress() {
+		final byte[] payload = this.mPayloads[this.mNext++ & (PAYLOADS - 1)];
+		return this.mCodec.compress(payload, 0, payload.length, this.mDestination, 0, this.mDestination.length);
+	}
+
+	@Benchmark
+	public boolean decompress() {
+		final byte[] compressed = this.mCompressed[this.mNext++ & (PAYLOADS - 1)];
+		return this.mCodec.decompress(compressed, 0, compressed.length, this.mDecompressed, 0, this.size);
+	}
+
+	/**
+	 * Records as commands are sent: short text ones, and fixed size binary
+	 * ones mostly zero.
+	 *
+	 * @param pSize
+	 *            {@link Integer} of bytes.
+	 */
+	public static byte[] commands(final Random pRandom, final int pSize) {
+		final byte[] data = new byte[pSize];
+		int i = 0;
+		while (i < pSize) {
+			final byte[] record;
+			if (pRandom.nextInt(4) == 0) {
+				record = (WORDS[pRandom.nextInt(WORDS.length)] + ":" + pRandom.nextInt(64) + ","
+						+ pRandom.nextInt(64) + ";").getBytes();
+			} else {
+				record = new byte[12];
+				record[0] = 1;
+				record[1] = (byte) pRandom.nextInt(8);
+				record[4] = (byte) pRandom.nextInt(256);
+				record[8] = (byte) pRandom.nextInt(4);
+			}
+			for (int k = 0; k < record.length && i < pSize; k++) {
+				data[i++] = record[k];
+			}
+		}
+		return data;
+	}
+}
@@ -0,0 +1,106 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.niffy.AndEngineLockStepEngine.packet.compression.LZ4Codec;
+
+/**
+ * Round trips random inputs through {@link LZ4Codec}, at offsets in to both
+ * arrays, checks a too small limit is refused and that corrupted input is
+ * rejected without throwing. Then prints the ratio on the payloads of
+ * {@link LZ4CodecBenchmark}. Exits with a non zero status on the first
+ * failure.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.niffy.AndEngineLockStepEngine.benchmarks.LZ4CodecCheck [cases] [seed]
+ * </pre>
+ */
+public class LZ4CodecCheck {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int SOURCE_OFFSET = 7;
+	protected static final int DESTINATION_OFFSET = 3;
+	protected static final int OUTPUT_OFFSET = 2;
+	protected static final int[] SIZES = { 256, 1400, 16384, 262144 };
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static void main(final String[] pArgs) {
+		final int cases = (pArgs.length > 0) ? Integer.parseInt(pArgs[0]) : 200000;
+		final long seed = (pArgs.length > 1) ? Long.parseLong(pArgs[1]) : 1L;
+		final String failure = check(cases, seed);
+		if (failure != null) {
+			System.out.println("FAILED: " + failure);
+			System.exit(1);
+		}
+		System.out.println("LZ4Codec round tripped " + cases + " cases, seed " + seed);
+
+		final LZ4Codec codec = new LZ4Codec();
+		final Random random = new Random(1);
+		for (int s = 0; s < SIZES.length; s++) {
+			final int size = SIZES[s];
+			final byte[] destination = new byte[codec.maxCompressedLength(size)];
+			long compressed = 0;
+			for (int i = 0; i < LZ4CodecBenchmark.PAYLOADS; i++) {
+				compressed += codec.compress(LZ4CodecBenchmark.commands(random, size), 0, size, destination, 0,
+						destination.length);
+			}
+			System.out.println(String.format("size %6d ratio %.2f", size,
+					(size * (double) LZ4CodecBenchmark.PAYLOADS) / compressed));
+		}
+	}
+
+	/**
+	 * @return {@link String} describing the first failure, or
+	 *         <code>null</code> if there was none.
+	 */
+	public static String check(final int pCases, final long pSeed) {
+		final Random random = new Random(pSeed);
+		final LZ4Codec codec = new LZ4Codec();
+		for (int t = 0; t < pCases; t++) {
+			/* Mostly short, as packets are, every tenth longer */
+			final int length = random.nextInt((t % 10 == 0) ? 5000 : 100);
+			final byte[] source = new byte[length + SOURCE_OFFSET];
+			/* Noise, few symbols or a short repeat */
+			final int kind = random.nextInt(3);
+			for (int i = 0; i < source.length; i++) {
+				source[i] = (byte) ((kind == 0) ? random.nextInt(256) : (kind == 1) ? random.nextInt(3) : i % 7);
+			}
+			final byte[] destination = new byte[codec.maxCompressedLength(length) + DESTINATION_OFFSET];
+			final int compressed = codec.compress(source, SOURCE_OFFSET, length, destination, DESTINATION_OFFSET,
+					destination.length - DESTINATION_OFFSET);
+			if (compressed < 0) {
+				return "maxCompressedLength too small for " + length + " bytes, case " + t;
+			}
+			final byte[] output = new byte[length + OUTPUT_OFFSET];
+			if (!codec.decompress(destination, DESTINATION_OFFSET, compressed, output, OUTPUT_OFFSET, length)) {
+				return "decompress refused " + length + " bytes, case " + t;
+			}
+			if (!Arrays.equals(Arrays.copyOfRange(output, OUTPUT_OFFSET, output.length),
+					Arrays.copyOfRange(source, SOURCE_OFFSET, source.length))) {
+				return "round trip differs for " + length + " bytes, case " + t;
+			}
+			final int limit = random.nextInt(compressed + 1);
+			final int limited = codec.compress(source, SOURCE_OFFSET, length, destination, DESTINATION_OFFSET, limit);
+			if (limited > limit) {
+				return "wrote " + limited + " bytes past a limit of " + limit + ", case " + t;
+			}
+			if (compressed > 0) {
+				/* The limited call wrote over it, then corrupt one byte */
+				codec.compress(source, SOURCE_OFFSET, length, destination, DESTINATION_OFFSET, destination.length
+						- DESTINATION_OFFSET);
+				destination[DESTINATION_OFFSET + random.nextInt(compressed)] ^= (byte) (1 + random.nextInt(255));
+				/* Has to fail or decompress, not throw */
+				try {
+					codec.decompress(destination, DESTINATION_OFFSET, compressed, output, OUTPUT_OFFSET, length);
+				} catch (RuntimeException e) {
+					return "corrupted input threw " + e + ", case " + t;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,138 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.Message;
+import com.niffy.AndEngineLockStepEngine.messages.MessageBundle;
+
+/**
+ * Writing and reading every message type, with the {@link ByteBuffer} codec
+ * the packet handler uses and the older stream codec. Reads are of the body
+ * only, the packet handler reads the header itself. A {@link MessageBundle}
+ * is read as the packet handler unpacks one, each entry read in turn.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCodecBenchmark {
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	@Param({ "ACK", "ACK_MULTI", "ACK_RANGE", "BUNDLE", "CLIENT_DISCONNECTED", "CLIENT_JOIN", "CLIENT_OUT_OF_SYNC",
+			"COMMAND", "ENCAPSULATED", "ENCAPSULATED_DELTA", "ERROR", "MIGRATE", "PING", "PING_ACK", "PING_HIGHEST" })
+	public String type;
+
+	protected IMessage mMessage;
+	protected IMessage mRead;
+	/**
+	 * Entries of a {@link MessageBundle} are read in to this, otherwise
+	 * <code>null</code>
+	 */
+	protected IMessage mReadEntry;
+	protected ByteBuffer mWriteBuffer;
+	protected ByteBuffer mReadBuffer;
+	protected ByteArrayOutputStream mStreamBytes;
+	protected DataOutputStream mStreamOutput;
+	protected ByteArrayInputStream mStreamInputBytes;
+	protected DataInputStream mStreamInput;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	@Setup
+	public void setup() throws IOException {
+		final int flag = BenchmarkMessages.getFlag(this.type);
+		this.mMessage = BenchmarkMessages.createFilled(flag);
+		this.mRead = BenchmarkMessages.create(flag);
+		if (flag == MessageFlag.BUNDLE) {
+			this.mReadEntry = BenchmarkMessages.create(MessageFlag.COMMAND);
+		}
+		final int size = this.mMessage.getTransmissionSize();
+		this.mWriteBuffer = ByteBuffer.allocate(size);
+		this.mReadBuffer = ByteBuffer.allocate(size);
+		this.mMessage.writeTo(this.mReadBuffer);
+		if (this.mReadBuffer.position() != size) {
+			throw new IllegalStateException(this.type + " wrote " + this.mReadBuffer.position() + " of " + size);
+		}
+		this.mStreamBytes = new ByteArrayOutputStream(size);
+		this.mStreamOutput = new DataOutputStream(this.mStreamBytes);
+		this.mMessage.write(this.mStreamOutput);
+		this.mStreamInputBytes = new ByteArrayInputStream(this.mStreamBytes.toByteArray());
+		this.mStreamInput = new DataInputStream(this.mStreamInputBytes);
+		/* Check both codecs read back what was written */
+		this.readByteBuffer();
+		this.readStream();
+	}
+
+	@Benchmark
+	public int writeByteBuffer() {
+		this.mWriteBuffer.clear();
+		this.mMessage.writeTo(this.mWriteBuffer);
+		return this.mWriteBuffer.position();
+	}
+
+	@Benchmark
+	public IMessage readByteBuffer() throws IOException {
+		this.mReadBuffer.limit(this.mReadBuffer.capacity());
+		this.mReadBuffer.position(Message.HEADER_SIZE);
+		if (this.mReadEntry != null) {
+			while (this.mReadBuffer.hasRemaining()) {
+				final int end = (this.mReadBuffer.getShort() & 0xFFFF) + this.mReadBuffer.position();
+				this.mReadBuffer.position(this.mReadBuffer.position() + Message.HEADER_SIZE);
+				this.mReadEntry.readFrom(this.mReadBuffer);
+				if (this.mReadBuffer.position() != end) {
+					throw new IOException("Bundle entry read " + this.mReadBuffer.position() + " not " + end);
+				}
+			}
+			return this.mReadEntry;
+		}
+		this.mRead.readFrom(this.mReadBuffer);
+		return this.mRead;
+	}
+
+	@Benchmark
+	public int writeStream() throws IOException {
+		this.mStreamBytes.reset();
+		this.mMessage.write(this.mStreamOutput);
+		return this.mStreamBytes.size();
+	}
+
+	@Benchmark
+	public IMessage readStream() throws IOException {
+		this.mStreamInputBytes.reset();
+		this.mStreamInput.skipBytes(Message.HEADER_SIZE);
+		if (this.mReadEntry != null) {
+			while (this.mStreamInputBytes.available() > 0) {
+				this.mStreamInput.readShort();
+				this.mStreamInput.skipBytes(Message.HEADER_SIZE);
+				this.mReadEntry.read(this.mStreamInput);
+			}
+			return this.mReadEntry;
+		}
+		this.mRead.read(this.mStreamInput);
+		return this.mRead;
+	}
+}
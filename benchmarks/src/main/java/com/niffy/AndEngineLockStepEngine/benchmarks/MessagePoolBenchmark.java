@@ -0,0 +1,75 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePool;
+
+/**
+ * {@link MessagePool#obtainMessage(int)} and
+ * {@link MessagePool#recycleMessage(IMessage)}, one at a time as a send does
+ * and in a burst as a step of acks does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessagePoolBenchmark {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int BURST = 64;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	@Param({ "ACK", "ENCAPSULATED", "PING" })
+	public String type;
+
+	protected MessagePool<IMessage> mPool;
+	protected int mFlag;
+	protected final IMessage[] mBurst = new IMessage[BURST];
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	@Setup
+	public void setup() {
+		this.mPool = BenchmarkMessages.createPool();
+		this.mFlag = BenchmarkMessages.getFlag(this.type);
+	}
+
+	@Benchmark
+	public IMessage obtainRecycle() {
+		final IMessage message = this.mPool.obtainMessage(this.mFlag);
+		this.mPool.recycleMessage(message);
+		return message;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public IMessage obtainRecycleBurst() {
+		for (int i = 0; i < BURST; i++) {
+			this.mBurst[i] = this.mPool.obtainMessage(this.mFlag);
+		}
+		for (int i = 0; i < BURST; i++) {
+			this.mPool.recycleMessage(this.mBurst[i]);
+		}
+		return this.mBurst[0];
+	}
+}
@@ -0,0 +1,121 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulated;
+import com.niffy.AndEngineLockStepEngine.messages.SequenceNumber;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferPool;
+import com.niffy.AndEngineLockStepEngine.misc.SPSCEventRing;
+import com.niffy.AndEngineLockStepEngine.options.BaseOptions;
+import com.niffy.AndEngineLockStepEngine.packet.PacketHandler;
+
+/**
+ * {@link PacketHandler#reconstructData(int, PooledBuffer)} of an encapsulated
+ * packet for the lockstep, from the pooled buffer a selector reads in to
+ * through to the event ring the lockstep drains. Each packet has the next
+ * sequence, so none are dropped as duplicates. Reliable packets are acked
+ * every {@link #STEP} packets as a lockstep step would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PacketHandlerBenchmark {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int STEP = 16;
+	/**
+	 * Offset of the sequence in a full header.
+	 */
+	protected static final int SEQUENCE_OFFSET = 4;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	@Param({ "64", "1024" })
+	public int payload;
+	@Param({ "false", "true" })
+	public boolean reliable;
+
+	protected BenchmarkCommunicationThread mThread;
+	protected PacketHandler mPacketHandler;
+	protected PooledBufferPool mBufferPool;
+	protected int mPeerID;
+	protected byte[] mPacket;
+	protected int mSequence = 0;
+	protected int mStep = 0;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	@Setup
+	public void setup() throws IOException {
+		final BaseOptions options = new BaseOptions();
+		final InetAddress peer = InetAddress.getByAddress(new byte[] { 10, 0, 0, 2 });
+		this.mThread = new BenchmarkCommunicationThread();
+		this.mThread.setLockstepTransport(new SPSCEventRing());
+		this.mBufferPool = options.getBufferPool();
+		this.mPacketHandler = new PacketHandler(this.mThread, options);
+		this.mPacketHandler.addClient(peer);
+		this.mPeerID = options.getPeerRegistry().getID(peer);
+
+		final MessageEncapsulated message = new MessageEncapsulated(IntendedFlag.LOCKSTEP);
+		message.setMessageFlag(MessageFlag.ENCAPSULATED);
+		message.setVersion(options.getVersionNumber());
+		message.setRequireAck(this.reliable);
+		message.setData(BenchmarkMessages.payload(this.payload, 0));
+		this.mPacket = new byte[message.getTransmissionSize()];
+		message.writeTo(ByteBuffer.wrap(this.mPacket));
+
+		this.reconstructData();
+		if (this.mThread.getEvents() != 1) {
+			throw new IllegalStateException("Packet did not reach the lockstep");
+		}
+	}
+
+	@Benchmark
+	public long reconstructData() {
+		final PooledBuffer buffer = this.mBufferPool.obtain(this.mPacket.length);
+		/* As the selector reads it in */
+		final byte[] data = buffer.getData();
+		final int offset = buffer.getOffset();
+		System.arraycopy(this.mPacket, 0, data, offset, this.mPacket.length);
+		data[offset + SEQUENCE_OFFSET] = (byte) (this.mSequence >>> 24);
+		data[offset + SEQUENCE_OFFSET + 1] = (byte) (this.mSequence >>> 16);
+		data[offset + SEQUENCE_OFFSET + 2] = (byte) (this.mSequence >>> 8);
+		data[offset + SEQUENCE_OFFSET + 3] = (byte) this.mSequence;
+		buffer.setLength(this.mPacket.length);
+		this.mSequence = SequenceNumber.next(this.mSequence);
+		try {
+			this.mPacketHandler.reconstructData(this.mPeerID, buffer);
+		} finally {
+			buffer.release();
+		}
+		this.mThread.drainLockstep();
+		if (this.reliable && (this.mSequence % STEP) == 0) {
+			this.mPacketHandler.lockstepIncrement(this.mStep++);
+		}
+		return this.mThread.getEvents();
+	}
+}
@@ -0,0 +1,220 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Message;
+
+import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferBatch;
+import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
+import com.niffy.AndEngineLockStepEngine.options.BaseOptions;
+import com.niffy.AndEngineLockStepEngine.threads.nio.UDPSelector;
+
+/**
+ * Sends pings from plain {@link DatagramChannel}s to a {@link UDPSelector}
+ * on another loopback address, and reports datagrams received a second and
+ * how many hand overs to the caller thread they took. Runs a selector which
+ * reads one datagram per wakeup, as the receive loop did before batching,
+ * against one which reads up to a batch.
+ * <p>
+ * Each sender thread stands in for a peer. It sends a burst, as the packets
+ * of a step arrive together, and waits for every sender's burst to be
+ * received before the next. Hand overs go through a
+ * {@link LinkedBlockingQueue} to a consumer thread, as a {@link Handler}
+ * post goes to its {@link android.os.Looper}, so each costs a queue and a
+ * wake up.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.niffy.AndEngineLockStepEngine.benchmarks.UDPReceiveLoopback [datagrams] [senders] [burst] [batch] [port]
+ * </pre>
+ */
+public class UDPReceiveLoopback {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final String RECEIVER = "127.0.0.1";
+	protected static final String SENDER = "127.0.0.2";
+	/**
+	 * No progress for this long and what is in flight is counted as lost.
+	 */
+	protected static final long STALL_NANOS = 200000000L;
+	protected static final int ROUNDS = 3;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static void main(final String[] pArgs) throws Exception {
+		final int datagrams = (pArgs.length > 0) ? Integer.parseInt(pArgs[0]) : 200000;
+		final int senders = (pArgs.length > 1) ? Integer.parseInt(pArgs[1]) : 4;
+		final int burst = (pArgs.length > 2) ? Integer.parseInt(pArgs[2]) : 16;
+		final int batch = (pArgs.length > 3) ? Integer.parseInt(pArgs[3]) : 32;
+		final int port = (pArgs.length > 4) ? Integer.parseInt(pArgs[4]) : 9200;
+
+		final CountingHandler single = new CountingHandler();
+		final CountingHandler batched = new CountingHandler();
+		start(port, 1, single);
+		start(port + 1, batch, batched);
+
+		final byte[] packet = encode(BenchmarkMessages.createFilled(MessageFlag.PING));
+		for (int round = 0; round <= ROUNDS; round++) {
+			/* Round 0 is warm up */
+			final boolean print = round > 0;
+			run("batch 1 ", new InetSocketAddress(RECEIVER, port), single, packet, datagrams, senders, burst, print);
+			run("batch " + batch + " ", new InetSocketAddress(RECEIVER, port + 1), batched, packet, datagrams, senders,
+					burst, print);
+		}
+		System.exit(0);
+	}
+
+	protected static UDPSelector start(final int pPort, final int pBatch, final CountingHandler pHandler)
+			throws Exception {
+		final BaseOptions options = new BaseOptions();
+		options.setReceiveBatchSize(pBatch);
+		/* As a peer is when it joins, or its datagrams are dropped */
+		options.getPeerRegistry().register(InetAddress.getByName(SENDER));
+		final UDPSelector selector = new UDPSelector("udp-" + pBatch, new InetSocketAddress(RECEIVER, pPort), pHandler,
+				options);
+		selector.setDaemon(true);
+		selector.start();
+		pHandler.start();
+		return selector;
+	}
+
+	protected static byte[] encode(final IMessage pMessage) throws Exception {
+		final ByteBuffer buffer = ByteBuffer.allocate(pMessage.getTransmissionSize());
+		pMessage.writeTo(buffer);
+		return buffer.array();
+	}
+
+	protected static void run(final String pLabel, final InetSocketAddress pTarget, final CountingHandler pHandler,
+			final byte[] pPacket, final int pDatagrams, final int pSenders, final int pBurst, final boolean pPrint)
+			throws Exception {
+		pHandler.reset();
+		final int bursts = pDatagrams / (pSenders * pBurst);
+		final int total = bursts * pSenders * pBurst;
+		final AtomicInteger lost = new AtomicInteger();
+		/* Trips once every sender's burst has been received */
+		final CyclicBarrier step = new CyclicBarrier(pSenders, new Runnable() {
+			private int mSent = 0;
+
+			@Override
+			public void run() {
+				this.mSent += pSenders * pBurst;
+				final long giveUp = System.nanoTime() + STALL_NANOS;
+				while (pHandler.getDatagrams() + lost.get() < this.mSent) {
+					if (System.nanoTime() > giveUp) {
+						lost.set(this.mSent - pHandler.getDatagrams());
+					}
+					Thread.yield();
+				}
+			}
+		});
+		final Thread[] threads = new Thread[pSenders];
+		for (int i = 0; i < pSenders; i++) {
+			final DatagramChannel channel = DatagramChannel.open();
+			channel.bind(new InetSocketAddress(SENDER, 0));
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					final ByteBuffer buffer = ByteBuffer.wrap(pPacket);
+					try {
+						for (int b = 0; b < bursts; b++) {
+							for (int d = 0; d < pBurst; d++) {
+								buffer.rewind();
+								channel.send(buffer, pTarget);
+							}
+							step.await();
+						}
+						channel.close();
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		final long start = System.nanoTime();
+		for (int i = 0; i < pSenders; i++) {
+			threads[i].start();
+		}
+		for (int i = 0; i < pSenders; i++) {
+			threads[i].join();
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final int received = pHandler.getDatagrams();
+		final int handOvers = pHandler.getHandOvers();
+		if (pPrint) {
+			System.out.println(String.format("%sreceived %d/%d in %.3f s, %d datagrams/s, %d hand overs, %.1f a batch",
+					pLabel, received, total, seconds, (int) (received / seconds), handOvers,
+					received / (double) Math.max(1, handOvers)));
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	/**
+	 * Queues what the selector hands over for a consumer thread, which counts
+	 * and releases it, in place of a communication thread.
+	 */
+	protected static class CountingHandler extends WeakThreadHandler<IHandlerMessage> implements Runnable {
+		protected final BlockingQueue<PooledBufferBatch> mQueue = new LinkedBlockingQueue<PooledBufferBatch>();
+		protected final AtomicInteger mDatagrams = new AtomicInteger();
+		protected final AtomicInteger mHandOvers = new AtomicInteger();
+
+		public CountingHandler() {
+			super(null);
+		}
+
+		@Override
+		public boolean sendMessageAtTime(final Message pMessage, final long pUptimeMillis) {
+			if (pMessage.what == ITCFlags.UDP_INCOMMING && pMessage.obj instanceof PooledBufferBatch) {
+				this.mQueue.add((PooledBufferBatch) pMessage.obj);
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final PooledBufferBatch batch = this.mQueue.take();
+					this.mHandOvers.incrementAndGet();
+					this.mDatagrams.addAndGet(batch.getSize());
+					batch.release();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void start() {
+			final Thread thread = new Thread(this, "consumer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void reset() {
+			this.mDatagrams.set(0);
+			this.mHandOvers.set(0);
+		}
+
+		public int getDatagrams() {
+			return this.mDatagrams.get();
+		}
+
+		public int getHandOvers() {
+			return this.mHandOvers.get();
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePing;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
+import com.niffy.AndEngineLockStepEngine.options.BaseOptions;
+import com.niffy.AndEngineLockStepEngine.threads.nio.UDPSelector;
+
+/**
+ * Sends pings through a {@link UDPSelector} to a plain
+ * {@link DatagramChannel} on another loopback address, and reports
+ * datagrams a second and the open file descriptors before and after. Exits
+ * with a non zero status if descriptors were leaked.
+ * <p>
+ * Descriptors are counted from <code>/proc/self/fd</code>, so Linux only.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.niffy.AndEngineLockStepEngine.benchmarks.UDPSendLoopback [datagrams] [port]
+ * </pre>
+ */
+public class UDPSendLoopback {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final String SENDER = "127.0.0.1";
+	protected static final String RECEIVER = "127.0.0.2";
+	protected static final int RECEIVE_BUFFER = 4 << 20;
+	protected static final long DRAIN_MILLIS = 2000;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static void main(final String[] pArgs) throws Exception {
+		final int datagrams = (pArgs.length > 0) ? Integer.parseInt(pArgs[0]) : 100000;
+		final int port = (pArgs.length > 1) ? Integer.parseInt(pArgs[1]) : 9100;
+
+		final BaseOptions options = new BaseOptions();
+		final UDPSelector selector = new UDPSelector("udp", new InetSocketAddress(SENDER, port),
+				new WeakThreadHandler<IHandlerMessage>(null), options);
+		selector.start();
+
+		final DatagramChannel receiver = DatagramChannel.open();
+		receiver.socket().setReceiveBufferSize(RECEIVE_BUFFER);
+		receiver.bind(new InetSocketAddress(RECEIVER, port));
+		receiver.configureBlocking(false);
+		final InetAddress peer = InetAddress.getByName(RECEIVER);
+		options.getPeerRegistry().register(peer);
+
+		final MessagePing ping = new MessagePing(IntendedFlag.NETWORK, MessageFlag.PING, 1);
+		ping.setVersion(options.getVersionNumber());
+		final ByteBuffer in = ByteBuffer.allocate(2048);
+		final int descriptorsBefore = countDescriptors();
+		int received = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < datagrams; i++) {
+			selector.send(peer, ping);
+			in.clear();
+			while (receiver.receive(in) != null) {
+				received++;
+				in.clear();
+			}
+		}
+		final long drainUntil = System.currentTimeMillis() + DRAIN_MILLIS;
+		while (received < datagrams && System.currentTimeMillis() < drainUntil) {
+			in.clear();
+			if (receiver.receive(in) != null) {
+				received++;
+			}
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final int descriptorsAfter = countDescriptors();
+
+		System.out.println("received " + received + "/" + datagrams + " in " + String.format("%.3f", seconds) + " s, "
+				+ (int) (received / seconds) + " datagrams/s");
+		System.out.println("file descriptors before " + descriptorsBefore + ", after " + descriptorsAfter);
+		System.exit((descriptorsAfter > descriptorsBefore) ? 1 : 0);
+	}
+
+	protected static int countDescriptors() {
+		final String[] descriptors = new File("/proc/self/fd").list();
+		return (descriptors == null) ? -1 : descriptors.length;
+	}
+}
@@ -0,0 +1,95 @@
+package com.niffy.AndEngineLockStepEngine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.niffy.AndEngineLockStepEngine.window.GenericWindow;
+import com.niffy.AndEngineLockStepEngine.window.IGenericWindow;
+import com.niffy.AndEngineLockStepEngine.window.IntRingWindow;
+
+/**
+ * {@link GenericWindow} against {@link IntRingWindow}, with
+ * <code>outstanding</code> sequences always in the windows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowBenchmark {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int STEPS_BEFORE_CRISIS = 2;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	@Param({ "GenericWindow", "IntRingWindow" })
+	public String window;
+	@Param({ "64", "1000", "10000", "100000" })
+	public int outstanding;
+
+	protected IGenericWindow mWindow;
+	protected int mNext = 0;
+	protected int mStep = 0;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	@Setup
+	public void setup() {
+		if ("GenericWindow".equals(this.window)) {
+			this.mWindow = new GenericWindow(null, STEPS_BEFORE_CRISIS, this.outstanding);
+		} else {
+			this.mWindow = new IntRingWindow(null, STEPS_BEFORE_CRISIS, this.outstanding);
+		}
+		for (int i = 0; i < this.outstanding; i++) {
+			this.mWindow.addInt(this.mNext++);
+		}
+	}
+
+	/**
+	 * Send one and have the oldest acked, as a steady stream of reliable
+	 * packets does.
+	 */
+	@Benchmark
+	public boolean addRemove() {
+		this.mWindow.addInt(this.mNext);
+		final boolean removed = this.mWindow.removeInt(this.mNext - this.outstanding);
+		this.mNext++;
+		return removed;
+	}
+
+	/**
+	 * One step: the oldest half of what is outstanding acked out of order, as
+	 * many sent, then the window slid. Each sequence is outstanding for two
+	 * steps, so the window slid in to was emptied by the acks, as when no
+	 * packet is lost.
+	 */
+	@Benchmark
+	public boolean slide() {
+		final int half = this.outstanding / 2;
+		final int oldest = this.mNext - this.outstanding;
+		for (int i = 0; i < half; i++) {
+			this.mWindow.removeInt(oldest + ((i * 7) % half));
+		}
+		for (int i = 0; i < half; i++) {
+			this.mWindow.addInt(this.mNext++);
+		}
+		this.mWindow.slide(this.mStep++);
+		return this.mWindow.currentWindowEmpty();
+	}
+}
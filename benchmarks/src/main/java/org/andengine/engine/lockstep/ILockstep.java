@@ -0,0 +1,8 @@
+package org.andengine.engine.lockstep;
+
+/**
+ * Stand in for the AndEngine interface.
+ */
+public interface ILockstep {
+	public void onUpdate(float pNanosecondsElapsed);
+}
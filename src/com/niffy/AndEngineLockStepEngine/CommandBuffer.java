@@ -0,0 +1,260 @@
+package com.niffy.AndEngineLockStepEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ICommandBuffer} as a ring of steps, indexed by
+ * <code>step & (depth - 1)</code>. Each step has a slot of
+ * {@link #mMaxCommandSize} bytes per peer in one array allocated up front, and
+ * a bitset of which peers have arrived, so nothing is allocated per command.
+ * <p>
+ * A peer can run at most the input delay ahead of us, and sends commands the
+ * input delay ahead of itself, so the depth covers twice the delay.
+ */
+public class CommandBuffer implements ICommandBuffer {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(CommandBuffer.class);
+	protected static final int NO_STEP = Integer.MIN_VALUE;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final int mMaxPeers;
+	protected final int mMaxCommandSize;
+	/**
+	 * Remote peers then ourself.
+	 */
+	protected final int mColumns;
+	protected final int mWords;
+	protected final int mDepth;
+	protected final int mMask;
+	protected final byte[] mData;
+	protected final int[] mLengths;
+	protected final int[] mSlotSteps;
+	protected final long[] mArrived;
+	protected final long[] mRequired;
+	protected int mExecutedStep = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * 
+	 * @param pMaxPeers
+	 *            {@link Integer} highest peer id plus one.
+	 * @param pInputDelay
+	 *            {@link Integer} steps between a command and it being run.
+	 * @param pMaxCommandSize
+	 *            {@link Integer} bytes a peer can send for one step.
+	 */
+	public CommandBuffer(final int pMaxPeers, final int pInputDelay, final int pMaxCommandSize) {
+		this.mMaxPeers = pMaxPeers;
+		this.mMaxCommandSize = pMaxCommandSize;
+		this.mColumns = pMaxPeers + 1;
+		this.mWords = (this.mColumns + 63) >>> 6;
+		int depth = 2;
+		while (depth < (pInputDelay * 2) + 2) {
+			depth <<= 1;
+		}
+		this.mDepth = depth;
+		this.mMask = depth - 1;
+		this.mData = new byte[depth * this.mColumns * pMaxCommandSize];
+		this.mLengths = new int[depth * this.mColumns];
+		this.mSlotSteps = new int[depth];
+		this.mArrived = new long[depth * this.mWords];
+		this.mRequired = new long[this.mWords];
+		for (int i = 0; i < depth; i++) {
+			this.mSlotSteps[i] = NO_STEP;
+		}
+		this.setBit(this.mRequired, 0, this.mMaxPeers);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public void addPeer(int pPeerID) {
+		if (this.isPeer(pPeerID)) {
+			this.setBit(this.mRequired, 0, pPeerID);
+		}
+	}
+
+	@Override
+	public void removePeer(int pPeerID) {
+		if (this.isPeer(pPeerID)) {
+			this.mRequired[pPeerID >>> 6] &= ~(1L << (pPeerID & 63));
+		}
+	}
+
+	@Override
+	public boolean put(int pPeerID, int pStep, byte[] pData, int pOffset, int pLength) {
+		if (!this.isPeer(pPeerID)) {
+			log.warn("Command for step: {} from unknown peer: {}", pStep, pPeerID);
+			return false;
+		}
+		if (pLength < 0 || pLength > this.mMaxCommandSize) {
+			final Object[] pArray = { pStep, pPeerID, pLength };
+			log.error("Command for step: {} from peer: {} is: {} bytes", pArray);
+			return false;
+		}
+		final int slot = this.claimSlot(pStep);
+		if (slot == -1) {
+			log.warn("Command for step: {} from peer: {} is outside the buffer", pStep, pPeerID);
+			return false;
+		}
+		if (this.isBitSet(this.mArrived, slot * this.mWords, pPeerID)) {
+			return true;
+		}
+		final int cell = (slot * this.mColumns) + pPeerID;
+		System.arraycopy(pData, pOffset, this.mData, cell * this.mMaxCommandSize, pLength);
+		this.mLengths[cell] = pLength;
+		this.setBit(this.mArrived, slot * this.mWords, pPeerID);
+		return true;
+	}
+
+	@Override
+	public boolean append(int pStep, byte[] pData, int pOffset, int pLength) {
+		final int slot = this.claimSlot(pStep);
+		if (slot == -1 || this.isBitSet(this.mArrived, slot * this.mWords, this.mMaxPeers)) {
+			return false;
+		}
+		final int cell = (slot * this.mColumns) + this.mMaxPeers;
+		final int length = this.mLengths[cell];
+		if (length + pLength > this.mMaxCommandSize) {
+			return false;
+		}
+		System.arraycopy(pData, pOffset, this.mData, (cell * this.mMaxCommandSize) + length, pLength);
+		this.mLengths[cell] = length + pLength;
+		return true;
+	}
+
+	@Override
+	public void seal(int pStep) {
+		final int slot = this.claimSlot(pStep);
+		if (slot != -1) {
+			this.setBit(this.mArrived, slot * this.mWords, this.mMaxPeers);
+		}
+	}
+
+	@Override
+	public boolean isReady(int pStep) {
+		final int slot = pStep & this.mMask;
+		if (this.mSlotSteps[slot] != pStep) {
+			return false;
+		}
+		final int base = slot * this.mWords;
+		for (int i = 0; i < this.mWords; i++) {
+			if ((this.mArrived[base + i] & this.mRequired[i]) != this.mRequired[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int getMissingPeers(int pStep, int[] pPeerIDs) {
+		final int slot = pStep & this.mMask;
+		final boolean claimed = this.mSlotSteps[slot] == pStep;
+		int count = 0;
+		for (int i = 0; i < this.mMaxPeers && count < pPeerIDs.length; i++) {
+			if (this.isBitSet(this.mRequired, 0, i) && (!claimed || !this.isBitSet(this.mArrived, slot * this.mWords, i))) {
+				pPeerIDs[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void execute(int pStep, ILockstepCommandListener pListener) {
+		final int slot = pStep & this.mMask;
+		if (this.mSlotSteps[slot] == pStep) {
+			final int base = slot * this.mWords;
+			for (int i = 0; i < this.mColumns; i++) {
+				if (this.isBitSet(this.mArrived, base, i)) {
+					final int cell = (slot * this.mColumns) + i;
+					final int peerID = (i == this.mMaxPeers) ? LOCAL_PEER : i;
+					pListener.lockstepCommand(pStep, peerID, this.mData, cell * this.mMaxCommandSize, this.mLengths[cell]);
+				}
+			}
+			this.clearSlot(slot);
+		}
+		this.mExecutedStep = pStep;
+	}
+
+	@Override
+	public byte[] getData() {
+		return this.mData;
+	}
+
+	@Override
+	public int getOffset(int pPeerID, int pStep) {
+		final int column = (pPeerID == LOCAL_PEER) ? this.mMaxPeers : pPeerID;
+		return (((pStep & this.mMask) * this.mColumns) + column) * this.mMaxCommandSize;
+	}
+
+	@Override
+	public int getLength(int pPeerID, int pStep) {
+		final int slot = pStep & this.mMask;
+		if (this.mSlotSteps[slot] != pStep) {
+			return 0;
+		}
+		final int column = (pPeerID == LOCAL_PEER) ? this.mMaxPeers : pPeerID;
+		return this.mLengths[(slot * this.mColumns) + column];
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getDepth() {
+		return this.mDepth;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	protected boolean isPeer(final int pPeerID) {
+		return pPeerID >= 0 && pPeerID < this.mMaxPeers;
+	}
+
+	/**
+	 * @return {@link Integer} slot for the step, cleared if it last held an
+	 *         older step, or <code>-1</code> if the step is already run or too
+	 *         far ahead.
+	 */
+	protected int claimSlot(final int pStep) {
+		if (pStep <= this.mExecutedStep || pStep > this.mExecutedStep + this.mDepth) {
+			return -1;
+		}
+		final int slot = pStep & this.mMask;
+		if (this.mSlotSteps[slot] != pStep) {
+			this.clearSlot(slot);
+			this.mSlotSteps[slot] = pStep;
+		}
+		return slot;
+	}
+
+	protected void clearSlot(final int pSlot) {
+		for (int i = 0; i < this.mWords; i++) {
+			this.mArrived[(pSlot * this.mWords) + i] = 0;
+		}
+		for (int i = 0; i < this.mColumns; i++) {
+			this.mLengths[(pSlot * this.mColumns) + i] = 0;
+		}
+		this.mSlotSteps[pSlot] = NO_STEP;
+	}
+
+	protected void setBit(final long[] pBits, final int pBase, final int pBit) {
+		pBits[pBase + (pBit >>> 6)] |= 1L << (pBit & 63);
+	}
+
+	protected boolean isBitSet(final long[] pBits, final int pBase, final int pBit) {
+		return (pBits[pBase + (pBit >>> 6)] & (1L << (pBit & 63))) != 0;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,82 @@
+package com.niffy.AndEngineLockStepEngine;
+
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+
+/**
+ * Commands waiting to be run, per step and per peer. A step is ready once
+ * every peer added, and ourselves, has sent its commands for it.
+ */
+public interface ICommandBuffer {
+	/**
+	 * Id used for our own commands.
+	 */
+	public static final int LOCAL_PEER = -2;
+
+	/**
+	 * Wait for commands from a peer before running each step.
+	 * 
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id.
+	 */
+	public void addPeer(final int pPeerID);
+
+	/**
+	 * Stop waiting for a peer, so a peer which has gone does not hold up the
+	 * game.
+	 * 
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id.
+	 */
+	public void removePeer(final int pPeerID);
+
+	/**
+	 * Store a peers commands for a step, copying the data. A repeat for a
+	 * step already had is ignored.
+	 * 
+	 * @return <code>false</code> if the step is outside the buffer, the peer
+	 *         is unknown or the command is too big.
+	 */
+	public boolean put(final int pPeerID, final int pStep, final byte[] pData, final int pOffset, final int pLength);
+
+	/**
+	 * Add to our own commands for a step which has not been sealed.
+	 * 
+	 * @return <code>false</code> if the step is sealed, outside the buffer or
+	 *         there is no room.
+	 */
+	public boolean append(final int pStep, final byte[] pData, final int pOffset, final int pLength);
+
+	/**
+	 * Our own commands for the step are complete.
+	 */
+	public void seal(final int pStep);
+
+	/**
+	 * @return <code>true</code> if every peer has sent its commands for the
+	 *         step.
+	 */
+	public boolean isReady(final int pStep);
+
+	/**
+	 * @param pPeerIDs
+	 *            {@link Integer} array filled with the ids of peers still to
+	 *            send commands for the step.
+	 * @return {@link Integer} of ids written.
+	 */
+	public int getMissingPeers(final int pStep, final int[] pPeerIDs);
+
+	/**
+	 * Pass each peers commands for the step to the listener and free the
+	 * step for reuse.
+	 */
+	public void execute(final int pStep, final ILockstepCommandListener pListener);
+
+	/**
+	 * Shared array the commands are stored in.
+	 */
+	public byte[] getData();
+
+	public int getOffset(final int pPeerID, final int pStep);
+
+	public int getLength(final int pPeerID, final int pStep);
+}
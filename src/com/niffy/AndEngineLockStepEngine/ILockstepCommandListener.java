@@ -0,0 +1,22 @@
+package com.niffy.AndEngineLockStepEngine;
+
+public interface ILockstepCommandListener {
+	/**
+	 * A peers commands for the step being run, in peer id order.
+	 * 
+	 * @param pGameStep
+	 *            {@link Integer} step being run.
+	 * @param pPeerID
+	 *            {@link Integer} id of the peer, or
+	 *            {@link ICommandBuffer#LOCAL_PEER} for our own.
+	 * @param pData
+	 *            {@link Byte} array, only valid for the duration of the call.
+	 * @param pOffset
+	 *            {@link Integer} offset of the command in <code>pData</code>
+	 * @param pLength
+	 *            {@link Integer} length of the command, <code>0</code> if the
+	 *            peer had nothing for the step.
+	 */
+	public void lockstepCommand(final int pGameStep, final int pPeerID, final byte[] pData, final int pOffset,
+			final int pLength);
+}
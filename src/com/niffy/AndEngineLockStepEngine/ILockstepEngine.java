@@ -58,6 +58,33 @@ public interface ILockstepEngine extends ILockstep {
 	 */
 	public void setChangeOver(final int pGameStep, final long pTickLength);
 
+	/**
+	 * Set the change over step for the tick length and input delay.
+	 * 
+	 * @param pGameStep
+	 *            {@link Integer} of step when the new length should start, a
+	 *            step already run starts on the next step.
+	 * @param pTickLength
+	 *            {@link Long} of tick length in milliseconds.
+	 * @param pInputDelay
+	 *            {@link Integer} of steps between a command and it being run.
+	 */
+	public void setChangeOver(final int pGameStep, final long pTickLength, final int pInputDelay);
+
+	/**
+	 * @return {@link Integer} of steps between a command and it being run.
+	 */
+	public int getInputDelay();
+
+	/**
+	 * How far between the current step and the next we are, for rendering to
+	 * interpolate between the two.
+	 * 
+	 * @return {@link Float} from <code>0</code> at the current step to
+	 *         <code>1</code> when the next step is due.
+	 */
+	public float getInterpolationAlpha();
+
 	/**
 	 * Countdown to start the game steps.
 	 * 
@@ -85,4 +112,25 @@ public interface ILockstepEngine extends ILockstep {
 	public ILockstepNetwork getLockstepNetwork();
 	
 	public ILockstepClientListener getLockstepClientListener();
+
+	/**
+	 * Queue commands to run on every peer at the current step plus the input
+	 * delay. Commands given in the same step are joined and sent once the
+	 * step ends.
+	 * 
+	 * @param pData
+	 *            {@link Byte} array of command data, copied.
+	 * @param pOffset
+	 *            {@link Integer} offset in <code>pData</code>
+	 * @param pLength
+	 *            {@link Integer} length of the data.
+	 * @return <code>false</code> if there is no room left for this step.
+	 */
+	public boolean submitCommand(final byte[] pData, final int pOffset, final int pLength);
+
+	public void subscribeCommandListener(final ILockstepCommandListener pCommandListener);
+
+	public void unsubscribeCommandListener(final ILockstepCommandListener pCommandListener);
+
+	public ICommandBuffer getCommandBuffer();
 }
@@ -3,11 +3,12 @@ package com.niffy.AndEngineLockStepEngine;
 import java.net.InetAddress;
 import java.util.ArrayList;
 
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerEvent;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
 import com.niffy.AndEngineLockStepEngine.packet.ISendMessage;
 import com.niffy.AndEngineLockStepEngine.threads.ICommunicationHandler;
 
-public interface ILockstepNetwork extends IHandlerMessage, ISendMessage {
+public interface ILockstepNetwork extends IHandlerMessage, IHandlerEvent, ISendMessage {
 	/**
 	 * Set the current main communication thread to use. <br>
 	 * @param pThread
@@ -24,4 +25,13 @@ public interface ILockstepNetwork extends IHandlerMessage, ISendMessage {
 	
 	public void connectTo(final String pAddress);
 
+	/**
+	 * Handle events published by the communication thread since the last
+	 * call. Call from the thread running the lockstep, such as once per
+	 * {@link ILockstepEngine#onUpdate(float)}.
+	 * 
+	 * @return {@link Integer} of events handled.
+	 */
+	public int processEvents();
+
 }
@@ -1,5 +1,6 @@
 package com.niffy.AndEngineLockStepEngine;
 
+import java.net.InetAddress;
 import java.util.ArrayList;
 
 import org.slf4j.Logger;
@@ -7,10 +8,16 @@ import org.slf4j.LoggerFactory;
 
 import android.os.Message;
 
+import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.MessageCommand;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePingHighest;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 
-public class Lockstep implements ILockstepEngine, IHandlerMessage {
+public class Lockstep implements ILockstepEngine, IHandlerMessage, ILockstepCommandListener {
 	// ===========================================================
 	// Constants
 	// ===========================================================
@@ -21,9 +28,14 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 	// ===========================================================
 	public final long NANOSECOND = 1000000;
 	/**
-	 * Accumulator to count ticks.
+	 * Used when {@link IBaseOptions#getStandardTickLength()} is not set.
 	 */
-	protected float mSecondsElapsedAccumulator = 0;
+	public static final long DefaultTickLength = 50;
+	protected static final long NOT_STALLED = -1;
+	/**
+	 * Decides when each step is due.
+	 */
+	protected final TickScheduler mTickScheduler;
 	/**
 	 * Listeners to update when the game step changes.
 	 */
@@ -53,6 +65,10 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 	 * New tick length to use. Excluding {@link #mStandardTickLength}
 	 */
 	protected long mNewTickLength = 0;
+	/**
+	 * New input delay to use from {@link #mGameStepChangeOver}
+	 */
+	protected int mNewInputDelay = 0;
 	/**
 	 * Countdown to start the game.
 	 */
@@ -64,6 +80,31 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 	protected boolean mStarted = false;
 	protected ILockstepClientListener mLockstepClientListener;
 	protected IBaseOptions mBaseOptions;
+	/**
+	 * Commands waiting for their step, a step is only run once every peers
+	 * commands for it are here.
+	 */
+	protected final ICommandBuffer mCommandBuffer;
+	protected int mInputDelay;
+	protected int mMaxInputDelay;
+	/**
+	 * Highest step our commands have been sent for. The input delay can
+	 * change, so this stops a step being sent twice or skipped.
+	 */
+	protected int mLastSentStep = 0;
+	protected ArrayList<ILockstepCommandListener> mCommandListeners;
+	/**
+	 * Clock time we started waiting on the next steps commands,
+	 * {@link #NOT_STALLED} when it runs.
+	 */
+	protected long mStallStart = NOT_STALLED;
+	protected boolean mStallReported = false;
+	protected int[] mMissingPeers;
+	/**
+	 * Only made for the host, picks the tick length and input delay.
+	 */
+	protected TickController mTickController;
+	protected int mNextEvaluationStep = 0;
 
 	// ===========================================================
 	// Constructors
@@ -73,11 +114,25 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 	 */
 	public Lockstep(final ILockstepClientListener pLockstepClientListener, IBaseOptions pBaseOptions) {
 		this.mStepChangeListeners = new ArrayList<ILockstepStepChangeListener>();
-		this.mLockstepNetwork = new LockstepNetwork(this, pBaseOptions);
+		this.mCommandListeners = new ArrayList<ILockstepCommandListener>();
 		this.mLockstepClientListener = pLockstepClientListener;
 		this.mBaseOptions = pBaseOptions;
-		this.mStandardTickLength = this.mBaseOptions.getStandardTickLength();
-		/* TODO create Ping RTT Client*/
+		final long standardTickLength = this.mBaseOptions.getStandardTickLength();
+		this.mStandardTickLength = (standardTickLength > 0) ? standardTickLength : DefaultTickLength;
+		this.mCurrentTickLength = this.mStandardTickLength;
+		this.mCurrentTickLengthNanoSeconds = this.mCurrentTickLength * this.NANOSECOND;
+		this.mTickScheduler = new TickScheduler(this.mCurrentTickLengthNanoSeconds,
+				this.mBaseOptions.getMaxStepsPerUpdate());
+		this.mInputDelay = Math.max(1, this.mBaseOptions.getInputDelay());
+		this.mMaxInputDelay = Math.max(this.mInputDelay, this.mBaseOptions.getMaxInputDelay());
+		this.mNewInputDelay = this.mInputDelay;
+		final int maxPeers = this.mBaseOptions.getPeerRegistry().getMaxPeers();
+		this.mCommandBuffer = new CommandBuffer(maxPeers, this.mMaxInputDelay, this.mBaseOptions.getMaxCommandSize());
+		this.mMissingPeers = new int[maxPeers];
+		this.mLockstepNetwork = new LockstepNetwork(this, pBaseOptions);
+		if (this.mBaseOptions.isHost()) {
+			this.mTickController = new TickController(this.mBaseOptions);
+		}
 	}
 
 	// ===========================================================
@@ -91,22 +146,44 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 	// ===========================================================
 	// Methods for/from SuperClass/Interfaces ILockstepEngine
 	// ===========================================================
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Steps are timed from {@link System#nanoTime()} rather than by adding up
+	 * <code>pNanosecondsElapsed</code>, so float rounding never builds up.
+	 */
 	@Override
 	public void onUpdate(float pNanosecondsElapsed) {
+		this.mLockstepNetwork.processEvents();
 		if (this.mStarted) {
-			this.mSecondsElapsedAccumulator += pNanosecondsElapsed;
-			while (this.mSecondsElapsedAccumulator >= this.mCurrentTickLengthNanoSeconds) {
+			final long now = System.nanoTime();
+			this.mTickScheduler.update(now);
+			while (this.mTickScheduler.isDue()) {
+				if (!this.mCommandBuffer.isReady(this.mCurrentGameStep + 1)) {
+					/* Don't bank steps to rush through once the commands arrive */
+					this.mTickScheduler.hold();
+					this.stalled(now);
+					break;
+				}
+				this.mStallStart = NOT_STALLED;
+				this.mStallReported = false;
 				this.incrementGameStep();
 				if (this.mGameStepChangeOver == this.mCurrentGameStep) {
 					this.tickChangeOver();
 				}
-				this.mSecondsElapsedAccumulator -= this.mCurrentTickLengthNanoSeconds;
+				this.mTickScheduler.advance();
+			}
+			if (this.mTickController != null && this.mCurrentGameStep >= this.mNextEvaluationStep) {
+				this.evaluateTickLength();
 			}
 		}
 	}
 
 	@Override
 	public void start() {
+		/* Nothing was given before these steps, so tell everyone */
+		this.sendLocalCommandsUpTo(this.mCurrentGameStep + this.mInputDelay);
+		this.mTickScheduler.start(System.nanoTime());
 		this.mStarted = true;
 	}
 
@@ -144,8 +221,24 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 
 	@Override
 	public void setChangeOver(int pGameStep, long pStepLength) {
-		this.mGameStepChangeOver = pGameStep;
-		this.mNewTickLength = pStepLength;
+		this.setChangeOver(pGameStep, pStepLength, this.mInputDelay);
+	}
+
+	@Override
+	public void setChangeOver(int pGameStep, long pTickLength, int pInputDelay) {
+		this.mGameStepChangeOver = Math.max(pGameStep, this.mCurrentGameStep + 1);
+		this.mNewTickLength = pTickLength;
+		this.mNewInputDelay = Math.max(1, Math.min(this.mMaxInputDelay, pInputDelay));
+	}
+
+	@Override
+	public int getInputDelay() {
+		return this.mInputDelay;
+	}
+
+	@Override
+	public float getInterpolationAlpha() {
+		return this.mStarted ? this.mTickScheduler.getAlpha() : 0;
 	}
 
 	@Override
@@ -177,6 +270,42 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 		return this.mLockstepClientListener;
 	}
 
+	@Override
+	public boolean submitCommand(byte[] pData, int pOffset, int pLength) {
+		final int step = Math.max(this.mCurrentGameStep + this.mInputDelay, this.mLastSentStep + 1);
+		return this.mCommandBuffer.append(step, pData, pOffset, pLength);
+	}
+
+	@Override
+	public void subscribeCommandListener(ILockstepCommandListener pCommandListener) {
+		if (!this.mCommandListeners.contains(pCommandListener)) {
+			this.mCommandListeners.add(pCommandListener);
+		}
+	}
+
+	@Override
+	public void unsubscribeCommandListener(ILockstepCommandListener pCommandListener) {
+		if (this.mCommandListeners.contains(pCommandListener)) {
+			this.mCommandListeners.remove(pCommandListener);
+		}
+	}
+
+	@Override
+	public ICommandBuffer getCommandBuffer() {
+		return this.mCommandBuffer;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces ILockstepCommandListener
+	// ===========================================================
+	@Override
+	public void lockstepCommand(int pGameStep, int pPeerID, byte[] pData, int pOffset, int pLength) {
+		final int count = this.mCommandListeners.size();
+		for (int i = 0; i < count; i++) {
+			this.mCommandListeners.get(i).lockstepCommand(pGameStep, pPeerID, pData, pOffset, pLength);
+		}
+	}
+
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
@@ -186,9 +315,68 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 	// ===========================================================
 	private void incrementGameStep() {
 		this.mCurrentGameStep++;
+		this.mCommandBuffer.execute(this.mCurrentGameStep, this);
+		this.sendLocalCommandsUpTo(this.mCurrentGameStep + this.mInputDelay);
 		this.informGameStepChange();
 	}
 
+	/**
+	 * Send every step not yet sent up to and including the given one. When
+	 * the input delay is raised the steps in between go out empty, when it is
+	 * lowered nothing goes out until the steps already sent are reached.
+	 */
+	protected void sendLocalCommandsUpTo(final int pStep) {
+		while (this.mLastSentStep < pStep) {
+			this.mLastSentStep++;
+			this.sendLocalCommands(this.mLastSentStep);
+		}
+	}
+
+	/**
+	 * Seal our commands for a step and send them to everyone, even if there
+	 * are none, so nobody waits on us.
+	 */
+	protected void sendLocalCommands(final int pStep) {
+		this.mCommandBuffer.seal(pStep);
+		if (this.mLockstepNetwork.getClients().isEmpty()) {
+			return;
+		}
+		final MessageCommand command = (MessageCommand) this.mLockstepNetwork.obtainMessage(MessageFlag.COMMAND);
+		command.setIntended(IntendedFlag.LOCKSTEP);
+		command.setRequireAck(true);
+		command.setStep(pStep);
+		command.setData(this.mCommandBuffer.getData(), this.mCommandBuffer.getOffset(ICommandBuffer.LOCAL_PEER, pStep),
+				this.mCommandBuffer.getLength(ICommandBuffer.LOCAL_PEER, pStep));
+		this.mLockstepNetwork.sendMessage(null, command, false);
+		this.mLockstepNetwork.recycleMessage(command);
+	}
+
+	/**
+	 * Waiting on commands for the next step. Once the wait passes the crisis
+	 * steps, the peers holding us up are reported as out of sync, once per
+	 * stall.
+	 */
+	protected void stalled(final long pNow) {
+		if (this.mStallStart == NOT_STALLED) {
+			this.mStallStart = pNow;
+		}
+		final int stallSteps = Math.max(1, this.mBaseOptions.getStepsBeforeCrisis());
+		if (this.mStallReported || pNow - this.mStallStart < this.mCurrentTickLengthNanoSeconds * stallSteps) {
+			return;
+		}
+		this.mStallReported = true;
+		TraceRing.dump(this.mBaseOptions.getTraceRing());
+		final IPeerRegistry registry = this.mBaseOptions.getPeerRegistry();
+		final int count = this.mCommandBuffer.getMissingPeers(this.mCurrentGameStep + 1, this.mMissingPeers);
+		for (int i = 0; i < count; i++) {
+			final InetAddress address = registry.getAddress(this.mMissingPeers[i]);
+			log.warn("Step: {} waiting on commands from: {}", this.mCurrentGameStep + 1, address);
+			if (address != null) {
+				this.mLockstepClientListener.clientOutOfSync(address);
+			}
+		}
+	}
+
 	private void informGameStepChange() {
 		final int count = this.mStepChangeListeners.size();
 		for (int i = 0; i < count; i++) {
@@ -196,9 +384,45 @@ public class Lockstep implements ILockstepEngine, IHandlerMessage {
 		}
 	}
 
+	/**
+	 * Host only. Pick the tick length and input delay from the measured round
+	 * trips, once per ping interval, and if they changed tell everyone which
+	 * step to change over on. The step is far enough ahead that every peer
+	 * hears before reaching it.
+	 */
+	protected void evaluateTickLength() {
+		final long tickLength = Math.max(1, this.mCurrentTickLength);
+		this.mNextEvaluationStep = this.mCurrentGameStep
+				+ (int) Math.max(1, this.mBaseOptions.getPingInterval() / tickLength);
+		if (this.mGameStepChangeOver > this.mCurrentGameStep) {
+			/* Still waiting on the last change over */
+			return;
+		}
+		if (!this.mTickController.evaluate(this.mLockstepNetwork.getClients(), this.mCurrentTickLength,
+				this.mInputDelay)) {
+			return;
+		}
+		final int inputDelay = Math.max(this.mInputDelay, this.mTickController.getInputDelay());
+		final int changeOver = this.mCurrentGameStep + (2 * inputDelay) + 2;
+		final MessagePingHighest message = (MessagePingHighest) this.mLockstepNetwork
+				.obtainMessage(MessageFlag.PING_HIGHEST);
+		message.setIntended(IntendedFlag.LOCKSTEP);
+		message.setRequireAck(true);
+		message.setInetAddress(this.mTickController.getWorstAddress().getHostAddress());
+		message.setHighestPingTime(this.mTickController.getWorstRTT());
+		message.setTickLength(this.mTickController.getTickLength());
+		message.setInputDelay(this.mTickController.getInputDelay());
+		message.setChangeOverStep(changeOver);
+		this.mLockstepNetwork.sendMessage(null, message, false);
+		this.mLockstepNetwork.recycleMessage(message);
+		this.setChangeOver(changeOver, this.mTickController.getTickLength(), this.mTickController.getInputDelay());
+	}
+
 	private void tickChangeOver() {
 		this.mCurrentTickLength = this.mNewTickLength;
 		this.mCurrentTickLengthNanoSeconds = this.mCurrentTickLength * this.NANOSECOND;
+		this.mTickScheduler.setTickLength(this.mCurrentTickLengthNanoSeconds);
+		this.mInputDelay = this.mNewInputDelay;
 	}
 	// ===========================================================
 	// Inner and Anonymous Classes
@@ -1,10 +1,11 @@
 package com.niffy.AndEngineLockStepEngine;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import org.slf4j.Logger;
@@ -14,13 +15,25 @@ import android.os.Bundle;
 import android.os.Message;
 
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
-import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
 import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.flags.TraceFlag;
+import com.niffy.AndEngineLockStepEngine.messages.HeaderCodec;
 import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.MessageCommand;
 import com.niffy.AndEngineLockStepEngine.messages.MessageMigrate;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePingHighest;
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
 import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePool;
 import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePoolTags;
+import com.niffy.AndEngineLockStepEngine.misc.HandlerMessageEventAdapter;
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerEvent;
+import com.niffy.AndEngineLockStepEngine.misc.ITCEvent;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.SPSCEventRing;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 import com.niffy.AndEngineLockStepEngine.threads.ICommunicationHandler;
 
 public class LockstepNetwork implements ILockstepNetwork {
@@ -36,6 +49,21 @@ public class LockstepNetwork implements ILockstepNetwork {
 	protected ArrayList<InetAddress> mClients;
 	protected IBaseOptions mBaseOptions;
 	protected MessagePool<IMessage> mMessagePool;
+	protected IPeerRegistry mPeerRegistry;
+	/**
+	 * Published by the communication thread, drained in
+	 * {@link #processEvents()}
+	 */
+	protected final IEventTransport mInboundEvents;
+	/**
+	 * Events without their own handling are passed back through
+	 * {@link #handlePassedMessage(Message)}
+	 */
+	protected final IHandlerEvent mMessageAdapter;
+	/**
+	 * {@link IBaseOptions#getTraceRing()}, can be <code>null</code>
+	 */
+	protected final TraceRing mTrace;
 
 	// ===========================================================
 	// Constructors
@@ -44,8 +72,12 @@ public class LockstepNetwork implements ILockstepNetwork {
 	public LockstepNetwork(ILockstepEngine pLockstepEngine, IBaseOptions pBaseOptions) {
 		this.mLockstepEngine = pLockstepEngine;
 		this.mBaseOptions = pBaseOptions;
+		this.mPeerRegistry = this.mBaseOptions.getPeerRegistry();
+		this.mTrace = this.mBaseOptions.getTraceRing();
 		this.mClients = new ArrayList<InetAddress>();
 		this.mMessagePool = new MessagePool<IMessage>();
+		this.mInboundEvents = new SPSCEventRing();
+		this.mMessageAdapter = new HandlerMessageEventAdapter(this);
 		this.producePoolItems();
 	}
 
@@ -56,7 +88,7 @@ public class LockstepNetwork implements ILockstepNetwork {
 	@SuppressWarnings("unused")
 	@Override
 	public void handlePassedMessage(Message pMessage) {
-		log.debug("Handling message: {}", pMessage.what);
+		TraceRing.trace(this.mTrace, TraceFlag.ITC_MESSAGE, TraceRing.NO_PEER, pMessage.what);
 		Bundle bundle;
 		String ip;
 		byte[] data;
@@ -108,10 +140,28 @@ public class LockstepNetwork implements ILockstepNetwork {
 		}
 	}
 
+	@Override
+	public void handlePassedEvent(ITCEvent pEvent) {
+		switch (pEvent.mWhat) {
+		case ITCFlags.RECIEVE_MESSAGE_LOCKSTEP:
+			this.handleIncomePacket(pEvent.mPeerID, pEvent.mFlag, pEvent.mData, pEvent.mOffset, pEvent.mLength);
+			break;
+		default:
+			this.mMessageAdapter.handlePassedEvent(pEvent);
+			break;
+		}
+	}
+
+	@Override
+	public int processEvents() {
+		return this.mInboundEvents.drain(this, this.mInboundEvents.capacity());
+	}
+
 	@Override
 	public void addClient(InetAddress pAddress) {
 		if (!this.mClients.contains(pAddress)) {
 			this.mClients.add(pAddress);
+			this.mLockstepEngine.getCommandBuffer().addPeer(this.mPeerRegistry.register(pAddress));
 		} else {
 			log.warn("Client is already added: {}", pAddress);
 		}
@@ -126,6 +176,7 @@ public class LockstepNetwork implements ILockstepNetwork {
 	public void removeClient(InetAddress pAddress) {
 		if (this.mClients.contains(pAddress)) {
 			this.mClients.remove(pAddress);
+			this.mLockstepEngine.getCommandBuffer().removePeer(this.mPeerRegistry.getID(pAddress));
 		} else {
 			log.warn("Client is not in the list to remove: {}", pAddress);
 		}
@@ -133,23 +184,29 @@ public class LockstepNetwork implements ILockstepNetwork {
 
 	@Override
 	public <T extends IMessage> int sendMessage(InetAddress pAddress, T pMessage, boolean pTCP) {
-		byte[] buf = null;
-		final ByteArrayOutputStream bOutput = new ByteArrayOutputStream();
-		final DataOutputStream dOutput = new DataOutputStream(bOutput);
+		final int peerID = (pAddress != null) ? this.mPeerRegistry.getID(pAddress) : IPeerRegistry.NO_PEER;
+		if (pAddress != null && peerID == IPeerRegistry.NO_PEER) {
+			log.error("Could not send message to: {} as it is not registered", pAddress);
+			this.networkError("Could not send message to unknown peer: " + pAddress);
+			return -1;
+		}
+		/* Serialized in to a pooled buffer the communication thread releases once sent */
+		final int size = pMessage.getTransmissionSize();
+		final PooledBuffer buffer = this.mBaseOptions.getBufferPool().obtain(size);
 		try {
-			pMessage.write(dOutput);
-			dOutput.flush();
-			buf = bOutput.toByteArray();
-			Bundle pData = new Bundle();
-			pData.putString("ip", pAddress.getHostAddress());
-			pData.putInt("intended", IntendedFlag.LOCKSTEP);
-			pData.putByteArray("data", buf);
-			pData.putBoolean("method", pTCP);
+			final ByteBuffer data = ByteBuffer.wrap(buffer.getData(), buffer.getOffset(), size).slice();
+			pMessage.writeTo(data);
+			buffer.setLength(data.position());
 			Message msg = this.mCommunicationHandler.getHandler().obtainMessage();
 			msg.what = ITCFlags.SEND_MESSAGE;
-			msg.setData(pData);
-			this.mCommunicationHandler.getHandler().sendMessage(msg);
-		} catch (IOException e) {
+			msg.obj = buffer;
+			msg.arg1 = peerID;
+			msg.arg2 = (pTCP) ? 1 : 0;
+			if (!this.mCommunicationHandler.getHandler().sendMessage(msg)) {
+				buffer.release();
+			}
+		} catch (BufferOverflowException e) {
+			buffer.release();
 			log.error("Could not pass packet to communication thread", e);
 			this.networkError("Could not pass packet to communication thread, error: " + e.toString());
 			return -1;
@@ -179,7 +236,13 @@ public class LockstepNetwork implements ILockstepNetwork {
 	
 	@Override
 	public void setMainCommunicationThread(ICommunicationHandler pThread) {
+		if (this.mCommunicationHandler != null) {
+			this.mCommunicationHandler.setLockstepTransport(null);
+		}
 		this.mCommunicationHandler = pThread;
+		if (this.mCommunicationHandler != null) {
+			this.mCommunicationHandler.setLockstepTransport(this.mInboundEvents);
+		}
 	}
 
 	// ===========================================================
@@ -232,6 +295,7 @@ public class LockstepNetwork implements ILockstepNetwork {
 	public void clientOutOfSync(final String pAddress) {
 		InetAddress cast = this.castAddress(pAddress);
 		if (cast != null) {
+			TraceRing.dump(this.mTrace);
 			this.mLockstepEngine.getLockstepClientListener().clientOutOfSync(cast);
 		} else {
 			log.error("Could not inform of client out of sync as could not cast address: {}", pAddress);
@@ -242,16 +306,78 @@ public class LockstepNetwork implements ILockstepNetwork {
 		this.mLockstepEngine.getLockstepClientListener().networkError(pMessage);
 	}
 
-	@SuppressWarnings("unused")
 	protected void handleIncomePacket(final Bundle pBundle) {
-		final String pIp = pBundle.getString("ip");
+		final int pPeerID = pBundle.getInt("peer", IPeerRegistry.NO_PEER);
 		final int pFlag = pBundle.getInt("flag");
 		final byte[] pData = pBundle.getByteArray("data");
-		if (pFlag == MessageFlag.MIGRATE) {
+		this.handleIncomePacket(pPeerID, pFlag, pData, 0, (pData != null) ? pData.length : 0);
+	}
+
+	/**
+	 * 
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id of sender, use
+	 *            {@link IPeerRegistry#getAddress(int)} if the address is
+	 *            needed.
+	 * @param pFlag
+	 *            {@link MessageFlag} of the packet.
+	 * @param pData
+	 *            Packet data, only valid for the duration of the call.
+	 * @param pOffset
+	 *            {@link Integer} offset of the packet in <code>pData</code>
+	 * @param pLength
+	 *            {@link Integer} length of the packet.
+	 */
+	protected void handleIncomePacket(final int pPeerID, final int pFlag, final byte[] pData,
+			final int pOffset, final int pLength) {
+		final int body = pOffset + HeaderCodec.getHeaderSize(pData, pOffset);
+		final int end = pOffset + pLength;
+		if (pFlag == MessageFlag.ENCAPSULATED) {
+			/* Sent with sendMessage, so a whole packet is inside */
+			final int size = HeaderCodec.readInt(pData, body);
+			final int inner = body + 4;
+			if (size <= 0 || inner + size > end) {
+				log.error("Encapsulated packet from peer: {} has a bad size: {}", pPeerID, size);
+				return;
+			}
+			this.handleIncomePacket(pPeerID, HeaderCodec.getFlag(pData, inner), pData, inner, size);
+		} else if (pFlag == MessageFlag.COMMAND) {
+			final int step = MessageCommand.readStep(pData, body);
+			final int length = MessageCommand.readLength(pData, body);
+			if (length < 0 || body + MessageCommand.DATA_OFFSET + length > end) {
+				final Object[] pArray = { pPeerID, step, length };
+				log.error("Command from peer: {} for step: {} has a bad length: {}", pArray);
+				return;
+			}
+			this.mLockstepEngine.getCommandBuffer().put(pPeerID, step, pData, body + MessageCommand.DATA_OFFSET,
+					length);
+		} else if (pFlag == MessageFlag.PING_HIGHEST) {
+			this.handleChangeOver(pPeerID, pData, body, end - body);
+		} else if (pFlag == MessageFlag.MIGRATE) {
 			//this.triggerMigrate();
 		}
 	}
 
+	/**
+	 * The host picked a new tick length and input delay.
+	 */
+	protected void handleChangeOver(final int pPeerID, final byte[] pData, final int pOffset, final int pLength) {
+		final MessagePingHighest message = (MessagePingHighest) this.obtainMessage(MessageFlag.PING_HIGHEST);
+		try {
+			message.readFrom(ByteBuffer.wrap(pData, pOffset, pLength));
+			final Object[] pArray = { message.getChangeOverStep(), message.getTickLength(), message.getInputDelay(),
+					message.getInetAddress(), message.getHighestPingTime() };
+			log.debug("Change over at step: {} tick length: {} input delay: {} worst peer: {} RTT: {}", pArray);
+			this.mLockstepEngine.setChangeOver(message.getChangeOverStep(), message.getTickLength(),
+					message.getInputDelay());
+		} catch (IOException e) {
+			log.error("Could not read change over from peer: {}", pPeerID, e);
+		} catch (BufferUnderflowException e) {
+			log.error("Could not read change over from peer: {}", pPeerID, e);
+		}
+		this.recycleMessage(message);
+	}
+
 	protected void producePoolItems() {
 		/*
 		 * TODO don't need migrate do we?
@@ -261,8 +387,24 @@ public class LockstepNetwork implements ILockstepNetwork {
 		int pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.MIGRATE_INITIAL_INT;
 		int pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.MIGRATE_GROWTH_INT;
 		int pFlag = MessageFlag.MIGRATE;
-		Class<? extends IMessage> pMessageClass = MessageMigrate.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		IMessageFactory<? extends IMessage> pMessageFactory = MessageMigrate.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
+
+		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.COMMAND_INITIAL_STRING);
+		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.COMMAND_GROWTH_STRING);
+		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.COMMAND_INITIAL_INT;
+		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.COMMAND_GROWTH_INT;
+		pFlag = MessageFlag.COMMAND;
+		pMessageFactory = MessageCommand.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
+
+		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_INITIAL_STRING);
+		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_GROWTH_STRING);
+		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.PING_INITIAL_INT;
+		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.PING_GROWTHL_INT;
+		pFlag = MessageFlag.PING_HIGHEST;
+		pMessageFactory = MessagePingHighest.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 	}
 
 	// ===========================================================
@@ -0,0 +1,160 @@
+package com.niffy.AndEngineLockStepEngine;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+import com.niffy.AndEngineLockStepEngine.peer.IRttEstimator;
+
+/**
+ * Picks the tick length and input delay for the worst peer, run by the host.
+ * <p>
+ * A command sent as a step ends has to reach every peer before they run the
+ * step it is for, so <code>(delay - 1) * tick</code> has to cover the one way
+ * trip. The round trip used is {@link IRttEstimator#getTimeout(int)}, so the
+ * jitter is covered too. The input delay is raised first, keeping the
+ * standard tick length, and once it reaches
+ * {@link IBaseOptions#getMaxInputDelay()} the tick length is raised instead.
+ * <p>
+ * Raising happens straight away. Lowering only happens once it still holds
+ * with a quarter more round trip, so a peer on the edge does not flip back
+ * and forth.
+ */
+public class TickController {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(TickController.class);
+	protected static final long MILLISECOND = 1000000;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final IBaseOptions mBaseOptions;
+	protected final IPeerRegistry mPeerRegistry;
+	protected final IRttEstimator mRttEstimator;
+	protected long mTickLength = 0;
+	protected int mInputDelay = 0;
+	protected InetAddress mWorstAddress;
+	/**
+	 * Round trip of {@link #mWorstAddress} in milliseconds.
+	 */
+	protected long mWorstRTT = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public TickController(final IBaseOptions pBaseOptions) {
+		this.mBaseOptions = pBaseOptions;
+		this.mPeerRegistry = this.mBaseOptions.getPeerRegistry();
+		this.mRttEstimator = this.mBaseOptions.getRttEstimator();
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	/**
+	 * @return {@link Long} tick length picked in milliseconds.
+	 */
+	public long getTickLength() {
+		return this.mTickLength;
+	}
+
+	public int getInputDelay() {
+		return this.mInputDelay;
+	}
+
+	public InetAddress getWorstAddress() {
+		return this.mWorstAddress;
+	}
+
+	/**
+	 * @return {@link Long} round trip of {@link #getWorstAddress()} in
+	 *         milliseconds.
+	 */
+	public long getWorstRTT() {
+		return this.mWorstRTT;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Measure the clients and pick a tick length and input delay, read them
+	 * with {@link #getTickLength()} and {@link #getInputDelay()}.
+	 * 
+	 * @param pClients
+	 *            {@link InetAddress} of peers in the game.
+	 * @param pTickLength
+	 *            {@link Long} tick length in use, in milliseconds.
+	 * @param pInputDelay
+	 *            {@link Integer} input delay in use.
+	 * @return <code>true</code> if what was picked differs from what is in
+	 *         use.
+	 */
+	public boolean evaluate(final ArrayList<InetAddress> pClients, final long pTickLength, final int pInputDelay) {
+		this.mWorstAddress = null;
+		this.mWorstRTT = -1;
+		final int count = pClients.size();
+		for (int i = 0; i < count; i++) {
+			final InetAddress address = pClients.get(i);
+			long rtt = this.mRttEstimator.getTimeout(this.mPeerRegistry.getID(address));
+			rtt = (rtt < 0) ? this.mBaseOptions.getPingRTT() : (rtt + MILLISECOND - 1) / MILLISECOND;
+			if (rtt > this.mWorstRTT) {
+				this.mWorstRTT = rtt;
+				this.mWorstAddress = address;
+			}
+		}
+		if (this.mWorstAddress == null) {
+			return false;
+		}
+		this.pick(this.mWorstRTT);
+		if (this.mInputDelay < pInputDelay || this.mTickLength < pTickLength) {
+			/* Only come down as far as a quarter more round trip allows */
+			final long tickLength = this.mTickLength;
+			final int inputDelay = this.mInputDelay;
+			this.pick(this.mWorstRTT + (this.mWorstRTT / 4));
+			this.mInputDelay = Math.max(inputDelay, Math.min(this.mInputDelay, pInputDelay));
+			this.mTickLength = Math.max(tickLength, Math.min(this.mTickLength, pTickLength));
+		}
+		final boolean changed = this.mInputDelay != pInputDelay || this.mTickLength != pTickLength;
+		if (changed) {
+			final Object[] pArray = { this.mWorstAddress, this.mWorstRTT, this.mTickLength, this.mInputDelay };
+			log.debug("Worst peer: {} RTT: {} picked tick length: {} input delay: {}", pArray);
+		}
+		return changed;
+	}
+
+	/**
+	 * @param pRTT
+	 *            {@link Long} round trip to cover in milliseconds.
+	 */
+	protected void pick(final long pRTT) {
+		final long minTick = Math.max(1, this.mBaseOptions.getStandardTickLength());
+		final long maxTick = Math.max(minTick, this.mBaseOptions.getMaxTickLength());
+		final int minDelay = Math.max(1, this.mBaseOptions.getInputDelay());
+		final int maxDelay = Math.max(minDelay, this.mBaseOptions.getMaxInputDelay());
+		final long oneWay = (pRTT + 1) / 2;
+		final long delay = ((oneWay + minTick - 1) / minTick) + 1;
+		if (delay <= maxDelay) {
+			this.mTickLength = minTick;
+			this.mInputDelay = (int) Math.max(minDelay, delay);
+		} else {
+			final long tick = (maxDelay > 1) ? (oneWay + maxDelay - 2) / (maxDelay - 1) : oneWay;
+			this.mTickLength = Math.min(maxTick, Math.max(minTick, tick));
+			this.mInputDelay = maxDelay;
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,168 @@
+package com.niffy.AndEngineLockStepEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fixed time step on a monotonic nanosecond clock. The time the next step is
+ * due is kept as an absolute {@link Long}, and moved on by exactly one tick
+ * length per step, so summing frame times never drifts and nothing is lost to
+ * rounding however long the game runs.
+ * <p>
+ * A frame runs at most {@link #mMaxStepsPerUpdate} steps. If more than that
+ * are owed at the start of a frame the oldest are dropped, so a long frame
+ * slows the game down once rather than leaving a backlog that makes every
+ * following frame longer.
+ * <p>
+ * Use {@link #update(long)} once a frame, then while {@link #isDue()} run a
+ * step and {@link #advance()}, or {@link #hold()} if the step can not run.
+ */
+public class TickScheduler {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(TickScheduler.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	/**
+	 * Tick length in nanoseconds.
+	 */
+	protected long mTickLength;
+	protected int mMaxStepsPerUpdate;
+	/**
+	 * Clock time the next step is due.
+	 */
+	protected long mNextStepTime;
+	/**
+	 * Clock time given to {@link #update(long)} for this frame.
+	 */
+	protected long mNow;
+	protected int mStepsThisUpdate = 0;
+	/**
+	 * Time dropped so far because too many steps were owed.
+	 */
+	protected long mDroppedTime = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * 
+	 * @param pTickLength
+	 *            {@link Long} in nanoseconds.
+	 * @param pMaxStepsPerUpdate
+	 *            {@link Integer} most steps run in one frame.
+	 */
+	public TickScheduler(final long pTickLength, final int pMaxStepsPerUpdate) {
+		this.setTickLength(pTickLength);
+		this.mMaxStepsPerUpdate = Math.max(1, pMaxStepsPerUpdate);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	/**
+	 * Takes effect from the next {@link #advance()}.
+	 * 
+	 * @param pTickLength
+	 *            {@link Long} in nanoseconds, at least <code>1</code>.
+	 */
+	public void setTickLength(final long pTickLength) {
+		this.mTickLength = Math.max(1, pTickLength);
+	}
+
+	public long getTickLength() {
+		return this.mTickLength;
+	}
+
+	public long getDroppedTime() {
+		return this.mDroppedTime;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * The first step is due one tick length after now.
+	 * 
+	 * @param pNow
+	 *            {@link Long} clock time in nanoseconds.
+	 */
+	public void start(final long pNow) {
+		this.mNow = pNow;
+		this.mNextStepTime = pNow + this.mTickLength;
+		this.mStepsThisUpdate = 0;
+	}
+
+	/**
+	 * Start a frame.
+	 * 
+	 * @param pNow
+	 *            {@link Long} clock time in nanoseconds, from a monotonic clock
+	 *            such as {@link System#nanoTime()}.
+	 */
+	public void update(final long pNow) {
+		this.mNow = pNow;
+		this.mStepsThisUpdate = 0;
+		final long budget = this.mTickLength * this.mMaxStepsPerUpdate;
+		final long behind = pNow - this.mNextStepTime;
+		if (behind > budget) {
+			final long dropped = behind - budget;
+			this.mDroppedTime += dropped;
+			this.mNextStepTime += dropped;
+			log.debug("Dropped: {}ns of steps, more than: {} steps were owed", dropped, this.mMaxStepsPerUpdate);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if a step is due and this frame has not run
+	 *         its most steps.
+	 */
+	public boolean isDue() {
+		return this.mStepsThisUpdate < this.mMaxStepsPerUpdate && this.mNow - this.mNextStepTime >= 0;
+	}
+
+	/**
+	 * A step was run, the next is due one tick length after it.
+	 */
+	public void advance() {
+		this.mNextStepTime += this.mTickLength;
+		this.mStepsThisUpdate++;
+	}
+
+	/**
+	 * The due step could not run. It is due again straight away, but the time
+	 * waited is not owed as extra steps later.
+	 */
+	public void hold() {
+		if (this.mNow - this.mNextStepTime > 0) {
+			this.mNextStepTime = this.mNow;
+		}
+	}
+
+	/**
+	 * @return {@link Float} how far this frame is between the last step and
+	 *         the next, from <code>0</code> to <code>1</code>, to interpolate
+	 *         rendering with.
+	 */
+	public float getAlpha() {
+		final long remaining = this.mNextStepTime - this.mNow;
+		if (remaining <= 0) {
+			return 1;
+		}
+		if (remaining >= this.mTickLength) {
+			return 0;
+		}
+		return 1f - ((float) remaining / this.mTickLength);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
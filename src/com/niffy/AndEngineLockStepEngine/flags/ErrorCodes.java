@@ -2,6 +2,8 @@ package com.niffy.AndEngineLockStepEngine.flags;
 
 import java.net.InetAddress;
 
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+
 /**
  * ErrorCodes
  * 
@@ -30,5 +32,9 @@ public final class ErrorCodes {
 	 * Could not receive message
 	 */
 	public final static int COULD_NOT_RECEIVE = 3;
+	/**
+	 * Peer id is not in the {@link IPeerRegistry}
+	 */
+	public final static int UNKNOWN_PEER = 4;
 	
 }
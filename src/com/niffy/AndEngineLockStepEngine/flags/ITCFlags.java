@@ -5,7 +5,13 @@ import android.os.Message;
 
 import com.niffy.AndEngineLockStepEngine.Lockstep;
 import com.niffy.AndEngineLockStepEngine.LockstepNetwork;
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
+import com.niffy.AndEngineLockStepEngine.misc.ITCEvent;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferBatch;
+import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
 import com.niffy.AndEngineLockStepEngine.packet.PacketHandler;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 import com.niffy.AndEngineLockStepEngine.threads.CommunicationHandler;
 import com.niffy.AndEngineLockStepEngine.threads.CommunicationThread;
 import com.niffy.AndEngineLockStepEngine.threads.nio.ClientSelector;
@@ -80,18 +86,26 @@ public final class ITCFlags {
 	/**
 	 * This will be passed from {@link ServerSelector} to
 	 * {@link CommunicationThread} thread. <br>
-	 * {@link Message#getData()} {@link Bundle} will contain a {@link String}
-	 * with the key <code>ip</code> This will contain the IP address of the
-	 * client. <br>
+	 * {@link Message#arg1} will be the {@link IPeerRegistry} id of the client
+	 * and {@link Message#obj} a {@link PooledBuffer} of the packet, which the
+	 * receiver must release. <br>
+	 * Otherwise {@link Message#getData()} {@link Bundle} will contain an
+	 * {@link Integer} with the key <code>peer</code> This will contain the
+	 * {@link IPeerRegistry} id of the client. <br>
 	 * The data is stored as a byte array with the key of <code>data</code> This
 	 * data will be an encapsulated packet.
 	 */
 	public final static int TCP_CLIENT_INCOMMING = 10;
 	/**
 	 * This will be passed from {@link UDPSelector} to
-	 * {@link CommunicationThread} thread. {@link Message#getData()}
-	 * {@link Bundle} will contain a {@link String} with the key <code>ip</code>
-	 * This will contain the IP address of the client. <br>
+	 * {@link CommunicationThread} thread. {@link Message#obj} will be a
+	 * {@link PooledBufferBatch} of every datagram read in one go, with the
+	 * {@link IPeerRegistry} id of each client, which the receiver must
+	 * release. <br>
+	 * Otherwise {@link Message#getData()}
+	 * {@link Bundle} will contain an {@link Integer} with the key
+	 * <code>peer</code> This will contain the {@link IPeerRegistry} id of the
+	 * client. <br>
 	 * The data is stored as a byte array with the key of <code>data</code> This
 	 * data will be an encapsulated packet.
 	 */
@@ -100,9 +114,15 @@ public final class ITCFlags {
 	 * This will be passed from the {@link LockstepNetwork} to subclasses of
 	 * {@link CommunicationThread}, which has to handle sending the message in
 	 * its own way. <br>
-	 * {@link Message#getData()} {@link Bundle} will contain a {@link String}
-	 * with the key <code>ip</code> This will contain the IP address to who to
-	 * send the message to. <br>
+	 * {@link Message#obj} will be a {@link PooledBuffer} of the encapsulated
+	 * message, which the receiver must release, {@link Message#arg1} the
+	 * {@link IPeerRegistry} id or {@link IPeerRegistry#NO_PEER} and
+	 * {@link Message#arg2} <code>1</code> to send by TCP. It is intended for
+	 * {@link IntendedFlag#LOCKSTEP} <br>
+	 * Otherwise {@link Message#getData()} {@link Bundle} will contain an {@link Integer}
+	 * with the key <code>peer</code> This will contain the
+	 * {@link IPeerRegistry} id of who to send the message to, or
+	 * {@link IPeerRegistry#NO_PEER} to send to everyone. <br>
 	 * An {@link Integer} with the key <code>intended</code> from
 	 * {@link IntendedFlag}, for who it is intended for. <br>
 	 * {@link Byte} Array with the key <code>data</code>, the encapsulated
@@ -114,8 +134,9 @@ public final class ITCFlags {
 	/**
 	 * This will be passed from {@link PacketHandler} to the main activity for
 	 * it to process itself, as its a packet intended for the client. <br>
-	 * {@link Message#getData()} {@link Bundle} will contain a {@link String}
-	 * with the key <code>ip</code> This will contain the sender IP address. <br>
+	 * {@link Message#getData()} {@link Bundle} will contain an {@link Integer}
+	 * with the key <code>peer</code> This will contain the
+	 * {@link IPeerRegistry} id of the sender. <br>
 	 * The data is stored as a byte array with the key of <code>data</code> This
 	 * data should not be encapsulated.
 	 */
@@ -123,11 +144,17 @@ public final class ITCFlags {
 	/**
 	 * This will be passed from {@link PacketHandler} to the main activity for
 	 * it to pass on to {@link LockstepNetwork} <br>
-	 * {@link Message#getData()} {@link Bundle} will contain a {@link String}
-	 * with the key <code>ip</code> This will contain the sender IP address. <br>
+	 * {@link Message#getData()} {@link Bundle} will contain an {@link Integer}
+	 * with the key <code>peer</code> This will contain the
+	 * {@link IPeerRegistry} id of the sender. <br>
 	 * The data is stored as a byte array with the key of <code>data</code> This
 	 * data should not be encapsulated. <br>
-	 * There will also be an {@link Integer} flag indicated the packet type.
+	 * There will also be an {@link Integer} flag indicated the packet type. <br>
+	 * When {@link LockstepNetwork} has given the communication thread an
+	 * {@link IEventTransport} this is published there instead, with the same
+	 * code as {@link ITCEvent#mWhat}, the sender as {@link ITCEvent#mPeerID},
+	 * the packet type as {@link ITCEvent#mFlag} and the data as
+	 * {@link ITCEvent#mData}.
 	 */
 	public final static int RECIEVE_MESSAGE_LOCKSTEP = 22;
 	/**
@@ -137,6 +164,28 @@ public final class ITCFlags {
 	 * with the key <code>step</code> This will contain the new step number.
 	 */
 	public final static int LOCKSTEP_INCREMENT = 50;
+	/**
+	 * Sent by {@link CommunicationThread} to itself once it has something
+	 * bundled, so everything queued behind it is bundled too before the
+	 * bundles are sent. No {@link Bundle}.
+	 */
+	public final static int FLUSH_BUNDLES = 51;
+	/**
+	 * Sent by {@link CommunicationThread} to itself every
+	 * {@link IBaseOptions#getPingInterval()} while it has clients, to ping
+	 * them. No {@link Bundle}.
+	 */
+	public final static int PING_PEERS = 52;
+	/**
+	 * Sent by {@link CommunicationThread} to itself when the next unacked UDP
+	 * packet is due to be sent again. No {@link Bundle}.
+	 */
+	public final static int RETRANSMIT = 53;
+	/**
+	 * Sent by {@link CommunicationThread} to itself while lockstep packets
+	 * are held waiting for room in the lockstep transport. No {@link Bundle}.
+	 */
+	public final static int FLUSH_LOCKSTEP = 54;
 	/**
 	 * This will passed from subclass of {@link CommunicationThread} to main
 	 * activity to pass onto {@link LockstepNetwork}. This will only happen if
@@ -17,10 +17,24 @@ public final class MessageFlag {
 	public final static int PING = 13;
 	public final static int PING_ACK = 14;
 	public final static int PING_HIGHEST = 15;
+	/**
+	 * Selective ack, base sequence and bitmap. {@link #ACK_MULTI} is still read.
+	 */
+	public final static int ACK_RANGE = 16;
+	/**
+	 * Several packets to one peer sharing one datagram.
+	 */
+	public final static int BUNDLE = 17;
+	/**
+	 * {@link #ENCAPSULATED} payload as a delta from one already acknowledged.
+	 * Rebuilt in to an {@link #ENCAPSULATED} before anything else sees it.
+	 */
+	public final static int ENCAPSULATED_DELTA = 18;
 
 	public final static int MIGRATE = 20;
 	public final static int STEPCHANGE = 21;
 	public final static int COUNTDOWN = 22; /* TODO do we need this? just work it out after PING_HIGHEST */
+	public final static int COMMAND = 23;
 
 	public final static int CLIENT_JOIN = 30;
 	public final static int CLIENT_DISCONNECTED = 31;
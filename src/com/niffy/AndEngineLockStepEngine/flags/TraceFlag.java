@@ -0,0 +1,104 @@
+package com.niffy.AndEngineLockStepEngine.flags;
+
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
+
+/**
+ * Events recorded in a {@link TraceRing}, with what the peer and sequence of
+ * each hold.
+ */
+public final class TraceFlag {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	/**
+	 * Packet handed to a selector. Sequence is the packets.
+	 */
+	public final static int SEND = 1;
+	/**
+	 * Bundle handed to a selector. Sequence is the count of packets in it.
+	 */
+	public final static int SEND_BUNDLE = 2;
+	/**
+	 * Packet decoded. Sequence is the packets.
+	 */
+	public final static int RECEIVE = 3;
+	/**
+	 * Ack sent. Sequence is the one acknowledged.
+	 */
+	public final static int ACK_SENT = 4;
+	/**
+	 * Ack received. Sequence is the one acknowledged, or the first of a range.
+	 */
+	public final static int ACK_RECEIVED = 5;
+	/**
+	 * Packet passed to the lockstep. Sequence is the packets.
+	 */
+	public final static int PASS_LOCKSTEP = 6;
+	/**
+	 * Packet passed to the client. Sequence is the packets.
+	 */
+	public final static int PASS_CLIENT = 7;
+	/**
+	 * Ping round trip measured. Sequence is the round trip in microseconds.
+	 */
+	public final static int PING = 8;
+	/**
+	 * Thread message handled, no peer. Sequence is the {@link ITCFlags} what.
+	 */
+	public final static int ITC_MESSAGE = 9;
+	/**
+	 * Selector change applied, no peer. Sequence is the change type.
+	 */
+	public final static int CHANGE_REQUEST = 10;
+	/**
+	 * Packet decoded which had already been received. Sequence is the
+	 * packets.
+	 */
+	public final static int DUPLICATE = 11;
+	/**
+	 * Lockstep packet held until those before it arrive. Sequence is the
+	 * packets.
+	 */
+	public final static int REORDER_HOLD = 12;
+	/**
+	 * Gave up waiting on a gap before a held packet. Sequence is the held
+	 * packets.
+	 */
+	public final static int REORDER_SKIP = 13;
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static String getName(final int pFlag) {
+		switch (pFlag) {
+		case SEND:
+			return "SEND";
+		case SEND_BUNDLE:
+			return "SEND_BUNDLE";
+		case RECEIVE:
+			return "RECEIVE";
+		case ACK_SENT:
+			return "ACK_SENT";
+		case ACK_RECEIVED:
+			return "ACK_RECEIVED";
+		case PASS_LOCKSTEP:
+			return "PASS_LOCKSTEP";
+		case PASS_CLIENT:
+			return "PASS_CLIENT";
+		case PING:
+			return "PING";
+		case ITC_MESSAGE:
+			return "ITC_MESSAGE";
+		case CHANGE_REQUEST:
+			return "CHANGE_REQUEST";
+		case DUPLICATE:
+			return "DUPLICATE";
+		case REORDER_HOLD:
+			return "REORDER_HOLD";
+		case REORDER_SKIP:
+			return "REORDER_SKIP";
+		default:
+			return String.valueOf(pFlag);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+/**
+ * Encodes a payload as the XOR against an earlier one, run length encoded so
+ * the bytes which did not change cost next to nothing.
+ * <p>
+ * The encoding is a run of control bytes, each followed by its data.
+ * <code>0xxxxxxx</code> is <code>x + 1</code> bytes unchanged from the base,
+ * <code>1xxxxxxx</code> is <code>x + 1</code> bytes which follow, each XOR the
+ * base. Past the end of the base, the base reads as zero. Anything after the
+ * last control byte is unchanged, so trailing matches are not written.
+ */
+public final class DeltaCodec {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int LITERAL = 0x80;
+	protected static final int MAX_RUN = 0x80;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	private DeltaCodec() {
+
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @param pBase
+	 *            {@link Byte} array to diff against.
+	 * @param pBaseLength
+	 *            {@link Integer} of bytes valid in <code>pBase</code>
+	 * @param pData
+	 *            {@link Byte} array of the payload to encode.
+	 * @param pLength
+	 *            {@link Integer} of bytes valid in <code>pData</code>
+	 * @param pOut
+	 *            {@link Byte} array to encode in to.
+	 * @param pLimit
+	 *            {@link Integer} most bytes to write to <code>pOut</code>
+	 * @return {@link Integer} of bytes written, or <code>-1</code> if it would
+	 *         not fit in <code>pLimit</code>
+	 */
+	public static int encode(final byte[] pBase, final int pBaseLength, final byte[] pData, final int pLength,
+			final byte[] pOut, final int pLimit) {
+		return encode(pBase, pBaseLength, pData, 0, pLength, pOut, pLimit);
+	}
+
+	/**
+	 * As {@link #encode(byte[], int, byte[], int, byte[], int)} with the
+	 * payload starting at <code>pDataOffset</code> in <code>pData</code>
+	 */
+	public static int encode(final byte[] pBase, final int pBaseLength, final byte[] pData, final int pDataOffset,
+			final int pLength, final byte[] pOut, final int pLimit) {
+		int position = 0;
+		int written = 0;
+		while (position < pLength) {
+			int run = 0;
+			while (position + run < pLength && run < MAX_RUN
+					&& xor(pBase, pBaseLength, pData, pDataOffset, position + run) == 0) {
+				run++;
+			}
+			if (run > 0) {
+				if (position + run == pLength) {
+					break;
+				}
+				if (written + 1 > pLimit) {
+					return -1;
+				}
+				pOut[written++] = (byte) (run - 1);
+				position += run;
+				continue;
+			}
+			while (position + run < pLength && run < MAX_RUN && !isUnchangedRun(pBase, pBaseLength, pData,
+					pDataOffset, pLength, position + run)) {
+				run++;
+			}
+			if (written + 1 + run > pLimit) {
+				return -1;
+			}
+			pOut[written++] = (byte) (LITERAL | (run - 1));
+			for (int i = 0; i < run; i++) {
+				pOut[written++] = xor(pBase, pBaseLength, pData, pDataOffset, position + i);
+			}
+			position += run;
+		}
+		return written;
+	}
+
+	/**
+	 * @param pBase
+	 *            {@link Byte} array encoded against.
+	 * @param pBaseLength
+	 *            {@link Integer} of bytes valid in <code>pBase</code>
+	 * @param pDelta
+	 *            {@link Byte} array written by
+	 *            {@link #encode(byte[], int, byte[], int, byte[], int)}
+	 * @param pDeltaLength
+	 *            {@link Integer} of bytes valid in <code>pDelta</code>
+	 * @param pOut
+	 *            {@link Byte} array to decode in to.
+	 * @param pOffset
+	 *            {@link Integer} where in <code>pOut</code> to start.
+	 * @param pLength
+	 *            {@link Integer} of bytes the payload has.
+	 * @return <code>true</code> if the delta was well formed.
+	 */
+	public static boolean decode(final byte[] pBase, final int pBaseLength, final byte[] pDelta,
+			final int pDeltaLength, final byte[] pOut, final int pOffset, final int pLength) {
+		int position = 0;
+		int read = 0;
+		while (read < pDeltaLength) {
+			final int control = pDelta[read++] & 0xFF;
+			final int run = (control & (LITERAL - 1)) + 1;
+			if (position + run > pLength) {
+				return false;
+			}
+			if ((control & LITERAL) == 0) {
+				for (int i = 0; i < run; i++, position++) {
+					pOut[pOffset + position] = base(pBase, pBaseLength, position);
+				}
+			} else {
+				if (read + run > pDeltaLength) {
+					return false;
+				}
+				for (int i = 0; i < run; i++, position++) {
+					pOut[pOffset + position] = (byte) (pDelta[read++] ^ base(pBase, pBaseLength, position));
+				}
+			}
+		}
+		for (; position < pLength; position++) {
+			pOut[pOffset + position] = base(pBase, pBaseLength, position);
+		}
+		return true;
+	}
+
+	protected static byte base(final byte[] pBase, final int pBaseLength, final int pPosition) {
+		return (pPosition < pBaseLength) ? pBase[pPosition] : 0;
+	}
+
+	protected static byte xor(final byte[] pBase, final int pBaseLength, final byte[] pData, final int pDataOffset,
+			final int pPosition) {
+		return (byte) (pData[pDataOffset + pPosition] ^ base(pBase, pBaseLength, pPosition));
+	}
+
+	/**
+	 * A literal run stops at two unchanged bytes, a single one is cheaper
+	 * carried in the literal than split around.
+	 */
+	protected static boolean isUnchangedRun(final byte[] pBase, final int pBaseLength, final byte[] pData,
+			final int pDataOffset, final int pLength, final int pPosition) {
+		if (xor(pBase, pBaseLength, pData, pDataOffset, pPosition) != 0) {
+			return false;
+		}
+		return pPosition + 1 >= pLength || xor(pBase, pBaseLength, pData, pDataOffset, pPosition + 1) == 0;
+	}
+}
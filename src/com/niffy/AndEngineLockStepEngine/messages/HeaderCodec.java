@@ -0,0 +1,191 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact packet header, used instead of the {@link Message#HEADER_SIZE} byte
+ * header once both ends have a version of at least
+ * {@link #COMPACT_HEADER_VERSION}.
+ * <p>
+ * The first byte is <code>10AIIIxC</code>, the <code>10</code> marks the
+ * header as compact (a full header starts with the high byte of the version,
+ * which is never <code>10xxxxxx</code>), <code>A</code> is require ack,
+ * <code>III</code> the {@link com.niffy.AndEngineLockStepEngine.flags.IntendedFlag}
+ * and <code>C</code> that the body is compressed.
+ * The second byte is the {@link com.niffy.AndEngineLockStepEngine.flags.MessageFlag}.
+ * Then the low bits of the {@link SequenceNumber} as a 1 to 3 byte varint, 7
+ * bits per byte. Three bytes carry the whole sequence, fewer are expanded by
+ * the receiver to the sequence nearest the highest it has had from that peer,
+ * so the sender only truncates to a width that covers everything the peer has
+ * not yet acknowledged.
+ */
+public final class HeaderCodec {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	/**
+	 * First {@link com.niffy.AndEngineLockStepEngine.options.IBaseOptions#getVersionNumber()}
+	 * which reads compact headers.
+	 */
+	public static final int COMPACT_HEADER_VERSION = 2;
+	public static final int MAX_SEQUENCE_BYTES = 3;
+	protected static final int MARKER_MASK = 0xC0;
+	protected static final int MARKER = 0x80;
+	protected static final int REQUIRE_ACK = 0x20;
+	protected static final int COMPRESSED = 0x01;
+	protected static final int INTENDED_SHIFT = 2;
+	protected static final int INTENDED_MASK = 0x07;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	private HeaderCodec() {
+
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @param pFirstByte
+	 *            first byte of a packet.
+	 * @return <code>true</code> if the packet starts with a compact header.
+	 */
+	public static boolean isCompact(final byte pFirstByte) {
+		return (pFirstByte & MARKER_MASK) == MARKER;
+	}
+
+	/**
+	 * @return <code>true</code> if intended and flag fit in a compact header.
+	 */
+	public static boolean canEncode(final int pIntended, final int pFlag) {
+		return pIntended >= 0 && pIntended <= INTENDED_MASK && pFlag >= 0 && pFlag <= 0xFF;
+	}
+
+	public static int getCompactHeaderSize(final int pSequenceBytes) {
+		return 2 + pSequenceBytes;
+	}
+
+	/**
+	 * How many sequence bytes are needed so the receiver can expand the
+	 * sequence unambiguously.
+	 * 
+	 * @param pSequence
+	 *            {@link Integer} being sent.
+	 * @param pLargestAcked
+	 *            {@link Integer} highest sequence the peer has acknowledged,
+	 *            <code>-1</code> if none.
+	 * @return {@link Integer} from 1 to {@link #MAX_SEQUENCE_BYTES}
+	 */
+	public static int getSequenceBytes(final int pSequence, final int pLargestAcked) {
+		if (pLargestAcked < 0) {
+			return MAX_SEQUENCE_BYTES;
+		}
+		final int unacked = SequenceNumber.distance(pLargestAcked, pSequence) * 2;
+		for (int bytes = 1; bytes < MAX_SEQUENCE_BYTES; bytes++) {
+			if (unacked > 0 && unacked < (1 << (bytes * 7))) {
+				return bytes;
+			}
+		}
+		return MAX_SEQUENCE_BYTES;
+	}
+
+	public static void write(final ByteBuffer pBuffer, final boolean pRequireAck, final boolean pCompressed,
+			final int pIntended, final int pFlag, final int pSequence, final int pSequenceBytes) {
+		pBuffer.put((byte) (MARKER | (pRequireAck ? REQUIRE_ACK : 0) | (pIntended << INTENDED_SHIFT)
+				| (pCompressed ? COMPRESSED : 0)));
+		pBuffer.put((byte) pFlag);
+		final int sequence = pSequence & SequenceNumber.MASK;
+		for (int i = 0; i < pSequenceBytes; i++) {
+			final int bits = (sequence >>> (i * 7)) & 0x7F;
+			pBuffer.put((byte) ((i < pSequenceBytes - 1) ? (bits | 0x80) : bits));
+		}
+	}
+
+	public static boolean readRequireAck(final byte pFirstByte) {
+		return (pFirstByte & REQUIRE_ACK) != 0;
+	}
+
+	public static boolean readCompressed(final byte pFirstByte) {
+		return (pFirstByte & COMPRESSED) != 0;
+	}
+
+	public static int readIntended(final byte pFirstByte) {
+		return (pFirstByte >>> INTENDED_SHIFT) & INTENDED_MASK;
+	}
+
+	/**
+	 * Read the varint sequence and expand it.
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} positioned after the flag byte.
+	 * @param pLargestReceived
+	 *            {@link Integer} highest sequence had from the peer,
+	 *            <code>-1</code> if none.
+	 * @return {@link Integer} full sequence.
+	 */
+	public static int readSequence(final ByteBuffer pBuffer, final int pLargestReceived) {
+		int truncated = 0;
+		int bytes = 0;
+		int b;
+		do {
+			b = pBuffer.get();
+			truncated |= (b & 0x7F) << (bytes * 7);
+			bytes++;
+		} while ((b & 0x80) != 0 && bytes < MAX_SEQUENCE_BYTES);
+		if (bytes == MAX_SEQUENCE_BYTES) {
+			return truncated & SequenceNumber.MASK;
+		}
+		final int window = 1 << (bytes * 7);
+		final int expected = (pLargestReceived < 0) ? 0 : SequenceNumber.next(pLargestReceived);
+		/* Nearest to expected, either way, with the same low bits */
+		int offset = (truncated - expected) & (window - 1);
+		if (offset >= window / 2) {
+			offset -= window;
+		}
+		return SequenceNumber.add(expected, offset);
+	}
+
+	/**
+	 * @param pData
+	 *            {@link Byte} array of the packet.
+	 * @param pOffset
+	 *            {@link Integer} where the packet starts.
+	 * @return {@link Integer} {@link com.niffy.AndEngineLockStepEngine.flags.MessageFlag}
+	 *         of the packet.
+	 */
+	public static int getFlag(final byte[] pData, final int pOffset) {
+		if (isCompact(pData[pOffset])) {
+			return pData[pOffset + 1] & 0xFF;
+		}
+		return readInt(pData, pOffset + Message.HEADER_SIZE - 4);
+	}
+
+	/**
+	 * For whoever is handed the whole packet and needs to skip to the body.
+	 * 
+	 * @param pData
+	 *            {@link Byte} array of the packet.
+	 * @param pOffset
+	 *            {@link Integer} where the packet starts.
+	 * @return {@link Integer} size of the packets header.
+	 */
+	public static int getHeaderSize(final byte[] pData, final int pOffset) {
+		if (!isCompact(pData[pOffset])) {
+			return Message.HEADER_SIZE;
+		}
+		int size = 2;
+		while (size < 2 + MAX_SEQUENCE_BYTES - 1 && (pData[pOffset + size] & 0x80) != 0) {
+			size++;
+		}
+		return size + 1;
+	}
+
+	/**
+	 * Big endian int from a byte array, as {@link ByteBuffer#getInt()}.
+	 */
+	public static int readInt(final byte[] pData, final int pOffset) {
+		return ((pData[pOffset] & 0xFF) << 24) | ((pData[pOffset + 1] & 0xFF) << 16)
+				| ((pData[pOffset + 2] & 0xFF) << 8) | (pData[pOffset + 3] & 0xFF);
+	}
+}
@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import android.os.Parcelable;
 
@@ -89,6 +90,18 @@ public interface IMessage extends Parcelable {
 	 */
 	public boolean getRequireAck();
 
+	/**
+	 * Mark the body as compressed in the header, for the receiver to
+	 * decompress before reading it. Only the
+	 * {@link com.niffy.AndEngineLockStepEngine.packet.PacketHandler} sets
+	 * this, for the one send.
+	 * 
+	 * @param pCompressed
+	 */
+	public void setCompressed(final boolean pCompressed);
+
+	public boolean isCompressed();
+
 	/**
 	 * Before reading in a message, you should do read it in the follow way. *
 	 * <ol>
@@ -99,7 +112,9 @@ public interface IMessage extends Parcelable {
 	 * </ol>
 	 * <ol>
 	 * 3. {@link DataInputStream#readBoolean()} read in if the message requires
-	 * an ack.
+	 * an ack. With {@link #writeTo(ByteBuffer)} this byte carries
+	 * {@link Message#HEADER_REQUIRE_ACK} and {@link Message#HEADER_COMPRESSED}
+	 * bits.
 	 * </ol>
 	 * <ol>
 	 * 4. {@link DataInputStream#readInt()} to get the intended flag.
@@ -141,4 +156,47 @@ public interface IMessage extends Parcelable {
 	 */
 	public void write(final DataOutputStream pDataOutputStream) throws IOException;
 
+	/**
+	 * {@link ByteBuffer} equivalent of {@link #read(DataInputStream)}. The
+	 * header should already have been consumed from the buffer in the same
+	 * order as described in {@link #read(DataInputStream)}, this will then read
+	 * the message body from the buffers current position.
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} positioned at the start of the message
+	 *            body.
+	 * @throws IOException
+	 *             if any string data could not be decoded.
+	 */
+	public void readFrom(final ByteBuffer pBuffer) throws IOException;
+
+	/**
+	 * {@link ByteBuffer} equivalent of {@link #write(DataOutputStream)}. The
+	 * header and body are written in the same order, at the buffers current
+	 * position. The buffer must have at least {@link #getTransmissionSize()}
+	 * bytes remaining.
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} to write in to, this is not flipped.
+	 */
+	public void writeTo(final ByteBuffer pBuffer);
+
+	/**
+	 * How many bytes {@link #writeTo(ByteBuffer)} will write, including the
+	 * header.
+	 * 
+	 * @return {@link Integer} of size in bytes.
+	 */
+	public int getTransmissionSize();
+
+	/**
+	 * Header {@link #writeTo(ByteBuffer)} uses, set for each send.
+	 * 
+	 * @param pSequenceBytes
+	 *            {@link Integer} <code>0</code> for the full header, otherwise
+	 *            how many sequence bytes a {@link HeaderCodec} compact header
+	 *            uses.
+	 */
+	public void setHeaderSequenceBytes(final int pSequenceBytes);
+
 }
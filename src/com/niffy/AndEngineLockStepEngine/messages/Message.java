@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import android.os.Parcel;
 
@@ -21,6 +22,16 @@ public abstract class Message implements IMessage {
 	// ===========================================================
 	// Constants
 	// ===========================================================
+	/**
+	 * Size of the header in bytes. Version, sequence, require ack, intended
+	 * and flag.
+	 */
+	public static final int HEADER_SIZE = 4 + 4 + 1 + 4 + 4;
+	/**
+	 * Bits of the full header's require ack byte.
+	 */
+	public static final int HEADER_REQUIRE_ACK = 0x01;
+	public static final int HEADER_COMPRESSED = 0x02;
 
 	// ===========================================================
 	// Fields
@@ -29,7 +40,16 @@ public abstract class Message implements IMessage {
 	protected int mIntended = IntendedFlag.CLIENT;
 	protected int mFlag = -1;
 	protected boolean mRequireACK = true;
+	/**
+	 * The body is compressed, only set for the send.
+	 */
+	protected boolean mCompressed = false;
 	protected int mVersion = -1;
+	/**
+	 * <code>0</code> for the full header, otherwise how many sequence bytes
+	 * the {@link HeaderCodec} compact header uses.
+	 */
+	protected int mHeaderSequenceBytes = 0;
 
 	// ===========================================================
 	// Constructors
@@ -73,6 +93,17 @@ public abstract class Message implements IMessage {
 
 	protected abstract void onWriteTransmissionData(final DataOutputStream pDataOutputStream) throws IOException;
 
+	protected abstract void onReadTransmissionData(final ByteBuffer pBuffer) throws IOException;
+
+	protected abstract void onWriteTransmissionData(final ByteBuffer pBuffer);
+
+	/**
+	 * @return {@link Integer} size in bytes of the message body written by
+	 *         {@link #onWriteTransmissionData(ByteBuffer)}, excluding the
+	 *         header.
+	 */
+	protected abstract int onGetTransmissionSize();
+
 	/**
 	 * For debugging purposes, append all data of this {@link Message} to the
 	 * {@link StringBuilder}.
@@ -149,6 +180,37 @@ public abstract class Message implements IMessage {
 		this.onReadTransmissionData(pDataInputStream);
 	}
 
+	@Override
+	public void writeTo(final ByteBuffer pBuffer) {
+		if (this.isCompactHeader()) {
+			HeaderCodec.write(pBuffer, this.mRequireACK, this.mCompressed, this.mIntended, this.mFlag,
+					this.mSequenceNumber, this.mHeaderSequenceBytes);
+			this.onWriteTransmissionData(pBuffer);
+			return;
+		}
+		pBuffer.putInt(this.mVersion);
+		pBuffer.putInt(this.mSequenceNumber);
+		pBuffer.put((byte) ((this.mRequireACK ? HEADER_REQUIRE_ACK : 0) | (this.mCompressed ? HEADER_COMPRESSED : 0)));
+		pBuffer.putInt(this.mIntended);
+		pBuffer.putInt(this.mFlag);
+		this.onWriteTransmissionData(pBuffer);
+	}
+
+	@Override
+	public void readFrom(final ByteBuffer pBuffer) throws IOException {
+		this.onReadTransmissionData(pBuffer);
+	}
+
+	@Override
+	public int getTransmissionSize() {
+		return this.getHeaderSize() + this.onGetTransmissionSize();
+	}
+
+	@Override
+	public void setHeaderSequenceBytes(int pSequenceBytes) {
+		this.mHeaderSequenceBytes = pSequenceBytes;
+	}
+
 	@Override
 	public void setSequence(int pSequence) {
 		this.mSequenceNumber = pSequence;
@@ -179,6 +241,16 @@ public abstract class Message implements IMessage {
 		return this.mRequireACK;
 	}
 
+	@Override
+	public void setCompressed(boolean pCompressed) {
+		this.mCompressed = pCompressed;
+	}
+
+	@Override
+	public boolean isCompressed() {
+		return this.mCompressed;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		dest.writeInt(this.mVersion);
@@ -197,6 +269,48 @@ public abstract class Message implements IMessage {
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	protected boolean isCompactHeader() {
+		return this.mHeaderSequenceBytes > 0 && HeaderCodec.canEncode(this.mIntended, this.mFlag);
+	}
+
+	protected int getHeaderSize() {
+		return this.isCompactHeader() ? HeaderCodec.getCompactHeaderSize(this.mHeaderSequenceBytes) : HEADER_SIZE;
+	}
+
+	/**
+	 * Write a length prefixed byte array, as is done for strings.
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} to write to.
+	 * @param pSize
+	 *            {@link Integer} of how many bytes.
+	 * @param pData
+	 *            {@link Byte} array of data.
+	 */
+	protected static void putSizedBytes(final ByteBuffer pBuffer, final int pSize, final byte[] pData) {
+		pBuffer.putInt(pSize);
+		pBuffer.put(pData, 0, pSize);
+	}
+
+	/**
+	 * Read a length prefixed byte array written by
+	 * {@link #putSizedBytes(ByteBuffer, int, byte[])}
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} to read from.
+	 * @return {@link Byte} array of data read.
+	 * @throws IOException
+	 *             when the size is negative or runs past the packet.
+	 */
+	protected static byte[] getSizedBytes(final ByteBuffer pBuffer) throws IOException {
+		final int size = pBuffer.getInt();
+		if (size < 0 || size > pBuffer.remaining()) {
+			throw new IOException("Sized bytes of: " + size + " do not fit in the packet");
+		}
+		final byte[] data = new byte[size];
+		pBuffer.get(data, 0, size);
+		return data;
+	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessageAck extends Message {
 	// ===========================================================
 	// Constants
@@ -61,6 +64,21 @@ public class MessageAck extends Message {
 		pDataOutputStream.writeInt(this.mAckFor);
 	}
 
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mAckFor = pBuffer.getInt();
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putInt(this.mAckFor);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
@@ -98,4 +116,12 @@ public class MessageAck extends Message {
 			return new MessageAck[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageAck> FACTORY = new IMessageFactory<MessageAck>() {
+
+		@Override
+		public MessageAck create() {
+			return new MessageAck();
+		}
+	};
 }
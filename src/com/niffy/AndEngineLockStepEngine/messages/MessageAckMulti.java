@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessageAckMulti extends Message {
 	// ===========================================================
 	// Constants
@@ -20,7 +23,11 @@ public class MessageAckMulti extends Message {
 	// ===========================================================
 	// Fields
 	// ===========================================================
-	protected int[] mAckFor;
+	/**
+	 * Owned by the message, only the first {@link #mAckCount} are valid.
+	 */
+	protected int[] mAckFor = new int[0];
+	protected int mAckCount = 0;
 
 	// ===========================================================
 	// Constructors
@@ -44,7 +51,7 @@ public class MessageAckMulti extends Message {
 
 	public MessageAckMulti(Parcel in) {
 		super(in);
-		in.readIntArray(this.mAckFor);
+		this.addSequences(in.createIntArray());
 	}
 
 	// ===========================================================
@@ -54,40 +61,115 @@ public class MessageAckMulti extends Message {
 	@Override
 	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
 		int size = pDataInputStream.readInt();
-		this.mAckFor = new int[size];
-		for (int i = 0; i <= size; i++) {
+		this.ensureCapacity(size);
+		for (int i = 0; i < size; i++) {
 			this.mAckFor[i] = pDataInputStream.readInt();
 		}
+		this.mAckCount = size;
 	}
 
 	@Override
 	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
-		pDataOutputStream.writeInt(this.mAckFor.length);
-		for (int item : this.mAckFor) {
-			pDataOutputStream.writeInt(item);
+		pDataOutputStream.writeInt(this.mAckCount);
+		for (int i = 0; i < this.mAckCount; i++) {
+			pDataOutputStream.writeInt(this.mAckFor[i]);
+		}
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		final int size = pBuffer.getInt();
+		if (size < 0 || size > pBuffer.remaining() / 4) {
+			throw new IOException("Ack count: " + size + " does not fit in the packet");
+		}
+		this.ensureCapacity(size);
+		for (int i = 0; i < size; i++) {
+			this.mAckFor[i] = pBuffer.getInt();
 		}
+		this.mAckCount = size;
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putInt(this.mAckCount);
+		for (int i = 0; i < this.mAckCount; i++) {
+			pBuffer.putInt(this.mAckFor[i]);
+		}
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + (this.mAckCount * 4);
 	}
 
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
-		dest.writeIntArray(this.mAckFor);
+		dest.writeIntArray(this.getSequences());
 	}
 
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
 	public void addSequences(final int[] pSequences){
-		this.mAckFor = pSequences;
+		this.addSequences(pSequences, pSequences.length);
+	}
+
+	/**
+	 * Copies the sequences, so the buffer can be reused straight away.
+	 * 
+	 * @param pSequences
+	 *            {@link Integer} array of sequences.
+	 * @param pCount
+	 *            {@link Integer} of sequences to take from the start of
+	 *            <code>pSequences</code>
+	 */
+	public void addSequences(final int[] pSequences, final int pCount) {
+		this.addSequences(pSequences, 0, pCount);
+	}
+
+	/**
+	 * @see #addSequences(int[], int)
+	 * @param pOffset
+	 *            {@link Integer} index of the first sequence to take.
+	 */
+	public void addSequences(final int[] pSequences, final int pOffset, final int pCount) {
+		this.ensureCapacity(pCount);
+		System.arraycopy(pSequences, pOffset, this.mAckFor, 0, pCount);
+		this.mAckCount = pCount;
 	}
 	
 	public int[] getSequences(){
-		return this.mAckFor;
+		if (this.mAckFor.length == this.mAckCount) {
+			return this.mAckFor;
+		}
+		final int[] sequences = new int[this.mAckCount];
+		System.arraycopy(this.mAckFor, 0, sequences, 0, this.mAckCount);
+		return sequences;
+	}
+
+	public int getSequenceCount() {
+		return this.mAckCount;
+	}
+
+	/**
+	 * @param pIndex
+	 *            {@link Integer} from <code>0</code> to
+	 *            {@link #getSequenceCount()}
+	 * @return {@link Integer} sequence acknowledged at that index.
+	 */
+	public int getSequence(final int pIndex) {
+		return this.mAckFor[pIndex];
 	}
 
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	protected void ensureCapacity(final int pCount) {
+		if (this.mAckFor.length < pCount) {
+			this.mAckFor = new int[pCount];
+		}
+	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
@@ -104,4 +186,12 @@ public class MessageAckMulti extends Message {
 			return new MessageAckMulti[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageAckMulti> FACTORY = new IMessageFactory<MessageAckMulti>() {
+
+		@Override
+		public MessageAckMulti create() {
+			return new MessageAckMulti();
+		}
+	};
 }
@@ -0,0 +1,240 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
+/**
+ * Selective ack, a base sequence followed by a bitmap where bit <code>n</code>
+ * acknowledges <code>base + n</code>, wrapping as a {@link SequenceNumber}. A run of consecutive sequences costs one
+ * bit each instead of the four bytes {@link MessageAckMulti} uses.
+ * <p>
+ * Wire format: base {@link Integer}, span as an unsigned short, then
+ * <code>(span + 7) / 8</code> bytes of bitmap, lowest bit first.
+ */
+public class MessageAckRange extends Message {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	@SuppressWarnings("unused")
+	private final Logger log = LoggerFactory.getLogger(MessageAckRange.class);
+	/**
+	 * Most sequences one message can cover, from the base.
+	 */
+	public static final int MaxSpan = 2048;
+	/**
+	 * First version which reads this message, older peers are sent
+	 * {@link MessageAckMulti}
+	 */
+	public static final int ACK_RANGE_VERSION = 2;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected int mBase = 0;
+	protected int mSpan = 0;
+	/**
+	 * Owned by the message, only the first <code>(mSpan + 7) / 8</code> bytes
+	 * are valid.
+	 */
+	protected byte[] mBitmap = new byte[0];
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MessageAckRange() {
+		super();
+	}
+
+	public MessageAckRange(final int pIntended) {
+		super(pIntended);
+	}
+
+	public MessageAckRange(final int pIntended, final int pFlag, final int pSequenceNumber) {
+		super(pIntended, pFlag, pSequenceNumber);
+	}
+
+	public MessageAckRange(final int pFlag, final int pSequenceNumber) {
+		super(pFlag, pSequenceNumber);
+	}
+
+	public MessageAckRange(Parcel in) {
+		super(in);
+		this.mBase = in.readInt();
+		this.mSpan = in.readInt();
+		this.mBitmap = in.createByteArray();
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
+		final int base = pDataInputStream.readInt();
+		final int span = pDataInputStream.readUnsignedShort();
+		this.checkSpan(span);
+		this.reset(base, span);
+		pDataInputStream.readFully(this.mBitmap, 0, getBitmapSize(span));
+	}
+
+	@Override
+	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
+		pDataOutputStream.writeInt(this.mBase);
+		pDataOutputStream.writeShort(this.mSpan);
+		pDataOutputStream.write(this.mBitmap, 0, getBitmapSize(this.mSpan));
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		final int base = pBuffer.getInt();
+		final int span = pBuffer.getShort() & 0xFFFF;
+		this.checkSpan(span);
+		if (getBitmapSize(span) > pBuffer.remaining()) {
+			throw new IOException("Ack span: " + span + " does not fit in the packet");
+		}
+		this.reset(base, span);
+		pBuffer.get(this.mBitmap, 0, getBitmapSize(span));
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putInt(this.mBase);
+		pBuffer.putShort((short) this.mSpan);
+		pBuffer.put(this.mBitmap, 0, getBitmapSize(this.mSpan));
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return getTransmissionSize(this.mSpan);
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		super.writeToParcel(dest, flags);
+		dest.writeInt(this.mBase);
+		dest.writeInt(this.mSpan);
+		final byte[] bitmap = new byte[getBitmapSize(this.mSpan)];
+		System.arraycopy(this.mBitmap, 0, bitmap, 0, bitmap.length);
+		dest.writeByteArray(bitmap);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getBase() {
+		return this.mBase;
+	}
+
+	public int getSpan() {
+		return this.mSpan;
+	}
+
+	/**
+	 * @param pOffset
+	 *            {@link Integer} from the base, less than {@link #getSpan()}
+	 * @return <code>true</code> if <code>base + pOffset</code> is acknowledged.
+	 */
+	public boolean isAcked(final int pOffset) {
+		return (this.mBitmap[pOffset >>> 3] & (1 << (pOffset & 7))) != 0;
+	}
+
+	/**
+	 * Raw bitmap, only {@link #getSpan()} bits are valid.
+	 * 
+	 * @return {@link Byte} array owned by the message.
+	 */
+	public byte[] getBitmap() {
+		return this.mBitmap;
+	}
+
+	/**
+	 * Set the acknowledged sequences from a sorted run, ignoring duplicates.
+	 * 
+	 * @param pSorted
+	 *            {@link Integer} array sorted by
+	 *            {@link SequenceNumber#sort(int[], int, int)}
+	 * @param pStart
+	 *            {@link Integer} first index to take.
+	 * @param pEnd
+	 *            {@link Integer} index after the last to take, the last
+	 *            sequence must be less than {@link #MaxSpan} past the first.
+	 */
+	public void setSequences(final int[] pSorted, final int pStart, final int pEnd) {
+		final int base = pSorted[pStart];
+		this.reset(base, SequenceNumber.distance(base, pSorted[pEnd - 1]) + 1);
+		for (int i = pStart; i < pEnd; i++) {
+			final int offset = SequenceNumber.distance(base, pSorted[i]);
+			this.mBitmap[offset >>> 3] |= 1 << (offset & 7);
+		}
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static int getBitmapSize(final int pSpan) {
+		return (pSpan + 7) >>> 3;
+	}
+
+	/**
+	 * @param pSpan
+	 *            {@link Integer} of sequences covered.
+	 * @return {@link Integer} body size for a message covering that span.
+	 */
+	public static int getTransmissionSize(final int pSpan) {
+		return 4 + 2 + getBitmapSize(pSpan);
+	}
+
+	protected void reset(final int pBase, final int pSpan) {
+		final int size = getBitmapSize(pSpan);
+		if (this.mBitmap.length < size) {
+			this.mBitmap = new byte[size];
+		} else {
+			for (int i = 0; i < size; i++) {
+				this.mBitmap[i] = 0;
+			}
+		}
+		this.mBase = pBase;
+		this.mSpan = pSpan;
+	}
+
+	protected void checkSpan(final int pSpan) throws IOException {
+		if (pSpan > MaxSpan) {
+			throw new IOException("Ack span: " + pSpan + " is larger than: " + MaxSpan);
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	public static final Parcelable.Creator<MessageAckRange> CREATOR = new Parcelable.Creator<MessageAckRange>() {
+
+		@Override
+		public MessageAckRange createFromParcel(Parcel source) {
+			return new MessageAckRange(source);
+		}
+
+		@Override
+		public MessageAckRange[] newArray(int size) {
+			return new MessageAckRange[size];
+		}
+	};
+
+	public static final IMessageFactory<MessageAckRange> FACTORY = new IMessageFactory<MessageAckRange>() {
+
+		@Override
+		public MessageAckRange create() {
+			return new MessageAckRange();
+		}
+	};
+}
@@ -0,0 +1,245 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
+/**
+ * Container for several whole packets to the same peer, so they share one
+ * datagram. Each packet is written as an unsigned short length followed by
+ * the packet, header and all, so the receiver handles each exactly as if it
+ * arrived on its own.
+ * <p>
+ * Messages are serialised as they are added, so they can be recycled
+ * straight away. When only one packet has been added the bundle writes that
+ * packet alone, without its own header.
+ */
+public class MessageBundle extends Message {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	@SuppressWarnings("unused")
+	private final Logger log = LoggerFactory.getLogger(MessageBundle.class);
+	/**
+	 * Bytes in front of each bundled packet.
+	 */
+	public static final int ENTRY_HEADER_SIZE = 2;
+	/**
+	 * First version which unpacks bundles, older peers are sent each packet
+	 * on its own.
+	 */
+	public static final int BUNDLE_VERSION = 2;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected byte[] mBody;
+	protected ByteBuffer mBodyBuffer;
+	protected int mCount = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MessageBundle() {
+		this(0);
+	}
+
+	/**
+	 * @param pMaxSize
+	 *            {@link Integer} largest datagram the bundle may grow to,
+	 *            including its own header.
+	 */
+	public MessageBundle(final int pMaxSize) {
+		super(IntendedFlag.NETWORK, MessageFlag.BUNDLE, -1);
+		this.mRequireACK = false;
+		this.mBody = new byte[Math.max(0, pMaxSize - HEADER_SIZE)];
+		this.mBodyBuffer = ByteBuffer.wrap(this.mBody);
+	}
+
+	public MessageBundle(Parcel in) {
+		super(in);
+		this.mBody = in.createByteArray();
+		this.mBodyBuffer = ByteBuffer.wrap(this.mBody);
+		this.mBodyBuffer.position(this.mBody.length);
+		this.mCount = in.readInt();
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void writeTo(ByteBuffer pBuffer) {
+		if (this.mCount == 1) {
+			pBuffer.put(this.mBody, ENTRY_HEADER_SIZE, this.mBodyBuffer.position() - ENTRY_HEADER_SIZE);
+		} else {
+			super.writeTo(pBuffer);
+		}
+	}
+
+	@Override
+	public int getTransmissionSize() {
+		if (this.mCount == 1) {
+			return this.mBodyBuffer.position() - ENTRY_HEADER_SIZE;
+		}
+		return super.getTransmissionSize();
+	}
+
+	/**
+	 * Bundles are unpacked by the packet handler straight from the datagram,
+	 * they are never read back as a message.
+	 */
+	@Override
+	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
+		throw new IOException("Bundles are not read from streams");
+	}
+
+	@Override
+	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
+		pDataOutputStream.write(this.mBody, 0, this.mBodyBuffer.position());
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		throw new IOException("Bundles are unpacked by the packet handler");
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.put(this.mBody, 0, this.mBodyBuffer.position());
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return this.mBodyBuffer.position();
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		super.writeToParcel(dest, flags);
+		final byte[] body = new byte[this.mBodyBuffer.position()];
+		System.arraycopy(this.mBody, 0, body, 0, body.length);
+		dest.writeByteArray(body);
+		dest.writeInt(this.mCount);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getCount() {
+		return this.mCount;
+	}
+
+	public boolean isEmpty() {
+		return this.mCount == 0;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @param pMessage
+	 *            {@link IMessage} to check.
+	 * @return <code>true</code> if the message fits in what is left.
+	 */
+	public boolean fits(final IMessage pMessage) {
+		return this.fits(pMessage.getTransmissionSize());
+	}
+
+	/**
+	 * @param pLength
+	 *            {@link Integer} of a serialised packet.
+	 * @return <code>true</code> if it fits in what is left.
+	 */
+	public boolean fits(final int pLength) {
+		return ENTRY_HEADER_SIZE + pLength <= this.mBodyBuffer.remaining();
+	}
+
+	/**
+	 * @param pMessage
+	 *            {@link IMessage} to check.
+	 * @return <code>true</code> if the message would fit in an empty bundle.
+	 */
+	public boolean canHold(final IMessage pMessage) {
+		return this.canHold(pMessage.getTransmissionSize());
+	}
+
+	/**
+	 * @param pLength
+	 *            {@link Integer} of a serialised packet.
+	 * @return <code>true</code> if it would fit in an empty bundle.
+	 */
+	public boolean canHold(final int pLength) {
+		return ENTRY_HEADER_SIZE + pLength <= this.mBody.length;
+	}
+
+	/**
+	 * Serialise a message in to the bundle, check {@link #fits(IMessage)}
+	 * first.
+	 * 
+	 * @param pMessage
+	 *            {@link IMessage} to add, can be recycled once this returns.
+	 */
+	public void add(final IMessage pMessage) {
+		this.mBodyBuffer.putShort((short) pMessage.getTransmissionSize());
+		pMessage.writeTo(this.mBodyBuffer);
+		this.mCount++;
+	}
+
+	/**
+	 * Add a packet already serialised, check {@link #fits(int)} first.
+	 * 
+	 * @param pPacket
+	 *            {@link Byte} array of the packet, header and all.
+	 * @param pOffset
+	 *            {@link Integer} start of the packet.
+	 * @param pLength
+	 *            {@link Integer} length of the packet.
+	 */
+	public void add(final byte[] pPacket, final int pOffset, final int pLength) {
+		this.mBodyBuffer.putShort((short) pLength);
+		this.mBodyBuffer.put(pPacket, pOffset, pLength);
+		this.mCount++;
+	}
+
+	public void clear() {
+		this.mBodyBuffer.clear();
+		this.mCount = 0;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	public static final Parcelable.Creator<MessageBundle> CREATOR = new Parcelable.Creator<MessageBundle>() {
+
+		@Override
+		public MessageBundle createFromParcel(Parcel source) {
+			return new MessageBundle(source);
+		}
+
+		@Override
+		public MessageBundle[] newArray(int size) {
+			return new MessageBundle[size];
+		}
+	};
+
+	public static final IMessageFactory<MessageBundle> FACTORY = new IMessageFactory<MessageBundle>() {
+
+		@Override
+		public MessageBundle create() {
+			return new MessageBundle();
+		}
+	};
+}
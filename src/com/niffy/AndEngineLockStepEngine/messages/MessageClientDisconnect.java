@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.io.UnsupportedEncodingException;
 
 import org.slf4j.Logger;
@@ -11,6 +12,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessageClientDisconnect extends Message {
 	// ===========================================================
 	// Constants
@@ -83,6 +86,27 @@ public class MessageClientDisconnect extends Message {
 		pDataOutputStream.write(this.mMessageStringData);
 	}
 
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mInetAddressData = getSizedBytes(pBuffer);
+		this.mInetAddressSize = this.mInetAddressData.length;
+		this.mInetAddressString = new String(this.mInetAddressData, "utf-8");
+		this.mMessageStringData = getSizedBytes(pBuffer);
+		this.mMessageStringSize = this.mMessageStringData.length;
+		this.mMessageString = new String(this.mMessageStringData, "utf-8");
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		putSizedBytes(pBuffer, this.mInetAddressSize, this.mInetAddressData);
+		putSizedBytes(pBuffer, this.mMessageStringSize, this.mMessageStringData);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + this.mInetAddressSize + 4 + this.mMessageStringSize;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
@@ -144,4 +168,12 @@ public class MessageClientDisconnect extends Message {
 			return new MessageClientDisconnect[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageClientDisconnect> FACTORY = new IMessageFactory<MessageClientDisconnect>() {
+
+		@Override
+		public MessageClientDisconnect create() {
+			return new MessageClientDisconnect();
+		}
+	};
 }
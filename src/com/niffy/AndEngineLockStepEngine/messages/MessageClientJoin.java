@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.io.UnsupportedEncodingException;
 
 import org.slf4j.Logger;
@@ -11,6 +12,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessageClientJoin extends Message {
 	// ===========================================================
 	// Constants
@@ -83,6 +86,27 @@ public class MessageClientJoin extends Message {
 		pDataOutputStream.write(this.mClientNameData);
 	}
 
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mInetAddressData = getSizedBytes(pBuffer);
+		this.mInetAddressSize = this.mInetAddressData.length;
+		this.mInetAddressString = new String(this.mInetAddressData, "utf-8");
+		this.mClientNameData = getSizedBytes(pBuffer);
+		this.mClientNameSize = this.mClientNameData.length;
+		this.mClientNameString = new String(this.mClientNameData, "utf-8");
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		putSizedBytes(pBuffer, this.mInetAddressSize, this.mInetAddressData);
+		putSizedBytes(pBuffer, this.mClientNameSize, this.mClientNameData);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + this.mInetAddressSize + 4 + this.mClientNameSize;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
@@ -144,4 +168,12 @@ public class MessageClientJoin extends Message {
 			return new MessageClientJoin[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageClientJoin> FACTORY = new IMessageFactory<MessageClientJoin>() {
+
+		@Override
+		public MessageClientJoin create() {
+			return new MessageClientJoin();
+		}
+	};
 }
@@ -0,0 +1,209 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
+/**
+ * One peers commands for a game step. The data is opaque to the engine, an
+ * empty command still tells everyone the peer has nothing for that step.
+ * <p>
+ * The body is the step, the data length then the data, so it can be read
+ * straight out of a packet with {@link #readStep(byte[], int)} and
+ * {@link #readLength(byte[], int)} without obtaining a message.
+ */
+public class MessageCommand extends Message {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	@SuppressWarnings("unused")
+	private final Logger log = LoggerFactory.getLogger(MessageCommand.class);
+	/**
+	 * Offset of the command data from the start of the body.
+	 */
+	public static final int DATA_OFFSET = 4 + 4;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected int mStep = 0;
+	/**
+	 * Owned by the message, only the first {@link #mLength} are valid.
+	 */
+	protected byte[] mData = new byte[0];
+	protected int mLength = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MessageCommand() {
+		super();
+	}
+
+	public MessageCommand(final int pIntended) {
+		super(pIntended);
+	}
+
+	public MessageCommand(final int pIntended, final int pFlag, final int pSequenceNumber) {
+		super(pIntended, pFlag, pSequenceNumber);
+	}
+
+	public MessageCommand(final int pFlag, final int pSequenceNumber) {
+		super(pFlag, pSequenceNumber);
+	}
+
+	public MessageCommand(Parcel in) {
+		super(in);
+		this.mStep = in.readInt();
+		this.mData = in.createByteArray();
+		this.mLength = this.mData.length;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
+		this.mStep = pDataInputStream.readInt();
+		final int length = pDataInputStream.readInt();
+		this.ensureCapacity(length);
+		pDataInputStream.readFully(this.mData, 0, length);
+		this.mLength = length;
+	}
+
+	@Override
+	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
+		pDataOutputStream.writeInt(this.mStep);
+		pDataOutputStream.writeInt(this.mLength);
+		pDataOutputStream.write(this.mData, 0, this.mLength);
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mStep = pBuffer.getInt();
+		final int length = pBuffer.getInt();
+		if (length < 0 || length > pBuffer.remaining()) {
+			throw new IOException("Command length: " + length + " does not fit in the packet");
+		}
+		this.ensureCapacity(length);
+		pBuffer.get(this.mData, 0, length);
+		this.mLength = length;
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putInt(this.mStep);
+		pBuffer.putInt(this.mLength);
+		pBuffer.put(this.mData, 0, this.mLength);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return DATA_OFFSET + this.mLength;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		super.writeToParcel(dest, flags);
+		dest.writeInt(this.mStep);
+		final byte[] data = new byte[this.mLength];
+		System.arraycopy(this.mData, 0, data, 0, this.mLength);
+		dest.writeByteArray(data);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getStep() {
+		return this.mStep;
+	}
+
+	public void setStep(final int pStep) {
+		this.mStep = pStep;
+	}
+
+	/**
+	 * @return {@link Byte} array owned by the message, only
+	 *         {@link #getLength()} bytes are valid.
+	 */
+	public byte[] getData() {
+		return this.mData;
+	}
+
+	public int getLength() {
+		return this.mLength;
+	}
+
+	/**
+	 * Copies the data, so the array can be reused straight away.
+	 */
+	public void setData(final byte[] pData, final int pOffset, final int pLength) {
+		this.ensureCapacity(pLength);
+		System.arraycopy(pData, pOffset, this.mData, 0, pLength);
+		this.mLength = pLength;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	protected void ensureCapacity(final int pLength) {
+		if (this.mData.length < pLength) {
+			this.mData = new byte[pLength];
+		}
+	}
+
+	/**
+	 * @param pData
+	 *            {@link Byte} array holding a command packet.
+	 * @param pBodyOffset
+	 *            {@link Integer} where the body starts, after the header.
+	 * @return {@link Integer} step the command is for.
+	 */
+	public static int readStep(final byte[] pData, final int pBodyOffset) {
+		return HeaderCodec.readInt(pData, pBodyOffset);
+	}
+
+	/**
+	 * @see #readStep(byte[], int)
+	 * @return {@link Integer} length of the command data, which starts at
+	 *         <code>pBodyOffset + </code>{@link #DATA_OFFSET}
+	 */
+	public static int readLength(final byte[] pData, final int pBodyOffset) {
+		return HeaderCodec.readInt(pData, pBodyOffset + 4);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	public static final Parcelable.Creator<MessageCommand> CREATOR = new Parcelable.Creator<MessageCommand>() {
+
+		@Override
+		public MessageCommand createFromParcel(Parcel source) {
+			return new MessageCommand(source);
+		}
+
+		@Override
+		public MessageCommand[] newArray(int size) {
+			return new MessageCommand[size];
+		}
+	};
+
+	public static final IMessageFactory<MessageCommand> FACTORY = new IMessageFactory<MessageCommand>() {
+
+		@Override
+		public MessageCommand create() {
+			return new MessageCommand();
+		}
+	};
+}
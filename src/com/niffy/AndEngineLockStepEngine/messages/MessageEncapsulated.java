@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessageEncapsulated extends Message {
 	// ===========================================================
 	// Constants
@@ -22,6 +25,16 @@ public class MessageEncapsulated extends Message {
 	// ===========================================================
 	protected byte[] mData;
 	protected int mDataSize = -1;
+	/**
+	 * Where the data starts in {@link #mData}, only set when sending.
+	 */
+	protected int mDataOffset = 0;
+	/**
+	 * If {@link #mData} was allocated by a read, so the next read may reuse
+	 * it. Arrays given to {@link #setData(byte[], int, int)} are the
+	 * caller's and are never written to.
+	 */
+	protected boolean mOwnsData = false;
 
 	// ===========================================================
 	// Constructors
@@ -56,35 +69,100 @@ public class MessageEncapsulated extends Message {
 	@Override
 	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
 		this.mDataSize = pDataInputStream.readInt();
+		this.mDataOffset = 0;
 		this.mData = new byte[this.mDataSize];
+		this.mOwnsData = true;
 		pDataInputStream.read(this.mData, 0, this.mDataSize);
 	}
 
 	@Override
 	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
 		pDataOutputStream.writeInt(this.mDataSize);
-		pDataOutputStream.write(this.mData);
+		pDataOutputStream.write(this.mData, this.mDataOffset, this.mDataSize);
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mDataSize = pBuffer.getInt();
+		this.mDataOffset = 0;
+		if (this.mDataSize < 0 || this.mDataSize > pBuffer.remaining()) {
+			throw new IOException("Data of: " + this.mDataSize + " does not fit in the packet");
+		}
+		if (!this.mOwnsData || this.mData.length != this.mDataSize) {
+			this.mData = new byte[this.mDataSize];
+			this.mOwnsData = true;
+		}
+		pBuffer.get(this.mData, 0, this.mDataSize);
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putInt(this.mDataSize);
+		pBuffer.put(this.mData, this.mDataOffset, this.mDataSize);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + this.mDataSize;
 	}
 
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
 		dest.writeInt(this.mDataSize);
-		dest.writeByteArray(this.mData);
+		dest.writeByteArray(this.mData, this.mDataOffset, this.mDataSize);
 	}
 
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
 	public void setData(final byte[] pData) {
+		this.setData(pData, 0, pData.length);
+	}
+
+	/**
+	 * @param pData
+	 *            {@link Byte} array, of which only the first
+	 *            <code>pSize</code> bytes are sent.
+	 * @param pSize
+	 *            {@link Integer} of bytes.
+	 */
+	public void setData(final byte[] pData, final int pSize) {
+		this.setData(pData, 0, pSize);
+	}
+
+	/**
+	 * @param pData
+	 *            {@link Byte} array holding the data, such as a pooled slab.
+	 *            It is not copied, so must not change until sent.
+	 * @param pOffset
+	 *            {@link Integer} where the data starts in <code>pData</code>
+	 * @param pSize
+	 *            {@link Integer} of bytes.
+	 */
+	public void setData(final byte[] pData, final int pOffset, final int pSize) {
 		this.mData = pData;
-		this.mDataSize = this.mData.length;
+		this.mDataOffset = pOffset;
+		this.mDataSize = pSize;
+		this.mOwnsData = false;
 	}
 
+	/**
+	 * @return {@link Byte} array holding the data, from
+	 *         {@link #getDataOffset()}
+	 */
 	public byte[] getData() {
 		return this.mData;
 	}
 
+	public int getDataOffset() {
+		return this.mDataOffset;
+	}
+
+	public int getDataSize() {
+		return this.mDataSize;
+	}
+
 	// ===========================================================
 	// Methods
 	// ===========================================================
@@ -103,4 +181,12 @@ public class MessageEncapsulated extends Message {
 			return new MessageEncapsulated[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageEncapsulated> FACTORY = new IMessageFactory<MessageEncapsulated>() {
+
+		@Override
+		public MessageEncapsulated create() {
+			return new MessageEncapsulated();
+		}
+	};
 }
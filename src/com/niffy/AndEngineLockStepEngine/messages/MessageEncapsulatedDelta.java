@@ -0,0 +1,286 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
+/**
+ * A {@link MessageEncapsulated} payload sent as the difference from one the
+ * peer already has, the baseline, named by its sequence. Either
+ * {@link #SAME} as the baseline, or {@link #XOR} with a {@link DeltaCodec}
+ * delta.
+ * <p>
+ * Wire format: baseline sequence as an unsigned short, mode byte, payload
+ * size as an unsigned short, then for {@link #XOR} the delta size as an
+ * unsigned short and the delta.
+ */
+public class MessageEncapsulatedDelta extends Message {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	@SuppressWarnings("unused")
+	private final Logger log = LoggerFactory.getLogger(MessageEncapsulatedDelta.class);
+	public static final int SAME = 0;
+	public static final int XOR = 1;
+	/**
+	 * Largest payload which can be sent as a delta.
+	 */
+	public static final int MaxSize = 0xFFFF;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected int mBaseline = 0;
+	protected int mMode = SAME;
+	protected int mSize = 0;
+	/**
+	 * Owned by the message and reused, only the first {@link #mDeltaSize}
+	 * bytes are valid.
+	 */
+	protected byte[] mDelta = new byte[0];
+	protected int mDeltaSize = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public MessageEncapsulatedDelta() {
+		super();
+	}
+
+	public MessageEncapsulatedDelta(final int pIntended) {
+		super(pIntended);
+	}
+
+	public MessageEncapsulatedDelta(final int pIntended, final int pFlag, final int pSequenceNumber) {
+		super(pIntended, pFlag, pSequenceNumber);
+	}
+
+	public MessageEncapsulatedDelta(final int pFlag, final int pSequenceNumber) {
+		super(pFlag, pSequenceNumber);
+	}
+
+	public MessageEncapsulatedDelta(Parcel in) {
+		super(in);
+		this.mBaseline = in.readInt();
+		this.mMode = in.readInt();
+		this.mSize = in.readInt();
+		this.mDelta = in.createByteArray();
+		this.mDeltaSize = this.mDelta.length;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
+		this.mBaseline = pDataInputStream.readUnsignedShort();
+		this.mMode = pDataInputStream.readUnsignedByte();
+		this.mSize = pDataInputStream.readUnsignedShort();
+		this.mDeltaSize = (this.mMode == XOR) ? pDataInputStream.readUnsignedShort() : 0;
+		this.ensureCapacity(this.mDeltaSize);
+		pDataInputStream.readFully(this.mDelta, 0, this.mDeltaSize);
+	}
+
+	@Override
+	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
+		pDataOutputStream.writeShort(this.mBaseline);
+		pDataOutputStream.writeByte(this.mMode);
+		pDataOutputStream.writeShort(this.mSize);
+		if (this.mMode == XOR) {
+			pDataOutputStream.writeShort(this.mDeltaSize);
+			pDataOutputStream.write(this.mDelta, 0, this.mDeltaSize);
+		}
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mBaseline = pBuffer.getShort() & 0xFFFF;
+		this.mMode = pBuffer.get() & 0xFF;
+		this.mSize = pBuffer.getShort() & 0xFFFF;
+		if (this.mMode == SAME) {
+			this.mDeltaSize = 0;
+			return;
+		}
+		if (this.mMode != XOR) {
+			throw new IOException("Unknown delta mode: " + this.mMode);
+		}
+		this.mDeltaSize = pBuffer.getShort() & 0xFFFF;
+		if (this.mDeltaSize > pBuffer.remaining()) {
+			throw new IOException("Delta of: " + this.mDeltaSize + " does not fit in the packet");
+		}
+		this.ensureCapacity(this.mDeltaSize);
+		pBuffer.get(this.mDelta, 0, this.mDeltaSize);
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putShort((short) this.mBaseline);
+		pBuffer.put((byte) this.mMode);
+		pBuffer.putShort((short) this.mSize);
+		if (this.mMode == XOR) {
+			pBuffer.putShort((short) this.mDeltaSize);
+			pBuffer.put(this.mDelta, 0, this.mDeltaSize);
+		}
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return (this.mMode == XOR) ? 2 + 1 + 2 + 2 + this.mDeltaSize : 2 + 1 + 2;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		super.writeToParcel(dest, flags);
+		dest.writeInt(this.mBaseline);
+		dest.writeInt(this.mMode);
+		dest.writeInt(this.mSize);
+		final byte[] delta = new byte[this.mDeltaSize];
+		System.arraycopy(this.mDelta, 0, delta, 0, delta.length);
+		dest.writeByteArray(delta);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	/**
+	 * @return {@link Integer} sequence of the payload this is a delta from.
+	 */
+	public int getBaseline() {
+		return this.mBaseline;
+	}
+
+	public int getMode() {
+		return this.mMode;
+	}
+
+	/**
+	 * @return {@link Integer} size of the payload once decoded.
+	 */
+	public int getSize() {
+		return this.mSize;
+	}
+
+	/**
+	 * Encode a payload against a baseline, as {@link #SAME} if they match.
+	 *
+	 * @param pBaseline
+	 *            {@link Integer} sequence the baseline was sent with.
+	 * @param pBase
+	 *            {@link Byte} array of the baseline payload.
+	 * @param pBaseLength
+	 *            {@link Integer} of bytes in <code>pBase</code>
+	 * @param pData
+	 *            {@link Byte} array of the payload.
+	 * @param pLength
+	 *            {@link Integer} of bytes in <code>pData</code>, no more than
+	 *            {@link #MaxSize}
+	 * @return <code>true</code> if the delta is smaller than sending the
+	 *         payload as a {@link MessageEncapsulated}
+	 */
+	public boolean setDelta(final int pBaseline, final byte[] pBase, final int pBaseLength, final byte[] pData,
+			final int pLength) {
+		return this.setDelta(pBaseline, pBase, pBaseLength, pData, 0, pLength);
+	}
+
+	/**
+	 * As {@link #setDelta(int, byte[], int, byte[], int)} with the payload
+	 * starting at <code>pOffset</code> in <code>pData</code>
+	 */
+	public boolean setDelta(final int pBaseline, final byte[] pBase, final int pBaseLength, final byte[] pData,
+			final int pOffset, final int pLength) {
+		this.mBaseline = pBaseline & SequenceNumber.MASK;
+		this.mSize = pLength;
+		if (pLength == pBaseLength && this.isSame(pBase, pData, pOffset, pLength)) {
+			this.mMode = SAME;
+			this.mDeltaSize = 0;
+			return true;
+		}
+		this.mMode = XOR;
+		/* Worth it only if the 7 byte delta body is smaller than the 4 + size MessageEncapsulated sends */
+		final int limit = pLength - 4;
+		if (limit <= 0) {
+			return false;
+		}
+		this.ensureCapacity(limit);
+		this.mDeltaSize = DeltaCodec.encode(pBase, pBaseLength, pData, pOffset, pLength, this.mDelta, limit);
+		return this.mDeltaSize >= 0;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Rebuild the payload.
+	 *
+	 * @param pBase
+	 *            {@link Byte} array of the payload sent as
+	 *            {@link #getBaseline()}
+	 * @param pBaseLength
+	 *            {@link Integer} of bytes in it.
+	 * @param pOut
+	 *            {@link Byte} array with room for {@link #getSize()}
+	 * @param pOffset
+	 *            {@link Integer} where to write in <code>pOut</code>
+	 * @return <code>true</code> if the delta was well formed.
+	 */
+	public boolean decode(final byte[] pBase, final int pBaseLength, final byte[] pOut, final int pOffset) {
+		if (this.mMode == SAME) {
+			if (pBaseLength != this.mSize) {
+				return false;
+			}
+			System.arraycopy(pBase, 0, pOut, pOffset, this.mSize);
+			return true;
+		}
+		return DeltaCodec.decode(pBase, pBaseLength, this.mDelta, this.mDeltaSize, pOut, pOffset, this.mSize);
+	}
+
+	protected boolean isSame(final byte[] pBase, final byte[] pData, final int pOffset, final int pLength) {
+		for (int i = 0; i < pLength; i++) {
+			if (pBase[i] != pData[pOffset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void ensureCapacity(final int pSize) {
+		if (this.mDelta.length < pSize) {
+			this.mDelta = new byte[pSize];
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	public static final Parcelable.Creator<MessageEncapsulatedDelta> CREATOR = new Parcelable.Creator<MessageEncapsulatedDelta>() {
+
+		@Override
+		public MessageEncapsulatedDelta createFromParcel(Parcel source) {
+			return new MessageEncapsulatedDelta(source);
+		}
+
+		@Override
+		public MessageEncapsulatedDelta[] newArray(int size) {
+			return new MessageEncapsulatedDelta[size];
+		}
+	};
+
+	public static final IMessageFactory<MessageEncapsulatedDelta> FACTORY = new IMessageFactory<MessageEncapsulatedDelta>() {
+
+		@Override
+		public MessageEncapsulatedDelta create() {
+			return new MessageEncapsulatedDelta();
+		}
+	};
+}
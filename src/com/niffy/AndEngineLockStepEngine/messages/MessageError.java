@@ -3,12 +3,14 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.io.UnsupportedEncodingException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.niffy.AndEngineLockStepEngine.flags.ErrorCodes;
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
 
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -77,6 +79,25 @@ public class MessageError extends Message {
 		pDataOutputStream.write(this.mStringData);
 	}
 
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mErrorCode = pBuffer.getInt();
+		this.mStringData = getSizedBytes(pBuffer);
+		this.mStringSize = this.mStringData.length;
+		this.mString = new String(this.mStringData, "utf-8");
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putInt(this.mErrorCode);
+		putSizedBytes(pBuffer, this.mStringSize, this.mStringData);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + 4 + this.mStringSize;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
@@ -138,4 +159,12 @@ public class MessageError extends Message {
 			return new MessageError[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageError> FACTORY = new IMessageFactory<MessageError>() {
+
+		@Override
+		public MessageError create() {
+			return new MessageError();
+		}
+	};
 }
@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessageMigrate extends Message {
 	// ===========================================================
 	// Constants
@@ -56,6 +59,19 @@ public class MessageMigrate extends Message {
 	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
 	}
 
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 0;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
@@ -83,4 +99,12 @@ public class MessageMigrate extends Message {
 			return new MessageMigrate[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageMigrate> FACTORY = new IMessageFactory<MessageMigrate>() {
+
+		@Override
+		public MessageMigrate create() {
+			return new MessageMigrate();
+		}
+	};
 }
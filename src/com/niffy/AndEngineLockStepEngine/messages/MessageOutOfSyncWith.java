@@ -3,12 +3,14 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.io.UnsupportedEncodingException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.niffy.AndEngineLockStepEngine.flags.ErrorCodes;
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
 
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -80,6 +82,27 @@ public class MessageOutOfSyncWith extends Message {
 		pDataOutputStream.write(this.mSenderData);
 	}
 
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mWhoIsOutOfSyncData = getSizedBytes(pBuffer);
+		this.mWhoIsOutOfSyncSize = this.mWhoIsOutOfSyncData.length;
+		this.mWhoIsOutOfSync = new String(this.mWhoIsOutOfSyncData, "utf-8");
+		this.mSenderData = getSizedBytes(pBuffer);
+		this.mSenderSize = this.mSenderData.length;
+		this.mSender = new String(this.mSenderData, "utf-8");
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		putSizedBytes(pBuffer, this.mWhoIsOutOfSyncSize, this.mWhoIsOutOfSyncData);
+		putSizedBytes(pBuffer, this.mSenderSize, this.mSenderData);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + this.mWhoIsOutOfSyncSize + 4 + this.mSenderSize;
+	}
+
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
@@ -141,4 +164,12 @@ public class MessageOutOfSyncWith extends Message {
 			return new MessageOutOfSyncWith[size];
 		}
 	};
+
+	public static final IMessageFactory<MessageOutOfSyncWith> FACTORY = new IMessageFactory<MessageOutOfSyncWith>() {
+
+		@Override
+		public MessageOutOfSyncWith create() {
+			return new MessageOutOfSyncWith();
+		}
+	};
 }
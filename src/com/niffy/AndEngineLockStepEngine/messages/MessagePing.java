@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +11,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessagePing extends Message {
 	// ===========================================================
 	// Constants
@@ -20,6 +23,11 @@ public class MessagePing extends Message {
 	// ===========================================================
 	// Fields
 	// ===========================================================
+	/**
+	 * Sender's {@link System#nanoTime()} when pinged.
+	 */
+	protected long mTimestamp = -1;
+
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -42,6 +50,7 @@ public class MessagePing extends Message {
 
 	public MessagePing(Parcel in) {
 		super(in);
+		this.mTimestamp = in.readLong();
 	}
 
 	// ===========================================================
@@ -50,20 +59,46 @@ public class MessagePing extends Message {
 
 	@Override
 	protected void onReadTransmissionData(DataInputStream pDataInputStream) throws IOException {
+		this.mTimestamp = pDataInputStream.readLong();
 	}
 
 	@Override
 	protected void onWriteTransmissionData(DataOutputStream pDataOutputStream) throws IOException {
+		pDataOutputStream.writeLong(this.mTimestamp);
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mTimestamp = pBuffer.getLong();
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		pBuffer.putLong(this.mTimestamp);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 8;
 	}
 
 	@Override
 	public void writeToParcel(Parcel dest, int flags) {
 		super.writeToParcel(dest, flags);
+		dest.writeLong(this.mTimestamp);
 	}
 
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
+	public void setTimestamp(final long pTimestamp) {
+		this.mTimestamp = pTimestamp;
+	}
+
+	public long getTimestamp() {
+		return this.mTimestamp;
+	}
+
 	// ===========================================================
 	// Methods
 	// ===========================================================
@@ -83,4 +118,12 @@ public class MessagePing extends Message {
 			return new MessagePing[size];
 		}
 	};
+
+	public static final IMessageFactory<MessagePing> FACTORY = new IMessageFactory<MessagePing>() {
+
+		@Override
+		public MessagePing create() {
+			return new MessagePing();
+		}
+	};
 }
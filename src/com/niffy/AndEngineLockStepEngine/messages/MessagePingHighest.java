@@ -3,6 +3,8 @@ package com.niffy.AndEngineLockStepEngine.messages;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +12,8 @@ import org.slf4j.LoggerFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
+
 public class MessagePingHighest extends Message {
 	// ===========================================================
 	// Constants
@@ -22,9 +26,14 @@ public class MessagePingHighest extends Message {
 	// ===========================================================
 	protected String mInetAddressString = "0.0.0.0";
 	protected int mInetAddressSize;
-	protected byte[] mInetAddressData;
+	protected byte[] mInetAddressData = new byte[0];
 	protected long mHighestPingTime = -1;
 	protected long mTickLength = -1;
+	/**
+	 * Step the new tick length and input delay start on.
+	 */
+	protected int mChangeOverStep = -1;
+	protected int mInputDelay = -1;
 
 	// ===========================================================
 	// Constructors
@@ -50,9 +59,11 @@ public class MessagePingHighest extends Message {
 		super(in);
 		this.mInetAddressString = in.readString();
 		this.mInetAddressSize = in.readInt();
-		in.readByteArray(this.mInetAddressData);
+		this.mInetAddressData = in.createByteArray();
 		this.mHighestPingTime = in.readLong();
 		this.mTickLength = in.readLong();
+		this.mChangeOverStep = in.readInt();
+		this.mInputDelay = in.readInt();
 	}
 
 	// ===========================================================
@@ -67,7 +78,8 @@ public class MessagePingHighest extends Message {
 		this.mInetAddressString = new String(this.mInetAddressData, "utf-8");
 		this.mHighestPingTime = pDataInputStream.readLong();
 		this.mTickLength = pDataInputStream.readLong();
-
+		this.mChangeOverStep = pDataInputStream.readInt();
+		this.mInputDelay = pDataInputStream.readInt();
 	}
 
 	@Override
@@ -76,6 +88,33 @@ public class MessagePingHighest extends Message {
 		pDataOutputStream.write(this.mInetAddressData);
 		pDataOutputStream.writeLong(this.mHighestPingTime);
 		pDataOutputStream.writeLong(this.mTickLength);
+		pDataOutputStream.writeInt(this.mChangeOverStep);
+		pDataOutputStream.writeInt(this.mInputDelay);
+	}
+
+	@Override
+	protected void onReadTransmissionData(ByteBuffer pBuffer) throws IOException {
+		this.mInetAddressData = getSizedBytes(pBuffer);
+		this.mInetAddressSize = this.mInetAddressData.length;
+		this.mInetAddressString = new String(this.mInetAddressData, "utf-8");
+		this.mHighestPingTime = pBuffer.getLong();
+		this.mTickLength = pBuffer.getLong();
+		this.mChangeOverStep = pBuffer.getInt();
+		this.mInputDelay = pBuffer.getInt();
+	}
+
+	@Override
+	protected void onWriteTransmissionData(ByteBuffer pBuffer) {
+		putSizedBytes(pBuffer, this.mInetAddressSize, this.mInetAddressData);
+		pBuffer.putLong(this.mHighestPingTime);
+		pBuffer.putLong(this.mTickLength);
+		pBuffer.putInt(this.mChangeOverStep);
+		pBuffer.putInt(this.mInputDelay);
+	}
+
+	@Override
+	protected int onGetTransmissionSize() {
+		return 4 + this.mInetAddressSize + 8 + 8 + 4 + 4;
 	}
 
 	@Override
@@ -86,11 +125,27 @@ public class MessagePingHighest extends Message {
 		dest.writeByteArray(this.mInetAddressData);
 		dest.writeLong(this.mHighestPingTime);
 		dest.writeLong(this.mTickLength);
+		dest.writeInt(this.mChangeOverStep);
+		dest.writeInt(this.mInputDelay);
 	}
 
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
+	public void setInetAddress(final String pAddress) {
+		this.mInetAddressString = pAddress;
+		try {
+			this.mInetAddressData = this.mInetAddressString.getBytes("utf-8");
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+		this.mInetAddressSize = this.mInetAddressData.length;
+	}
+
+	public String getInetAddress() {
+		return this.mInetAddressString;
+	}
+
 	public void setHighestPingTime(final long pHighestPingTime){
 		this.mHighestPingTime = pHighestPingTime;
 	}
@@ -106,6 +161,22 @@ public class MessagePingHighest extends Message {
 	public long getTickLength(){
 		return this.mTickLength;
 	}
+
+	public void setChangeOverStep(final int pChangeOverStep) {
+		this.mChangeOverStep = pChangeOverStep;
+	}
+
+	public int getChangeOverStep() {
+		return this.mChangeOverStep;
+	}
+
+	public void setInputDelay(final int pInputDelay) {
+		this.mInputDelay = pInputDelay;
+	}
+
+	public int getInputDelay() {
+		return this.mInputDelay;
+	}
 	// ===========================================================
 	// Methods
 	// ===========================================================
@@ -125,4 +196,12 @@ public class MessagePingHighest extends Message {
 			return new MessagePingHighest[size];
 		}
 	};
+
+	public static final IMessageFactory<MessagePingHighest> FACTORY = new IMessageFactory<MessagePingHighest>() {
+
+		@Override
+		public MessagePingHighest create() {
+			return new MessagePingHighest();
+		}
+	};
 }
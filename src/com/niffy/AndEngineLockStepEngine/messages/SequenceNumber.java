@@ -0,0 +1,100 @@
+package com.niffy.AndEngineLockStepEngine.messages;
+
+import java.util.Arrays;
+
+/**
+ * Packet sequences are counted per peer in {@link #BITS} bits and wrap, so
+ * they are compared with serial number arithmetic (RFC 1982) rather than
+ * <code>&lt;</code> and <code>&gt;</code>. <code>a</code> is newer than
+ * <code>b</code> if it is less than half the sequence space ahead of it.
+ * <p>
+ * Holds as long as fewer than {@link #HALF} packets to one peer are
+ * outstanding at once.
+ */
+public final class SequenceNumber {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int BITS = 16;
+	public static final int MODULUS = 1 << BITS;
+	public static final int MASK = MODULUS - 1;
+	public static final int HALF = MODULUS >>> 1;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	private SequenceNumber() {
+
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	public static int next(final int pSequence) {
+		return (pSequence + 1) & MASK;
+	}
+
+	public static int add(final int pSequence, final int pIncrement) {
+		return (pSequence + pIncrement) & MASK;
+	}
+
+	/**
+	 * @return {@link Integer} steps from <code>pFrom</code> forward to
+	 *         <code>pTo</code>, negative if <code>pTo</code> is older. From
+	 *         <code>-HALF</code> to <code>HALF - 1</code>.
+	 */
+	public static int distance(final int pFrom, final int pTo) {
+		return ((pTo - pFrom) << (32 - BITS)) >> (32 - BITS);
+	}
+
+	/**
+	 * @return <code>true</code> if <code>pSequence</code> comes after
+	 *         <code>pThan</code>
+	 */
+	public static boolean isNewer(final int pSequence, final int pThan) {
+		return distance(pThan, pSequence) > 0;
+	}
+
+	/**
+	 * Sort in to sequence order, oldest first. The values are sorted then
+	 * rotated to start after the widest gap, so a run which wraps past
+	 * {@link #MASK} stays in one piece. Does not allocate.
+	 *
+	 * @param pSequences
+	 *            {@link Integer} array sorted in place.
+	 * @param pOffset
+	 *            {@link Integer} first index to sort.
+	 * @param pCount
+	 *            {@link Integer} of sequences to sort.
+	 */
+	public static void sort(final int[] pSequences, final int pOffset, final int pCount) {
+		final int end = pOffset + pCount;
+		Arrays.sort(pSequences, pOffset, end);
+		if (pCount < 2) {
+			return;
+		}
+		/* The gap wrapping round from the last back to the first */
+		int widest = pSequences[pOffset] + MODULUS - pSequences[end - 1];
+		int start = pOffset;
+		for (int i = pOffset + 1; i < end; i++) {
+			final int gap = pSequences[i] - pSequences[i - 1];
+			if (gap > widest) {
+				widest = gap;
+				start = i;
+			}
+		}
+		if (start != pOffset) {
+			reverse(pSequences, pOffset, start);
+			reverse(pSequences, start, end);
+			reverse(pSequences, pOffset, end);
+		}
+	}
+
+	protected static void reverse(final int[] pArray, final int pFrom, final int pTo) {
+		for (int i = pFrom, j = pTo - 1; i < j; i++, j--) {
+			final int swap = pArray[i];
+			pArray[i] = pArray[j];
+			pArray[j] = swap;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package com.niffy.AndEngineLockStepEngine.messages.pool;
+
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+
+/**
+ * Makes new messages for a {@link MessagePool} when it runs out, in place of
+ * creating them by reflection. Each message has one as <code>FACTORY</code>.
+ */
+public interface IMessageFactory<M extends IMessage> {
+	/**
+	 * @return a new message, never <code>null</code>
+	 */
+	public M create();
+}
@@ -2,17 +2,29 @@ package com.niffy.AndEngineLockStepEngine.messages.pool;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.andengine.util.adt.pool.GenericPool;
-import org.andengine.util.adt.pool.MultiPool;
-import org.andengine.util.debug.Debug;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 
 /**
  * (c) 2010 Nicolas Gramlich (c) 2011 Zynga Inc.
- * 
+ * <p>
+ * Safe to obtain and recycle from any thread. Each thread has its own
+ * magazine of messages per flag, a small stack it uses without locking. Full
+ * magazines are handed to, and taken from, a shared lock free depot, so a
+ * message recycled on one thread can be obtained on another. Pools are found
+ * by indexing an array with the flag.
+ * <p>
+ * Hits, depot refills, misses and messages made are counted per thread, and
+ * summed when asked for, to tune the sizes in {@link MessagePoolTags}.
+ *
  * @author Nicolas Gramlich
  * @since 11:33:23 - 02.03.2011
  */
@@ -20,89 +32,350 @@ public class MessagePool<M extends IMessage> {
 	// ===========================================================
 	// Constants
 	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(MessagePool.class);
+	protected static final int DefaultInitialSize = 0;
+	protected static final int DefaultGrowth = 1;
+	protected static final int MinimumMagazineSize = 4;
+	protected static final int MaximumMagazineSize = 64;
 
 	// ===========================================================
 	// Fields
 	// ===========================================================
-
-	private final MultiPool<M> mMessageMultiPool = new MultiPool<M>();
+	/**
+	 * Indexed by flag, replaced when a pool is registered.
+	 */
+	private volatile FlagPool<M>[] mPools;
 
 	// ===========================================================
 	// Constructors
 	// ===========================================================
+	public MessagePool() {
+		this.mPools = this.newPoolArray(0);
+	}
 
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
+	/**
+	 * @return {@link Long} obtains served from the threads own magazine.
+	 */
+	public long getHits(final int pFlag) {
+		return this.getStatistic(pFlag, ThreadCache.HITS);
+	}
+
+	/**
+	 * @return {@link Long} obtains served by a full magazine from the depot.
+	 */
+	public long getRefills(final int pFlag) {
+		return this.getStatistic(pFlag, ThreadCache.REFILLS);
+	}
+
+	/**
+	 * @return {@link Long} obtains that had to make new messages.
+	 */
+	public long getMisses(final int pFlag) {
+		return this.getStatistic(pFlag, ThreadCache.MISSES);
+	}
+
+	/**
+	 * @return {@link Long} messages made, including the initial size.
+	 */
+	public long getAllocated(final int pFlag) {
+		return this.getStatistic(pFlag, ThreadCache.ALLOCATED);
+	}
 
 	// ===========================================================
 	// Methods for/from SuperClass/Interfaces
 	// ===========================================================
 
+	/**
+	 * Made by reflection, prefer
+	 * {@link #registerMessage(int, IMessageFactory, int, int)}
+	 */
 	public void registerMessage(final int pFlag, final Class<? extends M> pMessageClass) {
-		this.mMessageMultiPool.registerPool(pFlag, new GenericPool<M>() {
-			@Override
-			protected M onAllocatePoolItem() {
-				try {
-					return pMessageClass.newInstance();
-				} catch (final Throwable t) {
-					Debug.e(t);
-					return null;
-				}
-			}
-		});
+		this.registerMessage(pFlag, pMessageClass, DefaultInitialSize, DefaultGrowth);
 	}
 
+	/**
+	 * Made by reflection, prefer
+	 * {@link #registerMessage(int, IMessageFactory, int, int)}
+	 */
 	public void registerMessage(final int pFlag, final Class<? extends M> pMessageClass, final int pInitialSize,
 			final int pGrowth) {
-		GenericPool<M> pool = new GenericPool<M>(pInitialSize, pGrowth) {
-			@Override
-			protected M onAllocatePoolItem() {
-				try {
-					return pMessageClass.newInstance();
-				} catch (final Throwable t) {
-					Debug.e(t);
-					return null;
-				}
-			}
-		};
-		this.mMessageMultiPool.registerPool(pFlag, pool);
+		this.registerMessage(pFlag, new ReflectionFactory<M>(pMessageClass), pInitialSize, pGrowth);
+	}
+
+	public void registerMessage(final int pFlag, final IMessageFactory<? extends M> pFactory) {
+		this.registerMessage(pFlag, pFactory, DefaultInitialSize, DefaultGrowth);
+	}
+
+	/**
+	 *
+	 * @param pFlag
+	 *            {@link Integer} message flag, not negative.
+	 * @param pFactory
+	 *            {@link IMessageFactory} to make messages when the pool is
+	 *            empty.
+	 * @param pInitialSize
+	 *            {@link Integer} of messages made now.
+	 * @param pGrowth
+	 *            {@link Integer} of messages made each time the pool is empty.
+	 */
+	public synchronized void registerMessage(final int pFlag, final IMessageFactory<? extends M> pFactory,
+			final int pInitialSize, final int pGrowth) {
+		if (pFlag < 0) {
+			throw new IllegalArgumentException("Message flag can not be negative: " + pFlag);
+		}
+		final FlagPool<M>[] pools = this.mPools;
+		final FlagPool<M>[] grown = this.newPoolArray(Math.max(pools.length, pFlag + 1));
+		System.arraycopy(pools, 0, grown, 0, pools.length);
+		grown[pFlag] = new FlagPool<M>(pFactory, pInitialSize, pGrowth);
+		this.mPools = grown;
 	}
 
 	public M obtainMessage(final int pFlag) {
-		M msg = this.mMessageMultiPool.obtainPoolItem(pFlag);
+		final FlagPool<M> pool = this.getPool(pFlag);
+		if (pool == null) {
+			throw new IllegalArgumentException("No message found for pFlag='" + pFlag + "'.");
+		}
+		final M msg = pool.obtain();
 		msg.setMessageFlag(pFlag);
 		return msg;
 	}
 
 	public M obtainMessage(final int pFlag, final DataInputStream pDataInputStream) throws IOException {
-		final M message = this.mMessageMultiPool.obtainPoolItem(pFlag);
-		if (message != null) {
-			message.setMessageFlag(pFlag);
-			message.read(pDataInputStream);
-			return message;
-		} else {
-			throw new IllegalArgumentException("No message found for pFlag='" + pFlag + "'.");
-		}
+		final M message = this.obtainMessage(pFlag);
+		message.read(pDataInputStream);
+		return message;
+	}
+
+	public M obtainMessage(final int pFlag, final ByteBuffer pBuffer) throws IOException {
+		final M message = this.obtainMessage(pFlag);
+		message.readFrom(pBuffer);
+		return message;
 	}
 
 	public void recycleMessage(final M pMessage) {
-		this.mMessageMultiPool.recyclePoolItem(pMessage.getMessageFlag(), pMessage);
+		final FlagPool<M> pool = this.getPool(pMessage.getMessageFlag());
+		if (pool != null) {
+			pool.recycle(pMessage);
+		}
 	}
 
 	public void recycleMessages(final List<? extends M> pMessages) {
-		final MultiPool<M> messageMultiPool = this.mMessageMultiPool;
 		for (int i = pMessages.size() - 1; i >= 0; i--) {
-			final M message = pMessages.get(i);
-			messageMultiPool.recyclePoolItem(message.getMessageFlag(), message);
+			this.recycleMessage(pMessages.get(i));
 		}
 	}
 
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	protected FlagPool<M> getPool(final int pFlag) {
+		final FlagPool<M>[] pools = this.mPools;
+		return (pFlag >= 0 && pFlag < pools.length) ? pools[pFlag] : null;
+	}
+
+	protected long getStatistic(final int pFlag, final int pStatistic) {
+		final FlagPool<M> pool = this.getPool(pFlag);
+		return (pool != null) ? pool.getStatistic(pStatistic) : 0;
+	}
+
+	/**
+	 * Log the counters of every pool, to tune {@link MessagePoolTags}.
+	 */
+	public void logStatistics() {
+		final FlagPool<M>[] pools = this.mPools;
+		for (int i = 0; i < pools.length; i++) {
+			if (pools[i] != null) {
+				final Object[] pArray = { i, pools[i].getStatistic(ThreadCache.HITS),
+						pools[i].getStatistic(ThreadCache.REFILLS), pools[i].getStatistic(ThreadCache.MISSES),
+						pools[i].getStatistic(ThreadCache.ALLOCATED) };
+				log.info("Pool flag: {} hits: {} refills: {} misses: {} allocated: {}", pArray);
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected FlagPool<M>[] newPoolArray(final int pSize) {
+		return new FlagPool[pSize];
+	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
+	/**
+	 * Messages of one flag.
+	 */
+	protected static class FlagPool<M extends IMessage> {
+		protected final IMessageFactory<? extends M> mFactory;
+		protected final int mGrowth;
+		protected final int mMagazineSize;
+		protected final ConcurrentLinkedQueue<Magazine> mFull = new ConcurrentLinkedQueue<Magazine>();
+		protected final ConcurrentLinkedQueue<Magazine> mEmpty = new ConcurrentLinkedQueue<Magazine>();
+		/**
+		 * Every threads cache, only to sum the counters.
+		 */
+		protected final CopyOnWriteArrayList<ThreadCache> mCaches = new CopyOnWriteArrayList<ThreadCache>();
+		protected final ThreadLocal<ThreadCache> mCache = new ThreadLocal<ThreadCache>() {
+			@Override
+			protected ThreadCache initialValue() {
+				final ThreadCache cache = new ThreadCache(new Magazine(FlagPool.this.mMagazineSize));
+				FlagPool.this.mCaches.add(cache);
+				return cache;
+			}
+		};
+		/**
+		 * Made before any thread had a cache.
+		 */
+		protected final long mInitialAllocated;
+
+		protected FlagPool(final IMessageFactory<? extends M> pFactory, final int pInitialSize, final int pGrowth) {
+			this.mFactory = pFactory;
+			this.mGrowth = Math.max(1, pGrowth);
+			this.mMagazineSize = Math.min(MaximumMagazineSize, Math.max(MinimumMagazineSize, this.mGrowth));
+			Magazine magazine = null;
+			for (int i = 0; i < pInitialSize; i++) {
+				if (magazine == null) {
+					magazine = new Magazine(this.mMagazineSize);
+				}
+				magazine.push(this.mFactory.create());
+				if (magazine.isFull()) {
+					this.mFull.offer(magazine);
+					magazine = null;
+				}
+			}
+			if (magazine != null) {
+				this.mFull.offer(magazine);
+			}
+			this.mInitialAllocated = Math.max(0, pInitialSize);
+		}
+
+		@SuppressWarnings("unchecked")
+		protected M obtain() {
+			final ThreadCache cache = this.mCache.get();
+			final Magazine loaded = cache.mLoaded;
+			if (!loaded.isEmpty()) {
+				cache.mCounters[ThreadCache.HITS]++;
+				return (M) loaded.pop();
+			}
+			final Magazine full = this.mFull.poll();
+			if (full != null) {
+				this.mEmpty.offer(loaded);
+				cache.mLoaded = full;
+				cache.mCounters[ThreadCache.REFILLS]++;
+				return (M) full.pop();
+			}
+			/* Make the growth, one to return and the rest loaded */
+			cache.mCounters[ThreadCache.MISSES]++;
+			final int extra = Math.min(this.mGrowth - 1, loaded.getRoom());
+			for (int i = 0; i < extra; i++) {
+				loaded.push(this.mFactory.create());
+			}
+			cache.mCounters[ThreadCache.ALLOCATED] += extra + 1;
+			return this.mFactory.create();
+		}
+
+		protected void recycle(final M pMessage) {
+			final ThreadCache cache = this.mCache.get();
+			Magazine loaded = cache.mLoaded;
+			if (loaded.isFull()) {
+				this.mFull.offer(loaded);
+				loaded = this.mEmpty.poll();
+				if (loaded == null) {
+					loaded = new Magazine(this.mMagazineSize);
+				}
+				cache.mLoaded = loaded;
+			}
+			loaded.push(pMessage);
+		}
+
+		/**
+		 * Read while other threads are counting, so only as fresh as the
+		 * memory model allows.
+		 */
+		protected long getStatistic(final int pStatistic) {
+			long total = (pStatistic == ThreadCache.ALLOCATED) ? this.mInitialAllocated : 0;
+			for (final ThreadCache cache : this.mCaches) {
+				total += cache.mCounters[pStatistic];
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Belongs to one thread for one flag.
+	 */
+	protected static class ThreadCache {
+		protected static final int HITS = 0;
+		protected static final int REFILLS = 1;
+		protected static final int MISSES = 2;
+		protected static final int ALLOCATED = 3;
+
+		protected Magazine mLoaded;
+		protected final long[] mCounters = new long[4];
+
+		protected ThreadCache(final Magazine pLoaded) {
+			this.mLoaded = pLoaded;
+		}
+	}
+
+	/**
+	 * Fixed size stack of messages, only used by one thread at a time.
+	 */
+	protected static class Magazine {
+		protected final Object[] mItems;
+		protected int mSize = 0;
+
+		protected Magazine(final int pCapacity) {
+			this.mItems = new Object[pCapacity];
+		}
+
+		protected boolean isEmpty() {
+			return this.mSize == 0;
+		}
+
+		protected boolean isFull() {
+			return this.mSize == this.mItems.length;
+		}
+
+		protected int getRoom() {
+			return this.mItems.length - this.mSize;
+		}
+
+		protected void push(final Object pItem) {
+			this.mItems[this.mSize++] = pItem;
+		}
+
+		protected Object pop() {
+			final Object item = this.mItems[--this.mSize];
+			this.mItems[this.mSize] = null;
+			return item;
+		}
+	}
+
+	/**
+	 * For messages registered by {@link Class}, the constructor is looked up
+	 * once rather than on every message made.
+	 */
+	protected static class ReflectionFactory<M extends IMessage> implements IMessageFactory<M> {
+		protected final Constructor<? extends M> mConstructor;
+
+		protected ReflectionFactory(final Class<? extends M> pMessageClass) {
+			try {
+				this.mConstructor = pMessageClass.getConstructor();
+			} catch (final NoSuchMethodException e) {
+				throw new IllegalArgumentException("Message needs a public no argument constructor: " + pMessageClass, e);
+			}
+		}
+
+		@Override
+		public M create() {
+			try {
+				return this.mConstructor.newInstance();
+			} catch (final Exception e) {
+				throw new IllegalStateException("Could not make message: " + this.mConstructor.getDeclaringClass(), e);
+			}
+		}
+	}
 }
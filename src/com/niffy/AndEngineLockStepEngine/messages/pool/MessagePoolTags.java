@@ -35,6 +35,11 @@ public final class MessagePoolTags {
 	public final static int ERROR_INITIAL_INT = 10;
 	public final static int ERROR_GROWTH_INT = 10;
 
+	public final static String COMMAND_INITIAL_STRING = "COMMAND_INITIAL_STRING";
+	public final static String COMMAND_GROWTH_STRING = "COMMAND_GROWTH_STRING";
+	public final static int COMMAND_INITIAL_INT = 10;
+	public final static int COMMAND_GROWTH_INT = 10;
+
 	public final static String MIGRATE_INITIAL_STRING = "MIGRATE_INITIAL_STRING";
 	public final static String MIGRATE_GROWTH_STRING = "MIGRATE_GROWTH_STRING";
 	public final static int MIGRATE_INITIAL_INT = 10;
@@ -55,6 +60,11 @@ public final class MessagePoolTags {
 	public final static int ENCAPSULATED_INITIAL_INT = 50;
 	public final static int ENCAPSULATED_GROWTH_INT = 50;
 	
+	public final static String ENCAPSULATED_DELTA_INITIAL_STRING = "ENCAPSULATED_DELTA_INITIAL_STRING";
+	public final static String ENCAPSULATED_DELTA_GROWTH_STRING = "ENCAPSULATED_DELTA_GROWTH_STRING";
+	public final static int ENCAPSULATED_DELTA_INITIAL_INT = 10;
+	public final static int ENCAPSULATED_DELTA_GROWTH_INT = 10;
+	
 	public final static String CLIENT_OUT_OF_SYNC_INITIAL_STRING = "CLIENT_OUT_OF_SYNC_INITIAL_STRING";
 	public final static String CLIENT_OUT_OF_SYNC_GROWTH_STRING = "CLIENT_OUT_OF_SYNC_GROWTH_STRING";
 	public final static int CLIENT_OUT_OF_SYNC_INITIAL_INT = 10;
@@ -0,0 +1,118 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A simple thread safe pool of fixed capacity {@link ByteBuffer}s. Buffers are
+ * obtained on one thread (normally whoever is sending) and recycled on another
+ * (the selector thread once written), so access is synchronized.
+ */
+public class ByteBufferPool {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int DefaultMaxPooled = 256;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final int mBufferCapacity;
+	protected final int mMaxPooled;
+	protected final boolean mDirect;
+	protected final ArrayList<ByteBuffer> mAvailable;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * Pool of direct buffers, holding at most {@link #DefaultMaxPooled}.
+	 * 
+	 * @param pBufferCapacity
+	 *            {@link Integer} capacity of each buffer.
+	 */
+	public ByteBufferPool(final int pBufferCapacity) {
+		this(pBufferCapacity, DefaultMaxPooled, true);
+	}
+
+	/**
+	 * 
+	 * @param pBufferCapacity
+	 *            {@link Integer} capacity of each buffer.
+	 * @param pMaxPooled
+	 *            {@link Integer} maximum buffers to hold on to, any more
+	 *            recycled are left for the GC.
+	 * @param pDirect
+	 *            {@link Boolean} <code>true</code> to allocate direct buffers.
+	 */
+	public ByteBufferPool(final int pBufferCapacity, final int pMaxPooled, final boolean pDirect) {
+		this.mBufferCapacity = pBufferCapacity;
+		this.mMaxPooled = pMaxPooled;
+		this.mDirect = pDirect;
+		this.mAvailable = new ArrayList<ByteBuffer>(pMaxPooled);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getBufferCapacity() {
+		return this.mBufferCapacity;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Obtain a cleared buffer with at least <code>pSize</code> remaining. If
+	 * <code>pSize</code> is bigger than {@link #getBufferCapacity()} a one off
+	 * heap buffer is allocated, which will not be pooled when recycled.
+	 * 
+	 * @param pSize
+	 *            {@link Integer} of bytes required.
+	 * @return {@link ByteBuffer} ready to be written to.
+	 */
+	public ByteBuffer obtain(final int pSize) {
+		if (pSize > this.mBufferCapacity) {
+			return ByteBuffer.allocate(pSize);
+		}
+		ByteBuffer buffer = null;
+		synchronized (this.mAvailable) {
+			final int size = this.mAvailable.size();
+			if (size > 0) {
+				buffer = this.mAvailable.remove(size - 1);
+			}
+		}
+		if (buffer == null) {
+			buffer = (this.mDirect) ? ByteBuffer.allocateDirect(this.mBufferCapacity) : ByteBuffer
+					.allocate(this.mBufferCapacity);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer to the pool. Buffers which did not come from this pool
+	 * are ignored.
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} finished with.
+	 */
+	public void recycle(final ByteBuffer pBuffer) {
+		if (pBuffer.capacity() != this.mBufferCapacity || pBuffer.isDirect() != this.mDirect) {
+			return;
+		}
+		pBuffer.clear();
+		synchronized (this.mAvailable) {
+			if (this.mAvailable.size() < this.mMaxPooled) {
+				this.mAvailable.add(pBuffer);
+			}
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
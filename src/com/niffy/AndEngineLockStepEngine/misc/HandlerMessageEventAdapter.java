@@ -0,0 +1,50 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import android.os.Message;
+
+/**
+ * Lets an {@link IHandlerMessage} which has not been migrated yet consume an
+ * {@link IEventTransport}. Each event is turned back in to a
+ * {@link Message} with the same <code>what</code> and {@link android.os.Bundle}
+ * keys, so this allocates, use it only as a stop gap.
+ */
+public class HandlerMessageEventAdapter implements IHandlerEvent {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final IHandlerMessage mHandler;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public HandlerMessageEventAdapter(final IHandlerMessage pHandler) {
+		this.mHandler = pHandler;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public void handlePassedEvent(ITCEvent pEvent) {
+		final Message msg = Message.obtain();
+		msg.what = pEvent.mWhat;
+		msg.setData(pEvent.toBundle());
+		this.mHandler.handlePassedMessage(msg);
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,49 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+/**
+ * Inter thread transport of preallocated {@link ITCEvent}s, an alternative to
+ * posting {@link android.os.Message}s with a {@link android.os.Bundle} to a
+ * {@link WeakThreadHandler}.
+ * <p>
+ * Producing is two steps, {@link #claim()} a slot, fill it in, then
+ * {@link #publish()} it. The consumer calls
+ * {@link #drain(IHandlerEvent, int)} when it is ready, such as once per
+ * frame.
+ */
+public interface IEventTransport {
+	/**
+	 * Claim the next free slot to fill in. Only the producing thread may call
+	 * this.
+	 * 
+	 * @return {@link ITCEvent} to fill in then {@link #publish()}, or
+	 *         <code>null</code> if the transport is full.
+	 */
+	public ITCEvent claim();
+
+	/**
+	 * Make the last {@link #claim()}ed slot visible to the consumer.
+	 */
+	public void publish();
+
+	/**
+	 * Pass waiting events to a handler. Only the consuming thread may call
+	 * this.
+	 * 
+	 * @param pHandler
+	 *            {@link IHandlerEvent} to pass each event to.
+	 * @param pMaxEvents
+	 *            {@link Integer} most events to handle in this call.
+	 * @return {@link Integer} of events handled.
+	 */
+	public int drain(final IHandlerEvent pHandler, final int pMaxEvents);
+
+	/**
+	 * @return {@link Integer} of events waiting to be drained.
+	 */
+	public int size();
+
+	/**
+	 * @return {@link Integer} of slots.
+	 */
+	public int capacity();
+}
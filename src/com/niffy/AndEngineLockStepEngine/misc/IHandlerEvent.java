@@ -0,0 +1,15 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+/**
+ * {@link IEventTransport} counterpart of {@link IHandlerMessage}.
+ */
+public interface IHandlerEvent {
+	/**
+	 * Handle an event drained from an {@link IEventTransport}. The event is
+	 * reused once this returns, so do not keep a reference to it.
+	 * 
+	 * @param pEvent
+	 *            {@link ITCEvent} to handle.
+	 */
+	public void handlePassedEvent(ITCEvent pEvent);
+}
@@ -0,0 +1,144 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.net.InetAddress;
+
+import android.os.Bundle;
+
+import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
+import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+
+/**
+ * A preallocated slot in an {@link IEventTransport}. {@link #mWhat} takes the
+ * same {@link ITCFlags} code as {@link android.os.Message#what}, the other
+ * fields replace the {@link Bundle} keys.
+ * <p>
+ * {@link #mData} is held by reference, the producer must not change it once
+ * published. If it is part of a {@link PooledBuffer} the event holds a
+ * reference on that until {@link #reset()} once drained.
+ */
+public class ITCEvent {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	/**
+	 * {@link ITCFlags} code.
+	 */
+	public int mWhat;
+	/**
+	 * Peer the event is about, <code>-1</code> if not known.
+	 */
+	public int mPeerID = -1;
+	/**
+	 * Address the event is about, can be <code>null</code>
+	 */
+	public InetAddress mAddress;
+	/**
+	 * {@link MessageFlag} of the packet.
+	 */
+	public int mFlag = -1;
+	/**
+	 * {@link IntendedFlag} of the packet.
+	 */
+	public int mIntended = -1;
+	/**
+	 * Packet sequence, error code or step depending on {@link #mWhat}
+	 */
+	public int mArg = -1;
+	public byte[] mData;
+	public int mOffset;
+	public int mLength;
+	/**
+	 * Owner of {@link #mData} when pooled, released by {@link #reset()}
+	 */
+	public PooledBuffer mBuffer;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public void setData(final byte[] pData, final int pOffset, final int pLength) {
+		this.mData = pData;
+		this.mOffset = pOffset;
+		this.mLength = pLength;
+	}
+
+	/**
+	 * Point at part of a pooled buffer, retaining it until {@link #reset()}
+	 * 
+	 * @param pBuffer
+	 *            {@link PooledBuffer} holding the data.
+	 * @param pOffset
+	 *            {@link Integer} offset in {@link PooledBuffer#getData()}
+	 * @param pLength
+	 *            {@link Integer} length of the data.
+	 */
+	public void setData(final PooledBuffer pBuffer, final int pOffset, final int pLength) {
+		this.setData(pBuffer.getData(), pOffset, pLength);
+		this.mBuffer = pBuffer.retain();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Clear the slot so it does not hold on to anything once drained.
+	 */
+	public void reset() {
+		this.mWhat = 0;
+		this.mPeerID = -1;
+		this.mAddress = null;
+		this.mFlag = -1;
+		this.mIntended = -1;
+		this.mArg = -1;
+		this.mData = null;
+		this.mOffset = 0;
+		this.mLength = 0;
+		if (this.mBuffer != null) {
+			this.mBuffer.release();
+			this.mBuffer = null;
+		}
+	}
+
+	/**
+	 * Build the {@link Bundle} a {@link IHandlerMessage} would have received
+	 * for the same {@link ITCFlags} code, for consumers not yet migrated.
+	 * 
+	 * @return {@link Bundle} with <code>peer</code>, <code>ip</code>, <code>flag</code>,
+	 *         <code>intended</code> and <code>data</code> where set.
+	 */
+	public Bundle toBundle() {
+		final Bundle bundle = new Bundle();
+		bundle.putInt("peer", this.mPeerID);
+		if (this.mAddress != null) {
+			bundle.putString("ip", this.mAddress.getHostAddress());
+		}
+		bundle.putInt("flag", this.mFlag);
+		bundle.putInt("intended", this.mIntended);
+		if (this.mData != null) {
+			if (this.mOffset == 0 && this.mLength == this.mData.length) {
+				bundle.putByteArray("data", this.mData);
+			} else {
+				final byte[] data = new byte[this.mLength];
+				System.arraycopy(this.mData, this.mOffset, data, 0, this.mLength);
+				bundle.putByteArray("data", data);
+			}
+		}
+		return bundle;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,185 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted slice of a {@link PooledBufferPool} slab. A received
+ * packet is read straight in to one and the same bytes are handed from the
+ * selector, through the communication thread, to the lockstep. Whoever keeps
+ * hold of it past a call {@link #retain()}s it, and every holder
+ * {@link #release()}s it once done; the last release returns it to the pool.
+ * <p>
+ * The bytes are {@link #getData()} from {@link #getOffset()} for
+ * {@link #getLength()}, and must not be changed once handed on.
+ */
+public class PooledBuffer {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	/**
+	 * Pool to return to, <code>null</code> if this wraps an array and is not
+	 * pooled.
+	 */
+	protected final PooledBufferPool mPool;
+	protected final byte[] mData;
+	protected final int mOffset;
+	protected final int mCapacity;
+	/**
+	 * View of just this slice, position <code>0</code> is {@link #mOffset}.
+	 */
+	protected final ByteBuffer mByteBuffer;
+	protected final AtomicInteger mReferences = new AtomicInteger(0);
+	protected int mLength = 0;
+	/**
+	 * Where this was last obtained, only set when the pool is tracking leaks.
+	 */
+	protected Throwable mObtainedAt;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 *
+	 * @param pPool
+	 *            {@link PooledBufferPool} to return to, can be <code>null</code>
+	 * @param pData
+	 *            {@link Byte} array slab this is a slice of.
+	 * @param pOffset
+	 *            {@link Integer} start of the slice in the slab.
+	 * @param pCapacity
+	 *            {@link Integer} length of the slice.
+	 */
+	protected PooledBuffer(final PooledBufferPool pPool, final byte[] pData, final int pOffset, final int pCapacity) {
+		this.mPool = pPool;
+		this.mData = pData;
+		this.mOffset = pOffset;
+		this.mCapacity = pCapacity;
+		this.mByteBuffer = ByteBuffer.wrap(pData, pOffset, pCapacity).slice();
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public byte[] getData() {
+		return this.mData;
+	}
+
+	public int getOffset() {
+		return this.mOffset;
+	}
+
+	public int getCapacity() {
+		return this.mCapacity;
+	}
+
+	/**
+	 * @return {@link Integer} of bytes filled in.
+	 */
+	public int getLength() {
+		return this.mLength;
+	}
+
+	/**
+	 * @param pLength
+	 *            {@link Integer} of bytes filled in, no more than
+	 *            {@link #getCapacity()}
+	 */
+	public void setLength(final int pLength) {
+		this.mLength = pLength;
+	}
+
+	public int getReferenceCount() {
+		return this.mReferences.get();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Wrap an array which did not come from a pool, so it can take the same
+	 * path. Releasing it does nothing more than count.
+	 *
+	 * @param pData
+	 *            {@link Byte} array, all of it is the data.
+	 * @return {@link PooledBuffer} holding one reference.
+	 */
+	public static PooledBuffer wrap(final byte[] pData) {
+		final PooledBuffer buffer = new PooledBuffer(null, pData, 0, pData.length);
+		buffer.obtained();
+		buffer.setLength(pData.length);
+		return buffer;
+	}
+
+	/**
+	 * Get the slice cleared, ready for a channel to read in to. Call
+	 * {@link #setLength(int)} with its position afterwards.
+	 *
+	 * @return {@link ByteBuffer} over just this slice.
+	 */
+	public ByteBuffer prepareForRead() {
+		this.mByteBuffer.clear();
+		return this.mByteBuffer;
+	}
+
+	/**
+	 * Take another reference, for a holder which outlives the call it was
+	 * given this in.
+	 *
+	 * @return this, for chaining.
+	 * @throws IllegalStateException
+	 *             if it has already gone back to the pool.
+	 */
+	public PooledBuffer retain() {
+		while (true) {
+			final int references = this.mReferences.get();
+			if (references <= 0) {
+				throw new IllegalStateException("Retained a buffer which has been released");
+			}
+			if (this.mReferences.compareAndSet(references, references + 1)) {
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * Give up a reference, the last one returns this to the pool.
+	 *
+	 * @return <code>true</code> if that was the last reference.
+	 * @throws IllegalStateException
+	 *             if released more times than it was retained.
+	 */
+	public boolean release() {
+		final int references = this.mReferences.decrementAndGet();
+		if (references > 0) {
+			return false;
+		} else if (references < 0) {
+			this.mReferences.incrementAndGet();
+			throw new IllegalStateException("Released a buffer which has already been released");
+		}
+		if (this.mPool != null) {
+			this.mPool.recycle(this);
+		}
+		return true;
+	}
+
+	/**
+	 * Called by the pool as this is handed out.
+	 */
+	protected void obtained() {
+		this.mLength = 0;
+		this.mReferences.set(1);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
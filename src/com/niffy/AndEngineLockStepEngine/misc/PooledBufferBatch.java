@@ -0,0 +1,105 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.util.Queue;
+
+/**
+ * Several received packets, each in its own {@link PooledBuffer} with the id
+ * of the peer it came from, handed between threads as one. The batch holds a
+ * reference on each buffer until {@link #release()}, which also puts the
+ * batch back on the queue it was made for.
+ */
+public class PooledBufferBatch {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	/**
+	 * Where this goes once released, can be <code>null</code>
+	 */
+	protected final Queue<PooledBufferBatch> mSpare;
+	protected final PooledBuffer[] mBuffers;
+	protected final int[] mPeerIDs;
+	protected int mSize = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 *
+	 * @param pCapacity
+	 *            {@link Integer} most packets held.
+	 * @param pSpare
+	 *            {@link Queue} to offer this to once released, which must be
+	 *            safe for the releasing thread to use. Can be
+	 *            <code>null</code>
+	 */
+	public PooledBufferBatch(final int pCapacity, final Queue<PooledBufferBatch> pSpare) {
+		this.mSpare = pSpare;
+		this.mBuffers = new PooledBuffer[pCapacity];
+		this.mPeerIDs = new int[pCapacity];
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getSize() {
+		return this.mSize;
+	}
+
+	public int getCapacity() {
+		return this.mBuffers.length;
+	}
+
+	public boolean isFull() {
+		return this.mSize == this.mBuffers.length;
+	}
+
+	public PooledBuffer getBuffer(final int pIndex) {
+		return this.mBuffers[pIndex];
+	}
+
+	public int getPeerID(final int pIndex) {
+		return this.mPeerIDs[pIndex];
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} id the packet came from.
+	 * @param pBuffer
+	 *            {@link PooledBuffer} of the packet, its reference is passed
+	 *            to this batch.
+	 */
+	public void add(final int pPeerID, final PooledBuffer pBuffer) {
+		this.mPeerIDs[this.mSize] = pPeerID;
+		this.mBuffers[this.mSize] = pBuffer;
+		this.mSize++;
+	}
+
+	/**
+	 * Release every buffer held and offer this back to be reused.
+	 */
+	public void release() {
+		for (int i = 0; i < this.mSize; i++) {
+			this.mBuffers[i].release();
+			this.mBuffers[i] = null;
+		}
+		this.mSize = 0;
+		if (this.mSpare != null) {
+			this.mSpare.offer(this);
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,198 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of {@link PooledBuffer}s carved out of large slabs, for received
+ * packets. Buffers are obtained on a selector thread and released on
+ * whichever thread handles them last, so the free list is lock free and only
+ * growing a new slab locks.
+ * <p>
+ * Slabs are heap arrays rather than direct memory, as everything after the
+ * channel decodes from a <code>byte[]</code>; a direct slab would need the
+ * copy out that this is here to save.
+ * <p>
+ * When tracking leaks each buffer records where it was obtained, and
+ * {@link #logLeaks()} reports the ones never released.
+ */
+public class PooledBufferPool {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(PooledBufferPool.class);
+	public static final int DefaultBufferCapacity = 8192;
+	public static final int DefaultBuffersPerSlab = 64;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final int mBufferCapacity;
+	protected final int mBuffersPerSlab;
+	protected final boolean mTrackLeaks;
+	protected final ConcurrentLinkedQueue<PooledBuffer> mAvailable = new ConcurrentLinkedQueue<PooledBuffer>();
+	protected final AtomicInteger mOutstanding = new AtomicInteger(0);
+	protected final Set<PooledBuffer> mTracked;
+	protected int mSlabs = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * Slabs of {@link #DefaultBuffersPerSlab} buffers of
+	 * {@link #DefaultBufferCapacity}, not tracking leaks.
+	 */
+	public PooledBufferPool() {
+		this(DefaultBufferCapacity, DefaultBuffersPerSlab, false);
+	}
+
+	/**
+	 *
+	 * @param pBufferCapacity
+	 *            {@link Integer} capacity of each buffer.
+	 * @param pBuffersPerSlab
+	 *            {@link Integer} buffers to allocate each time the pool runs
+	 *            dry.
+	 * @param pTrackLeaks
+	 *            {@link Boolean} <code>true</code> to record where every
+	 *            buffer is obtained, for debugging.
+	 */
+	public PooledBufferPool(final int pBufferCapacity, final int pBuffersPerSlab, final boolean pTrackLeaks) {
+		this.mBufferCapacity = pBufferCapacity;
+		this.mBuffersPerSlab = pBuffersPerSlab;
+		this.mTrackLeaks = pTrackLeaks;
+		this.mTracked = (pTrackLeaks) ? Collections.synchronizedSet(Collections
+				.newSetFromMap(new IdentityHashMap<PooledBuffer, Boolean>())) : null;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getBufferCapacity() {
+		return this.mBufferCapacity;
+	}
+
+	/**
+	 * @return {@link Integer} of buffers obtained and not yet released.
+	 */
+	public int getOutstanding() {
+		return this.mOutstanding.get();
+	}
+
+	public synchronized int getSlabs() {
+		return this.mSlabs;
+	}
+
+	public boolean isTrackingLeaks() {
+		return this.mTrackLeaks;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @return {@link PooledBuffer} of {@link #getBufferCapacity()} holding one
+	 *         reference.
+	 */
+	public PooledBuffer obtain() {
+		PooledBuffer buffer = this.mAvailable.poll();
+		if (buffer == null) {
+			buffer = this.allocateSlab();
+		}
+		return this.handOut(buffer);
+	}
+
+	/**
+	 * Obtain a buffer with room for <code>pSize</code>. If that is more than
+	 * {@link #getBufferCapacity()} a one off buffer is allocated, which will
+	 * not be pooled once released.
+	 *
+	 * @param pSize
+	 *            {@link Integer} of bytes required.
+	 * @return {@link PooledBuffer} holding one reference.
+	 */
+	public PooledBuffer obtain(final int pSize) {
+		if (pSize > this.mBufferCapacity) {
+			return this.handOut(new PooledBuffer(this, new byte[pSize], 0, pSize));
+		}
+		return this.obtain();
+	}
+
+	/**
+	 * Log every buffer obtained and not yet released, with where it was
+	 * obtained if tracking leaks.
+	 *
+	 * @return {@link Integer} of buffers outstanding.
+	 */
+	public int logLeaks() {
+		final int outstanding = this.mOutstanding.get();
+		if (outstanding == 0) {
+			return 0;
+		}
+		if (!this.mTrackLeaks) {
+			log.warn("{} buffers have not been released, track leaks to see where they came from", outstanding);
+			return outstanding;
+		}
+		synchronized (this.mTracked) {
+			final Iterator<PooledBuffer> buffers = this.mTracked.iterator();
+			while (buffers.hasNext()) {
+				final PooledBuffer buffer = buffers.next();
+				log.warn("Buffer of: {} bytes has not been released", buffer.getLength(), buffer.mObtainedAt);
+			}
+		}
+		return outstanding;
+	}
+
+	/**
+	 * Called from {@link PooledBuffer#release()} once the last reference is
+	 * given up.
+	 */
+	protected void recycle(final PooledBuffer pBuffer) {
+		this.mOutstanding.decrementAndGet();
+		if (this.mTrackLeaks) {
+			pBuffer.mObtainedAt = null;
+			this.mTracked.remove(pBuffer);
+		}
+		if (pBuffer.getCapacity() == this.mBufferCapacity) {
+			this.mAvailable.offer(pBuffer);
+		}
+	}
+
+	protected PooledBuffer handOut(final PooledBuffer pBuffer) {
+		pBuffer.obtained();
+		this.mOutstanding.incrementAndGet();
+		if (this.mTrackLeaks) {
+			pBuffer.mObtainedAt = new Throwable("Obtained here");
+			this.mTracked.add(pBuffer);
+		}
+		return pBuffer;
+	}
+
+	/**
+	 * Carve a new slab in to buffers, keeping one back for the caller.
+	 */
+	protected synchronized PooledBuffer allocateSlab() {
+		final byte[] slab = new byte[this.mBufferCapacity * this.mBuffersPerSlab];
+		for (int i = 1; i < this.mBuffersPerSlab; i++) {
+			this.mAvailable.offer(new PooledBuffer(this, slab, i * this.mBufferCapacity, this.mBufferCapacity));
+		}
+		this.mSlabs++;
+		log.debug("Allocated slab: {} of: {} bytes", this.mSlabs, slab.length);
+		return new PooledBuffer(this, slab, 0, this.mBufferCapacity);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,120 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free single producer, single consumer ring of preallocated
+ * {@link ITCEvent}s. Nothing is allocated after construction.
+ * <p>
+ * Exactly one thread may produce and exactly one thread may consume.
+ */
+public class SPSCEventRing implements IEventTransport {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int DefaultCapacity = 1024;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final ITCEvent[] mEvents;
+	protected final int mMask;
+	/**
+	 * Next slot to be consumed. Written by the consumer only.
+	 */
+	protected final AtomicLong mHead = new AtomicLong(0);
+	/**
+	 * Next slot to be published. Written by the producer only.
+	 */
+	protected final AtomicLong mTail = new AtomicLong(0);
+	/**
+	 * Producers last read of {@link #mHead}, saves reading the consumers
+	 * counter on every claim.
+	 */
+	protected long mCachedHead = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public SPSCEventRing() {
+		this(DefaultCapacity);
+	}
+
+	/**
+	 * 
+	 * @param pCapacity
+	 *            {@link Integer} of slots, rounded up to a power of two.
+	 */
+	public SPSCEventRing(final int pCapacity) {
+		int capacity = 1;
+		while (capacity < pCapacity) {
+			capacity <<= 1;
+		}
+		this.mEvents = new ITCEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			this.mEvents[i] = new ITCEvent();
+		}
+		this.mMask = capacity - 1;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public ITCEvent claim() {
+		final long tail = this.mTail.get();
+		if (tail - this.mCachedHead >= this.mEvents.length) {
+			this.mCachedHead = this.mHead.get();
+			if (tail - this.mCachedHead >= this.mEvents.length) {
+				return null;
+			}
+		}
+		return this.mEvents[(int) tail & this.mMask];
+	}
+
+	@Override
+	public void publish() {
+		this.mTail.lazySet(this.mTail.get() + 1);
+	}
+
+	@Override
+	public int drain(final IHandlerEvent pHandler, final int pMaxEvents) {
+		long head = this.mHead.get();
+		final long tail = this.mTail.get();
+		int handled = 0;
+		while (head < tail && handled < pMaxEvents) {
+			final ITCEvent event = this.mEvents[(int) head & this.mMask];
+			try {
+				pHandler.handlePassedEvent(event);
+			} finally {
+				event.reset();
+				head++;
+				handled++;
+				this.mHead.lazySet(head);
+			}
+		}
+		return handled;
+	}
+
+	@Override
+	public int size() {
+		return (int) (this.mTail.get() - this.mHead.get());
+	}
+
+	@Override
+	public int capacity() {
+		return this.mEvents.length;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -0,0 +1,200 @@
+package com.niffy.AndEngineLockStepEngine.misc;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.niffy.AndEngineLockStepEngine.flags.TraceFlag;
+import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+
+/**
+ * Flight recorder of the last events on the packet paths. Each event is a
+ * {@link TraceFlag}, a peer id, a sequence and a {@link System#nanoTime()},
+ * written in to preallocated arrays, so recording formats and allocates
+ * nothing. Any thread can record, the oldest events are overwritten.
+ * <p>
+ * Trace points call {@link #trace(TraceRing, int, int, int)} with the ring
+ * from {@link IBaseOptions#getTraceRing()}; with no ring set they cost a
+ * null check, and with {@link #ENABLED} <code>false</code> nothing.
+ * <p>
+ * {@link #dump()} logs what is held, and is called when a peer falls out of
+ * sync. An event being written while dumping can come out torn, so dump
+ * once things have gone quiet if that matters.
+ */
+public class TraceRing {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(TraceRing.class);
+	/**
+	 * Set <code>false</code> to compile every trace point out.
+	 */
+	public static final boolean ENABLED = true;
+	public static final int DefaultCapacity = 4096;
+	public static final int NO_PEER = -1;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final int mMask;
+	protected final long[] mTimes;
+	protected final int[] mFlags;
+	protected final int[] mPeers;
+	protected final int[] mSequences;
+	/**
+	 * Per slot, one past the position last fully written to it.
+	 */
+	protected final AtomicLongArray mWritten;
+	protected final AtomicLong mNext = new AtomicLong(0);
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public TraceRing() {
+		this(DefaultCapacity);
+	}
+
+	/**
+	 *
+	 * @param pCapacity
+	 *            {@link Integer} of events kept, rounded up to a power of two.
+	 */
+	public TraceRing(final int pCapacity) {
+		int capacity = 1;
+		while (capacity < pCapacity) {
+			capacity <<= 1;
+		}
+		this.mMask = capacity - 1;
+		this.mTimes = new long[capacity];
+		this.mFlags = new int[capacity];
+		this.mPeers = new int[capacity];
+		this.mSequences = new int[capacity];
+		this.mWritten = new AtomicLongArray(capacity);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getCapacity() {
+		return this.mTimes.length;
+	}
+
+	/**
+	 * @return {@link Long} of events ever recorded.
+	 */
+	public long getRecorded() {
+		return this.mNext.get();
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Record an event if tracing.
+	 *
+	 * @param pRing
+	 *            {@link TraceRing} to record in to, can be <code>null</code>
+	 * @see #record(int, int, int)
+	 */
+	public static void trace(final TraceRing pRing, final int pFlag, final int pPeerID, final int pSequence) {
+		if (ENABLED && pRing != null) {
+			pRing.record(pFlag, pPeerID, pSequence);
+		}
+	}
+
+	/**
+	 * Dump if tracing.
+	 *
+	 * @param pRing
+	 *            {@link TraceRing} to dump, can be <code>null</code>
+	 * @see #dump()
+	 */
+	public static void dump(final TraceRing pRing) {
+		if (ENABLED && pRing != null) {
+			pRing.dump();
+		}
+	}
+
+	/**
+	 * @param pFlag
+	 *            {@link TraceFlag} of the event.
+	 * @param pPeerID
+	 *            {@link Integer} id of the peer, or {@link #NO_PEER}
+	 * @param pSequence
+	 *            {@link Integer} meaning depends on the flag.
+	 */
+	public void record(final int pFlag, final int pPeerID, final int pSequence) {
+		final long position = this.mNext.getAndIncrement();
+		final int index = (int) position & this.mMask;
+		this.mTimes[index] = System.nanoTime();
+		this.mFlags[index] = pFlag;
+		this.mPeers[index] = pPeerID;
+		this.mSequences[index] = pSequence;
+		this.mWritten.lazySet(index, position + 1);
+	}
+
+	/**
+	 * Log every event held, oldest first, at warn.
+	 */
+	public void dump() {
+		final long end = this.mNext.get();
+		final long start = Math.max(0, end - this.mTimes.length);
+		log.warn("Trace of the last: {} events", end - start);
+		for (long position = start; position < end; position++) {
+			final int index = (int) position & this.mMask;
+			if (this.mWritten.get(index) != position + 1) {
+				continue;
+			}
+			final Object[] pArray = { this.mTimes[index], TraceFlag.getName(this.mFlags[index]),
+					this.mPeers[index], this.mSequences[index] };
+			log.warn("{} {} peer: {} sequence: {}", pArray);
+		}
+	}
+
+	/**
+	 * Write every event held, oldest first, as a count then per event a
+	 * <code>long</code> time and <code>int</code> flag, peer and sequence.
+	 *
+	 * @param pOutput
+	 *            {@link OutputStream} to write to, not closed.
+	 * @throws IOException
+	 *             due to {@link DataOutputStream#writeLong(long)}
+	 */
+	public void writeTo(final OutputStream pOutput) throws IOException {
+		final DataOutputStream output = new DataOutputStream(pOutput);
+		final long end = this.mNext.get();
+		final long start = Math.max(0, end - this.mTimes.length);
+		int count = 0;
+		for (long position = start; position < end; position++) {
+			if (this.mWritten.get((int) position & this.mMask) == position + 1) {
+				count++;
+			}
+		}
+		output.writeInt(count);
+		for (long position = start; position < end && count > 0; position++) {
+			final int index = (int) position & this.mMask;
+			if (this.mWritten.get(index) != position + 1) {
+				continue;
+			}
+			output.writeLong(this.mTimes[index]);
+			output.writeInt(this.mFlags[index]);
+			output.writeInt(this.mPeers[index]);
+			output.writeInt(this.mSequences[index]);
+			count--;
+		}
+		output.flush();
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -8,6 +8,16 @@ import java.util.Map.Entry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferPool;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
+import com.niffy.AndEngineLockStepEngine.packet.compression.ICompressionCodecFactory;
+import com.niffy.AndEngineLockStepEngine.packet.compression.LZ4Codec;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+import com.niffy.AndEngineLockStepEngine.peer.IRttEstimator;
+import com.niffy.AndEngineLockStepEngine.peer.PeerRegistry;
+import com.niffy.AndEngineLockStepEngine.peer.RttEstimator;
+import com.niffy.AndEngineLockStepEngine.threads.nio.FrameCodec;
+
 public class BaseOptions implements IBaseOptions {
 	// ===========================================================
 	// Constants
@@ -20,16 +30,36 @@ public class BaseOptions implements IBaseOptions {
 	// ===========================================================
 	protected InetAddress mHostIP;
 	protected int mBufferSize = 512;
+	protected int mBundleSize = 1200;
+	protected int mReceiveBatchSize = 32;
+	protected int mInputDelay = 2;
+	protected int mMaxCommandSize = 256;
 	protected int mTCPServerPort = 9999;
 	protected int mTCPClientPort = 9998;
 	protected int mUDPPort = 9998;
 	protected int mStepsBeforeCrisis = 0;
 	protected long mStandardTickLength = 0;
+	protected int mMaxStepsPerUpdate = 5;
 	protected int mAckWindowSize = 0;
 	protected HashMap<String, Integer> mMessagePoolOptions;
 	protected int mVersion = -1;
 	protected long mPingRTT = 0;
+	protected long mPingInterval = 1000;
+	protected int mRetransmitAttempts = 5;
+	protected int mReorderBufferSize = 0;
+	protected boolean mDeltaPayloads = false;
+	protected int mCompressionThreshold = 0;
+	protected ICompressionCodecFactory mCompressionCodecFactory = LZ4Codec.FACTORY;
+	protected int mMaxDecompressedSize = FrameCodec.DefaultMaxFrameSize;
+	protected boolean mHost = false;
+	protected int mMaxInputDelay = 8;
+	protected long mMaxTickLength = 250;
 	protected String mClientName = "default";
+	protected IPeerRegistry mPeerRegistry;
+	protected IRttEstimator mRttEstimator;
+	protected PooledBufferPool mBufferPool;
+	protected boolean mTrackBufferLeaks = false;
+	protected TraceRing mTraceRing;
 
 	// ===========================================================
 	// Constructors
@@ -37,6 +67,7 @@ public class BaseOptions implements IBaseOptions {
 
 	public BaseOptions() {
 		this.mMessagePoolOptions = new HashMap<String, Integer>();
+		this.mPeerRegistry = new PeerRegistry();
 	}
 
 	public BaseOptions(final IBaseOptions pBaseOptions) {
@@ -47,11 +78,31 @@ public class BaseOptions implements IBaseOptions {
 		this.mUDPPort = pBaseOptions.getUDPPort();
 		this.mStepsBeforeCrisis = pBaseOptions.getStepsBeforeCrisis();
 		this.mStandardTickLength = pBaseOptions.getStandardTickLength();
+		this.mMaxStepsPerUpdate = pBaseOptions.getMaxStepsPerUpdate();
 		this.mAckWindowSize = pBaseOptions.getAckWindowSize();
 		this.mVersion = pBaseOptions.getVersionNumber();
 		this.mBufferSize = pBaseOptions.getNetworkBufferSize();
+		this.mBundleSize = pBaseOptions.getBundleSize();
+		this.mReceiveBatchSize = pBaseOptions.getReceiveBatchSize();
+		this.mInputDelay = pBaseOptions.getInputDelay();
+		this.mMaxCommandSize = pBaseOptions.getMaxCommandSize();
 		this.mPingRTT = pBaseOptions.getPingRTT();
+		this.mPingInterval = pBaseOptions.getPingInterval();
+		this.mRetransmitAttempts = pBaseOptions.getRetransmitAttempts();
+		this.mReorderBufferSize = pBaseOptions.getReorderBufferSize();
+		this.mDeltaPayloads = pBaseOptions.isDeltaPayloads();
+		this.mCompressionThreshold = pBaseOptions.getCompressionThreshold();
+		this.mCompressionCodecFactory = pBaseOptions.getCompressionCodecFactory();
+		this.mMaxDecompressedSize = pBaseOptions.getMaxDecompressedSize();
+		this.mHost = pBaseOptions.isHost();
+		this.mMaxInputDelay = pBaseOptions.getMaxInputDelay();
+		this.mMaxTickLength = pBaseOptions.getMaxTickLength();
 		this.mClientName = pBaseOptions.getClientName();
+		this.mPeerRegistry = pBaseOptions.getPeerRegistry();
+		this.mRttEstimator = pBaseOptions.getRttEstimator();
+		this.mTrackBufferLeaks = pBaseOptions.isTrackBufferLeaks();
+		this.mBufferPool = pBaseOptions.getBufferPool();
+		this.mTraceRing = pBaseOptions.getTraceRing();
 		Iterator<Entry<String, Integer>> entries = pBaseOptions.getMessagePoolProperties().entrySet().iterator();
 		while (entries.hasNext()) {
 			Entry<String, Integer> entry = entries.next();
@@ -63,6 +114,16 @@ public class BaseOptions implements IBaseOptions {
 	// Methods for/from SuperClass/Interfaces
 	// ===========================================================
 
+	@Override
+	public void setMaxStepsPerUpdate(int pSteps) {
+		this.mMaxStepsPerUpdate = pSteps;
+	}
+
+	@Override
+	public int getMaxStepsPerUpdate() {
+		return this.mMaxStepsPerUpdate;
+	}
+
 	@Override
 	public void setStepsBeforeCrisis(int pStepsBeforeCrisis) {
 		this.mStepsBeforeCrisis = pStepsBeforeCrisis;
@@ -113,6 +174,46 @@ public class BaseOptions implements IBaseOptions {
 		return this.mBufferSize;
 	}
 
+	@Override
+	public void setBundleSize(int pSize) {
+		this.mBundleSize = pSize;
+	}
+
+	@Override
+	public int getBundleSize() {
+		return this.mBundleSize;
+	}
+
+	@Override
+	public void setReceiveBatchSize(int pSize) {
+		this.mReceiveBatchSize = pSize;
+	}
+
+	@Override
+	public int getReceiveBatchSize() {
+		return this.mReceiveBatchSize;
+	}
+
+	@Override
+	public void setInputDelay(int pSteps) {
+		this.mInputDelay = pSteps;
+	}
+
+	@Override
+	public int getInputDelay() {
+		return this.mInputDelay;
+	}
+
+	@Override
+	public void setMaxCommandSize(int pSize) {
+		this.mMaxCommandSize = pSize;
+	}
+
+	@Override
+	public int getMaxCommandSize() {
+		return this.mMaxCommandSize;
+	}
+
 	@Override
 	public void setHostIP(InetAddress pHostIP) {
 		this.mHostIP = pHostIP;
@@ -163,6 +264,106 @@ public class BaseOptions implements IBaseOptions {
 		return this.mPingRTT;
 	}
 
+	@Override
+	public void setPingInterval(long pInterval) {
+		this.mPingInterval = pInterval;
+	}
+
+	@Override
+	public long getPingInterval() {
+		return this.mPingInterval;
+	}
+
+	@Override
+	public void setRetransmitAttempts(int pAttempts) {
+		this.mRetransmitAttempts = pAttempts;
+	}
+
+	@Override
+	public int getRetransmitAttempts() {
+		return this.mRetransmitAttempts;
+	}
+
+	@Override
+	public void setReorderBufferSize(int pSize) {
+		this.mReorderBufferSize = pSize;
+	}
+
+	@Override
+	public int getReorderBufferSize() {
+		return this.mReorderBufferSize;
+	}
+
+	@Override
+	public void setDeltaPayloads(boolean pDeltaPayloads) {
+		this.mDeltaPayloads = pDeltaPayloads;
+	}
+
+	@Override
+	public boolean isDeltaPayloads() {
+		return this.mDeltaPayloads;
+	}
+
+	@Override
+	public void setCompressionThreshold(int pThreshold) {
+		this.mCompressionThreshold = pThreshold;
+	}
+
+	@Override
+	public int getCompressionThreshold() {
+		return this.mCompressionThreshold;
+	}
+
+	@Override
+	public void setCompressionCodecFactory(ICompressionCodecFactory pFactory) {
+		this.mCompressionCodecFactory = pFactory;
+	}
+
+	@Override
+	public ICompressionCodecFactory getCompressionCodecFactory() {
+		return this.mCompressionCodecFactory;
+	}
+
+	@Override
+	public void setMaxDecompressedSize(int pSize) {
+		this.mMaxDecompressedSize = pSize;
+	}
+
+	@Override
+	public int getMaxDecompressedSize() {
+		return this.mMaxDecompressedSize;
+	}
+
+	@Override
+	public void setHost(boolean pHost) {
+		this.mHost = pHost;
+	}
+
+	@Override
+	public boolean isHost() {
+		return this.mHost;
+	}
+
+	@Override
+	public void setMaxInputDelay(int pSteps) {
+		this.mMaxInputDelay = pSteps;
+	}
+
+	@Override
+	public int getMaxInputDelay() {
+		return this.mMaxInputDelay;
+	}
+
+	@Override
+	public void setMaxTickLength(long pStepLength) {
+		this.mMaxTickLength = pStepLength;
+	}
+
+	@Override
+	public long getMaxTickLength() {
+		return this.mMaxTickLength;
+	}
+
 	@Override
 	public void setClientName(String pClientName) {
 		this.mClientName = pClientName;
@@ -192,6 +393,63 @@ public class BaseOptions implements IBaseOptions {
 		return this.mMessagePoolOptions;
 	}
 
+	@Override
+	public void setPeerRegistry(IPeerRegistry pPeerRegistry) {
+		this.mPeerRegistry = pPeerRegistry;
+	}
+
+	@Override
+	public IPeerRegistry getPeerRegistry() {
+		return this.mPeerRegistry;
+	}
+
+	@Override
+	public void setRttEstimator(IRttEstimator pRttEstimator) {
+		this.mRttEstimator = pRttEstimator;
+	}
+
+	@Override
+	public synchronized IRttEstimator getRttEstimator() {
+		if (this.mRttEstimator == null) {
+			this.mRttEstimator = new RttEstimator(this.mPeerRegistry.getMaxPeers());
+		}
+		return this.mRttEstimator;
+	}
+
+	@Override
+	public void setBufferPool(PooledBufferPool pBufferPool) {
+		this.mBufferPool = pBufferPool;
+	}
+
+	@Override
+	public synchronized PooledBufferPool getBufferPool() {
+		if (this.mBufferPool == null) {
+			this.mBufferPool = new PooledBufferPool(PooledBufferPool.DefaultBufferCapacity,
+					PooledBufferPool.DefaultBuffersPerSlab, this.mTrackBufferLeaks);
+		}
+		return this.mBufferPool;
+	}
+
+	@Override
+	public void setTrackBufferLeaks(boolean pTrackBufferLeaks) {
+		this.mTrackBufferLeaks = pTrackBufferLeaks;
+	}
+
+	@Override
+	public boolean isTrackBufferLeaks() {
+		return this.mTrackBufferLeaks;
+	}
+
+	@Override
+	public void setTraceRing(TraceRing pTraceRing) {
+		this.mTraceRing = pTraceRing;
+	}
+
+	@Override
+	public TraceRing getTraceRing() {
+		return this.mTraceRing;
+	}
+
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
@@ -4,6 +4,11 @@ import java.net.InetAddress;
 import java.util.HashMap;
 
 import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePoolTags;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferPool;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
+import com.niffy.AndEngineLockStepEngine.packet.compression.ICompressionCodecFactory;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+import com.niffy.AndEngineLockStepEngine.peer.IRttEstimator;
 
 public interface IBaseOptions {
 	public void setVersionNumber(final int pVersionNumber);
@@ -34,6 +39,17 @@ public interface IBaseOptions {
 
 	public long getStandardTickLength();
 
+	/**
+	 * Most steps run in one frame to catch up after a slow frame, more than
+	 * that owed are dropped so the game slows down rather than spiralling.
+	 * 
+	 * @param pSteps
+	 *            {@link Integer} of steps.
+	 */
+	public void setMaxStepsPerUpdate(final int pSteps);
+
+	public int getMaxStepsPerUpdate();
+
 	public void setStepsBeforeCrisis(final int pStepsBeforeCrisis);
 
 	public int getStepsBeforeCrisis();
@@ -42,10 +58,177 @@ public interface IBaseOptions {
 
 	public int getNetworkBufferSize();
 
+	/**
+	 * Largest datagram UDP packets to the same peer are bundled in to,
+	 * <code>0</code> to send each packet on its own. Should stay under the
+	 * path MTU.
+	 * 
+	 * @param pSize
+	 *            {@link Integer} in bytes.
+	 */
+	public void setBundleSize(final int pSize);
+
+	public int getBundleSize();
+
+	/**
+	 * Most datagrams read off the socket each time it is ready, handed to the
+	 * communication thread together.
+	 * 
+	 * @param pSize
+	 *            {@link Integer} of datagrams, at least <code>1</code>
+	 */
+	public void setReceiveBatchSize(final int pSize);
+
+	public int getReceiveBatchSize();
+
+	/**
+	 * Steps between a command being given and it being run, so it has time to
+	 * reach every peer. At least <code>1</code>.
+	 * 
+	 * @param pSteps
+	 *            {@link Integer} of steps.
+	 */
+	public void setInputDelay(final int pSteps);
+
+	public int getInputDelay();
+
+	/**
+	 * Largest command data a peer can send for one step.
+	 * 
+	 * @param pSize
+	 *            {@link Integer} in bytes.
+	 */
+	public void setMaxCommandSize(final int pSize);
+
+	public int getMaxCommandSize();
+
+	/**
+	 * Round trip assumed for a peer until it has been measured.
+	 * 
+	 * @param pDuration
+	 *            {@link Long} in milliseconds.
+	 */
 	public void setPingRTT(final long pDuration);
 
 	public long getPingRTT();
 
+	/**
+	 * How often every peer is pinged to measure its round trip,
+	 * <code>0</code> to not ping.
+	 * 
+	 * @param pInterval
+	 *            {@link Long} in milliseconds.
+	 */
+	public void setPingInterval(final long pInterval);
+
+	public long getPingInterval();
+
+	/**
+	 * Times an unacked UDP packet is sent again, each after twice as long as
+	 * the last starting from the peers round trip timeout, before the peer is
+	 * reported out of sync. <code>0</code> to not send again.
+	 * 
+	 * @param pAttempts
+	 *            {@link Integer} of attempts.
+	 */
+	public void setRetransmitAttempts(final int pAttempts);
+
+	public int getRetransmitAttempts();
+
+	/**
+	 * Lockstep packets held per peer when ones sent before them are still
+	 * missing, so they are handed on in the order sent. <code>0</code> to hand
+	 * them on as they arrive.
+	 * 
+	 * @param pSize
+	 *            {@link Integer} of packets.
+	 */
+	public void setReorderBufferSize(final int pSize);
+
+	public int getReorderBufferSize();
+
+	/**
+	 * Send encapsulated UDP payloads to each peer as a delta from the last
+	 * one it acknowledged on the same intended flag, when that is smaller.
+	 * Every peer must have the same setting.
+	 * 
+	 * @param pDeltaPayloads
+	 *            {@link Boolean} <code>true</code> to send deltas.
+	 */
+	public void setDeltaPayloads(final boolean pDeltaPayloads);
+
+	public boolean isDeltaPayloads();
+
+	/**
+	 * Compress encapsulated payloads, UDP or TCP, of at least this many bytes
+	 * when that makes them smaller. Any peer can read compressed packets so
+	 * long as it has the same codec. <code>0</code> to never compress.
+	 * 
+	 * @param pThreshold
+	 *            {@link Integer} of bytes.
+	 */
+	public void setCompressionThreshold(final int pThreshold);
+
+	public int getCompressionThreshold();
+
+	/**
+	 * Makes the codec each communication thread compresses with, by default
+	 * {@link com.niffy.AndEngineLockStepEngine.packet.compression.LZ4Codec}
+	 * 
+	 * @param pFactory
+	 *            {@link ICompressionCodecFactory} every peer uses.
+	 */
+	public void setCompressionCodecFactory(final ICompressionCodecFactory pFactory);
+
+	public ICompressionCodecFactory getCompressionCodecFactory();
+
+	/**
+	 * Largest a compressed payload may claim to decompress to, anything
+	 * claiming more is dropped as malformed before a buffer is taken for it.
+	 * By default
+	 * {@link com.niffy.AndEngineLockStepEngine.threads.nio.FrameCodec#DefaultMaxFrameSize},
+	 * as nothing larger could be sent uncompressed over TCP either.
+	 * 
+	 * @param pSize
+	 *            {@link Integer} of bytes.
+	 */
+	public void setMaxDecompressedSize(final int pSize);
+
+	public int getMaxDecompressedSize();
+
+	/**
+	 * The host picks the tick length and input delay from the worst round
+	 * trip and tells every peer.
+	 * 
+	 * @param pHost
+	 *            <code>true</code> if we are the host.
+	 */
+	public void setHost(final boolean pHost);
+
+	public boolean isHost();
+
+	/**
+	 * Most the input delay is raised to before the tick length is raised
+	 * instead. Sizes the command buffer, so is fixed once the lockstep is
+	 * created.
+	 * 
+	 * @param pSteps
+	 *            {@link Integer} of steps.
+	 */
+	public void setMaxInputDelay(final int pSteps);
+
+	public int getMaxInputDelay();
+
+	/**
+	 * Longest tick length the host will pick, however bad the network.
+	 * 
+	 * @param pStepLength
+	 *            {@link Long} in milliseconds.
+	 */
+	public void setMaxTickLength(final long pStepLength);
+
+	public long getMaxTickLength();
+
 	public void setClientName(final String pClientName);
 
 	public String getClientName();
@@ -71,4 +254,63 @@ public interface IBaseOptions {
 	public int getPoolProperties(final String pTag);
 
 	public HashMap<String, Integer> getMessagePoolProperties();
+
+	/**
+	 * Set the registry shared by every thread, must be done before any thread
+	 * is created.
+	 * 
+	 * @param pPeerRegistry
+	 *            {@link IPeerRegistry} to use.
+	 */
+	public void setPeerRegistry(final IPeerRegistry pPeerRegistry);
+
+	public IPeerRegistry getPeerRegistry();
+
+	/**
+	 * Set the round trip estimates shared by every thread, one is made for the
+	 * {@link IPeerRegistry} if not set.
+	 * 
+	 * @param pRttEstimator
+	 *            {@link IRttEstimator} to use.
+	 */
+	public void setRttEstimator(final IRttEstimator pRttEstimator);
+
+	public IRttEstimator getRttEstimator();
+
+	/**
+	 * Set the pool received packets are read in to, shared by every selector.
+	 * One is made from {@link #isTrackBufferLeaks()} if not set.
+	 * 
+	 * @param pBufferPool
+	 *            {@link PooledBufferPool} to use.
+	 */
+	public void setBufferPool(final PooledBufferPool pBufferPool);
+
+	public PooledBufferPool getBufferPool();
+
+	/**
+	 * Record where every received packet buffer is obtained, so
+	 * {@link PooledBufferPool#logLeaks()} can say which were never released.
+	 * Costs a stack trace per packet, for debugging only. Must be set before
+	 * {@link #getBufferPool()} is first called.
+	 * 
+	 * @param pTrackBufferLeaks
+	 *            {@link Boolean} <code>true</code> to track.
+	 */
+	public void setTrackBufferLeaks(final boolean pTrackBufferLeaks);
+
+	public boolean isTrackBufferLeaks();
+
+	/**
+	 * Record send, receive and ack events in to a {@link TraceRing}, which is
+	 * dumped when a peer falls out of sync. Must be set before the threads
+	 * are made.
+	 * 
+	 * @param pTraceRing
+	 *            {@link TraceRing} to record in to, <code>null</code> to not
+	 *            trace, the default.
+	 */
+	public void setTraceRing(final TraceRing pTraceRing);
+
+	public TraceRing getTraceRing();
 }
@@ -3,10 +3,48 @@ package com.niffy.AndEngineLockStepEngine.packet;
 import java.net.InetAddress;
 import java.util.ArrayList;
 
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindowCrisisListener;
 
 public interface IPacketHandler extends IGenericWindowCrisisListener, ISendMessage {
-	public void reconstructData(final String pAddress, final byte[] pData);
+	/**
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id the packet came from.
+	 * @param pData
+	 *            {@link Byte} array of the whole packet.
+	 */
+	public void reconstructData(final int pPeerID, final byte[] pData);
+
+	/**
+	 * The buffer is only borrowed for the call, anything which keeps hold of
+	 * the data past it takes its own reference.
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id the packet came from.
+	 * @param pBuffer
+	 *            {@link PooledBuffer} of the whole packet, still to be
+	 *            released by the caller.
+	 */
+	public void reconstructData(final int pPeerID, final PooledBuffer pBuffer);
+
+	/**
+	 * {@link #sendMessage(java.net.InetAddress, IMessage, boolean)} when the
+	 * peer id is already known.
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id to send to.
+	 * @param pMessage
+	 *            {@link IMessage} to send.
+	 * @param pTCP
+	 *            {@link Boolean} <code>true</code> to send by TCP
+	 *            <code>false</code> by UDP
+	 * @return {@link Integer} sequence number used, <code>-1</code> if the
+	 *         peer is not known.
+	 */
+	public <T extends IMessage> int sendMessage(final int pPeerID, final T pMessage, final boolean pTCP);
 
 	public void addClient(final InetAddress pAddress);
 
@@ -15,4 +53,48 @@ public interface IPacketHandler extends IGenericWindowCrisisListener, ISendMessa
 	public void removeClient(final InetAddress pAddress);
 	
 	public void lockstepIncrement(final int pIncrement);
+
+	/**
+	 * Ping every client to measure its round trip, then ask to be called again
+	 * after {@link IBaseOptions#getPingInterval()}.
+	 */
+	public void pingPeers();
+
+	/**
+	 * Send every peers bundled UDP packets.
+	 */
+	public void flushBundles();
+
+	/**
+	 * Send again every unacked UDP packet whose timeout has passed, then ask
+	 * to be called again when the next is due.
+	 */
+	public void retransmit();
+
+	/**
+	 * Hand lockstep packets held while the lockstep transport was full on to
+	 * it, then ask to be called again if any are still held.
+	 */
+	public void flushLockstep();
+
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} id of peer.
+	 * @return {@link Integer} version the peer last sent in a full header,
+	 *         <code>-1</code> until it has sent one or if it is not known.
+	 */
+	public int getPeerVersion(final int pPeerID);
+
+	/**
+	 * Send an already serialised packet again, bundled with any others
+	 * resent to the same peer in this {@link #retransmit()} pass.
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id of peer.
+	 * @param pPacket
+	 *            {@link Byte} array of the packet, header and all.
+	 * @param pLength
+	 *            {@link Integer} of bytes in <code>pPacket</code>
+	 */
+	public void resend(final int pPeerID, final byte[] pPacket, final int pLength);
 }
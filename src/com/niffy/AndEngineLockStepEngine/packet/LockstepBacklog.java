@@ -0,0 +1,192 @@
+package com.niffy.AndEngineLockStepEngine.packet;
+
+import java.net.InetAddress;
+
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+
+/**
+ * Lockstep packets which did not fit in the {@link IEventTransport}, held in
+ * the order they arrived until the lockstep drains enough to take them.
+ * <p>
+ * A held packet keeps a reference to the {@link PooledBuffer} it arrived
+ * in, rather than a copy. Grows when full, as the lockstep stalling stops
+ * peers sending more than a few steps ahead.
+ * <p>
+ * Communication thread only.
+ */
+public class LockstepBacklog {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected int[] mPeerIDs;
+	protected InetAddress[] mAddresses;
+	protected int[] mSequences;
+	protected int[] mIntended;
+	protected int[] mFlags;
+	protected PooledBuffer[] mBuffers;
+	protected int[] mOffsets;
+	protected int[] mLengths;
+	/**
+	 * Index of the oldest held packet.
+	 */
+	protected int mHead = 0;
+	protected int mCount = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * @param pCapacity
+	 *            {@link Integer} packets held before growing.
+	 */
+	public LockstepBacklog(final int pCapacity) {
+		this.allocate(Math.max(1, pCapacity));
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getCount() {
+		return this.mCount;
+	}
+
+	public int getPeerID() {
+		return this.mPeerIDs[this.mHead];
+	}
+
+	public InetAddress getAddress() {
+		return this.mAddresses[this.mHead];
+	}
+
+	/**
+	 * @return {@link Integer} sequence of the oldest held packet.
+	 */
+	public int getSequence() {
+		return this.mSequences[this.mHead];
+	}
+
+	public int getIntended() {
+		return this.mIntended[this.mHead];
+	}
+
+	public int getFlag() {
+		return this.mFlags[this.mHead];
+	}
+
+	public PooledBuffer getBuffer() {
+		return this.mBuffers[this.mHead];
+	}
+
+	/**
+	 * @return {@link Integer} start of the oldest held packet in
+	 *         {@link PooledBuffer#getData()}
+	 */
+	public int getOffset() {
+		return this.mOffsets[this.mHead];
+	}
+
+	public int getLength() {
+		return this.mLengths[this.mHead];
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Keep a packet behind those already held.
+	 *
+	 * @param pBuffer
+	 *            {@link PooledBuffer} it points in to, retained until
+	 *            {@link #remove()}
+	 * @param pOffset
+	 *            {@link Integer} start of the packet in
+	 *            {@link PooledBuffer#getData()}
+	 * @param pLength
+	 *            {@link Integer} length of the packet.
+	 */
+	public void hold(final int pPeerID, final InetAddress pAddress, final int pSequence, final int pIntended,
+			final int pFlag, final PooledBuffer pBuffer, final int pOffset, final int pLength) {
+		if (this.mCount == this.mSequences.length) {
+			this.grow();
+		}
+		final int index = (this.mHead + this.mCount) % this.mSequences.length;
+		this.mPeerIDs[index] = pPeerID;
+		this.mAddresses[index] = pAddress;
+		this.mSequences[index] = pSequence;
+		this.mIntended[index] = pIntended;
+		this.mFlags[index] = pFlag;
+		this.mBuffers[index] = pBuffer.retain();
+		this.mOffsets[index] = pOffset;
+		this.mLengths[index] = pLength;
+		this.mCount++;
+	}
+
+	/**
+	 * Drop the oldest held packet, once it has been handed on.
+	 */
+	public void remove() {
+		this.mBuffers[this.mHead].release();
+		this.mBuffers[this.mHead] = null;
+		this.mAddresses[this.mHead] = null;
+		this.mHead = (this.mHead + 1) % this.mSequences.length;
+		this.mCount--;
+	}
+
+	/**
+	 * Drop everything held.
+	 */
+	public void clear() {
+		while (this.mCount > 0) {
+			this.remove();
+		}
+		this.mHead = 0;
+	}
+
+	protected void grow() {
+		final int[] peerIDs = this.mPeerIDs;
+		final InetAddress[] addresses = this.mAddresses;
+		final int[] sequences = this.mSequences;
+		final int[] intended = this.mIntended;
+		final int[] flags = this.mFlags;
+		final PooledBuffer[] buffers = this.mBuffers;
+		final int[] offsets = this.mOffsets;
+		final int[] lengths = this.mLengths;
+		this.allocate(sequences.length * 2);
+		for (int i = 0; i < this.mCount; i++) {
+			final int from = (this.mHead + i) % sequences.length;
+			this.mPeerIDs[i] = peerIDs[from];
+			this.mAddresses[i] = addresses[from];
+			this.mSequences[i] = sequences[from];
+			this.mIntended[i] = intended[from];
+			this.mFlags[i] = flags[from];
+			this.mBuffers[i] = buffers[from];
+			this.mOffsets[i] = offsets[from];
+			this.mLengths[i] = lengths[from];
+		}
+		this.mHead = 0;
+	}
+
+	protected void allocate(final int pCapacity) {
+		this.mPeerIDs = new int[pCapacity];
+		this.mAddresses = new InetAddress[pCapacity];
+		this.mSequences = new int[pCapacity];
+		this.mIntended = new int[pCapacity];
+		this.mFlags = new int[pCapacity];
+		this.mBuffers = new PooledBuffer[pCapacity];
+		this.mOffsets = new int[pCapacity];
+		this.mLengths = new int[pCapacity];
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
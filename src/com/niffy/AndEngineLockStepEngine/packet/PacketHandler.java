@@ -1,12 +1,11 @@
 package com.niffy.AndEngineLockStepEngine.packet;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,13 +16,31 @@ import android.os.Message;
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
 import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
 import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.flags.TraceFlag;
+import com.niffy.AndEngineLockStepEngine.messages.HeaderCodec;
 import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 import com.niffy.AndEngineLockStepEngine.messages.MessageAck;
 import com.niffy.AndEngineLockStepEngine.messages.MessageAckMulti;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAckRange;
+import com.niffy.AndEngineLockStepEngine.messages.MessageBundle;
+import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulated;
+import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulatedDelta;
 import com.niffy.AndEngineLockStepEngine.messages.MessageError;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePing;
+import com.niffy.AndEngineLockStepEngine.messages.MessagePingAck;
+import com.niffy.AndEngineLockStepEngine.messages.SequenceNumber;
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.ITCEvent;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
+import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
 import com.niffy.AndEngineLockStepEngine.packet.ack.AckWindowManager;
 import com.niffy.AndEngineLockStepEngine.packet.ack.IAckWindowManager;
+import com.niffy.AndEngineLockStepEngine.packet.compression.ICompressionCodec;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+import com.niffy.AndEngineLockStepEngine.peer.IRttEstimator;
 import com.niffy.AndEngineLockStepEngine.threads.ICommunicationThread;
 
 public class PacketHandler implements IPacketHandler {
@@ -31,6 +48,22 @@ public class PacketHandler implements IPacketHandler {
 	// Constants
 	// ===========================================================
 	private final Logger log = LoggerFactory.getLogger(PacketHandler.class);
+	/**
+	 * Packets held while the lockstep transport is full before the
+	 * {@link LockstepBacklog} grows.
+	 */
+	protected static final int LOCKSTEP_BACKLOG_SIZE = 64;
+	/**
+	 * Milliseconds between tries to hand held packets to a full lockstep
+	 * transport. Well under a frame, which is how often the lockstep drains.
+	 */
+	protected static final long LOCKSTEP_RETRY_DELAY = 4;
+	/**
+	 * First version which does not track sequences on unreliable network
+	 * packets, so acks and pings between two such peers need not take a
+	 * sequence of their own.
+	 */
+	public static final int UNSEQUENCED_VERSION = 2;
 
 	// ===========================================================
 	// Fields
@@ -39,10 +72,83 @@ public class PacketHandler implements IPacketHandler {
 	final protected IBaseOptions mBaseOptions;
 	final protected IAckWindowManager mAckManager;
 	final protected ArrayList<InetAddress> mClients;
+	final protected IPeerRegistry mPeerRegistry;
+	final protected IRttEstimator mRttEstimator;
+	/**
+	 * Next {@link SequenceNumber} to send, per peer id. Only touched on the
+	 * communication thread.
+	 */
+	protected int[] mNextSequence;
+	/**
+	 * Next {@link SequenceNumber} for addresses without a peer id.
+	 */
+	protected int mUnregisteredSequence = 0;
+	/**
+	 * UDP packets waiting to go out, indexed by peer id. Only touched on the
+	 * communication thread.
+	 */
+	protected MessageBundle[] mBundles;
+	protected int mBundleSize;
+	protected boolean mFlushRequested = false;
+	/**
+	 * Send {@link HeaderCodec} compact headers to peers new enough to read
+	 * them.
+	 */
+	protected boolean mCompactHeaders;
+	/**
+	 * Per peer id, version from the last full header and highest of our
+	 * sequences acknowledged. <code>-1</code> until known.
+	 */
+	protected int[] mPeerVersions;
+	protected int[] mLargestAcked;
+	/**
+	 * Per peer id, sequences received from them.
+	 */
+	protected ReceiveWindow[] mReceived;
+	/**
+	 * Per peer id, lockstep packets waiting on a gap before them.
+	 * <code>null</code> entries when {@link IBaseOptions#getReorderBufferSize()}
+	 * is <code>0</code>.
+	 */
+	protected ReorderBuffer[] mReorder;
+	/**
+	 * Per peer id, encapsulated payloads sent and received, as baselines for
+	 * deltas. <code>null</code> entries unless
+	 * {@link IBaseOptions#isDeltaPayloads()}
+	 */
+	protected PayloadHistory[] mDeltaSent;
+	protected PayloadHistory[] mDeltaReceived;
+	/**
+	 * {@link IBaseOptions#getCompressionThreshold()}, and the codec made on
+	 * first use with what it compresses in to.
+	 */
+	protected final int mCompressionThreshold;
+	protected ICompressionCodec mCodec;
+	protected byte[] mCompressBuffer = new byte[0];
 	/**
-	 * Sequence number for packets
+	 * A {@link ITCFlags#PING_PEERS} is waiting on the thread.
 	 */
-	protected AtomicInteger mSequence = new AtomicInteger(0);
+	protected boolean mPingScheduled = false;
+	/**
+	 * Packets resent to {@link #mResendPeer} in this {@link #retransmit()}
+	 * pass, <code>-1</code> when empty.
+	 */
+	protected final MessageBundle mResendBundle;
+	protected int mResendPeer = -1;
+	/**
+	 * A {@link ITCFlags#RETRANSMIT} is waiting on the thread.
+	 */
+	protected boolean mRetransmitScheduled = false;
+	/**
+	 * Lockstep packets which arrived while the lockstep transport was full,
+	 * and whether a {@link ITCFlags#FLUSH_LOCKSTEP} is waiting on the thread.
+	 */
+	protected final LockstepBacklog mLockstepBacklog;
+	protected boolean mLockstepFlushScheduled = false;
+	/**
+	 * {@link IBaseOptions#getTraceRing()}, can be <code>null</code>
+	 */
+	protected final TraceRing mTrace;
 
 	// ===========================================================
 	// Constructors
@@ -51,34 +157,57 @@ public class PacketHandler implements IPacketHandler {
 	public PacketHandler(final ICommunicationThread pParent, final IBaseOptions pBaseOptions) {
 		this.mThread = pParent;
 		this.mBaseOptions = pBaseOptions;
+		this.mPeerRegistry = this.mBaseOptions.getPeerRegistry();
+		this.mRttEstimator = this.mBaseOptions.getRttEstimator();
+		this.mTrace = this.mBaseOptions.getTraceRing();
 		this.mAckManager = new AckWindowManager(this, this.mBaseOptions.getStepsBeforeCrisis(),
-				this.mBaseOptions.getAckWindowSize(), this);
+				this.mBaseOptions.getAckWindowSize(), this.mPeerRegistry.getMaxPeers(), this, this.mRttEstimator,
+				this.mBaseOptions.getRetransmitAttempts());
 		this.mClients = new ArrayList<InetAddress>();
+		this.mLockstepBacklog = new LockstepBacklog(LOCKSTEP_BACKLOG_SIZE);
+		this.mBundleSize = this.mBaseOptions.getBundleSize();
+		this.mBundles = new MessageBundle[this.mPeerRegistry.getMaxPeers()];
+		this.mResendBundle = new MessageBundle(Math.max(this.mBundleSize, this.mBaseOptions.getNetworkBufferSize()));
+		this.mCompactHeaders = this.mBaseOptions.getVersionNumber() >= HeaderCodec.COMPACT_HEADER_VERSION;
+		this.mCompressionThreshold = this.mBaseOptions.getCompressionThreshold();
+		this.mPeerVersions = new int[this.mPeerRegistry.getMaxPeers()];
+		this.mLargestAcked = new int[this.mPeerRegistry.getMaxPeers()];
+		this.mNextSequence = new int[this.mPeerRegistry.getMaxPeers()];
+		this.mReceived = new ReceiveWindow[this.mPeerRegistry.getMaxPeers()];
+		this.mReorder = new ReorderBuffer[this.mPeerRegistry.getMaxPeers()];
+		this.mDeltaSent = new PayloadHistory[this.mPeerRegistry.getMaxPeers()];
+		this.mDeltaReceived = new PayloadHistory[this.mPeerRegistry.getMaxPeers()];
+		for (int i = 0; i < this.mReceived.length; i++) {
+			this.mReceived[i] = new ReceiveWindow();
+			if (this.mBaseOptions.getReorderBufferSize() > 0) {
+				this.mReorder[i] = new ReorderBuffer(this.mBaseOptions.getReorderBufferSize());
+			}
+			if (this.mBaseOptions.isDeltaPayloads()) {
+				this.mDeltaSent[i] = new PayloadHistory();
+				this.mDeltaReceived[i] = new PayloadHistory();
+			}
+		}
+		for (int i = 0; i < this.mPeerVersions.length; i++) {
+			this.resetPeer(i);
+		}
 	}
 
 	// ===========================================================
 	// Methods for/from SuperClass/Interfaces
 	// ===========================================================
 	@Override
-	public void reconstructData(String pAddress, byte[] pData) {
-		try {
-			InetAddress addressCast = InetAddress.getByName(pAddress);
-			final ByteArrayInputStream bInput = new ByteArrayInputStream(pData);
-			DataInputStream dis = new DataInputStream(bInput);
-			final int version = dis.readInt();
-			final int sequence = dis.readInt();
-			final boolean requireAck = dis.readBoolean();
-			final int intended = dis.readInt();
-			final int flag = dis.readInt();
-			this.handleIncomingPacket(addressCast, version, sequence, requireAck, intended, flag, dis, pData);
-		} catch (UnknownHostException e) {
-			log.error("Could not reconstruct data as could not cast address: {}", pAddress, e);
-			/* TODO handle error */
-		} catch (IOException e) {
-			log.error("Could not reconstruct data. Error with input stream. Address: {}", pAddress, e);
-			log.debug("Could not reconstruct data. Error with input stream. Data: {}", pData);
-			/* TODO handle error */
+	public void reconstructData(int pPeerID, byte[] pData) {
+		this.reconstructData(pPeerID, PooledBuffer.wrap(pData));
+	}
+
+	@Override
+	public void reconstructData(int pPeerID, PooledBuffer pBuffer) {
+		final InetAddress address = this.mPeerRegistry.getAddress(pPeerID);
+		if (address == null) {
+			log.warn("Could not reconstruct data as peer: {} is not registered", pPeerID);
+			return;
 		}
+		this.reconstructData(pPeerID, address, pBuffer, pBuffer.getOffset(), pBuffer.getLength(), true);
 	}
 
 	@Override
@@ -88,13 +217,17 @@ public class PacketHandler implements IPacketHandler {
 
 	@Override
 	public <T extends IMessage> int sendMessage(InetAddress pAddress, T pMessage, boolean pTCP) {
-		final int pSequence = this.mSequence.getAndIncrement();
-		pMessage.setSequence(pSequence);
-		if (pMessage.getRequireAck()) {
-			this.mAckManager.addAwaitingAck(pAddress, pSequence);
+		return this.sendMessage(this.mPeerRegistry.getID(pAddress), pAddress, pMessage, pTCP);
+	}
+
+	@Override
+	public <T extends IMessage> int sendMessage(int pPeerID, T pMessage, boolean pTCP) {
+		final InetAddress address = this.mPeerRegistry.getAddress(pPeerID);
+		if (address == null) {
+			log.warn("Could not send message as peer: {} is not registered", pPeerID);
+			return -1;
 		}
-		this.mThread.sendMessage(pAddress, pMessage, pTCP);
-		return pSequence;
+		return this.sendMessage(pPeerID, address, pMessage, pTCP);
 	}
 
 	@Override
@@ -109,8 +242,15 @@ public class PacketHandler implements IPacketHandler {
 
 	@Override
 	public void addClient(InetAddress pAddress) {
+		final int peerID = this.mPeerRegistry.register(pAddress);
+		if (peerID == IPeerRegistry.NO_PEER) {
+			log.error("Could not add client: {} as could not register it", pAddress);
+			return;
+		}
 		this.mClients.add(pAddress);
-		this.mAckManager.addClient(pAddress);
+		this.mAckManager.addClient(peerID, pAddress);
+		this.mRttEstimator.reset(peerID);
+		this.schedulePing(0);
 	}
 
 	@Override
@@ -120,13 +260,93 @@ public class PacketHandler implements IPacketHandler {
 
 	@Override
 	public void removeClient(InetAddress pAddress) {
+		final int peerID = this.mPeerRegistry.getID(pAddress);
 		this.mClients.remove(pAddress);
-		this.mAckManager.removeClient(pAddress);
+		this.mAckManager.removeClient(peerID);
+		if (this.isPeer(peerID)) {
+			this.mBundles[peerID] = null;
+			this.resetPeer(peerID);
+		}
 	}
 
 	@Override
 	public void lockstepIncrement(int pIncrement) {
 		this.mAckManager.slide(pIncrement);
+		/* The lockstep has just drained, so there is likely room */
+		this.releaseBacklog();
+		this.releaseReordered(System.nanoTime());
+		this.flushBundles();
+	}
+
+	@Override
+	public void pingPeers() {
+		this.mPingScheduled = false;
+		final int count = this.mClients.size();
+		for (int i = 0; i < count; i++) {
+			final InetAddress address = this.mClients.get(i);
+			final MessagePing ping = (MessagePing) this.obtainMessage(MessageFlag.PING);
+			ping.setIntended(IntendedFlag.NETWORK);
+			ping.setRequireAck(false);
+			ping.setTimestamp(System.nanoTime());
+			this.sendMessage(this.mPeerRegistry.getID(address), address, ping, false);
+			this.recycleMessage(ping);
+		}
+		this.schedulePing(this.mBaseOptions.getPingInterval());
+	}
+
+	@Override
+	public void flushBundles() {
+		this.mFlushRequested = false;
+		for (int i = 0; i < this.mBundles.length; i++) {
+			final MessageBundle bundle = this.mBundles[i];
+			if (bundle != null && !bundle.isEmpty()) {
+				this.flushBundle(i, bundle);
+			}
+		}
+	}
+
+	@Override
+	public void retransmit() {
+		this.mRetransmitScheduled = false;
+		final long next = this.mAckManager.retransmit(System.nanoTime());
+		this.flushResendBundle();
+		if (next >= 0) {
+			this.scheduleRetransmit(next);
+		}
+	}
+
+	@Override
+	public void flushLockstep() {
+		this.mLockstepFlushScheduled = false;
+		this.releaseBacklog();
+		if (this.mLockstepBacklog.getCount() > 0) {
+			this.scheduleLockstepFlush();
+		}
+	}
+
+	@Override
+	public int getPeerVersion(final int pPeerID) {
+		return this.isPeer(pPeerID) ? this.mPeerVersions[pPeerID] : -1;
+	}
+
+	@Override
+	public void resend(int pPeerID, byte[] pPacket, int pLength) {
+		if (!this.mResendBundle.canHold(pLength)) {
+			final MessageBundle bundle = new MessageBundle(MessageBundle.HEADER_SIZE
+					+ MessageBundle.ENTRY_HEADER_SIZE + pLength);
+			bundle.add(pPacket, 0, pLength);
+			this.flushBundle(pPeerID, bundle);
+			return;
+		}
+		if (this.mResendPeer != pPeerID || !this.mResendBundle.fits(pLength)) {
+			this.flushResendBundle();
+		}
+		this.mResendPeer = pPeerID;
+		this.mResendBundle.add(pPacket, 0, pLength);
+		if (!this.sendsBundles(pPeerID)) {
+			/* A bundle of one is written as the packet alone */
+			this.flushResendBundle();
+		}
 	}
 
 	// ===========================================================
@@ -136,94 +356,822 @@ public class PacketHandler implements IPacketHandler {
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	protected <T extends IMessage> int sendMessage(final int pPeerID, final InetAddress pAddress, final T pPayload,
+			final boolean pTCP) {
+		final int pSequence;
+		if (this.isUnsequenced(pPeerID, pPayload)) {
+			pSequence = this.lastSequence(pPeerID);
+		} else {
+			pSequence = this.nextSequence(pPeerID);
+		}
+		IMessage pMessage = pPayload;
+		if (pPayload.getMessageFlag() == MessageFlag.ENCAPSULATED && this.isPeer(pPeerID)
+				&& this.mDeltaSent[pPeerID] != null) {
+			pMessage = this.encodeDelta(pPeerID, pSequence, (MessageEncapsulated) pPayload, pTCP);
+		}
+		if (pMessage.getMessageFlag() == MessageFlag.ENCAPSULATED && this.mCompressionThreshold > 0) {
+			pMessage = this.compress((MessageEncapsulated) pMessage);
+		}
+		pMessage.setSequence(pSequence);
+		pMessage.setVersion(this.mBaseOptions.getVersionNumber());
+		pMessage.setHeaderSequenceBytes(0);
+		if (pMessage.getRequireAck() && !pTCP) {
+			this.addAwaitingAck(pPeerID, pSequence, pPayload, pMessage);
+		} else if (pMessage.getRequireAck()) {
+			this.mAckManager.addAwaitingAck(pPeerID, pSequence);
+		}
+		if (!pTCP && this.sendsCompactHeaders(pPeerID)) {
+			pMessage.setHeaderSequenceBytes(HeaderCodec.getSequenceBytes(pSequence, this.mLargestAcked[pPeerID]));
+		}
+		TraceRing.trace(this.mTrace, TraceFlag.SEND, pPeerID, pSequence);
+		if (pTCP || !this.bundle(pPeerID, pMessage)) {
+			this.mThread.sendMessage(pAddress, pMessage, pTCP);
+		}
+		if (pMessage != pPayload) {
+			pMessage.setCompressed(false);
+			this.recycleMessage(pMessage);
+		}
+		return pSequence;
+	}
+
+	/**
+	 * Keep a reliable UDP packet to resend until acked. Kept with a full
+	 * header, a compact one depends on what is acked by the time it is
+	 * resent. A delta is kept as the full payload instead, by the time it is
+	 * resent the peer may have let its baseline go.
+	 * 
+	 * @param pPayload
+	 *            {@link IMessage} as given to send.
+	 * @param pMessage
+	 *            {@link IMessage} actually sent, with its sequence and
+	 *            version set.
+	 */
+	protected void addAwaitingAck(final int pPeerID, final int pSequence, final IMessage pPayload,
+			final IMessage pMessage) {
+		IMessage retained = pMessage;
+		if (pMessage.getMessageFlag() == MessageFlag.ENCAPSULATED_DELTA) {
+			retained = pPayload;
+			if (this.mCompressionThreshold > 0) {
+				retained = this.compress((MessageEncapsulated) pPayload);
+			}
+			retained.setSequence(pSequence);
+			retained.setVersion(pMessage.getVersion());
+			retained.setHeaderSequenceBytes(0);
+		}
+		if (this.mAckManager.addAwaitingAck(pPeerID, pSequence, retained)) {
+			this.scheduleRetransmit(this.mAckManager.getRetransmitTimeout(pPeerID));
+		}
+		if (retained != pMessage && retained != pPayload) {
+			retained.setCompressed(false);
+			this.recycleMessage(retained);
+		}
+	}
+
+	/**
+	 * Keep the payload as a possible baseline, and if the peer has
+	 * acknowledged one on the same intended flag recently, send the payload
+	 * as a delta from it instead.
+	 * 
+	 * @return {@link IMessage} to send, either <code>pMessage</code> or a
+	 *         {@link MessageEncapsulatedDelta} to recycle once sent.
+	 */
+	protected IMessage encodeDelta(final int pPeerID, final int pSequence, final MessageEncapsulated pMessage,
+			final boolean pTCP) {
+		final PayloadHistory history = this.mDeltaSent[pPeerID];
+		final byte[] data = pMessage.getData();
+		final int offset = pMessage.getDataOffset();
+		final int size = pMessage.getDataSize();
+		IMessage outgoing = pMessage;
+		/* A baseline must be acked, so only reliable UDP is worth trying */
+		if (!pTCP && pMessage.getRequireAck() && size <= MessageEncapsulatedDelta.MaxSize) {
+			final int baseline = history.findBaseline(pMessage.getIntended());
+			if (baseline != -1) {
+				final MessageEncapsulatedDelta delta = (MessageEncapsulatedDelta) this
+						.obtainMessage(MessageFlag.ENCAPSULATED_DELTA);
+				if (delta.setDelta(history.getSequence(baseline), history.getPayload(baseline),
+						history.getLength(baseline), data, offset, size)) {
+					delta.setIntended(pMessage.getIntended());
+					delta.setRequireAck(true);
+					outgoing = delta;
+				} else {
+					this.recycleMessage(delta);
+				}
+			}
+		}
+		history.add(pSequence, pMessage.getIntended(), data, offset, size);
+		return outgoing;
+	}
 
-	protected void handleIncomingPacket(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) throws IOException {
+	/**
+	 * Compress a payload of at least {@link #mCompressionThreshold} bytes,
+	 * sent as the original size then the compressed bytes in place of the
+	 * data, if that is smaller.
+	 * 
+	 * @return {@link IMessage} to send, either <code>pMessage</code> or a
+	 *         compressed {@link MessageEncapsulated} to recycle once sent.
+	 */
+	protected IMessage compress(final MessageEncapsulated pMessage) {
+		final int size = pMessage.getDataSize();
+		/* The original size takes 4 bytes, so anything less than 5 smaller is not worth it */
+		final int limit = size - 5;
+		if (size < this.mCompressionThreshold || limit <= 0) {
+			return pMessage;
+		}
+		if (this.mCodec == null) {
+			this.mCodec = this.mBaseOptions.getCompressionCodecFactory().create();
+		}
+		if (this.mCompressBuffer.length < 4 + limit) {
+			this.mCompressBuffer = new byte[4 + this.mCodec.maxCompressedLength(size)];
+		}
+		final int compressed = this.mCodec.compress(pMessage.getData(), pMessage.getDataOffset(), size,
+				this.mCompressBuffer, 4, limit);
+		if (compressed < 0) {
+			return pMessage;
+		}
+		ByteBuffer.wrap(this.mCompressBuffer).putInt(size);
+		final MessageEncapsulated outgoing = (MessageEncapsulated) this.obtainMessage(MessageFlag.ENCAPSULATED);
+		outgoing.setData(this.mCompressBuffer, 4 + compressed);
+		outgoing.setIntended(pMessage.getIntended());
+		outgoing.setRequireAck(pMessage.getRequireAck());
+		outgoing.setCompressed(true);
+		return outgoing;
+	}
+
+	/**
+	 * Rebuild a packet whose body was compressed by
+	 * {@link #compress(MessageEncapsulated)} in to a new {@link PooledBuffer}
+	 * with a full header, and handle that instead. If it does not decompress,
+	 * or claims to be larger than {@link IBaseOptions#getMaxDecompressedSize()},
+	 * it is not acked, nor marked received.
+	 */
+	protected void decompress(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput)
+			throws IOException {
+		final int length = (pDataInput.remaining() >= 8) ? pDataInput.getInt() - 4 : -1;
+		final int size = (length >= 0) ? pDataInput.getInt() : -1;
+		/* No codec expands more than 255 to 1, so anything claiming more, or more than allowed, is malformed */
+		if (length < 0 || length > pDataInput.remaining() || size < 0 || size > length * 255L + 16
+				|| size > this.mBaseOptions.getMaxDecompressedSize()) {
+			final Object[] pArray = { pSequence, pFrom, length, size };
+			log.error("Could not decompress: {} from: {} as it is malformed. Length: {} Size: {}", pArray);
+			this.mReceived[pPeerID].forget(pSequence);
+			return;
+		}
+		if (this.mCodec == null) {
+			this.mCodec = this.mBaseOptions.getCompressionCodecFactory().create();
+		}
+		final int body = MessageEncapsulated.HEADER_SIZE + 4;
+		final PooledBuffer packet = this.mBaseOptions.getBufferPool().obtain(body + size);
+		try {
+			if (!this.mCodec.decompress(pDataInput.array(), pDataInput.arrayOffset() + pDataInput.position(), length,
+					packet.getData(), packet.getOffset() + body, size)) {
+				log.error("Could not decompress: {} from: {} as it is malformed", pSequence, pFrom);
+				this.mReceived[pPeerID].forget(pSequence);
+				return;
+			}
+			packet.setLength(body + size);
+			final ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength())
+					.slice();
+			this.writeHeader(buffer, pVersion, pSequence, pRequireAck, pIntended, pFlag);
+			buffer.putInt(size);
+			buffer.position(MessageEncapsulated.HEADER_SIZE);
+			this.receive(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, buffer, packet);
+		} finally {
+			packet.release();
+		}
+	}
+
+	/**
+	 * Full header, as {@link IMessage#writeTo(ByteBuffer)}, for a packet
+	 * rebuilt on arrival.
+	 */
+	protected void writeHeader(final ByteBuffer pBuffer, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag) {
+		pBuffer.putInt(pVersion);
+		pBuffer.putInt(pSequence);
+		pBuffer.put((byte) (pRequireAck ? MessageEncapsulated.HEADER_REQUIRE_ACK : 0));
+		pBuffer.putInt(pIntended);
+		pBuffer.putInt(pFlag);
+	}
+
+	/**
+	 * Rebuild a {@link MessageFlag#ENCAPSULATED_DELTA} in to a full
+	 * {@link MessageFlag#ENCAPSULATED} packet in a new {@link PooledBuffer},
+	 * and handle that instead. If the baseline is not held it is not acked,
+	 * nor marked received, so the peer keeps resending until it gives up and
+	 * reports us out of sync.
+	 */
+	protected void decodeDelta(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final ByteBuffer pDataInput) throws IOException {
+		final PayloadHistory history = this.mDeltaReceived[pPeerID];
+		final MessageEncapsulatedDelta delta = (MessageEncapsulatedDelta) this
+				.obtainMessage(MessageFlag.ENCAPSULATED_DELTA);
+		try {
+			try {
+				delta.readFrom(pDataInput);
+			} catch (IOException e) {
+				this.mReceived[pPeerID].forget(pSequence);
+				throw e;
+			} catch (BufferUnderflowException e) {
+				this.mReceived[pPeerID].forget(pSequence);
+				throw e;
+			}
+			final int baseline = (history != null) ? history.find(delta.getBaseline()) : -1;
+			if (baseline == -1) {
+				final Object[] pArray = { pSequence, delta.getBaseline(), pFrom };
+				log.error("Could not rebuild delta: {} as baseline: {} from: {} is not held", pArray);
+				this.mReceived[pPeerID].forget(pSequence);
+				return;
+			}
+			final int body = MessageEncapsulated.HEADER_SIZE + 4;
+			final PooledBuffer packet = this.mBaseOptions.getBufferPool().obtain(body + delta.getSize());
+			try {
+				if (!delta.decode(history.getPayload(baseline), history.getLength(baseline), packet.getData(),
+						packet.getOffset() + body)) {
+					log.error("Could not rebuild delta: {} from: {} as it is malformed", pSequence, pFrom);
+					this.mReceived[pPeerID].forget(pSequence);
+					return;
+				}
+				packet.setLength(body + delta.getSize());
+				final ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength())
+						.slice();
+				this.writeHeader(buffer, pVersion, pSequence, pRequireAck, pIntended, MessageFlag.ENCAPSULATED);
+				buffer.putInt(delta.getSize());
+				buffer.position(MessageEncapsulated.HEADER_SIZE);
+				history.add(pSequence, pIntended, packet.getData(), packet.getOffset() + body, delta.getSize());
+				this.handleIncomingPacket(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended,
+						MessageFlag.ENCAPSULATED, buffer, packet);
+			} finally {
+				packet.release();
+			}
+		} finally {
+			this.recycleMessage(delta);
+		}
+	}
+
+	/**
+	 * A new packet, decompressed if need be.
+	 */
+	protected void receive(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) throws IOException {
+		if (pFlag == MessageFlag.ENCAPSULATED_DELTA) {
+			this.decodeDelta(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pDataInput);
+			return;
+		}
+		if (pFlag == MessageFlag.ENCAPSULATED && this.mDeltaReceived[pPeerID] != null) {
+			this.recordPayload(pPeerID, pSequence, pIntended, pDataInput);
+		}
+		this.handleIncomingPacket(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput,
+				pBuffer);
+	}
+
+	/**
+	 * Keep a full payload received, it may be a baseline for later deltas.
+	 */
+	protected void recordPayload(final int pPeerID, final int pSequence, final int pIntended,
+			final ByteBuffer pDataInput) {
+		final int position = pDataInput.position();
+		final int size = pDataInput.getInt(position);
+		if (size < 0 || position + 4 + size > pDataInput.limit()) {
+			return;
+		}
+		this.mDeltaReceived[pPeerID].add(pSequence, pIntended, pDataInput.array(),
+				pDataInput.arrayOffset() + position + 4, size);
+	}
+
+	/**
+	 * Add a UDP packet to the peers bundle, sending the bundle first if the
+	 * packet does not fit. The first packet bundled asks the thread to
+	 * {@link #flushBundles()} once it has worked through what is already
+	 * queued, so everything sent in that time shares datagrams.
+	 * 
+	 * @return <code>false</code> if the packet was not bundled and should be
+	 *         sent on its own, as it is to peers older than
+	 *         {@link MessageBundle#BUNDLE_VERSION}
+	 */
+	protected boolean bundle(final int pPeerID, final IMessage pMessage) {
+		final WeakThreadHandler<IHandlerMessage> handler = this.mThread.getHandler();
+		if (this.mBundleSize <= 0 || handler == null || !this.sendsBundles(pPeerID)) {
+			return false;
+		}
+		MessageBundle bundle = this.mBundles[pPeerID];
+		if (bundle == null) {
+			bundle = new MessageBundle(this.mBundleSize);
+			this.mBundles[pPeerID] = bundle;
+		}
+		if (!bundle.canHold(pMessage)) {
+			return false;
+		}
+		if (!bundle.fits(pMessage)) {
+			this.flushBundle(pPeerID, bundle);
+		}
+		bundle.add(pMessage);
+		if (!this.mFlushRequested) {
+			this.mFlushRequested = true;
+			final Message msg = handler.obtainMessage();
+			msg.what = ITCFlags.FLUSH_BUNDLES;
+			handler.sendMessage(msg);
+		}
+		return true;
+	}
+
+	/**
+	 * Only {@link #bundle(int, IMessage)} and
+	 * {@link #resend(int, byte[], int)} fill bundles, and both check
+	 * {@link #sendsBundles(int)}, so more than one packet only goes to a peer
+	 * that unpacks them.
+	 */
+	protected void flushBundle(final int pPeerID, final MessageBundle pBundle) {
+		final InetAddress address = this.mPeerRegistry.getAddress(pPeerID);
+		if (address != null) {
+			/* The bundles own sequence is never read */
+			pBundle.setVersion(this.mBaseOptions.getVersionNumber());
+			pBundle.setHeaderSequenceBytes(this.sendsCompactHeaders(pPeerID) ? 1 : 0);
+			TraceRing.trace(this.mTrace, TraceFlag.SEND_BUNDLE, pPeerID, pBundle.getCount());
+			this.mThread.sendMessage(address, pBundle, false);
+		} else {
+			log.warn("Dropping: {} bundled packets as peer: {} is no longer registered", pBundle.getCount(), pPeerID);
+		}
+		pBundle.clear();
+	}
+
+	/**
+	 * @param pBuffer
+	 *            {@link PooledBuffer} the packet is part of, anything passed
+	 *            on points in to this rather than copying.
+	 * @param pOffset
+	 *            {@link Integer} start of the packet in
+	 *            {@link PooledBuffer#getData()}
+	 * @param pLength
+	 *            {@link Integer} length of the packet.
+	 * @param pAllowBundle
+	 *            {@link Boolean} <code>false</code> when already unpacking a
+	 *            bundle, bundles are never nested.
+	 */
+	protected void reconstructData(final int pPeerID, final InetAddress pAddress, final PooledBuffer pBuffer,
+			final int pOffset, final int pLength, final boolean pAllowBundle) {
+		try {
+			final ByteBuffer buffer = ByteBuffer.wrap(pBuffer.getData(), pOffset, pLength).slice();
+			final int version;
+			final int sequence;
+			final boolean requireAck;
+			final boolean compressed;
+			final int intended;
+			final int flag;
+			final byte first = buffer.get(0);
+			if (HeaderCodec.isCompact(first)) {
+				buffer.position(1);
+				version = this.mPeerVersions[pPeerID];
+				requireAck = HeaderCodec.readRequireAck(first);
+				compressed = HeaderCodec.readCompressed(first);
+				intended = HeaderCodec.readIntended(first);
+				flag = buffer.get() & 0xFF;
+				sequence = HeaderCodec.readSequence(buffer, this.mReceived[pPeerID].getHighest());
+			} else {
+				version = buffer.getInt();
+				sequence = buffer.getInt();
+				final int bits = buffer.get();
+				requireAck = (bits & MessageEncapsulated.HEADER_REQUIRE_ACK) != 0;
+				compressed = (bits & MessageEncapsulated.HEADER_COMPRESSED) != 0;
+				intended = buffer.getInt();
+				flag = buffer.getInt();
+				this.mPeerVersions[pPeerID] = version;
+			}
+			if (flag != MessageFlag.BUNDLE) {
+				/* Acks and pings may reuse a sequence, so are neither recorded nor dropped */
+				final boolean sequenced = requireAck || intended != IntendedFlag.NETWORK
+						|| version < UNSEQUENCED_VERSION;
+				if (sequenced && !this.mReceived[pPeerID].record(sequence)) {
+					/* Our ack may have been lost, so ack again but do not hand it on twice */
+					TraceRing.trace(this.mTrace, TraceFlag.DUPLICATE, pPeerID, sequence);
+					if (requireAck) {
+						this.sendAck(pPeerID, pAddress, sequence);
+					}
+					return;
+				}
+				TraceRing.trace(this.mTrace, TraceFlag.RECEIVE, pPeerID, sequence);
+				if (compressed) {
+					this.decompress(pPeerID, pAddress, version, sequence, requireAck, intended, flag, buffer);
+				} else {
+					this.receive(pPeerID, pAddress, version, sequence, requireAck, intended, flag, buffer, pBuffer);
+				}
+			} else if (pAllowBundle) {
+				this.unbundle(pPeerID, pAddress, pBuffer, buffer);
+			} else {
+				log.warn("Dropping nested bundle from: {}", pAddress);
+			}
+		} catch (BufferUnderflowException e) {
+			log.error("Could not reconstruct data. Packet was truncated. Address: {}", pAddress, e);
+			log.debug("Could not reconstruct data. Packet was truncated. Length: {}", pLength);
+			/* TODO handle error */
+		} catch (IOException e) {
+			log.error("Could not reconstruct data. Error with input stream. Address: {}", pAddress, e);
+			log.debug("Could not reconstruct data. Error with input stream. Length: {}", pLength);
+			/* TODO handle error */
+		}
+	}
+
+	/**
+	 * Each peer has its own sequence space, so acks to it run on without
+	 * gaps left by packets to others.
+	 */
+	protected int nextSequence(final int pPeerID) {
+		if (!this.isPeer(pPeerID)) {
+			final int sequence = this.mUnregisteredSequence;
+			this.mUnregisteredSequence = SequenceNumber.next(sequence);
+			return sequence;
+		}
+		final int sequence = this.mNextSequence[pPeerID];
+		this.mNextSequence[pPeerID] = SequenceNumber.next(sequence);
+		return sequence;
+	}
+
+	/**
+	 * @return {@link Integer} sequence last taken by
+	 *         {@link #nextSequence(int)} for the peer.
+	 */
+	protected int lastSequence(final int pPeerID) {
+		return SequenceNumber.add(this.mNextSequence[pPeerID], -1);
+	}
+
+	/**
+	 * Acks and pings reuse the last sequence once both ends are at least
+	 * {@link #UNSEQUENCED_VERSION}, so the sequences a peer receives run on
+	 * without gaps left by lost packets nothing resends, which a
+	 * {@link ReorderBuffer} would otherwise wait out. Until the peers
+	 * version is known they take one as before.
+	 */
+	protected boolean isUnsequenced(final int pPeerID, final IMessage pMessage) {
+		return !pMessage.getRequireAck() && pMessage.getIntended() == IntendedFlag.NETWORK && this.isPeer(pPeerID)
+				&& this.mBaseOptions.getVersionNumber() >= UNSEQUENCED_VERSION
+				&& this.mPeerVersions[pPeerID] >= UNSEQUENCED_VERSION;
+	}
+
+	protected boolean isPeer(final int pPeerID) {
+		return pPeerID >= 0 && pPeerID < this.mPeerVersions.length;
+	}
+
+	protected void resetPeer(final int pPeerID) {
+		this.mPeerVersions[pPeerID] = -1;
+		this.mLargestAcked[pPeerID] = -1;
+		this.mNextSequence[pPeerID] = 0;
+		this.mReceived[pPeerID].reset();
+		if (this.mReorder[pPeerID] != null) {
+			this.mReorder[pPeerID].clear();
+		}
+		if (this.mDeltaSent[pPeerID] != null) {
+			this.mDeltaSent[pPeerID].clear();
+			this.mDeltaReceived[pPeerID].clear();
+		}
+		this.mRttEstimator.reset(pPeerID);
+	}
+
+	/**
+	 * Ask the thread to {@link #pingPeers()} after a delay, unless already
+	 * asked, pinging is off or there is nobody to ping.
+	 * 
+	 * @param pDelay
+	 *            {@link Long} in milliseconds.
+	 */
+	protected void schedulePing(final long pDelay) {
+		final WeakThreadHandler<IHandlerMessage> handler = this.mThread.getHandler();
+		if (this.mPingScheduled || handler == null || this.mClients.isEmpty()
+				|| this.mBaseOptions.getPingInterval() <= 0) {
+			return;
+		}
+		this.mPingScheduled = true;
+		final Message msg = handler.obtainMessage();
+		msg.what = ITCFlags.PING_PEERS;
+		handler.sendMessageDelayed(msg, pDelay);
+	}
+
+	/**
+	 * Ask the thread to {@link #retransmit()} after a delay, unless already
+	 * asked.
+	 * 
+	 * @param pDelay
+	 *            {@link Long} in nanoseconds.
+	 */
+	protected void scheduleRetransmit(final long pDelay) {
+		final WeakThreadHandler<IHandlerMessage> handler = this.mThread.getHandler();
+		if (this.mRetransmitScheduled || handler == null) {
+			return;
+		}
+		this.mRetransmitScheduled = true;
+		final Message msg = handler.obtainMessage();
+		msg.what = ITCFlags.RETRANSMIT;
+		handler.sendMessageDelayed(msg, Math.max(1, TimeUnit.NANOSECONDS.toMillis(pDelay)));
+	}
+
+	protected void flushResendBundle() {
+		if (this.mResendPeer != -1 && !this.mResendBundle.isEmpty()) {
+			this.flushBundle(this.mResendPeer, this.mResendBundle);
+		}
+		this.mResendPeer = -1;
+	}
+
+	/**
+	 * Compact headers go to a peer once it has sent a full header with a
+	 * version that reads them, so mixed versions keep talking.
+	 */
+	protected boolean sendsCompactHeaders(final int pPeerID) {
+		return this.mCompactHeaders && this.isPeer(pPeerID)
+				&& this.mPeerVersions[pPeerID] >= HeaderCodec.COMPACT_HEADER_VERSION;
+	}
+
+	/**
+	 * Bundles go to a peer once it has sent a full header with a version
+	 * that unpacks them, until then each packet is sent alone.
+	 */
+	protected boolean sendsBundles(final int pPeerID) {
+		return this.isPeer(pPeerID) && this.mPeerVersions[pPeerID] >= MessageBundle.BUNDLE_VERSION;
+	}
+
+	protected void acknowledged(final int pPeerID, final int pSequence) {
+		if (this.isPeer(pPeerID) && this.mDeltaSent[pPeerID] != null) {
+			this.mDeltaSent[pPeerID].acked(pSequence);
+		}
+		if (this.isPeer(pPeerID)
+				&& (this.mLargestAcked[pPeerID] < 0 || SequenceNumber.isNewer(pSequence, this.mLargestAcked[pPeerID]))) {
+			this.mLargestAcked[pPeerID] = pSequence;
+		}
+	}
+
+	/**
+	 * Hand each packet in a bundle on as if it had arrived on its own, each
+	 * pointing in to the same {@link PooledBuffer}
+	 */
+	protected void unbundle(final int pPeerID, final InetAddress pAddress, final PooledBuffer pBuffer,
+			final ByteBuffer pDataInput) {
+		while (pDataInput.remaining() >= MessageBundle.ENTRY_HEADER_SIZE) {
+			final int size = pDataInput.getShort() & 0xFFFF;
+			if (size > pDataInput.remaining()) {
+				final Object[] pArray = { pAddress, size, pDataInput.remaining() };
+				log.error("Bundle from: {} truncated, packet of: {} with only: {} left", pArray);
+				return;
+			}
+			final int start = pDataInput.arrayOffset() + pDataInput.position();
+			pDataInput.position(pDataInput.position() + size);
+			this.reconstructData(pPeerID, pAddress, pBuffer, start, size, false);
+		}
+	}
+
+	/**
+	 * Copy a whole packet out, for consumers which need their own array.
+	 * 
+	 * @param pDataInput
+	 *            {@link ByteBuffer} the packet was decoded from, starting at
+	 *            its header.
+	 * @return {@link Byte} array of just the packet.
+	 */
+	protected byte[] copyPacket(final ByteBuffer pDataInput) {
+		final byte[] packet = new byte[pDataInput.limit()];
+		System.arraycopy(pDataInput.array(), pDataInput.arrayOffset(), packet, 0, packet.length);
+		return packet;
+	}
+
+	protected void handleIncomingPacket(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) throws IOException {
 		if (!pRequireAck) {
 			/* An ack is not required for this message so carry on processing */
 		} else {
 			/* An ack is required so send one! */
-			MessageAck ack = (MessageAck) this.obtainMessage(MessageFlag.ACK);
-			ack.setAckForSequnce(pSequence);
-			ack.setIntended(IntendedFlag.NETWORK);
-			ack.setRequireAck(false);
-			this.mAckManager.addSentAck(pFrom, pSequence);
-			this.sendMessage(pFrom, ack, false); /* We use ACKS for UDP don't need it for TCP! */
-			this.recycleMessage(ack);
+			this.sendAck(pPeerID, pFrom, pSequence);
 		}
+		final ReorderBuffer reorder = this.mReorder[pPeerID];
+		if (reorder == null) {
+			this.dispatch(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
+			return;
+		}
+		if (this.isForLockstep(pIntended) && reorder.isAhead(pSequence)) {
+			TraceRing.trace(this.mTrace, TraceFlag.REORDER_HOLD, pPeerID, pSequence);
+			reorder.hold(pSequence, pVersion, pRequireAck, pIntended, pFlag, pDataInput, pBuffer, System.nanoTime());
+		} else {
+			this.dispatch(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
+		}
+		this.releaseReordered(pPeerID, pFrom, System.nanoTime());
+	}
+
+	/**
+	 * Let out packets held past their wait, when no packet has arrived from
+	 * their peer to do so.
+	 */
+	protected void releaseReordered(final long pNow) {
+		for (int i = 0; i < this.mReorder.length; i++) {
+			final ReorderBuffer reorder = this.mReorder[i];
+			if (reorder != null && reorder.getCount() > 0) {
+				final InetAddress address = this.mPeerRegistry.getAddress(i);
+				if (address != null) {
+					this.releaseReordered(i, address, pNow);
+				}
+			}
+		}
+	}
+
+	protected void sendAck(final int pPeerID, final InetAddress pFrom, final int pSequence) {
+		MessageAck ack = (MessageAck) this.obtainMessage(MessageFlag.ACK);
+		ack.setAckForSequnce(pSequence);
+		ack.setIntended(IntendedFlag.NETWORK);
+		ack.setRequireAck(false);
+		this.mAckManager.addSentAck(pPeerID, pSequence);
+		TraceRing.trace(this.mTrace, TraceFlag.ACK_SENT, pPeerID, pSequence);
+		this.sendMessage(pPeerID, pFrom, ack, false); /* We use ACKS for UDP don't need it for TCP! */
+		this.recycleMessage(ack);
+	}
+
+	protected boolean isForLockstep(final int pIntended) {
+		return pIntended == IntendedFlag.LOCKSTEP || pIntended == IntendedFlag.LOCKSTEP_CLIENT
+				|| pIntended == IntendedFlag.LOCKSTEP_CLIENT_NETWORK;
+	}
+
+	/**
+	 * Hand on held lockstep packets in order, as far as what has arrived
+	 * allows. A gap is given up on once the buffer is full or the oldest
+	 * held packet has waited a retransmission timeout, anything from the gap
+	 * arriving after that is handed on late rather than dropped.
+	 */
+	protected void releaseReordered(final int pPeerID, final InetAddress pFrom, final long pNow) {
+		final ReorderBuffer reorder = this.mReorder[pPeerID];
+		reorder.advance(this.mReceived[pPeerID]);
+		while (reorder.getCount() > 0) {
+			if (!reorder.isReady()) {
+				if (!reorder.isFull() && pNow - reorder.getHeldAt() < this.mAckManager.getRetransmitTimeout(pPeerID)) {
+					return;
+				}
+				TraceRing.trace(this.mTrace, TraceFlag.REORDER_SKIP, pPeerID, reorder.getSequence());
+				reorder.skip();
+			}
+			this.dispatch(pPeerID, pFrom, reorder.getVersion(), reorder.getSequence(), reorder.getRequireAck(),
+					reorder.getIntended(), reorder.getFlag(), reorder.getDataInput(), reorder.getBuffer());
+			reorder.remove();
+			reorder.advance(this.mReceived[pPeerID]);
+		}
+	}
+
+	/**
+	 * Pass a packet to whoever it is intended for.
+	 */
+	protected void dispatch(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) {
 		if (pIntended == IntendedFlag.CLIENT) {
 			/* Packet is intended for client, pass back to thread to pass on */
-			this.passToClient(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
+			this.passToClient(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
 		} else if (pIntended == IntendedFlag.LOCKSTEP) {
 			/* Packet is intended for lockstep, pass back to thread to pass on */
-			this.passToLockstep(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
+			this.passToLockstep(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
 		} else if (pIntended == IntendedFlag.LOCKSTEP_CLIENT) {
 			/* Packet is for lockstep and client! */
-			this.passToLockstep(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
-			this.passToClient(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
+			this.passToLockstep(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
+			this.passToClient(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
 		} else if (pIntended == IntendedFlag.LOCKSTEP_CLIENT_NETWORK) {
 			/* Packet is for lockstep, client and network! */
-			this.passToLockstep(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
-			this.passToClient(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
-			this.passToNetwork(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
+			this.passToLockstep(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
+			this.passToClient(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
+			this.passToNetwork(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
 		} else if (pIntended == IntendedFlag.NETWORK) {
 			/* Packet is intended for network */
-			this.passToNetwork(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pData);
+			this.passToNetwork(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag, pDataInput, pBuffer);
 		} else {
 			final Object[] pArray = { pVersion, pIntended, pFlag, pSequence, pFrom };
 			log.warn("Unknown intended recipient: Version: {} Intended: {} Flag: {} Sequence: {} From: {}", pArray);
 		}
 	}
 
-	protected void passToClient(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) {
+	protected void passToClient(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) {
+		TraceRing.trace(this.mTrace, TraceFlag.PASS_CLIENT, pPeerID, pSequence);
 		Message msg = this.mThread.getParentHandler().obtainMessage();
 		msg.what = ITCFlags.RECIEVE_MESSAGE_CLIENT;
 		Bundle bundle = new Bundle();
-		bundle.putString("ip", pFrom.toString());
-		bundle.putByteArray("data", pData);
+		bundle.putInt("peer", pPeerID);
+		bundle.putByteArray("data", this.copyPacket(pDataInput));
 		msg.setData(bundle);
 		this.mThread.getParentHandler().sendMessage(msg);
 	}
 
-	protected void passToLockstep(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) {
+	/**
+	 * With a lockstep transport every lockstep packet goes through it, in
+	 * order. When it is full the packet waits in {@link #mLockstepBacklog}
+	 * behind any already waiting, rather than overtaking them by another
+	 * route.
+	 */
+	protected void passToLockstep(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) {
+		TraceRing.trace(this.mTrace, TraceFlag.PASS_LOCKSTEP, pPeerID, pSequence);
+		final IEventTransport transport = this.mThread.getLockstepTransport();
+		if (transport != null) {
+			this.releaseBacklog();
+			if (this.mLockstepBacklog.getCount() > 0
+					|| !this.publishToLockstep(transport, pPeerID, pFrom, pSequence, pIntended, pFlag, pBuffer,
+							pDataInput.arrayOffset(), pDataInput.limit())) {
+				if (this.mLockstepBacklog.getCount() == 0) {
+					log.warn("Lockstep transport full, holding packets until it drains");
+				}
+				this.mLockstepBacklog.hold(pPeerID, pFrom, pSequence, pIntended, pFlag, pBuffer,
+						pDataInput.arrayOffset(), pDataInput.limit());
+				this.scheduleLockstepFlush();
+			}
+			return;
+		}
 		Message msg = this.mThread.getParentHandler().obtainMessage();
 		msg.what = ITCFlags.RECIEVE_MESSAGE_LOCKSTEP;
 		Bundle bundle = new Bundle();
-		bundle.putString("ip", pFrom.toString());
+		bundle.putInt("peer", pPeerID);
 		bundle.putInt("flag", pFlag);
-		bundle.putByteArray("data", pData);
+		bundle.putByteArray("data", this.copyPacket(pDataInput));
 		msg.setData(bundle);
 		this.mThread.getParentHandler().sendMessage(msg);
 	}
 
-	protected void passToNetwork(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) {
+	/**
+	 * @return <code>false</code> if the transport is full.
+	 */
+	protected boolean publishToLockstep(final IEventTransport pTransport, final int pPeerID,
+			final InetAddress pFrom, final int pSequence, final int pIntended, final int pFlag,
+			final PooledBuffer pBuffer, final int pOffset, final int pLength) {
+		final ITCEvent event = pTransport.claim();
+		if (event == null) {
+			return false;
+		}
+		event.mWhat = ITCFlags.RECIEVE_MESSAGE_LOCKSTEP;
+		event.mPeerID = pPeerID;
+		event.mAddress = pFrom;
+		event.mFlag = pFlag;
+		event.mIntended = pIntended;
+		event.mArg = pSequence;
+		event.setData(pBuffer, pOffset, pLength);
+		pTransport.publish();
+		return true;
+	}
+
+	/**
+	 * Hand on as many held lockstep packets as the transport has room for,
+	 * oldest first.
+	 */
+	protected void releaseBacklog() {
+		final LockstepBacklog backlog = this.mLockstepBacklog;
+		if (backlog.getCount() == 0) {
+			return;
+		}
+		final IEventTransport transport = this.mThread.getLockstepTransport();
+		if (transport == null) {
+			backlog.clear();
+			return;
+		}
+		while (backlog.getCount() > 0
+				&& this.publishToLockstep(transport, backlog.getPeerID(), backlog.getAddress(),
+						backlog.getSequence(), backlog.getIntended(), backlog.getFlag(), backlog.getBuffer(),
+						backlog.getOffset(), backlog.getLength())) {
+			backlog.remove();
+		}
+	}
+
+	/**
+	 * Ask the thread to {@link #flushLockstep()} shortly, unless already
+	 * asked.
+	 */
+	protected void scheduleLockstepFlush() {
+		final WeakThreadHandler<IHandlerMessage> handler = this.mThread.getHandler();
+		if (this.mLockstepFlushScheduled || handler == null) {
+			return;
+		}
+		this.mLockstepFlushScheduled = true;
+		final Message msg = handler.obtainMessage();
+		msg.what = ITCFlags.FLUSH_LOCKSTEP;
+		handler.sendMessageDelayed(msg, LOCKSTEP_RETRY_DELAY);
+	}
+
+	protected void passToNetwork(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) {
 		if (pFlag == MessageFlag.ERROR) {
-			this.reconstructErrorMessageAndHandle(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag,
-					pDataInput, pData);
+			this.reconstructErrorMessageAndHandle(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag,
+					pDataInput, pBuffer);
 		} else if (pFlag == MessageFlag.ACK) {
-			final int pAckFor = this.extractAckForSequence(pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag,
-					pDataInput, pData);
+			final int pAckFor = this.extractAckForSequence(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag,
+					pDataInput, pBuffer);
 			if (pAckFor != -1) {
-				this.mAckManager.processReceivedAck(pFrom, pAckFor);
+				TraceRing.trace(this.mTrace, TraceFlag.ACK_RECEIVED, pPeerID, pAckFor);
+				this.mAckManager.processReceivedAck(pPeerID, pAckFor);
+				this.acknowledged(pPeerID, pAckFor);
 			} else {
 				final Object[] pArray = { pVersion, pIntended, pSequence, pFrom };
 				log.error(
 						"Could not handle ack message, could not determine the ack sequence. Version: {} Intended: {} Sequence: {} From: {}",
 						pArray);
 			}
-		} else if (pFlag == MessageFlag.ACK_MULTI) {
-			final int[] pAckFor = this.extractAcksForSequence(pFrom, pVersion, pSequence, pRequireAck, pIntended,
-					pFlag, pDataInput, pData);
-			if (pAckFor != null) {
-				this.mAckManager.processReceivedAck(pFrom, pAckFor);
-			} else {
+		} else if (pFlag == MessageFlag.PING) {
+			this.replyToPing(pPeerID, pFrom, pVersion, pSequence, pIntended, pDataInput);
+		} else if (pFlag == MessageFlag.PING_ACK) {
+			this.measurePing(pPeerID, pFrom, pVersion, pSequence, pIntended, pDataInput);
+		} else if (pFlag == MessageFlag.ACK_MULTI || pFlag == MessageFlag.ACK_RANGE) {
+			if (!this.extractAcksForSequence(pPeerID, pFrom, pVersion, pSequence, pRequireAck, pIntended, pFlag,
+					pDataInput, pBuffer)) {
 				final Object[] pArray = { pVersion, pIntended, pSequence, pFrom };
 				log.error(
 						"Could not handle ack multi message, could not determine the ack sequence. Version: {} Intended: {} Sequence: {} From: {}",
@@ -236,12 +1184,12 @@ public class PacketHandler implements IPacketHandler {
 		}
 	}
 
-	protected void reconstructErrorMessageAndHandle(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) {
+	protected void reconstructErrorMessageAndHandle(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) {
 		MessageError pMessage = (MessageError) this.obtainMessage(pFlag);
 		try {
-			pMessage.read(pDataInput);
+			pMessage.readFrom(pDataInput);
 			this.mThread.handleErrorMessage(pFrom, pMessage);
 			this.recycleMessage(pMessage);
 		} catch (IOException e) {
@@ -251,13 +1199,52 @@ public class PacketHandler implements IPacketHandler {
 		}
 	}
 
-	protected int extractAckForSequence(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) {
+	/**
+	 * Echo the ping timestamp straight back, on this thread, so the round trip
+	 * does not include waiting on the lockstep.
+	 */
+	protected void replyToPing(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final int pIntended, final ByteBuffer pDataInput) {
+		final MessagePing ping = (MessagePing) this.obtainMessage(MessageFlag.PING);
+		try {
+			ping.readFrom(pDataInput);
+			final MessagePingAck ack = (MessagePingAck) this.obtainMessage(MessageFlag.PING_ACK);
+			ack.setIntended(IntendedFlag.NETWORK);
+			ack.setRequireAck(false);
+			ack.setTimestamp(ping.getTimestamp());
+			this.sendMessage(pPeerID, pFrom, ack, false);
+			this.recycleMessage(ack);
+		} catch (IOException e) {
+			final Object[] pArray = { pVersion, pIntended, pSequence, pFrom };
+			log.error("Could not read in ping.  Version: {} Intended: {} Sequence: {} From: {}", pArray);
+			log.error("Error: ", e);
+		}
+		this.recycleMessage(ping);
+	}
+
+	protected void measurePing(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final int pIntended, final ByteBuffer pDataInput) {
+		final MessagePingAck ack = (MessagePingAck) this.obtainMessage(MessageFlag.PING_ACK);
+		try {
+			ack.readFrom(pDataInput);
+			final long rtt = System.nanoTime() - ack.getTimestamp();
+			this.mRttEstimator.sample(pPeerID, rtt);
+			TraceRing.trace(this.mTrace, TraceFlag.PING, pPeerID, (int) (rtt / 1000));
+		} catch (IOException e) {
+			final Object[] pArray = { pVersion, pIntended, pSequence, pFrom };
+			log.error("Could not read in ping ack.  Version: {} Intended: {} Sequence: {} From: {}", pArray);
+			log.error("Error: ", e);
+		}
+		this.recycleMessage(ack);
+	}
+
+	protected int extractAckForSequence(final int pPeerID, final InetAddress pFrom, final int pVersion, final int pSequence,
+			final boolean pRequireAck, final int pIntended, final int pFlag, final ByteBuffer pDataInput,
+			final PooledBuffer pBuffer) {
 		int found = -1;
 		MessageAck ack = (MessageAck) this.obtainMessage(pFlag);
 		try {
-			ack.read(pDataInput);
+			ack.readFrom(pDataInput);
 			found = ack.getAckForSequence();
 			this.recycleMessage(ack);
 		} catch (IOException e) {
@@ -268,20 +1255,50 @@ public class PacketHandler implements IPacketHandler {
 		return found;
 	}
 
-	protected int[] extractAcksForSequence(final InetAddress pFrom, final int pVersion, final int pSequence,
-			final boolean pRequireAck, final int pIntended, final int pFlag, final DataInputStream pDataInput,
-			final byte[] pData) {
-		int[] found = null;
-		MessageAckMulti ack = (MessageAckMulti) this.obtainMessage(pFlag);
+	/**
+	 * Read a {@link MessageFlag#ACK_MULTI} or {@link MessageFlag#ACK_RANGE} and
+	 * hand its sequences straight to the ack manager.
+	 * 
+	 * @return <code>true</code> if the acks were read.
+	 */
+	protected boolean extractAcksForSequence(final int pPeerID, final InetAddress pFrom, final int pVersion,
+			final int pSequence, final boolean pRequireAck, final int pIntended, final int pFlag,
+			final ByteBuffer pDataInput, final PooledBuffer pBuffer) {
+		final IMessage message = this.obtainMessage(pFlag);
+		boolean found = false;
 		try {
-			ack.read(pDataInput);
-			found = ack.getSequences();
-			this.recycleMessage(ack);
+			message.readFrom(pDataInput);
+			if (pFlag == MessageFlag.ACK_RANGE) {
+				final MessageAckRange range = (MessageAckRange) message;
+				TraceRing.trace(this.mTrace, TraceFlag.ACK_RECEIVED, pPeerID, range.getBase());
+				this.mAckManager.processReceivedAck(pPeerID, range);
+				if (this.isPeer(pPeerID) && this.mDeltaSent[pPeerID] != null) {
+					for (int i = 0; i < range.getSpan(); i++) {
+						if (range.isAcked(i)) {
+							this.mDeltaSent[pPeerID].acked(SequenceNumber.add(range.getBase(), i));
+						}
+					}
+				}
+				if (range.getSpan() > 0) {
+					this.acknowledged(pPeerID, SequenceNumber.add(range.getBase(), range.getSpan() - 1));
+				}
+			} else {
+				final MessageAckMulti multi = (MessageAckMulti) message;
+				final int count = multi.getSequenceCount();
+				for (int i = 0; i < count; i++) {
+					final int sequence = multi.getSequence(i);
+					this.mAckManager.processReceivedAck(pPeerID, sequence);
+					TraceRing.trace(this.mTrace, TraceFlag.ACK_RECEIVED, pPeerID, sequence);
+					this.acknowledged(pPeerID, sequence);
+				}
+			}
+			found = true;
 		} catch (IOException e) {
 			final Object[] pArray = { pVersion, pIntended, pSequence, pFrom };
 			log.error("Could not read in acks.  Version: {} Intended: {} Sequence: {} From: {}", pArray);
 			log.error("Error: ", e);
 		}
+		this.recycleMessage(message);
 		return found;
 	}
 
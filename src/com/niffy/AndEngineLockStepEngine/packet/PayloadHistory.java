@@ -0,0 +1,177 @@
+package com.niffy.AndEngineLockStepEngine.packet;
+
+/**
+ * The last few encapsulated payloads sent to, or received from, one peer,
+ * so later ones can be sent as a delta from one of them. Copies are kept in
+ * arrays reused slot by slot.
+ * <p>
+ * Both ends keep every payload in the order they saw it, the sender then
+ * only picks a baseline from the newest half it has sent which the peer has
+ * acknowledged. The peer has received no more payloads since the baseline
+ * than were sent since it, so the baseline is still in its history, unless
+ * packets were reordered by more than half the history.
+ * <p>
+ * Communication thread only.
+ */
+public class PayloadHistory {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int DefaultCapacity = 16;
+	protected static final int NONE = -1;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final int[] mSequences;
+	/**
+	 * The intended flag each was sent with, deltas are only taken within
+	 * one.
+	 */
+	protected final int[] mChannels;
+	protected final byte[][] mPayloads;
+	protected final int[] mLengths;
+	protected final boolean[] mAcked;
+	/**
+	 * Slot the next payload goes in, and how many are held.
+	 */
+	protected int mNext = 0;
+	protected int mCount = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public PayloadHistory() {
+		this(DefaultCapacity);
+	}
+
+	/**
+	 *
+	 * @param pCapacity
+	 *            {@link Integer} of payloads kept.
+	 */
+	public PayloadHistory(final int pCapacity) {
+		this.mSequences = new int[pCapacity];
+		this.mChannels = new int[pCapacity];
+		this.mPayloads = new byte[pCapacity][];
+		this.mLengths = new int[pCapacity];
+		this.mAcked = new boolean[pCapacity];
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getCapacity() {
+		return this.mSequences.length;
+	}
+
+	public int getSequence(final int pIndex) {
+		return this.mSequences[pIndex];
+	}
+
+	public byte[] getPayload(final int pIndex) {
+		return this.mPayloads[pIndex];
+	}
+
+	public int getLength(final int pIndex) {
+		return this.mLengths[pIndex];
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Keep a copy of a payload, pushing out the oldest once full.
+	 *
+	 * @param pSequence
+	 *            {@link Integer} it was sent with.
+	 * @param pChannel
+	 *            {@link Integer} intended flag it was sent with.
+	 * @param pData
+	 *            {@link Byte} array holding the payload.
+	 * @param pOffset
+	 *            {@link Integer} where it starts in <code>pData</code>
+	 * @param pLength
+	 *            {@link Integer} of bytes.
+	 */
+	public void add(final int pSequence, final int pChannel, final byte[] pData, final int pOffset,
+			final int pLength) {
+		final int slot = this.mNext;
+		if (this.mPayloads[slot] == null || this.mPayloads[slot].length < pLength) {
+			this.mPayloads[slot] = new byte[pLength];
+		}
+		System.arraycopy(pData, pOffset, this.mPayloads[slot], 0, pLength);
+		this.mSequences[slot] = pSequence;
+		this.mChannels[slot] = pChannel;
+		this.mLengths[slot] = pLength;
+		this.mAcked[slot] = false;
+		this.mNext = (slot + 1) % this.mSequences.length;
+		if (this.mCount < this.mSequences.length) {
+			this.mCount++;
+		}
+	}
+
+	/**
+	 * @param pSequence
+	 *            {@link Integer} the peer acknowledged.
+	 */
+	public void acked(final int pSequence) {
+		final int index = this.find(pSequence);
+		if (index != NONE) {
+			this.mAcked[index] = true;
+		}
+	}
+
+	/**
+	 * @param pSequence
+	 *            {@link Integer} a payload was sent with.
+	 * @return {@link Integer} index of it, or <code>-1</code> if not held.
+	 */
+	public int find(final int pSequence) {
+		for (int i = 1; i <= this.mCount; i++) {
+			final int index = this.slot(i);
+			if (this.mSequences[index] == pSequence) {
+				return index;
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param pChannel
+	 *            {@link Integer} intended flag of the payload to send.
+	 * @return {@link Integer} index of the newest acknowledged payload on the
+	 *         channel among the newest half held, or <code>-1</code>
+	 */
+	public int findBaseline(final int pChannel) {
+		final int within = Math.min(this.mCount, this.mSequences.length / 2);
+		for (int i = 1; i <= within; i++) {
+			final int index = this.slot(i);
+			if (this.mAcked[index] && this.mChannels[index] == pChannel) {
+				return index;
+			}
+		}
+		return NONE;
+	}
+
+	public void clear() {
+		this.mNext = 0;
+		this.mCount = 0;
+	}
+
+	/**
+	 * @return {@link Integer} slot of the payload added <code>pAgo</code>
+	 *         payloads back, <code>1</code> being the newest.
+	 */
+	protected int slot(final int pAgo) {
+		return (this.mNext - pAgo + this.mSequences.length) % this.mSequences.length;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
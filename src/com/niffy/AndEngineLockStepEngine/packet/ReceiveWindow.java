@@ -0,0 +1,171 @@
+package com.niffy.AndEngineLockStepEngine.packet;
+
+import com.niffy.AndEngineLockStepEngine.messages.SequenceNumber;
+
+/**
+ * Sequences received from one peer, as a bitmap sliding behind the newest.
+ * Bit <code>s % size</code> is set once <code>s</code> has arrived, and bits
+ * are cleared as the newest moves past them, so checking a sequence is one
+ * bit test. Anything more than the window size behind the newest is taken as
+ * already seen.
+ * <p>
+ * Communication thread only.
+ */
+public class ReceiveWindow {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int DefaultSize = 1024;
+	public static final int NONE = -1;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final long[] mBits;
+	protected final int mSize;
+	protected final int mMask;
+	/**
+	 * Newest sequence received, {@link #NONE} until one has.
+	 */
+	protected int mHighest = NONE;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public ReceiveWindow() {
+		this(DefaultSize);
+	}
+
+	/**
+	 *
+	 * @param pSize
+	 *            {@link Integer} of sequences remembered, rounded up to a
+	 *            power of two of at least 64 and less than
+	 *            {@link SequenceNumber#HALF}
+	 */
+	public ReceiveWindow(final int pSize) {
+		int size = 64;
+		while (size < pSize && size < SequenceNumber.HALF >>> 1) {
+			size <<= 1;
+		}
+		this.mSize = size;
+		this.mMask = size - 1;
+		this.mBits = new long[size >>> 6];
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	/**
+	 * @return {@link Integer} newest sequence received, or {@link #NONE}
+	 */
+	public int getHighest() {
+		return this.mHighest;
+	}
+
+	public int getSize() {
+		return this.mSize;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @param pSequence
+	 *            {@link Integer} of the packet.
+	 * @return <code>true</code> if already received, or too old to tell.
+	 */
+	public boolean isDuplicate(final int pSequence) {
+		if (this.mHighest == NONE) {
+			return false;
+		}
+		final int distance = SequenceNumber.distance(this.mHighest, pSequence);
+		if (distance > 0) {
+			return false;
+		}
+		return distance <= -this.mSize || this.isSet(pSequence);
+	}
+
+	/**
+	 * Mark a sequence received.
+	 *
+	 * @param pSequence
+	 *            {@link Integer} of the packet.
+	 * @return <code>true</code> if it had not been received before,
+	 *         <code>false</code> for a duplicate.
+	 */
+	public boolean record(final int pSequence) {
+		if (this.mHighest == NONE) {
+			this.mHighest = pSequence;
+			this.set(pSequence);
+			return true;
+		}
+		final int distance = SequenceNumber.distance(this.mHighest, pSequence);
+		if (distance > 0) {
+			if (distance >= this.mSize) {
+				this.clear();
+			} else {
+				for (int i = 1; i <= distance; i++) {
+					this.unset(this.mHighest + i);
+				}
+			}
+			this.mHighest = pSequence;
+			this.set(pSequence);
+			return true;
+		}
+		if (distance <= -this.mSize || this.isSet(pSequence)) {
+			return false;
+		}
+		this.set(pSequence);
+		return true;
+	}
+
+	/**
+	 * Unmark a sequence, so it is taken again if it arrives again.
+	 *
+	 * @param pSequence
+	 *            {@link Integer} of a packet which could not be handled.
+	 */
+	public void forget(final int pSequence) {
+		if (this.mHighest != NONE && SequenceNumber.distance(this.mHighest, pSequence) > -this.mSize) {
+			this.unset(pSequence);
+		}
+	}
+
+	/**
+	 * Forget everything received.
+	 */
+	public void reset() {
+		this.mHighest = NONE;
+		this.clear();
+	}
+
+	protected void clear() {
+		for (int i = 0; i < this.mBits.length; i++) {
+			this.mBits[i] = 0;
+		}
+	}
+
+	protected boolean isSet(final int pSequence) {
+		final int bit = pSequence & this.mMask;
+		return (this.mBits[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	protected void set(final int pSequence) {
+		final int bit = pSequence & this.mMask;
+		this.mBits[bit >>> 6] |= 1L << bit;
+	}
+
+	protected void unset(final int pSequence) {
+		final int bit = pSequence & this.mMask;
+		this.mBits[bit >>> 6] &= ~(1L << bit);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
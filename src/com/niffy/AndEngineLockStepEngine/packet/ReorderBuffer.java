@@ -0,0 +1,252 @@
+package com.niffy.AndEngineLockStepEngine.packet;
+
+import java.nio.ByteBuffer;
+
+import com.niffy.AndEngineLockStepEngine.messages.SequenceNumber;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+
+/**
+ * Lockstep packets from one peer which arrived ahead of a gap, held until
+ * the gap fills so they are handed on in the order sent.
+ * <p>
+ * Tracks the newest sequence everything up to has arrived, packets of any
+ * kind fill gaps, but only lockstep packets are held. Acks and pings from a
+ * peer of at least {@link PacketHandler#UNSEQUENCED_VERSION} take no
+ * sequence of their own, so losing one leaves no gap to wait on.
+ * <p>
+ * A held packet keeps a reference to the {@link PooledBuffer} it arrived
+ * in, rather than a copy. Kept in sequence order, so the oldest is always
+ * first.
+ * <p>
+ * Communication thread only.
+ */
+public class ReorderBuffer {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final int[] mSequences;
+	protected final PooledBuffer[] mBuffers;
+	/**
+	 * Start, length and body position of each packet, as its header was
+	 * decoded.
+	 */
+	protected final int[] mOffsets;
+	protected final int[] mLengths;
+	protected final int[] mPositions;
+	protected final int[] mVersions;
+	protected final boolean[] mRequireAcks;
+	protected final int[] mIntended;
+	protected final int[] mFlags;
+	/**
+	 * {@link System#nanoTime()} each was held at.
+	 */
+	protected final long[] mHeldAt;
+	protected int mCount = 0;
+	/**
+	 * Newest sequence everything up to has arrived or been skipped,
+	 * {@link ReceiveWindow#NONE} until the first packet.
+	 */
+	protected int mContiguous = ReceiveWindow.NONE;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 *
+	 * @param pCapacity
+	 *            {@link Integer} most packets held, once full the oldest is
+	 *            released without waiting.
+	 */
+	public ReorderBuffer(final int pCapacity) {
+		this.mSequences = new int[pCapacity];
+		this.mBuffers = new PooledBuffer[pCapacity];
+		this.mOffsets = new int[pCapacity];
+		this.mLengths = new int[pCapacity];
+		this.mPositions = new int[pCapacity];
+		this.mVersions = new int[pCapacity];
+		this.mRequireAcks = new boolean[pCapacity];
+		this.mIntended = new int[pCapacity];
+		this.mFlags = new int[pCapacity];
+		this.mHeldAt = new long[pCapacity];
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getCount() {
+		return this.mCount;
+	}
+
+	public boolean isFull() {
+		return this.mCount == this.mSequences.length;
+	}
+
+	/**
+	 * @return {@link Integer} sequence of the oldest held packet.
+	 */
+	public int getSequence() {
+		return this.mSequences[0];
+	}
+
+	public int getVersion() {
+		return this.mVersions[0];
+	}
+
+	public boolean getRequireAck() {
+		return this.mRequireAcks[0];
+	}
+
+	public int getIntended() {
+		return this.mIntended[0];
+	}
+
+	public int getFlag() {
+		return this.mFlags[0];
+	}
+
+	public long getHeldAt() {
+		return this.mHeldAt[0];
+	}
+
+	public PooledBuffer getBuffer() {
+		return this.mBuffers[0];
+	}
+
+	/**
+	 * @return {@link ByteBuffer} over the oldest held packet, positioned at
+	 *         its body as when it arrived.
+	 */
+	public ByteBuffer getDataInput() {
+		final ByteBuffer buffer = ByteBuffer.wrap(this.mBuffers[0].getData(), this.mOffsets[0], this.mLengths[0])
+				.slice();
+		buffer.position(this.mPositions[0]);
+		return buffer;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * @param pSequence
+	 *            {@link Integer} of a packet just received.
+	 * @return <code>true</code> if something sent before it is still
+	 *         missing.
+	 */
+	public boolean isAhead(final int pSequence) {
+		if (this.mContiguous == ReceiveWindow.NONE) {
+			this.mContiguous = SequenceNumber.add(pSequence, -1);
+		}
+		return SequenceNumber.distance(this.mContiguous, pSequence) > 1;
+	}
+
+	/**
+	 * Keep a packet until those before it arrive.
+	 *
+	 * @param pDataInput
+	 *            {@link ByteBuffer} the packet was decoded from, positioned
+	 *            at its body.
+	 * @param pBuffer
+	 *            {@link PooledBuffer} it points in to, retained until
+	 *            {@link #remove()}
+	 */
+	public void hold(final int pSequence, final int pVersion, final boolean pRequireAck, final int pIntended,
+			final int pFlag, final ByteBuffer pDataInput, final PooledBuffer pBuffer, final long pNow) {
+		int index = this.mCount;
+		while (index > 0 && SequenceNumber.isNewer(this.mSequences[index - 1], pSequence)) {
+			index--;
+		}
+		this.shift(index, index + 1, this.mCount - index);
+		this.mSequences[index] = pSequence;
+		this.mBuffers[index] = pBuffer.retain();
+		this.mOffsets[index] = pDataInput.arrayOffset();
+		this.mLengths[index] = pDataInput.limit();
+		this.mPositions[index] = pDataInput.position();
+		this.mVersions[index] = pVersion;
+		this.mRequireAcks[index] = pRequireAck;
+		this.mIntended[index] = pIntended;
+		this.mFlags[index] = pFlag;
+		this.mHeldAt[index] = pNow;
+		this.mCount++;
+	}
+
+	/**
+	 * Move past every sequence which has now arrived.
+	 *
+	 * @param pReceived
+	 *            {@link ReceiveWindow} of the same peer.
+	 */
+	public void advance(final ReceiveWindow pReceived) {
+		if (this.mContiguous == ReceiveWindow.NONE || pReceived.getHighest() == ReceiveWindow.NONE) {
+			return;
+		}
+		while (SequenceNumber.isNewer(pReceived.getHighest(), this.mContiguous)
+				&& pReceived.isDuplicate(SequenceNumber.next(this.mContiguous))) {
+			this.mContiguous = SequenceNumber.next(this.mContiguous);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if nothing before the oldest held packet is
+	 *         still missing.
+	 */
+	public boolean isReady() {
+		return this.mCount > 0 && SequenceNumber.distance(this.mContiguous, this.mSequences[0]) <= 1;
+	}
+
+	/**
+	 * Give up on whatever is missing before the oldest held packet.
+	 */
+	public void skip() {
+		if (this.mCount > 0) {
+			this.mContiguous = SequenceNumber.add(this.mSequences[0], -1);
+		}
+	}
+
+	/**
+	 * Drop the oldest held packet, once it has been handed on.
+	 */
+	public void remove() {
+		this.mBuffers[0].release();
+		this.mBuffers[0] = null;
+		this.mCount--;
+		this.shift(1, 0, this.mCount);
+		this.mBuffers[this.mCount] = null;
+	}
+
+	/**
+	 * Drop everything held, and start again from the next packet.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.mCount; i++) {
+			this.mBuffers[i].release();
+			this.mBuffers[i] = null;
+		}
+		this.mCount = 0;
+		this.mContiguous = ReceiveWindow.NONE;
+	}
+
+	protected void shift(final int pFrom, final int pTo, final int pCount) {
+		System.arraycopy(this.mSequences, pFrom, this.mSequences, pTo, pCount);
+		System.arraycopy(this.mBuffers, pFrom, this.mBuffers, pTo, pCount);
+		System.arraycopy(this.mOffsets, pFrom, this.mOffsets, pTo, pCount);
+		System.arraycopy(this.mLengths, pFrom, this.mLengths, pTo, pCount);
+		System.arraycopy(this.mPositions, pFrom, this.mPositions, pTo, pCount);
+		System.arraycopy(this.mVersions, pFrom, this.mVersions, pTo, pCount);
+		System.arraycopy(this.mRequireAcks, pFrom, this.mRequireAcks, pTo, pCount);
+		System.arraycopy(this.mIntended, pFrom, this.mIntended, pTo, pCount);
+		System.arraycopy(this.mFlags, pFrom, this.mFlags, pTo, pCount);
+		System.arraycopy(this.mHeldAt, pFrom, this.mHeldAt, pTo, pCount);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -5,9 +5,9 @@ import java.net.InetAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.niffy.AndEngineLockStepEngine.window.GenericWindow;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindow;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindowCrisisListener;
+import com.niffy.AndEngineLockStepEngine.window.IntRingWindow;
 
 public class AckWindowClientManager implements IAckWindowClient {
 	// ===========================================================
@@ -38,8 +38,8 @@ public class AckWindowClientManager implements IAckWindowClient {
 			final int pStepsBeforeCrisis, final int pWindowCapacity, final IGenericWindowCrisisListener pCrisisListener) {
 		this.mWindowManager = pWindowManager;
 		this.mAddress = pAddress;
-		this.mSentAcks = new GenericWindow(this.mAddress, pStepsBeforeCrisis, pWindowCapacity);
-		this.mAwaitingAcks = new GenericWindow(this.mAddress, pStepsBeforeCrisis, pWindowCapacity);
+		this.mSentAcks = new IntRingWindow(this.mAddress, pStepsBeforeCrisis, pWindowCapacity);
+		this.mAwaitingAcks = new IntRingWindow(this.mAddress, pStepsBeforeCrisis, pWindowCapacity);
 		this.mCrisisListener = pCrisisListener;
 	}
 
@@ -67,6 +67,11 @@ public class AckWindowClientManager implements IAckWindowClient {
 		return this.mSentAcks.getIDsFromLastWindowAndClear();
 	}
 
+	@Override
+	public int getIDsFromLastWindowAndClear(int[] pBuffer) {
+		return this.mSentAcks.getIDsFromLastWindowAndClear(pBuffer);
+	}
+
 	@Override
 	public void addSentAck(int pAck) {
 		this.mSentAcks.addInt(pAck);
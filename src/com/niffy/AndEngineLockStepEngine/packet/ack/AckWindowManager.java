@@ -1,17 +1,18 @@
 package com.niffy.AndEngineLockStepEngine.packet.ack;
 
 import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.niffy.AndEngineLockStepEngine.flags.IntendedFlag;
 import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 import com.niffy.AndEngineLockStepEngine.messages.MessageAckMulti;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAckRange;
+import com.niffy.AndEngineLockStepEngine.messages.SequenceNumber;
 import com.niffy.AndEngineLockStepEngine.packet.IPacketHandler;
+import com.niffy.AndEngineLockStepEngine.peer.IRttEstimator;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindowCrisisListener;
 
 public class AckWindowManager implements IAckWindowManager {
@@ -19,6 +20,14 @@ public class AckWindowManager implements IAckWindowManager {
 	// Constants
 	// ===========================================================
 	private final Logger log = LoggerFactory.getLogger(AckWindowManager.class);
+	protected static final int DefaultAckBufferSize = 64;
+	/**
+	 * Retransmission timeout until a peers round trip is measured, in
+	 * nanoseconds.
+	 */
+	public static final long DefaultRetransmitTimeout = 200000000L;
+	public static final long MinRetransmitTimeout = 20000000L;
+	public static final long MaxRetransmitTimeout = 2000000000L;
 
 	// ===========================================================
 	// Fields
@@ -27,23 +36,65 @@ public class AckWindowManager implements IAckWindowManager {
 	protected int mStepsBeforeCrisis = 0;
 	protected int mWindowSize = 0;
 	protected IGenericWindowCrisisListener mCrisisListener;
-	protected HashMap<InetAddress, IAckWindowClient> mClients;
+	/**
+	 * Indexed by peer id, <code>null</code> where there is no client.
+	 */
+	protected IAckWindowClient[] mClients;
+	/**
+	 * Reused to drain each clients sent acks on {@link #slide(int)}
+	 */
+	protected int[] mAckBuffer;
+	/**
+	 * Times a packet is sent again before giving up, <code>0</code> to not
+	 * keep packets.
+	 */
+	protected final int mRetransmitAttempts;
+	/**
+	 * Can be <code>null</code>, then {@link #DefaultRetransmitTimeout} is
+	 * used.
+	 */
+	protected final IRttEstimator mRttEstimator;
+	/**
+	 * Indexed by peer id, <code>null</code> where there is no client or not
+	 * retransmitting.
+	 */
+	protected RetransmitBuffer[] mRetransmits;
 
 	// ===========================================================
 	// Constructors
 	// ===========================================================
 
-	public AckWindowManager(final IPacketHandler pParent, final int pStepsBeforeCrisis, final int pWindowCapacity) {
-		this(pParent, pStepsBeforeCrisis, pWindowCapacity, null);
+	public AckWindowManager(final IPacketHandler pParent, final int pStepsBeforeCrisis, final int pWindowCapacity,
+			final int pMaxPeers) {
+		this(pParent, pStepsBeforeCrisis, pWindowCapacity, pMaxPeers, null);
 	}
 
 	public AckWindowManager(final IPacketHandler pParent, final int pStepsBeforeCrisis, final int pWindowCapacity,
-			final IGenericWindowCrisisListener pCrisisListener) {
+			final int pMaxPeers, final IGenericWindowCrisisListener pCrisisListener) {
+		this(pParent, pStepsBeforeCrisis, pWindowCapacity, pMaxPeers, pCrisisListener, null, 0);
+	}
+
+	/**
+	 * 
+	 * @param pRttEstimator
+	 *            {@link IRttEstimator} retransmission timeouts come from, can
+	 *            be <code>null</code>
+	 * @param pRetransmitAttempts
+	 *            {@link Integer} times an unacked packet is sent again before
+	 *            giving up on the peer, <code>0</code> to not retransmit.
+	 */
+	public AckWindowManager(final IPacketHandler pParent, final int pStepsBeforeCrisis, final int pWindowCapacity,
+			final int pMaxPeers, final IGenericWindowCrisisListener pCrisisListener,
+			final IRttEstimator pRttEstimator, final int pRetransmitAttempts) {
 		this.mParent = pParent;
+		this.mRttEstimator = pRttEstimator;
+		this.mRetransmitAttempts = Math.max(0, pRetransmitAttempts);
+		this.mRetransmits = new RetransmitBuffer[pMaxPeers];
 		this.mStepsBeforeCrisis = pStepsBeforeCrisis;
 		this.mWindowSize = pWindowCapacity;
 		this.mCrisisListener = pCrisisListener;
-		this.mClients = new HashMap<InetAddress, IAckWindowClient>();
+		this.mClients = new IAckWindowClient[pMaxPeers];
+		this.mAckBuffer = new int[Math.max(DefaultAckBufferSize, pWindowCapacity)];
 	}
 
 	// ===========================================================
@@ -53,14 +104,13 @@ public class AckWindowManager implements IAckWindowManager {
 	@Override
 	public boolean currentWindowEmpty() {
 		boolean windowsEmpty = true;
-		Iterator<Entry<InetAddress, IAckWindowClient>> entries = this.mClients.entrySet().iterator();
-		while (entries.hasNext()) {
-			Entry<InetAddress, IAckWindowClient> entry = entries.next();
-			if (entry.getValue().currentWindowEmpty()) {
+		for (int i = 0; i < this.mClients.length; i++) {
+			final IAckWindowClient client = this.mClients[i];
+			if (client == null || client.currentWindowEmpty()) {
 				/* All is ok */
 			} else {
 				windowsEmpty = false;
-				log.warn("Client: {} has not acknowledged our packets", entry.getKey());
+				log.warn("Client: {} has not acknowledged our packets", i);
 			}
 		}
 		return windowsEmpty;
@@ -68,11 +118,18 @@ public class AckWindowManager implements IAckWindowManager {
 
 	@Override
 	public void slide(int pStep) {
-		Iterator<Entry<InetAddress, IAckWindowClient>> entries = this.mClients.entrySet().iterator();
-		while (entries.hasNext()) {
-			Entry<InetAddress, IAckWindowClient> entry = entries.next();
-			entry.getValue().slide(pStep);
-			this.sendMultiAck(entry.getKey(), entry.getValue().getIDsFromLastWindowAndClear());
+		for (int i = 0; i < this.mClients.length; i++) {
+			final IAckWindowClient client = this.mClients[i];
+			if (client != null) {
+				client.slide(pStep);
+				int count;
+				do {
+					count = client.getIDsFromLastWindowAndClear(this.mAckBuffer);
+					if (count > 0) {
+						this.sendAcks(i, this.mAckBuffer, count);
+					}
+				} while (count == this.mAckBuffer.length);
+			}
 		}
 	}
 
@@ -91,56 +148,174 @@ public class AckWindowManager implements IAckWindowManager {
 		return null;
 	}
 
+	/**
+	 * This does not do anything, instead access its children. {@link #mClients}
+	 * 
+	 * @see com.niffy.AndEngineLockStepEngine.window.IGenericWindowQuery#getIDsFromLastWindowAndClear(int[])
+	 */
+	@Override
+	public int getIDsFromLastWindowAndClear(int[] pBuffer) {
+		return 0;
+	}
+
+	/**
+	 * A peer whose packets are kept to send again is only reported by
+	 * {@link #retransmit(long)} once it gives up, not because its acks are
+	 * late in the window.
+	 */
 	@Override
 	public void windowNotEmpty(InetAddress pAddress) {
+		if (this.isRetransmitting(pAddress)) {
+			log.debug("Ignoring window crisis for: {} as its packets are being resent", pAddress);
+			return;
+		}
 		this.mParent.windowNotEmpty(pAddress);
 	}
 
 	@Override
-	public void addClient(InetAddress pAddress) {
-		if (this.mClients.containsKey(pAddress)) {
+	public void addClient(int pPeerID, InetAddress pAddress) {
+		if (!this.isPeer(pPeerID)) {
+			log.error("Went to create ack window manager for: {} but id: {} is out of range.", pAddress, pPeerID);
+		} else if (this.mClients[pPeerID] != null) {
 			log.warn("Went to create ack window manager for: {} but is already added.", pAddress);
 		} else {
-			this.mClients.put(pAddress, new AckWindowClientManager(this, pAddress, this.mStepsBeforeCrisis,
-					this.mWindowSize, this));
+			this.mClients[pPeerID] = new AckWindowClientManager(this, pAddress, this.mStepsBeforeCrisis,
+					this.mWindowSize, this);
+			if (this.mRetransmitAttempts > 0) {
+				this.mRetransmits[pPeerID] = new RetransmitBuffer(pAddress, this.mWindowSize);
+			}
 		}
 	}
 
 	@Override
-	public void removeClient(InetAddress pAddress) {
-		if (this.mClients.containsKey(pAddress)) {
-			this.mClients.remove(pAddress);
+	public void removeClient(int pPeerID) {
+		if (this.isPeer(pPeerID) && this.mClients[pPeerID] != null) {
+			this.mClients[pPeerID] = null;
+			this.mRetransmits[pPeerID] = null;
 		} else {
-			log.warn("Went to remove client: {} from ack window, but client didn't have one!");
+			log.warn("Went to remove client: {} from ack window, but client didn't have one!", pPeerID);
 		}
 	}
 
 	@Override
-	public void processReceivedAck(InetAddress pAddress, int pReceivedAckForSequence) {
-		if (this.mClients.containsKey(pAddress)) {
-			this.mClients.get(pAddress).removeAwaitingAck(pReceivedAckForSequence);
+	public void processReceivedAck(int pPeerID, int pReceivedAckForSequence) {
+		if (this.isPeer(pPeerID) && this.mClients[pPeerID] != null) {
+			this.mClients[pPeerID].removeAwaitingAck(pReceivedAckForSequence);
+			if (this.mRetransmits[pPeerID] != null) {
+				this.mRetransmits[pPeerID].remove(pReceivedAckForSequence);
+			}
 		}
 	}
 
 	@Override
-	public void processReceivedAck(InetAddress pAddress, int[] pReceivedAckForSequence) {
-		if (this.mClients.containsKey(pAddress)) {
-			this.mClients.get(pAddress).removeAwaitingAck(pReceivedAckForSequence);
+	public void processReceivedAck(int pPeerID, int[] pReceivedAckForSequence) {
+		if (this.isPeer(pPeerID) && this.mClients[pPeerID] != null) {
+			this.mClients[pPeerID].removeAwaitingAck(pReceivedAckForSequence);
+			final RetransmitBuffer retransmits = this.mRetransmits[pPeerID];
+			if (retransmits != null) {
+				for (int i = 0; i < pReceivedAckForSequence.length; i++) {
+					retransmits.remove(pReceivedAckForSequence[i]);
+				}
+			}
 		}
+	}
 
+	@Override
+	public void processReceivedAck(int pPeerID, MessageAckRange pReceivedAcks) {
+		if (this.isPeer(pPeerID) && this.mClients[pPeerID] != null) {
+			final IAckWindowClient client = this.mClients[pPeerID];
+			final RetransmitBuffer retransmits = this.mRetransmits[pPeerID];
+			final byte[] bitmap = pReceivedAcks.getBitmap();
+			final int base = pReceivedAcks.getBase();
+			final int bytes = MessageAckRange.getBitmapSize(pReceivedAcks.getSpan());
+			for (int i = 0; i < bytes; i++) {
+				int bits = bitmap[i] & 0xFF;
+				while (bits != 0) {
+					final int bit = Integer.numberOfTrailingZeros(bits);
+					final int sequence = SequenceNumber.add(base, (i << 3) + bit);
+					client.removeAwaitingAck(sequence);
+					if (retransmits != null) {
+						retransmits.remove(sequence);
+					}
+					bits &= bits - 1;
+				}
+			}
+		}
 	}
 
 	@Override
-	public void addAwaitingAck(InetAddress pAddress, int pSequenceNumber) {
-		if (this.mClients.containsKey(pAddress)) {
-			this.mClients.get(pAddress).addAwaitingAck(pSequenceNumber);
+	public void addAwaitingAck(int pPeerID, int pSequenceNumber) {
+		if (this.isPeer(pPeerID) && this.mClients[pPeerID] != null) {
+			this.mClients[pPeerID].addAwaitingAck(pSequenceNumber);
 		}
 	}
 
 	@Override
-	public void addSentAck(InetAddress pAddress, int pSequenceNumber) {
-		if (this.mClients.containsKey(pAddress)) {
-			this.mClients.get(pAddress).addSentAck(pSequenceNumber);
+	public boolean addAwaitingAck(int pPeerID, int pSequenceNumber, IMessage pMessage) {
+		this.addAwaitingAck(pPeerID, pSequenceNumber);
+		if (this.isPeer(pPeerID) && this.mRetransmits[pPeerID] != null) {
+			this.mRetransmits[pPeerID].add(pSequenceNumber, pMessage,
+					System.nanoTime() + this.getRetransmitTimeout(pPeerID));
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public long retransmit(long pNow) {
+		long next = -1;
+		for (int i = 0; i < this.mRetransmits.length; i++) {
+			final RetransmitBuffer retransmits = this.mRetransmits[i];
+			if (retransmits == null || retransmits.getOutstanding() == 0) {
+				continue;
+			}
+			boolean exhausted = false;
+			final long timeout = this.getRetransmitTimeout(i);
+			for (int j = 0; j < retransmits.getSize(); j++) {
+				if (!retransmits.isOutstanding(j)) {
+					continue;
+				}
+				long dueAt = retransmits.getDueAt(j);
+				if (dueAt - pNow <= 0) {
+					final int attempts = retransmits.getAttempts(j);
+					if (attempts >= this.mRetransmitAttempts) {
+						exhausted = true;
+						final int size = retransmits.getSize();
+						retransmits.removeAt(j);
+						/* Acked packets at the front go with it, so indexes move down */
+						j = Math.max(-1, j - (size - retransmits.getSize()));
+						continue;
+					}
+					this.mParent.resend(i, retransmits.getPacket(j), retransmits.getLength(j));
+					dueAt = pNow + Math.min(MaxRetransmitTimeout, timeout << (attempts + 1));
+					retransmits.resent(j, dueAt);
+				}
+				if (next == -1 || dueAt - pNow < next) {
+					next = dueAt - pNow;
+				}
+			}
+			if (exhausted) {
+				log.warn("Gave up resending to: {} after: {} attempts", retransmits.getAddress(),
+						this.mRetransmitAttempts);
+				this.mParent.windowNotEmpty(retransmits.getAddress());
+			}
+		}
+		return next;
+	}
+
+	@Override
+	public long getRetransmitTimeout(int pPeerID) {
+		final long timeout = (this.mRttEstimator != null) ? this.mRttEstimator.getTimeout(pPeerID) : -1;
+		if (timeout < 0) {
+			return DefaultRetransmitTimeout;
+		}
+		return Math.max(MinRetransmitTimeout, Math.min(MaxRetransmitTimeout, timeout));
+	}
+
+	@Override
+	public void addSentAck(int pPeerID, int pSequenceNumber) {
+		if (this.isPeer(pPeerID) && this.mClients[pPeerID] != null) {
+			this.mClients[pPeerID].addSentAck(pSequenceNumber);
 		}
 	}
 
@@ -150,12 +325,76 @@ public class AckWindowManager implements IAckWindowManager {
 	// ===========================================================
 	// Methods
 	// ===========================================================
-	protected void sendMultiAck(final InetAddress pAddress, final int[] pAcksSent) {
+	protected boolean isPeer(final int pPeerID) {
+		return pPeerID >= 0 && pPeerID < this.mClients.length;
+	}
+
+	/**
+	 * @return <code>true</code> if packets to the address are kept in
+	 *         {@link #mRetransmits}
+	 */
+	protected boolean isRetransmitting(final InetAddress pAddress) {
+		for (int i = 0; i < this.mRetransmits.length; i++) {
+			final RetransmitBuffer retransmits = this.mRetransmits[i];
+			if (retransmits != null && retransmits.getAddress().equals(pAddress)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sort the acks in sequence order and send each run that fits in {@link MessageAckRange#MaxSpan}
+	 * as whichever of {@link MessageAckRange} or {@link MessageAckMulti} is
+	 * smaller, so sparse acks never cost more than they used to. Peers older
+	 * than {@link MessageAckRange#ACK_RANGE_VERSION} are only sent
+	 * {@link MessageAckMulti}
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id to send to.
+	 * @param pAcksSent
+	 *            {@link Integer} array of acks, sorted in place.
+	 * @param pCount
+	 *            {@link Integer} of acks valid in <code>pAcksSent</code>
+	 */
+	protected void sendAcks(final int pPeerID, final int[] pAcksSent, final int pCount) {
+		if (this.mParent.getPeerVersion(pPeerID) < MessageAckRange.ACK_RANGE_VERSION) {
+			this.sendMultiAck(pPeerID, pAcksSent, 0, pCount);
+			return;
+		}
+		SequenceNumber.sort(pAcksSent, 0, pCount);
+		int start = 0;
+		while (start < pCount) {
+			final int base = pAcksSent[start];
+			int end = start + 1;
+			while (end < pCount && SequenceNumber.distance(base, pAcksSent[end]) < MessageAckRange.MaxSpan) {
+				end++;
+			}
+			final int span = SequenceNumber.distance(base, pAcksSent[end - 1]) + 1;
+			if (MessageAckRange.getTransmissionSize(span) <= 4 + ((end - start) * 4)) {
+				this.sendRangeAck(pPeerID, pAcksSent, start, end);
+			} else {
+				this.sendMultiAck(pPeerID, pAcksSent, start, end - start);
+			}
+			start = end;
+		}
+	}
+
+	protected void sendRangeAck(final int pPeerID, final int[] pSorted, final int pStart, final int pEnd) {
+		MessageAckRange ack = (MessageAckRange) this.mParent.obtainMessage(MessageFlag.ACK_RANGE);
+		ack.setRequireAck(false);
+		ack.setIntended(IntendedFlag.NETWORK);
+		ack.setSequences(pSorted, pStart, pEnd);
+		this.mParent.sendMessage(pPeerID, ack, false);
+		this.mParent.recycleMessage(ack);
+	}
+
+	protected void sendMultiAck(final int pPeerID, final int[] pAcksSent, final int pOffset, final int pCount) {
 		MessageAckMulti ack = (MessageAckMulti) this.mParent.obtainMessage(MessageFlag.ACK_MULTI);
 		ack.setRequireAck(false);
 		ack.setIntended(IntendedFlag.NETWORK);
-		ack.addSequences(pAcksSent);
-		this.mParent.sendMessage(pAddress, ack, false);
+		ack.addSequences(pAcksSent, pOffset, pCount);
+		this.mParent.sendMessage(pPeerID, ack, false);
 		this.mParent.recycleMessage(ack);
 	}
 	// ===========================================================
@@ -2,48 +2,112 @@ package com.niffy.AndEngineLockStepEngine.packet.ack;
 
 import java.net.InetAddress;
 
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAckRange;
+import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindowCrisisListener;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindowQuery;
 
+/**
+ * Clients are keyed by their {@link IPeerRegistry} id.
+ */
 public interface IAckWindowManager extends IGenericWindowQuery, IGenericWindowCrisisListener {
-	public void addClient(final InetAddress pAddress);
+	/**
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id of client.
+	 * @param pAddress
+	 *            {@link InetAddress} of client, reported if its window is
+	 *            not empty.
+	 */
+	public void addClient(final int pPeerID, final InetAddress pAddress);
 
-	public void removeClient(final InetAddress pAddress);
+	public void removeClient(final int pPeerID);
 
 	/**
 	 * Process an ack
 	 * 
-	 * @param pAddress
-	 *            {@link InetAddress} who the ack is from
+	 * @param pPeerID
+	 *            {@link Integer} id of who the ack is from
 	 * @param pReceivedAckForSequence
 	 *            {@link Integer} sequence which was acknowledged.
 	 */
-	public void processReceivedAck(final InetAddress pAddress, final int pReceivedAckForSequence);
+	public void processReceivedAck(final int pPeerID, final int pReceivedAckForSequence);
 
 	/**
 	 * Process a collection of acks.
 	 * 
-	 * @see #processReceivedAck(InetAddress, int)
-	 * @param pAddress
-	 *            {@link InetAddress} who the ack's is from
+	 * @see #processReceivedAck(int, int)
+	 * @param pPeerID
+	 *            {@link Integer} id of who the ack's is from
 	 * @param pReceivedAckForSequence
 	 *            {@link Integer} sequences which was acknowledged.
 	 */
-	public void processReceivedAck(final InetAddress pAddress, final int[] pReceivedAckForSequence);
+	public void processReceivedAck(final int pPeerID, final int[] pReceivedAckForSequence);
+
+	/**
+	 * Process a selective ack, straight from its bitmap.
+	 * 
+	 * @see #processReceivedAck(int, int)
+	 * @param pPeerID
+	 *            {@link Integer} id of who the ack's is from
+	 * @param pReceivedAcks
+	 *            {@link MessageAckRange} of sequences acknowledged.
+	 */
+	public void processReceivedAck(final int pPeerID, final MessageAckRange pReceivedAcks);
 
 	/**
 	 * Add sequence number which is requiring an ack.
 	 * 
-	 * @param pAddress
-	 *            {@link InetAddress} of who was send the sequence.
+	 * @param pPeerID
+	 *            {@link Integer} id of who was send the sequence.
+	 * @param pSequenceNumber
+	 *            {@link Integer} of sequence number awaiting ack for.
+	 */
+	public void addAwaitingAck(final int pPeerID, final int pSequenceNumber);
+
+	/**
+	 * Add a sequence requiring an ack, and keep the packet to send again
+	 * until it is acked. Does the same as {@link #addAwaitingAck(int, int)}
+	 * when not retransmitting.
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} id of who was send the sequence.
 	 * @param pSequenceNumber
 	 *            {@link Integer} of sequence number awaiting ack for.
+	 * @param pMessage
+	 *            {@link IMessage} serialised as it is now, so its header must
+	 *            not depend on what the peer has seen.
+	 * @return <code>true</code> if the packet is kept to send again.
+	 */
+	public boolean addAwaitingAck(final int pPeerID, final int pSequenceNumber, final IMessage pMessage);
+
+	/**
+	 * Send again every kept packet whose retransmission timeout has passed.
+	 * A packet sent {@link IBaseOptions#getRetransmitAttempts()} times
+	 * without an ack is given up on and its peer reported straight to the
+	 * packet handler. For such peers this is the only crisis reported,
+	 * {@link #windowNotEmpty(InetAddress)} ignores them.
+	 * 
+	 * @param pNow
+	 *            {@link Long} {@link System#nanoTime()}
+	 * @return {@link Long} nanoseconds until the next packet is due, or
+	 *         <code>-1</code> if none are kept.
+	 */
+	public long retransmit(final long pNow);
+
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} id of peer.
+	 * @return {@link Long} nanoseconds a packet to the peer is first given to
+	 *         be acked.
 	 */
-	public void addAwaitingAck(final InetAddress pAddress, final int pSequenceNumber);
+	public long getRetransmitTimeout(final int pPeerID);
 	/**
 	 * Ack sent to whom and for what sequence number.
-	 * @param pAddress {@link InetAddress} of whom sent to.
+	 * @param pPeerID {@link Integer} id of whom sent to.
 	 * @param pSequenceNumber {@link Integer} of sequence acknowledged.
 	 */
-	public void addSentAck(final InetAddress pAddress, final int pSequenceNumber);
+	public void addSentAck(final int pPeerID, final int pSequenceNumber);
 }
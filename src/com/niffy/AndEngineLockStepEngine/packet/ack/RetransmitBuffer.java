@@ -0,0 +1,252 @@
+package com.niffy.AndEngineLockStepEngine.packet.ack;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.messages.SequenceNumber;
+
+/**
+ * Packets sent to one peer which are waiting on an ack, serialised so they
+ * can be sent again. Kept in the order sent, which is also
+ * {@link SequenceNumber} order, so an ack is found by binary search and acked packets at the front are
+ * dropped as the oldest is acked.
+ * <p>
+ * Arrays only grow when more packets are outstanding than ever before, the
+ * serialised copies reuse each slots array. Communication thread only.
+ */
+public class RetransmitBuffer {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int MinimumCapacity = 16;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	final protected InetAddress mAddress;
+	protected int[] mSequences;
+	protected byte[][] mPackets;
+	protected int[] mLengths;
+	/**
+	 * {@link System#nanoTime()} each is next due to be sent.
+	 */
+	protected long[] mDueAt;
+	protected int[] mAttempts;
+	protected boolean[] mAcked;
+	/**
+	 * Oldest slot, and how many from there are in use, acked or not.
+	 */
+	protected int mHead = 0;
+	protected int mSize = 0;
+	protected int mOutstanding = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 *
+	 * @param pAddress
+	 *            {@link InetAddress} of the peer.
+	 * @param pCapacity
+	 *            {@link Integer} of packets to make room for up front.
+	 */
+	public RetransmitBuffer(final InetAddress pAddress, final int pCapacity) {
+		this.mAddress = pAddress;
+		this.allocate(Math.max(MinimumCapacity, pCapacity));
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public InetAddress getAddress() {
+		return this.mAddress;
+	}
+
+	/**
+	 * @return {@link Integer} of packets not yet acked.
+	 */
+	public int getOutstanding() {
+		return this.mOutstanding;
+	}
+
+	public int getSize() {
+		return this.mSize;
+	}
+
+	/**
+	 * @param pIndex
+	 *            {@link Integer} from <code>0</code>, oldest first, to
+	 *            {@link #getSize()}
+	 * @return <code>true</code> if that packet is still waiting on an ack.
+	 */
+	public boolean isOutstanding(final int pIndex) {
+		return !this.mAcked[this.slot(pIndex)];
+	}
+
+	public int getSequence(final int pIndex) {
+		return this.mSequences[this.slot(pIndex)];
+	}
+
+	public byte[] getPacket(final int pIndex) {
+		return this.mPackets[this.slot(pIndex)];
+	}
+
+	public int getLength(final int pIndex) {
+		return this.mLengths[this.slot(pIndex)];
+	}
+
+	public long getDueAt(final int pIndex) {
+		return this.mDueAt[this.slot(pIndex)];
+	}
+
+	/**
+	 * @return {@link Integer} times sent again so far.
+	 */
+	public int getAttempts(final int pIndex) {
+		return this.mAttempts[this.slot(pIndex)];
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Keep a sent packet, its sequence must be later than any already added.
+	 *
+	 * @param pSequence
+	 *            {@link Integer} of the packet.
+	 * @param pMessage
+	 *            {@link IMessage} to serialise as it is now.
+	 * @param pDueAt
+	 *            {@link Long} {@link System#nanoTime()} to first send it again
+	 *            at.
+	 */
+	public void add(final int pSequence, final IMessage pMessage, final long pDueAt) {
+		if (this.mSize == this.mSequences.length) {
+			this.allocate(this.mSequences.length * 2);
+		}
+		final int slot = this.slot(this.mSize);
+		final int length = pMessage.getTransmissionSize();
+		if (this.mPackets[slot] == null || this.mPackets[slot].length < length) {
+			this.mPackets[slot] = new byte[length];
+		}
+		pMessage.writeTo(ByteBuffer.wrap(this.mPackets[slot], 0, length));
+		this.mSequences[slot] = pSequence;
+		this.mLengths[slot] = length;
+		this.mDueAt[slot] = pDueAt;
+		this.mAttempts[slot] = 0;
+		this.mAcked[slot] = false;
+		this.mSize++;
+		this.mOutstanding++;
+	}
+
+	/**
+	 * @param pSequence
+	 *            {@link Integer} acked.
+	 * @return <code>true</code> if it was outstanding.
+	 */
+	public boolean remove(final int pSequence) {
+		int low = 0;
+		int high = this.mSize - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int distance = SequenceNumber.distance(pSequence, this.mSequences[this.slot(middle)]);
+			if (distance < 0) {
+				low = middle + 1;
+			} else if (distance > 0) {
+				high = middle - 1;
+			} else {
+				return this.removeAt(middle);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stop waiting on a packet, whether acked or given up on.
+	 *
+	 * @param pIndex
+	 *            {@link Integer} from <code>0</code>, oldest first.
+	 * @return <code>true</code> if it was outstanding.
+	 */
+	public boolean removeAt(final int pIndex) {
+		final int slot = this.slot(pIndex);
+		if (this.mAcked[slot]) {
+			return false;
+		}
+		this.mAcked[slot] = true;
+		this.mOutstanding--;
+		while (this.mSize > 0 && this.mAcked[this.mHead]) {
+			this.mHead = this.slot(1);
+			this.mSize--;
+		}
+		return true;
+	}
+
+	/**
+	 * Record a packet has been sent again.
+	 *
+	 * @param pIndex
+	 *            {@link Integer} from <code>0</code>, oldest first.
+	 * @param pDueAt
+	 *            {@link Long} {@link System#nanoTime()} to next send it at.
+	 */
+	public void resent(final int pIndex, final long pDueAt) {
+		final int slot = this.slot(pIndex);
+		this.mAttempts[slot]++;
+		this.mDueAt[slot] = pDueAt;
+	}
+
+	public void clear() {
+		this.mHead = 0;
+		this.mSize = 0;
+		this.mOutstanding = 0;
+	}
+
+	protected int slot(final int pIndex) {
+		return (this.mHead + pIndex) & (this.mSequences.length - 1);
+	}
+
+	/**
+	 * Grow to a power of two no less than <code>pCapacity</code>, keeping what
+	 * is held in order from the start.
+	 */
+	protected void allocate(final int pCapacity) {
+		int capacity = 1;
+		while (capacity < pCapacity) {
+			capacity <<= 1;
+		}
+		final int[] sequences = new int[capacity];
+		final byte[][] packets = new byte[capacity][];
+		final int[] lengths = new int[capacity];
+		final long[] dueAt = new long[capacity];
+		final int[] attempts = new int[capacity];
+		final boolean[] acked = new boolean[capacity];
+		if (this.mSequences != null) {
+			for (int i = 0; i < this.mSequences.length; i++) {
+				final int slot = this.slot(i);
+				sequences[i] = this.mSequences[slot];
+				packets[i] = this.mPackets[slot];
+				lengths[i] = this.mLengths[slot];
+				dueAt[i] = this.mDueAt[slot];
+				attempts[i] = this.mAttempts[slot];
+				acked[i] = this.mAcked[slot];
+			}
+		}
+		this.mSequences = sequences;
+		this.mPackets = packets;
+		this.mLengths = lengths;
+		this.mDueAt = dueAt;
+		this.mAttempts = attempts;
+		this.mAcked = acked;
+		this.mHead = 0;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
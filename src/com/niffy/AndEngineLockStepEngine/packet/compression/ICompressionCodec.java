@@ -0,0 +1,55 @@
+package com.niffy.AndEngineLockStepEngine.packet.compression;
+
+/**
+ * Compresses packet payloads. An instance may keep working state between
+ * calls, so it is used by one thread only, make one per thread with an
+ * {@link ICompressionCodecFactory}
+ */
+public interface ICompressionCodec {
+	/**
+	 * @param pLength
+	 *            {@link Integer} of bytes to compress.
+	 * @return {@link Integer} most bytes
+	 *         {@link #compress(byte[], int, int, byte[], int, int)} can write
+	 *         for them.
+	 */
+	public int maxCompressedLength(final int pLength);
+
+	/**
+	 * @param pSource
+	 *            {@link Byte} array holding the data.
+	 * @param pOffset
+	 *            {@link Integer} where it starts in <code>pSource</code>
+	 * @param pLength
+	 *            {@link Integer} of bytes.
+	 * @param pDestination
+	 *            {@link Byte} array to compress in to.
+	 * @param pDestinationOffset
+	 *            {@link Integer} where to start writing.
+	 * @param pLimit
+	 *            {@link Integer} most bytes to write.
+	 * @return {@link Integer} of bytes written, or <code>-1</code> if it would
+	 *         not fit in <code>pLimit</code>
+	 */
+	public int compress(final byte[] pSource, final int pOffset, final int pLength, final byte[] pDestination,
+			final int pDestinationOffset, final int pLimit);
+
+	/**
+	 * @param pSource
+	 *            {@link Byte} array holding compressed data.
+	 * @param pOffset
+	 *            {@link Integer} where it starts in <code>pSource</code>
+	 * @param pLength
+	 *            {@link Integer} of compressed bytes.
+	 * @param pDestination
+	 *            {@link Byte} array to decompress in to.
+	 * @param pDestinationOffset
+	 *            {@link Integer} where to start writing.
+	 * @param pOriginalLength
+	 *            {@link Integer} of bytes the data had before compressing.
+	 * @return <code>true</code> if the data was well formed and decompressed
+	 *         to exactly <code>pOriginalLength</code> bytes.
+	 */
+	public boolean decompress(final byte[] pSource, final int pOffset, final int pLength, final byte[] pDestination,
+			final int pDestinationOffset, final int pOriginalLength);
+}
@@ -0,0 +1,12 @@
+package com.niffy.AndEngineLockStepEngine.packet.compression;
+
+/**
+ * Makes a {@link ICompressionCodec} for each thread which compresses, both
+ * ends must use the same kind.
+ */
+public interface ICompressionCodecFactory {
+	/**
+	 * @return a new codec, never <code>null</code>
+	 */
+	public ICompressionCodec create();
+}
@@ -0,0 +1,268 @@
+package com.niffy.AndEngineLockStepEngine.packet.compression;
+
+import java.util.Arrays;
+
+/**
+ * Fast compression in the LZ4 block format, pure Java. Trades ratio for
+ * speed: one hash probe per position, and positions which keep missing are
+ * skipped over faster.
+ * <p>
+ * A block is a run of sequences, each a token byte, the literals and then a
+ * match. The token's high four bits are the literal count and low four bits
+ * the match length less {@link #MIN_MATCH}, a value of 15 in either carries
+ * on in following bytes, each added until one is not 255. The match is a
+ * little endian offset back in to the output, of up to {@link #MAX_OFFSET},
+ * and the length. The last sequence is literals only, and the last
+ * {@link #LAST_LITERALS} bytes are always literals.
+ * <p>
+ * Keeps its hash table between calls, use from one thread only.
+ */
+public class LZ4Codec implements ICompressionCodec {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final int MIN_MATCH = 4;
+	protected static final int LAST_LITERALS = 5;
+	/**
+	 * A match must start at least this far before the end.
+	 */
+	protected static final int MF_LIMIT = 12;
+	protected static final int MAX_OFFSET = 0xFFFF;
+	protected static final int HASH_LOG = 12;
+	/**
+	 * Each {@link #SKIP_TRIGGER} bytes without a match the search steps one
+	 * byte further.
+	 */
+	protected static final int SKIP_TRIGGER = 6;
+	protected static final int RUN_MASK = 0x0F;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	/**
+	 * Last position seen for each hash of four bytes, plus {@link #mBase}
+	 * of the call it was seen in. Each call starts its base past every
+	 * earlier one, so old entries fall before the input and are ignored
+	 * rather than cleared.
+	 */
+	protected final int[] mTable = new int[1 << HASH_LOG];
+	protected int mBase = 1;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public LZ4Codec() {
+
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public int maxCompressedLength(final int pLength) {
+		return pLength + pLength / 255 + 16;
+	}
+
+	@Override
+	public int compress(final byte[] pSource, final int pOffset, final int pLength, final byte[] pDestination,
+			final int pDestinationOffset, final int pLimit) {
+		final int end = pOffset + pLength;
+		final int destinationEnd = pDestinationOffset + pLimit;
+		int anchor = pOffset;
+		int out = pDestinationOffset;
+		if (pLength > MF_LIMIT) {
+			if (this.mBase > Integer.MAX_VALUE - pLength - 1) {
+				Arrays.fill(this.mTable, 0);
+				this.mBase = 1;
+			}
+			final int base = this.mBase - pOffset;
+			this.mBase += pLength + 1;
+			final int matchLimit = end - LAST_LITERALS;
+			final int searchLimit = end - MF_LIMIT;
+			int position = pOffset;
+			while (position < searchLimit) {
+				final int value = readInt(pSource, position);
+				final int hash = hash(value);
+				int reference = this.mTable[hash] - base;
+				this.mTable[hash] = position + base;
+				if (reference < pOffset || position - reference > MAX_OFFSET || readInt(pSource, reference) != value) {
+					position += 1 + ((position - anchor) >>> SKIP_TRIGGER);
+					continue;
+				}
+				while (position > anchor && reference > pOffset && pSource[position - 1] == pSource[reference - 1]) {
+					position--;
+					reference--;
+				}
+				int matchLength = MIN_MATCH;
+				while (position + matchLength < matchLimit
+						&& pSource[position + matchLength] == pSource[reference + matchLength]) {
+					matchLength++;
+				}
+				out = writeSequence(pSource, anchor, position - anchor, position - reference, matchLength,
+						pDestination, out, destinationEnd);
+				if (out < 0) {
+					return -1;
+				}
+				position += matchLength;
+				anchor = position;
+				if (position - 2 < searchLimit) {
+					this.mTable[hash(readInt(pSource, position - 2))] = position - 2 + base;
+				}
+			}
+		}
+		out = writeLiterals(pSource, anchor, end - anchor, pDestination, out, destinationEnd);
+		return (out < 0) ? -1 : out - pDestinationOffset;
+	}
+
+	@Override
+	public boolean decompress(final byte[] pSource, final int pOffset, final int pLength, final byte[] pDestination,
+			final int pDestinationOffset, final int pOriginalLength) {
+		final int end = pOffset + pLength;
+		final int destinationEnd = pDestinationOffset + pOriginalLength;
+		int in = pOffset;
+		int out = pDestinationOffset;
+		while (in < end) {
+			final int token = pSource[in++] & 0xFF;
+			int literals = token >>> 4;
+			if (literals == RUN_MASK) {
+				int more;
+				do {
+					if (in >= end) {
+						return false;
+					}
+					more = pSource[in++] & 0xFF;
+					literals += more;
+				} while (more == 0xFF);
+			}
+			if (literals > end - in || literals > destinationEnd - out) {
+				return false;
+			}
+			System.arraycopy(pSource, in, pDestination, out, literals);
+			in += literals;
+			out += literals;
+			if (in == end) {
+				break;
+			}
+			if (end - in < 2) {
+				return false;
+			}
+			final int offset = (pSource[in] & 0xFF) | ((pSource[in + 1] & 0xFF) << 8);
+			in += 2;
+			if (offset == 0 || out - offset < pDestinationOffset) {
+				return false;
+			}
+			int matchLength = token & RUN_MASK;
+			if (matchLength == RUN_MASK) {
+				int more;
+				do {
+					if (in >= end) {
+						return false;
+					}
+					more = pSource[in++] & 0xFF;
+					matchLength += more;
+				} while (more == 0xFF);
+			}
+			matchLength += MIN_MATCH;
+			if (matchLength > destinationEnd - out) {
+				return false;
+			}
+			final int from = out - offset;
+			if (offset >= matchLength) {
+				System.arraycopy(pDestination, from, pDestination, out, matchLength);
+			} else {
+				/* Overlapping, repeats the last offset bytes */
+				for (int i = 0; i < matchLength; i++) {
+					pDestination[out + i] = pDestination[from + i];
+				}
+			}
+			out += matchLength;
+		}
+		return out == destinationEnd;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	protected static int readInt(final byte[] pSource, final int pPosition) {
+		return (pSource[pPosition] & 0xFF) | ((pSource[pPosition + 1] & 0xFF) << 8)
+				| ((pSource[pPosition + 2] & 0xFF) << 16) | ((pSource[pPosition + 3] & 0xFF) << 24);
+	}
+
+	protected static int hash(final int pValue) {
+		return (pValue * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	/**
+	 * @return {@link Integer} bytes needed for a length over 15 carried on
+	 *         after the token.
+	 */
+	protected static int lengthBytes(final int pLength) {
+		return (pLength < RUN_MASK) ? 0 : (pLength - RUN_MASK) / 255 + 1;
+	}
+
+	protected static int writeLength(final int pLength, final byte[] pDestination, int pOut) {
+		int remaining = pLength - RUN_MASK;
+		while (remaining >= 0xFF) {
+			pDestination[pOut++] = (byte) 0xFF;
+			remaining -= 0xFF;
+		}
+		pDestination[pOut++] = (byte) remaining;
+		return pOut;
+	}
+
+	/**
+	 * @return {@link Integer} position after the sequence, or <code>-1</code>
+	 *         if it would pass <code>pDestinationEnd</code>
+	 */
+	protected static int writeSequence(final byte[] pSource, final int pAnchor, final int pLiterals,
+			final int pOffset, final int pMatchLength, final byte[] pDestination, int pOut,
+			final int pDestinationEnd) {
+		final int match = pMatchLength - MIN_MATCH;
+		if (pOut + 1 + lengthBytes(pLiterals) + pLiterals + 2 + lengthBytes(match) > pDestinationEnd) {
+			return -1;
+		}
+		pDestination[pOut++] = (byte) ((Math.min(pLiterals, RUN_MASK) << 4) | Math.min(match, RUN_MASK));
+		if (pLiterals >= RUN_MASK) {
+			pOut = writeLength(pLiterals, pDestination, pOut);
+		}
+		System.arraycopy(pSource, pAnchor, pDestination, pOut, pLiterals);
+		pOut += pLiterals;
+		pDestination[pOut++] = (byte) pOffset;
+		pDestination[pOut++] = (byte) (pOffset >>> 8);
+		if (match >= RUN_MASK) {
+			pOut = writeLength(match, pDestination, pOut);
+		}
+		return pOut;
+	}
+
+	/**
+	 * The last sequence, literals without a match.
+	 */
+	protected static int writeLiterals(final byte[] pSource, final int pAnchor, final int pLiterals,
+			final byte[] pDestination, int pOut, final int pDestinationEnd) {
+		if (pOut + 1 + lengthBytes(pLiterals) + pLiterals > pDestinationEnd) {
+			return -1;
+		}
+		pDestination[pOut++] = (byte) (Math.min(pLiterals, RUN_MASK) << 4);
+		if (pLiterals >= RUN_MASK) {
+			pOut = writeLength(pLiterals, pDestination, pOut);
+		}
+		System.arraycopy(pSource, pAnchor, pDestination, pOut, pLiterals);
+		return pOut + pLiterals;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	public static final ICompressionCodecFactory FACTORY = new ICompressionCodecFactory() {
+
+		@Override
+		public ICompressionCodec create() {
+			return new LZ4Codec();
+		}
+	};
+}
@@ -0,0 +1,55 @@
+package com.niffy.AndEngineLockStepEngine.peer;
+
+import java.net.InetAddress;
+
+/**
+ * Gives each peer a compact {@link Integer} id, so per peer state can be kept
+ * in arrays and packets can be passed between threads without formatting or
+ * parsing addresses. Ids are between <code>0</code> and
+ * {@link #getMaxPeers()}, and are reused once unregistered.
+ * <p>
+ * Shared by every thread, so implementations must be thread safe.
+ */
+public interface IPeerRegistry {
+	public final static int NO_PEER = -1;
+
+	/**
+	 * Get the id of a peer, assigning one if it does not have one.
+	 * 
+	 * @param pAddress
+	 *            {@link InetAddress} of peer.
+	 * @return {@link Integer} id or {@link #NO_PEER} if the registry is full.
+	 */
+	public int register(final InetAddress pAddress);
+
+	/**
+	 * Free the id of a peer so it can be reused. Anything keyed by the id
+	 * should be removed before this is called.
+	 * 
+	 * @param pAddress
+	 *            {@link InetAddress} of peer.
+	 * @return {@link Integer} id that was freed or {@link #NO_PEER} if the
+	 *         peer was not registered.
+	 */
+	public int unregister(final InetAddress pAddress);
+
+	/**
+	 * @param pAddress
+	 *            {@link InetAddress} of peer.
+	 * @return {@link Integer} id or {@link #NO_PEER} if not registered.
+	 */
+	public int getID(final InetAddress pAddress);
+
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} id of peer.
+	 * @return {@link InetAddress} of peer or <code>null</code> if no peer has
+	 *         the id.
+	 */
+	public InetAddress getAddress(final int pPeerID);
+
+	/**
+	 * @return {@link Integer} size to make tables indexed by peer id.
+	 */
+	public int getMaxPeers();
+}
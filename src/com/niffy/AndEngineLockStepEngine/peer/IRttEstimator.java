@@ -0,0 +1,49 @@
+package com.niffy.AndEngineLockStepEngine.peer;
+
+/**
+ * Round trip time and jitter of each peer, by {@link IPeerRegistry} id.
+ * Samples are given by the communication thread, the estimates can be read
+ * from any thread.
+ */
+public interface IRttEstimator {
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} peer id.
+	 * @param pRTT
+	 *            {@link Long} measured round trip in nanoseconds.
+	 */
+	public void sample(final int pPeerID, final long pRTT);
+
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} peer id.
+	 * @return {@link Long} smoothed round trip in nanoseconds, <code>-1</code>
+	 *         if nothing has been measured.
+	 */
+	public long getSmoothedRTT(final int pPeerID);
+
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} peer id.
+	 * @return {@link Long} mean deviation of the round trip in nanoseconds,
+	 *         <code>-1</code> if nothing has been measured.
+	 */
+	public long getJitter(final int pPeerID);
+
+	/**
+	 * @param pPeerID
+	 *            {@link Integer} peer id.
+	 * @return {@link Long} round trip that is rarely exceeded, the smoothed
+	 *         round trip plus four times the jitter, in nanoseconds.
+	 *         <code>-1</code> if nothing has been measured.
+	 */
+	public long getTimeout(final int pPeerID);
+
+	/**
+	 * Forget a peer, when it leaves or its id is reused.
+	 * 
+	 * @param pPeerID
+	 *            {@link Integer} peer id.
+	 */
+	public void reset(final int pPeerID);
+}
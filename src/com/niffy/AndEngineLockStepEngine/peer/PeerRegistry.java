@@ -0,0 +1,113 @@
+package com.niffy.AndEngineLockStepEngine.peer;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lookups do not lock. Registering and unregistering are synchronised and
+ * replace the address to id map, which only happens when peers join or leave.
+ */
+public class PeerRegistry implements IPeerRegistry {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(PeerRegistry.class);
+	public static final int DefaultMaxPeers = 32;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final AtomicReferenceArray<InetAddress> mAddresses;
+	/**
+	 * Copied on write so it can be read without locking.
+	 */
+	protected volatile HashMap<InetAddress, Integer> mIDs = new HashMap<InetAddress, Integer>();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public PeerRegistry() {
+		this(DefaultMaxPeers);
+	}
+
+	/**
+	 * 
+	 * @param pMaxPeers
+	 *            {@link Integer} of peers that can be registered at once.
+	 */
+	public PeerRegistry(final int pMaxPeers) {
+		this.mAddresses = new AtomicReferenceArray<InetAddress>(pMaxPeers);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public synchronized int register(InetAddress pAddress) {
+		final Integer existing = this.mIDs.get(pAddress);
+		if (existing != null) {
+			return existing;
+		}
+		final int size = this.mAddresses.length();
+		for (int i = 0; i < size; i++) {
+			if (this.mAddresses.get(i) == null) {
+				final HashMap<InetAddress, Integer> ids = new HashMap<InetAddress, Integer>(this.mIDs);
+				ids.put(pAddress, i);
+				this.mAddresses.set(i, pAddress);
+				this.mIDs = ids;
+				log.debug("Registered peer: {} as: {}", pAddress, i);
+				return i;
+			}
+		}
+		log.error("Could not register peer: {} all {} ids are in use", pAddress, size);
+		return NO_PEER;
+	}
+
+	@Override
+	public synchronized int unregister(InetAddress pAddress) {
+		final Integer existing = this.mIDs.get(pAddress);
+		if (existing == null) {
+			return NO_PEER;
+		}
+		final HashMap<InetAddress, Integer> ids = new HashMap<InetAddress, Integer>(this.mIDs);
+		ids.remove(pAddress);
+		this.mIDs = ids;
+		this.mAddresses.set(existing, null);
+		return existing;
+	}
+
+	@Override
+	public int getID(InetAddress pAddress) {
+		final Integer id = this.mIDs.get(pAddress);
+		return (id != null) ? id : NO_PEER;
+	}
+
+	@Override
+	public InetAddress getAddress(int pPeerID) {
+		if (pPeerID < 0 || pPeerID >= this.mAddresses.length()) {
+			return null;
+		}
+		return this.mAddresses.get(pPeerID);
+	}
+
+	@Override
+	public int getMaxPeers() {
+		return this.mAddresses.length();
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
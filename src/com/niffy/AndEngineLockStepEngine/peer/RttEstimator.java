@@ -0,0 +1,104 @@
+package com.niffy.AndEngineLockStepEngine.peer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Exponentially weighted moving average of the round trip and its mean
+ * deviation, as TCP does in RFC 6298. Each sample moves the average by
+ * <code>1/8</code> and the deviation by <code>1/4</code>.
+ * <p>
+ * Only one thread should give samples. Reading does not lock, the average and
+ * deviation are stored apart so one can be a sample older than the other.
+ */
+public class RttEstimator implements IRttEstimator {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	protected static final long NONE = -1;
+	protected static final int AverageShift = 3;
+	protected static final int DeviationShift = 2;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final AtomicLongArray mSmoothed;
+	protected final AtomicLongArray mDeviation;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * 
+	 * @param pMaxPeers
+	 *            {@link Integer} highest peer id plus one.
+	 */
+	public RttEstimator(final int pMaxPeers) {
+		this.mSmoothed = new AtomicLongArray(pMaxPeers);
+		this.mDeviation = new AtomicLongArray(pMaxPeers);
+		for (int i = 0; i < pMaxPeers; i++) {
+			this.reset(i);
+		}
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+	@Override
+	public void sample(int pPeerID, long pRTT) {
+		if (!this.isPeer(pPeerID) || pRTT < 0) {
+			return;
+		}
+		final long smoothed = this.mSmoothed.get(pPeerID);
+		if (smoothed == NONE) {
+			this.mDeviation.set(pPeerID, pRTT / 2);
+			this.mSmoothed.set(pPeerID, pRTT);
+			return;
+		}
+		final long deviation = this.mDeviation.get(pPeerID);
+		final long error = Math.abs(smoothed - pRTT);
+		this.mDeviation.set(pPeerID, deviation + ((error - deviation) >> DeviationShift));
+		this.mSmoothed.set(pPeerID, smoothed + ((pRTT - smoothed) >> AverageShift));
+	}
+
+	@Override
+	public long getSmoothedRTT(int pPeerID) {
+		return this.isPeer(pPeerID) ? this.mSmoothed.get(pPeerID) : NONE;
+	}
+
+	@Override
+	public long getJitter(int pPeerID) {
+		return this.isPeer(pPeerID) ? this.mDeviation.get(pPeerID) : NONE;
+	}
+
+	@Override
+	public long getTimeout(int pPeerID) {
+		final long smoothed = this.getSmoothedRTT(pPeerID);
+		if (smoothed == NONE) {
+			return NONE;
+		}
+		return smoothed + (4 * this.mDeviation.get(pPeerID));
+	}
+
+	@Override
+	public void reset(int pPeerID) {
+		if (this.isPeer(pPeerID)) {
+			this.mSmoothed.set(pPeerID, NONE);
+			this.mDeviation.set(pPeerID, NONE);
+		}
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	protected boolean isPeer(final int pPeerID) {
+		return pPeerID >= 0 && pPeerID < this.mSmoothed.length();
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -13,8 +13,10 @@ import android.os.Message;
 
 import com.niffy.AndEngineLockStepEngine.messages.MessageError;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 
 public abstract class BaseCommunicationThread extends Thread implements IBaseCommunicationThread {
 	// ===========================================================
@@ -27,10 +29,15 @@ public abstract class BaseCommunicationThread extends Thread implements IBaseCom
 	// ===========================================================
 	protected InetSocketAddress mAddress;
 	protected IBaseOptions mBaseOptions;
+	protected IPeerRegistry mPeerRegistry;
 	protected final AtomicBoolean mRunning = new AtomicBoolean(false);
 	protected final AtomicBoolean mTerminated = new AtomicBoolean(false);
 	protected WeakThreadHandler<IHandlerMessage> mCallerThreadHandler;
 	protected WeakThreadHandler<IHandlerMessage> mHandler;
+	/**
+	 * {@link IBaseOptions#getTraceRing()}, can be <code>null</code>
+	 */
+	protected TraceRing mTrace;
 
 	// ===========================================================
 	// Constructors
@@ -42,6 +49,8 @@ public abstract class BaseCommunicationThread extends Thread implements IBaseCom
 		this.mAddress = pAddress;
 		this.mCallerThreadHandler = pCaller;
 		this.mBaseOptions = pOptions;
+		this.mPeerRegistry = pOptions.getPeerRegistry();
+		this.mTrace = pOptions.getTraceRing();
 	}
 
 	// ===========================================================
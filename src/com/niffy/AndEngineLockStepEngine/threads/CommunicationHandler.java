@@ -1,7 +1,5 @@
 package com.niffy.AndEngineLockStepEngine.threads;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -18,8 +16,10 @@ import com.niffy.AndEngineLockStepEngine.exceptions.ClientPendingClosure;
 import com.niffy.AndEngineLockStepEngine.exceptions.NotConnectedToClient;
 import com.niffy.AndEngineLockStepEngine.flags.ErrorCodes;
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.flags.TraceFlag;
 import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
 import com.niffy.AndEngineLockStepEngine.threads.nio.IClientSelector;
@@ -81,7 +81,7 @@ public class CommunicationHandler extends CommunicationThread implements ICommun
 
 	@Override
 	public void handlePassedMessage(Message pMessage) {
-		log.debug("Handling message: {}", pMessage.what);
+		TraceRing.trace(this.mTrace, TraceFlag.ITC_MESSAGE, TraceRing.NO_PEER, pMessage.what);
 		super.handlePassedMessage(pMessage);
 		Bundle bundle;
 		String ip;
@@ -111,37 +111,28 @@ public class CommunicationHandler extends CommunicationThread implements ICommun
 
 	@Override
 	public <T extends IMessage> int sendMessage(InetAddress pAddress, T pMessage, boolean pTCP) {
-		log.debug("Send Message to: {}", pAddress.getHostAddress());
-		byte[] pData = null;
-		while (!Thread.interrupted() && this.mRunning.get() && !this.mTerminated.get()) {
+		if (!Thread.interrupted() && this.mRunning.get() && !this.mTerminated.get()) {
 			try {
-				final ByteArrayOutputStream bOutput = new ByteArrayOutputStream();
-				final DataOutputStream dOutput = new DataOutputStream(bOutput);
-				pMessage.write(dOutput);
-				dOutput.flush();
-				bOutput.flush();
-				pData = bOutput.toByteArray();
-				if(pTCP){
-					this.mTCPClient.send(pAddress, bOutput.toByteArray());
-				}else{
-					this.mUDP.send(pAddress, bOutput.toByteArray());
+				if (pTCP) {
+					this.mTCPClient.send(pAddress, pMessage);
+				} else {
+					this.mUDP.send(pAddress, pMessage);
 				}
 			} catch (IOException e) {
 				log.error("Error sending message to client: {}", pAddress, e);
-				this.networkMessageFailure(pAddress.toString(), pData, ITCFlags.NETWORK_SEND_MESSAGE_FAILURE,
+				this.networkMessageFailure(pAddress.toString(), null, ITCFlags.NETWORK_SEND_MESSAGE_FAILURE,
 						ErrorCodes.COULD_NOT_SEND);
-			}catch (ClientPendingClosure e){
+			} catch (ClientPendingClosure e) {
 				log.error("Error sending message to client: {}", pAddress, e);
-			}catch (ClientDoesNotExist e){
+			} catch (ClientDoesNotExist e) {
 				log.error("Error sending message to client: {}", pAddress, e);
-			}catch (NotConnectedToClient e){
+			} catch (NotConnectedToClient e) {
 				log.error("Error sending message to client: {}", pAddress, e);
 			}
 		}
 		return 0;
 	}
 
-
 	@Override
 	public void terminate() {
 		log.warn("Terminating the thread");
@@ -157,6 +148,7 @@ public class CommunicationHandler extends CommunicationThread implements ICommun
 		this.mTCPClient.removeClient(pAddress);
 		this.mTCPServer.removeClient(pAddress);
 		this.mUDP.removeClient(pAddress);
+		this.mPeerRegistry.unregister(pAddress);
 	}
 
 	@Override
@@ -2,7 +2,6 @@ package com.niffy.AndEngineLockStepEngine.threads;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 
 import org.slf4j.Logger;
@@ -18,22 +17,29 @@ import com.niffy.AndEngineLockStepEngine.flags.MessageFlag;
 import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 import com.niffy.AndEngineLockStepEngine.messages.MessageAck;
 import com.niffy.AndEngineLockStepEngine.messages.MessageAckMulti;
+import com.niffy.AndEngineLockStepEngine.messages.MessageAckRange;
 import com.niffy.AndEngineLockStepEngine.messages.MessageClientDisconnect;
 import com.niffy.AndEngineLockStepEngine.messages.MessageClientJoin;
 import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulated;
+import com.niffy.AndEngineLockStepEngine.messages.MessageEncapsulatedDelta;
 import com.niffy.AndEngineLockStepEngine.messages.MessageError;
 import com.niffy.AndEngineLockStepEngine.messages.MessageMigrate;
 import com.niffy.AndEngineLockStepEngine.messages.MessageOutOfSyncWith;
 import com.niffy.AndEngineLockStepEngine.messages.MessagePing;
 import com.niffy.AndEngineLockStepEngine.messages.MessagePingAck;
 import com.niffy.AndEngineLockStepEngine.messages.MessagePingHighest;
+import com.niffy.AndEngineLockStepEngine.messages.pool.IMessageFactory;
 import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePool;
 import com.niffy.AndEngineLockStepEngine.messages.pool.MessagePoolTags;
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferBatch;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
 import com.niffy.AndEngineLockStepEngine.packet.IPacketHandler;
 import com.niffy.AndEngineLockStepEngine.packet.PacketHandler;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 
 public abstract class CommunicationThread extends BaseCommunicationThread implements ICommunicationThread {
 	// ===========================================================
@@ -49,6 +55,7 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 	protected MessagePool<IMessage> mMessagePool;
 	protected boolean mListenerThreadRunning = false;
 	protected boolean mSentRunningMessage = false;
+	protected volatile IEventTransport mLockstepTransport;
 
 	// ===========================================================
 	// Constructors
@@ -68,41 +75,58 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 	@Override
 	public void handlePassedMessage(Message pMessage) {
 		Bundle bundle;
-		String ip;
+		int peer;
 		byte[] data;
 		int intended;
 		boolean TCP;
 		switch (pMessage.what) {
 		case ITCFlags.SEND_MESSAGE:
+			if (pMessage.obj instanceof PooledBuffer) {
+				this.sendMessageWithPacketHandler(pMessage.arg1, (PooledBuffer) pMessage.obj, pMessage.arg2 == 1);
+				break;
+			}
 			bundle = pMessage.getData();
-			ip = bundle.getString("ip");
+			peer = bundle.getInt("peer", IPeerRegistry.NO_PEER);
 			intended = bundle.getInt("intended", -1);
 			data = bundle.getByteArray("data");
 			TCP = bundle.getBoolean("method", false);
-			this.sendMessageWithPacketHandler(intended, ip, data, TCP);
+			this.sendMessageWithPacketHandler(intended, peer, data, TCP);
 			break;
 		case ITCFlags.LOCKSTEP_INCREMENT:
 			bundle = pMessage.getData();
 			final int pStep = bundle.getInt("step");
 			this.mPacketHandler.lockstepIncrement(pStep);
 			break;
+		case ITCFlags.FLUSH_BUNDLES:
+			this.mPacketHandler.flushBundles();
+			break;
+		case ITCFlags.PING_PEERS:
+			this.mPacketHandler.pingPeers();
+			break;
+		case ITCFlags.RETRANSMIT:
+			this.mPacketHandler.retransmit();
+			break;
+		case ITCFlags.FLUSH_LOCKSTEP:
+			this.mPacketHandler.flushLockstep();
+			break;
 		case ITCFlags.CONNECT_TO:
 			bundle = pMessage.getData();
 			final String pAddress = bundle.getString("ip");
 			this.connect(pAddress);
 			break;
 		case ITCFlags.TCP_CLIENT_INCOMMING:
-			bundle = pMessage.getData();
-			ip = bundle.getString("ip");
-			data = bundle.getByteArray("data");
-			this.mPacketHandler.reconstructData(ip, data);
-			break;
 		case ITCFlags.UDP_INCOMMING:
-			bundle = pMessage.getData();
-			ip = bundle.getString("ip");
-			data = bundle.getByteArray("data");
-			this.mPacketHandler.reconstructData(ip, data);
-			break; 
+			if (pMessage.obj instanceof PooledBufferBatch) {
+				this.reconstructData((PooledBufferBatch) pMessage.obj);
+			} else if (pMessage.obj instanceof PooledBuffer) {
+				this.reconstructData(pMessage.arg1, (PooledBuffer) pMessage.obj);
+			} else {
+				bundle = pMessage.getData();
+				peer = bundle.getInt("peer", IPeerRegistry.NO_PEER);
+				data = bundle.getByteArray("data");
+				this.mPacketHandler.reconstructData(peer, data);
+			}
+			break;
 		}
 	}
 
@@ -137,6 +161,16 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 		this.mPacketHandler.removeClient(pAddress);
 	}
 
+	@Override
+	public void setLockstepTransport(IEventTransport pTransport) {
+		this.mLockstepTransport = pTransport;
+	}
+
+	@Override
+	public IEventTransport getLockstepTransport() {
+		return this.mLockstepTransport;
+	}
+
 	/**
 	 * Leave implementation to the subclasses
 	 * 
@@ -181,13 +215,90 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	/**
+	 * Decode a packet a selector read in to a pooled buffer, then give up the
+	 * selectors reference. Anything still using it has taken its own.
+	 *
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id the packet came from.
+	 * @param pBuffer
+	 *            {@link PooledBuffer} of the whole packet.
+	 */
+	protected void reconstructData(final int pPeerID, final PooledBuffer pBuffer) {
+		try {
+			this.mPacketHandler.reconstructData(pPeerID, pBuffer);
+		} finally {
+			pBuffer.release();
+		}
+	}
+
+	/**
+	 * Decode every packet in a batch, then release it.
+	 *
+	 * @param pBatch
+	 *            {@link PooledBufferBatch} a selector read.
+	 */
+	protected void reconstructData(final PooledBufferBatch pBatch) {
+		try {
+			final int size = pBatch.getSize();
+			for (int i = 0; i < size; i++) {
+				this.mPacketHandler.reconstructData(pBatch.getPeerID(i), pBatch.getBuffer(i));
+			}
+		} finally {
+			pBatch.release();
+		}
+	}
+
+	/**
+	 * Send a message serialized in to a pooled buffer to a client, then release
+	 * it. It is encapsulated without a copy, every send has copied what it
+	 * needs by the time it returns.
+	 * 
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id or {@link IPeerRegistry#NO_PEER} if
+	 *            to everyone
+	 * @param pBuffer
+	 *            {@link PooledBuffer} of the message, intended for
+	 *            {@link IntendedFlag#LOCKSTEP}
+	 * @param pTCP
+	 *            {@link Boolean} <code>true</code> to send by TCP
+	 *            <code>false</code> by UDP
+	 */
+	protected void sendMessageWithPacketHandler(final int pPeerID, final PooledBuffer pBuffer, final boolean pTCP) {
+		try {
+			final byte[] data = pBuffer.getData();
+			final int offset = pBuffer.getOffset();
+			final int length = pBuffer.getLength();
+			if (pPeerID == IPeerRegistry.NO_PEER) {
+				final int pClientCount = this.mClients.size();
+				for (int i = 0; i < pClientCount; i++) {
+					this.sendMessageWithPacketHandler(IntendedFlag.LOCKSTEP, this.mClients.get(i), data, offset,
+							length, pTCP);
+				}
+			} else {
+				final InetAddress address = this.mPeerRegistry.getAddress(pPeerID);
+				if (address != null) {
+					this.sendMessageWithPacketHandler(IntendedFlag.LOCKSTEP, address, data, offset, length, pTCP);
+				} else {
+					log.error("Could not send to peer: {} as it is not registered", pPeerID);
+					final byte[] copy = new byte[length];
+					System.arraycopy(data, offset, copy, 0, length);
+					this.networkMessageFailure(null, copy, ITCFlags.NETWORK_SEND_MESSAGE_FAILURE,
+							ErrorCodes.UNKNOWN_PEER);
+				}
+			}
+		} finally {
+			pBuffer.release();
+		}
+	}
+
 	/**
 	 * Send message to a client.
 	 * 
 	 * @param pIntended
 	 *            {@link Integer} Who the message is intended for.
-	 * @param pAddress
-	 *            {@link InetAddress} as {@link String} or <code>null</code> if
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id or {@link IPeerRegistry#NO_PEER} if
 	 *            to everyone
 	 * @param pData
 	 *            {@link Byte} array of the message to be encapsulated.
@@ -195,18 +306,18 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 	 *            {@link Boolean} <code>true</code> to send by TCP
 	 *            <code>false</code> by UDP
 	 */
-	protected void sendMessageWithPacketHandler(final int pIntended, final String pAddress, final byte[] pData,
+	protected void sendMessageWithPacketHandler(final int pIntended, final int pPeerID, final byte[] pData,
 			final boolean pTCP) {
-		if (pAddress == null) {
+		if (pPeerID == IPeerRegistry.NO_PEER) {
 			this.sendMessageWithPacketHandler(pIntended, pData, pTCP);
 		} else {
-			try {
-				InetAddress pAddressCast = InetAddress.getByName(pAddress);
-				this.sendMessageWithPacketHandler(pIntended, pAddressCast, pData, pTCP);
-			} catch (UnknownHostException e) {
-				log.error("Could not cast: {} to an InetAddress", pAddress, e);
-				this.networkMessageFailure(pAddress, pData, ITCFlags.NETWORK_SEND_MESSAGE_FAILURE,
-						ErrorCodes.COULD_NOT_CAST_INETADDRESS);
+			final InetAddress address = this.mPeerRegistry.getAddress(pPeerID);
+			if (address != null) {
+				this.sendMessageWithPacketHandler(pIntended, address, pData, pTCP);
+			} else {
+				log.error("Could not send to peer: {} as it is not registered", pPeerID);
+				this.networkMessageFailure(null, pData, ITCFlags.NETWORK_SEND_MESSAGE_FAILURE,
+						ErrorCodes.UNKNOWN_PEER);
 			}
 		}
 	}
@@ -226,8 +337,23 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 	 */
 	protected void sendMessageWithPacketHandler(final int pIntended, final InetAddress pAddress, final byte[] pData,
 			final boolean pTCP) {
+		this.sendMessageWithPacketHandler(pIntended, pAddress, pData, 0, pData.length, pTCP);
+	}
+
+	/**
+	 * Send to someone specific, the message being part of an array.
+	 * 
+	 * @param pData
+	 *            {@link Byte} array holding the message to be encapsulated.
+	 * @param pOffset
+	 *            {@link Integer} where it starts in <code>pData</code>
+	 * @param pLength
+	 *            {@link Integer} of bytes.
+	 */
+	protected void sendMessageWithPacketHandler(final int pIntended, final InetAddress pAddress, final byte[] pData,
+			final int pOffset, final int pLength, final boolean pTCP) {
 		MessageEncapsulated pMessage = (MessageEncapsulated) this.obtainMessage(MessageFlag.ENCAPSULATED);
-		pMessage.setData(pData);
+		pMessage.setData(pData, pOffset, pLength);
 		if (pTCP) {
 			pMessage.setRequireAck(false);
 		} else {
@@ -239,6 +365,7 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 			pMessage.setIntended(IntendedFlag.LOCKSTEP_CLIENT);
 		}
 		this.mPacketHandler.sendMessage(pAddress, pMessage, pTCP);
+		this.recycleMessage(pMessage);
 	}
 
 	/**
@@ -306,88 +433,104 @@ public abstract class CommunicationThread extends BaseCommunicationThread implem
 		int pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.ACK_INITIAL_INT;
 		int pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.ACK_INITIAL_INT;
 		int pFlag = MessageFlag.ACK;
-		Class<? extends IMessage> pMessageClass = MessageAck.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		IMessageFactory<? extends IMessage> pMessageFactory = MessageAck.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.ACK_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.ACK_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.ACK_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.ACK_INITIAL_INT;
 		pFlag = MessageFlag.ACK_MULTI;
-		pMessageClass = MessageAckMulti.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageAckMulti.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
+
+		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.ACK_INITIAL_STRING);
+		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.ACK_GROWTH_STRING);
+		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.ACK_INITIAL_INT;
+		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.ACK_INITIAL_INT;
+		pFlag = MessageFlag.ACK_RANGE;
+		pMessageFactory = MessageAckRange.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.ERROR_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.ERROR_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.ERROR_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.ERROR_INITIAL_INT;
 		pFlag = MessageFlag.ERROR;
-		pMessageClass = MessageError.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageError.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.PING_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.PING_INITIAL_INT;
 		pFlag = MessageFlag.PING;
-		pMessageClass = MessagePing.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessagePing.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.PING_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.PING_INITIAL_INT;
 		pFlag = MessageFlag.PING_ACK;
-		pMessageClass = MessagePingAck.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessagePingAck.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.PING_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.PING_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.PING_INITIAL_INT;
 		pFlag = MessageFlag.PING_HIGHEST;
-		pMessageClass = MessagePingHighest.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessagePingHighest.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.MIGRATE_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.MIGRATE_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.MIGRATE_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.MIGRATE_INITIAL_INT;
 		pFlag = MessageFlag.MIGRATE;
-		pMessageClass = MessageMigrate.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageMigrate.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.CLIENT_JOIN_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.CLIENT_JOIN_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.CLIENT_JOIN_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.CLIENT_JOIN_INITIAL_INT;
 		pFlag = MessageFlag.CLIENT_JOIN;
-		pMessageClass = MessageClientJoin.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageClientJoin.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.CLIENT_DISCONNECTED_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.CLIENT_DISCONNECTED_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.CLIENT_DISCONNECTED_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.CLIENT_DISCONNECTED_INITIAL_INT;
 		pFlag = MessageFlag.CLIENT_DISCONNECTED;
-		pMessageClass = MessageClientDisconnect.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageClientDisconnect.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.ENCAPSULATED_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.ENCAPSULATED_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.ENCAPSULATED_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.ENCAPSULATED_INITIAL_INT;
 		pFlag = MessageFlag.ENCAPSULATED;
-		pMessageClass = MessageEncapsulated.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageEncapsulated.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
+
+		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.ENCAPSULATED_DELTA_INITIAL_STRING);
+		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.ENCAPSULATED_DELTA_GROWTH_STRING);
+		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.ENCAPSULATED_DELTA_INITIAL_INT;
+		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.ENCAPSULATED_DELTA_INITIAL_INT;
+		pFlag = MessageFlag.ENCAPSULATED_DELTA;
+		pMessageFactory = MessageEncapsulatedDelta.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 
 		pGetIntialSize = this.mBaseOptions.getPoolProperties(MessagePoolTags.CLIENT_OUT_OF_SYNC_INITIAL_STRING);
 		pGetGrowth = this.mBaseOptions.getPoolProperties(MessagePoolTags.CLIENT_OUT_OF_SYNC_GROWTH_STRING);
 		pInitialSize = (pGetIntialSize != -1) ? pGetIntialSize : MessagePoolTags.CLIENT_OUT_OF_SYNC_INITIAL_INT;
 		pGrowth = (pGetGrowth != -1) ? pGetGrowth : MessagePoolTags.CLIENT_OUT_OF_SYNC_INITIAL_INT;
 		pFlag = MessageFlag.CLIENT_OUT_OF_SYNC;
-		pMessageClass = MessageOutOfSyncWith.class;
-		this.mMessagePool.registerMessage(pFlag, pMessageClass, pInitialSize, pGrowth);
+		pMessageFactory = MessageOutOfSyncWith.FACTORY;
+		this.mMessagePool.registerMessage(pFlag, pMessageFactory, pInitialSize, pGrowth);
 	}
 	// ===========================================================
 	// Inner and Anonymous Classes
@@ -3,6 +3,7 @@ package com.niffy.AndEngineLockStepEngine.threads;
 import java.net.InetAddress;
 import java.util.ArrayList;
 
+import com.niffy.AndEngineLockStepEngine.misc.IEventTransport;
 import com.niffy.AndEngineLockStepEngine.packet.ISendMessage;
 import com.niffy.AndEngineLockStepEngine.window.IGenericWindowCrisisListener;
 
@@ -14,4 +15,21 @@ public interface ICommunicationThread extends IBaseCommunicationThread, IGeneric
 
 	public void removeClient(final InetAddress pAddress);
 
+	/**
+	 * Set where packets intended for the lockstep are published, instead of
+	 * posting them to {@link #getParentHandler()}. This thread must be the
+	 * only producer.
+	 * 
+	 * @param pTransport
+	 *            {@link IEventTransport} or <code>null</code> to go back to
+	 *            the handler.
+	 */
+	public void setLockstepTransport(final IEventTransport pTransport);
+
+	/**
+	 * @return {@link IEventTransport} packets for the lockstep are published
+	 *         on, <code>null</code> if using {@link #getParentHandler()}
+	 */
+	public IEventTransport getLockstepTransport();
+
 }
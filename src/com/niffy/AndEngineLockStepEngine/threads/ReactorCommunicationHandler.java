@@ -0,0 +1,366 @@
+package com.niffy.AndEngineLockStepEngine.threads;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+import com.niffy.AndEngineLockStepEngine.exceptions.ClientDoesNotExist;
+import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
+import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread;
+import com.niffy.AndEngineLockStepEngine.threads.nio.ClientSelector;
+import com.niffy.AndEngineLockStepEngine.threads.nio.Connection;
+import com.niffy.AndEngineLockStepEngine.threads.nio.ServerSelector;
+import com.niffy.AndEngineLockStepEngine.threads.nio.UDPSelector;
+
+/**
+ * A {@link CommunicationHandler} which is also the selector thread. The
+ * {@link DatagramChannel}, the {@link ServerSocketChannel} and every client
+ * channel are registered on one {@link Selector}, and this thread selects on
+ * it, reads and handles the packets, with no hop between the socket and the
+ * {@link CommunicationThread}.
+ * <p>
+ * There is no {@link Looper} behind this, messages sent to
+ * {@link #getHandler()} are queued here and handled between selects, in the
+ * order sent. Messages this thread sends itself are queued too, so they still
+ * run after the message being handled, as they would on a {@link Looper}.
+ * The exception is what the selectors pass on while their keys are handled,
+ * received packets among it, which is handled there and then.
+ * <p>
+ * For a host with many peers, accepted TCP connections can be spread over
+ * shard {@link ServerSelector}s, each its own thread, which read and decode
+ * the stream and pass complete frames here. Packet handling stays on this
+ * thread, as the acks and bundles it keeps per peer are not thread safe.
+ * <p>
+ * Constructs and owns its selectors, do not set others.
+ */
+public class ReactorCommunicationHandler extends CommunicationHandler {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(ReactorCommunicationHandler.class);
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final Selector mSelector;
+	protected final UDPSelector mUDPSelector;
+	protected final ClientSelector mClientSelector;
+	protected final ServerSelector mServerSelector;
+	/**
+	 * Extra {@link ServerSelector}s with their own threads, can be empty.
+	 */
+	protected final ServerSelector[] mShards;
+	protected final ConcurrentLinkedQueue<Message> mMessages = new ConcurrentLinkedQueue<Message>();
+	/**
+	 * Messages sent with a delay, by when they are due. Lock on it to use it.
+	 */
+	protected final PriorityQueue<DelayedMessage> mDelayed = new PriorityQueue<DelayedMessage>();
+	protected long mDelayedSequence = 0;
+	/**
+	 * Set while {@link #handleSelectedKeys()} runs, so what the selectors
+	 * pass on is handled as it is read rather than queued.
+	 */
+	protected boolean mHandlingKeys = false;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * Without shards, every channel on this thread.
+	 *
+	 * @see #ReactorCommunicationHandler(String, InetSocketAddress,
+	 *      WeakThreadHandler, IBaseOptions, int)
+	 */
+	public ReactorCommunicationHandler(final String pName, final InetSocketAddress pAddress,
+			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions) throws IOException {
+		this(pName, pAddress, pCaller, pOptions, 1);
+	}
+
+	/**
+	 * Listens on {@link IBaseOptions#getUDPPort()},
+	 * {@link IBaseOptions#getTCPServerPort()} and connects out from
+	 * {@link IBaseOptions#getTCPClientPort()}.
+	 *
+	 * @param pName
+	 *            name of thread
+	 * @param pAddress
+	 *            {@link InetSocketAddress} of this client.
+	 * @param pCaller
+	 *            {@link WeakThreadHandler} to pass messages to.
+	 * @param pOptions
+	 *            {@link IBaseOptions} to use
+	 * @param pShards
+	 *            {@link Integer} of threads reading accepted TCP connections,
+	 *            including this one. <code>1</code> reads them all here.
+	 * @throws IOException
+	 *             when opening the {@link Selector} or binding a channel.
+	 */
+	public ReactorCommunicationHandler(final String pName, final InetSocketAddress pAddress,
+			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions, final int pShards)
+			throws IOException {
+		super(pName, pAddress, pCaller, pOptions);
+		this.mHandler = new ReactorHandler(this);
+		this.mSelector = SelectorProvider.provider().openSelector();
+		this.mUDPSelector = new UDPSelector(pName + "-UDP", new InetSocketAddress(pOptions.getUDPPort()),
+				this.mHandler, pOptions, this.mSelector);
+		this.mClientSelector = new ClientSelector(pName + "-TCPClient", new InetSocketAddress(
+				pOptions.getTCPClientPort()), this.mHandler, pOptions, this.mSelector);
+		this.mServerSelector = new ServerSelector(pName + "-TCPServer", new InetSocketAddress(
+				pOptions.getTCPServerPort()), this.mHandler, pOptions, this.mSelector);
+		this.mShards = new ServerSelector[Math.max(0, pShards - 1)];
+		for (int i = 0; i < this.mShards.length; i++) {
+			this.mShards[i] = new ServerSelector(pName + "-TCPShard-" + i, null, this.mHandler, pOptions);
+		}
+		this.mServerSelector.setShards(this.mShards);
+		this.setUDPSelectorThread(this.mUDPSelector);
+		this.setTCPClientSelectorThread(this.mClientSelector);
+		this.setTCPServerSelectorThread(this.mServerSelector);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	@Override
+	public void run() {
+		this.mRunning.set(true);
+		for (int i = 0; i < this.mShards.length; i++) {
+			this.mShards[i].start();
+		}
+		this.sendStart(ITCFlags.MAIN_COMMUNICATION_START);
+		this.sendStart(ITCFlags.UDP_CLIENT_SELECTOR_START);
+		this.sendStart(ITCFlags.TCP_CLIENT_SELECTOR_START);
+		this.sendStart(ITCFlags.TCP_SERVER_SELECTOR_START);
+		while (!this.mTerminated.get()) {
+			try {
+				this.handleMessages();
+				this.mUDPSelector.processChanges();
+				this.mClientSelector.processChanges();
+				this.mServerSelector.processChanges();
+				this.select();
+				this.handleSelectedKeys();
+			} catch (Exception e) {
+				log.error("Exception in main loop", e);
+			}
+		}
+		this.mRunning.set(false);
+	}
+
+	@Override
+	public void terminate() {
+		super.terminate();
+		this.mSelector.wakeup();
+		for (int i = 0; i < this.mShards.length; i++) {
+			this.mShards[i].terminate();
+		}
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public Selector getSelector() {
+		return this.mSelector;
+	}
+
+	public ServerSelector[] getShards() {
+		return this.mShards;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Queue a message for this thread, from any thread. One due now and
+	 * passed on while {@link #handleSelectedKeys()} runs is handled straight
+	 * away instead.
+	 *
+	 * @param pMessage
+	 *            {@link Message} to handle.
+	 * @param pUptimeMillis
+	 *            {@link Long} of {@link SystemClock#uptimeMillis()} to handle
+	 *            it at.
+	 * @return <code>false</code> if terminated and it will not be handled.
+	 */
+	protected boolean enqueue(final Message pMessage, final long pUptimeMillis) {
+		if (this.mTerminated.get()) {
+			return false;
+		}
+		final boolean due = pUptimeMillis <= SystemClock.uptimeMillis();
+		if (due && this.mHandlingKeys && Thread.currentThread() == this) {
+			/* What handling it sends is queued, to run after as on a Looper */
+			this.mHandlingKeys = false;
+			try {
+				this.dispatch(pMessage);
+			} finally {
+				this.mHandlingKeys = true;
+			}
+			return true;
+		}
+		if (due) {
+			this.mMessages.offer(pMessage);
+		} else {
+			synchronized (this.mDelayed) {
+				this.mDelayed.offer(new DelayedMessage(pMessage, pUptimeMillis, this.mDelayedSequence++));
+			}
+		}
+		if (Thread.currentThread() != this) {
+			this.mSelector.wakeup();
+		}
+		return true;
+	}
+
+	/**
+	 * Handle every message queued and due. Ones queued while handling are left
+	 * for the next time round, after a {@link Selector#selectNow()}.
+	 */
+	protected void handleMessages() {
+		final long now = SystemClock.uptimeMillis();
+		synchronized (this.mDelayed) {
+			DelayedMessage delayed;
+			while ((delayed = this.mDelayed.peek()) != null && delayed.mUptimeMillis <= now) {
+				this.mMessages.offer(this.mDelayed.poll().mMessage);
+			}
+		}
+		int remaining = this.mMessages.size();
+		Message msg;
+		while (remaining-- > 0 && (msg = this.mMessages.poll()) != null) {
+			this.dispatch(msg);
+		}
+	}
+
+	protected void dispatch(final Message pMessage) {
+		try {
+			this.mHandler.dispatchMessage(pMessage);
+		} catch (Exception e) {
+			log.error("Exception handling message: {}", pMessage.what, e);
+		}
+		pMessage.recycle();
+	}
+
+	protected void select() throws IOException {
+		if (!this.mMessages.isEmpty()) {
+			this.mSelector.selectNow();
+			return;
+		}
+		long wait = 0;
+		synchronized (this.mDelayed) {
+			final DelayedMessage delayed = this.mDelayed.peek();
+			if (delayed != null) {
+				wait = Math.max(1, delayed.mUptimeMillis - SystemClock.uptimeMillis());
+			}
+		}
+		this.mSelector.select(wait);
+	}
+
+	protected void handleSelectedKeys() {
+		this.mHandlingKeys = true;
+		try {
+			this.handleKeys();
+		} finally {
+			this.mHandlingKeys = false;
+		}
+	}
+
+	protected void handleKeys() {
+		Iterator<SelectionKey> selectedKeys = this.mSelector.selectedKeys().iterator();
+		while (selectedKeys.hasNext()) {
+			SelectionKey key = selectedKeys.next();
+			selectedKeys.remove();
+
+			if (!key.isValid()) {
+				continue;
+			}
+
+			try {
+				this.ownerOf(key).handleKey(key);
+			} catch (IOException e) {
+				log.error("IOException on key operation", e);
+			} catch (ClientDoesNotExist e) {
+				log.error("Client does not exist!");
+			}
+		}
+	}
+
+	/**
+	 * @return {@link BaseSelectorThread} which registered the key.
+	 */
+	protected BaseSelectorThread ownerOf(final SelectionKey pKey) {
+		final Object attachment = pKey.attachment();
+		if (attachment instanceof Connection && ((Connection) attachment).getSelectorThread() != null) {
+			return ((Connection) attachment).getSelectorThread();
+		} else if (pKey.channel() instanceof DatagramChannel) {
+			return this.mUDPSelector;
+		} else if (pKey.channel() instanceof ServerSocketChannel) {
+			return this.mServerSelector;
+		}
+		return this.mClientSelector;
+	}
+
+	protected void sendStart(final int pFlag) {
+		Message msg = this.mCallerThreadHandler.obtainMessage();
+		msg.what = pFlag;
+		this.mCallerThreadHandler.sendMessage(msg);
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+	/**
+	 * Passes messages to {@link ReactorCommunicationHandler#handlePassedMessage(Message)}
+	 * as any other handler does, but queues them on the reactor rather than a
+	 * {@link Looper}.
+	 */
+	protected static class ReactorHandler extends WeakThreadHandler<IHandlerMessage> {
+		private final ReactorCommunicationHandler mReactor;
+
+		public ReactorHandler(final ReactorCommunicationHandler pReactor) {
+			super(pReactor, Looper.getMainLooper());
+			this.mReactor = pReactor;
+		}
+
+		@Override
+		public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+			return this.mReactor.enqueue(msg, uptimeMillis);
+		}
+	}
+
+	protected static class DelayedMessage implements Comparable<DelayedMessage> {
+		protected final Message mMessage;
+		protected final long mUptimeMillis;
+		/**
+		 * Keeps messages due at the same time in the order sent.
+		 */
+		protected final long mSequence;
+
+		protected DelayedMessage(final Message pMessage, final long pUptimeMillis, final long pSequence) {
+			this.mMessage = pMessage;
+			this.mUptimeMillis = pUptimeMillis;
+			this.mSequence = pSequence;
+		}
+
+		@Override
+		public int compareTo(DelayedMessage pOther) {
+			if (this.mUptimeMillis != pOther.mUptimeMillis) {
+				return (this.mUptimeMillis < pOther.mUptimeMillis) ? -1 : 1;
+			}
+			return (this.mSequence < pOther.mSequence) ? -1 : ((this.mSequence == pOther.mSequence) ? 0 : 1);
+		}
+	}
+}
@@ -12,9 +12,6 @@ import java.nio.channels.spi.AbstractSelectableChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,9 +21,15 @@ import android.os.Message;
 
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientDoesNotExist;
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
+import com.niffy.AndEngineLockStepEngine.misc.ByteBufferPool;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferBatch;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferPool;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 import com.niffy.AndEngineLockStepEngine.threads.BaseCommunicationThread;
 
 /**
@@ -52,9 +55,31 @@ public abstract class BaseSelectorThread extends BaseCommunicationThread impleme
 	protected Selector mSelector;
 	protected int mBufferCapacity = 8192;
 	protected ByteBuffer readBuffer = ByteBuffer.allocate(8192);
-	protected List<ChangeRequest> mPendingChanges = new LinkedList<ChangeRequest>();
-	protected Map<InetAddress, ArrayList<ByteBuffer>> mPendingData = new HashMap<InetAddress, ArrayList<ByteBuffer>>();
+	/**
+	 * Direct buffers messages are serialised in to before being queued in
+	 * a {@link WriteQueue}. Recycled once written to the channel.
+	 */
+	protected ByteBufferPool mBufferPool;
+	/**
+	 * Received packets are read in to these and handed on without copying.
+	 * Shared by every selector, see {@link IBaseOptions#getBufferPool()}
+	 */
+	protected PooledBufferPool mReceivePool;
+	/**
+	 * Changes to {@link #mSelector} queued by other threads.
+	 */
+	protected final ChangeRequestRing mPendingChanges = new ChangeRequestRing(this, ChangeRequestRing.DefaultCapacity);
+	/**
+	 * Stream connections queue on their own {@link WriteQueue}, this only
+	 * guards {@link UDPSelector}s peer queues.
+	 */
+	protected final Object mPendingLock = new Object();
 	protected HashMap<InetAddress, Connection> mChannelMap = new HashMap<InetAddress, Connection>();
+	/**
+	 * {@link #mChannelMap} indexed by {@link IPeerRegistry} id. Guarded by
+	 * {@link #mChannelMap}
+	 */
+	protected Connection[] mConnections;
 	/**
 	 * Any {@link InetAddress} in here is pending a closure, so do not add
 	 * anymore requests to send.
@@ -101,10 +126,41 @@ public abstract class BaseSelectorThread extends BaseCommunicationThread impleme
 	public BaseSelectorThread(final String pName, final InetSocketAddress pAddress,
 			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions, final int pBufferCapacity)
 			throws IOException {
+		this(pName, pAddress, pCaller, pOptions, pBufferCapacity, null);
+	}
+
+	/**
+	 * Register on a {@link Selector} another thread selects on, rather than
+	 * opening one. This thread is then never started, the owner of the
+	 * selector calls {@link #processChanges()} and
+	 * {@link #handleKey(SelectionKey)} for it.
+	 * 
+	 * @param pName
+	 *            name of thread
+	 * @param pAddress
+	 *            {@link InetSocketAddress} of client.
+	 * @param pCaller
+	 *            {@link WeakThreadHandler} to pass messages to.
+	 * @param pOptions
+	 *            {@link IBaseOptions} to use
+	 * @param pBufferCapacity
+	 *            What size should the buffer capacity to read and write.
+	 * @param pSelector
+	 *            {@link Selector} to share, <code>null</code> to open one.
+	 * @throws IOException
+	 *             when calling {@link #initSelector()}
+	 */
+	public BaseSelectorThread(final String pName, final InetSocketAddress pAddress,
+			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions, final int pBufferCapacity,
+			final Selector pSelector) throws IOException {
 		super(pName, pAddress, pCaller, pOptions);
 		this.mAddress = pAddress;
 		this.mBufferCapacity = pBufferCapacity;
-		ByteBuffer.allocate(this.mBufferCapacity);
+		this.readBuffer = ByteBuffer.allocate(this.mBufferCapacity);
+		this.mBufferPool = new ByteBufferPool(this.mBufferCapacity);
+		this.mReceivePool = pOptions.getBufferPool();
+		this.mConnections = new Connection[this.mPeerRegistry.getMaxPeers()];
+		this.mSelector = pSelector;
 		this.mSelector = this.initSelector();
 	}
 
@@ -140,10 +196,7 @@ public abstract class BaseSelectorThread extends BaseCommunicationThread impleme
 		}
 
 		if (channel != null) {
-			synchronized (this.mPendingChanges) {
-				this.mPendingChanges.add(new ChangeRequest(channel, ChangeRequest.REMOVECLIENT,
-						SelectionKey.OP_CONNECT, pAddress, null));
-			}
+			this.mPendingChanges.removeClient(channel, pAddress);
 		}
 	}
 
@@ -162,18 +215,41 @@ public abstract class BaseSelectorThread extends BaseCommunicationThread impleme
 	// Methods
 	// ===========================================================
 	/**
-	 * This creates a new {@link Selector} to use. All concrete classes should
-	 * call <code>super.initSelector()</code>
+	 * This creates a new {@link Selector} to use, or gives the shared one. All
+	 * concrete classes should call <code>super.initSelector()</code>
 	 * 
 	 * @return {@link Selector} to be used
 	 * @throws IOException
 	 *             when calling {@link SelectorProvider#openSelector()}
 	 */
 	protected Selector initSelector() throws IOException {
+		if (this.mSelector != null) {
+			return this.mSelector;
+		}
 		Selector socketSelector = SelectorProvider.provider().openSelector();
 		return socketSelector;
 	}
 
+	/**
+	 * Apply every {@link ChangeRequest} queued by other threads. Must be called
+	 * on the thread selecting on {@link #mSelector}.
+	 */
+	public void processChanges() {
+		this.mPendingChanges.drain();
+	}
+
+	/**
+	 * Deal with whichever operations a selected key is ready for.
+	 * 
+	 * @param pKey
+	 *            {@link SelectionKey} selected, and still valid.
+	 * @throws IOException
+	 * @throws ClientDoesNotExist
+	 */
+	public void handleKey(SelectionKey pKey) throws IOException, ClientDoesNotExist {
+
+	}
+
 	protected void finishConnection(SelectionKey pKey) throws IOException {
 
 	}
@@ -230,7 +306,12 @@ public abstract class BaseSelectorThread extends BaseCommunicationThread impleme
 		pKey.cancel();
 		synchronized (this.mChannelMap) {
 			if (this.mChannelMap.containsKey(pAddress)) {
-				this.mChannelMap.remove(pAddress);
+				final Connection con = this.mChannelMap.remove(pAddress);
+				con.getWriteQueue().clear(this.mBufferPool);
+				final int peerID = con.getPeerID();
+				if (this.isPeer(peerID) && this.mConnections[peerID] == con) {
+					this.mConnections[peerID] = null;
+				}
 			} else {
 				final String pMessage = "Went to shut down channel and key cleanly for: " + pAddress.toString()
 						+ " but not in channel map";
@@ -248,17 +329,130 @@ public abstract class BaseSelectorThread extends BaseCommunicationThread impleme
 	protected void handleChangeRequest(final ChangeRequest pChangeRequest) {
 
 	}
+
+	/**
+	 * Serialise a message straight in to a pooled buffer. This is called on
+	 * the senders thread, so the message can be recycled as soon as this
+	 * returns.
+	 * 
+	 * @param pMessage
+	 *            {@link IMessage} to write.
+	 * @return {@link ByteBuffer} flipped and ready to be written to a channel.
+	 */
+	protected ByteBuffer encode(final IMessage pMessage) {
+		final ByteBuffer buffer = this.mBufferPool.obtain(pMessage.getTransmissionSize());
+		pMessage.writeTo(buffer);
+		buffer.flip();
+		return buffer;
+	}
 	
-	protected void createQueue(final Connection pConnection){
-		synchronized (this.mPendingData) {
-			ArrayList<ByteBuffer> queue = this.mPendingData.get(pConnection.getAddress());
-			if (queue == null) {
-				queue = new ArrayList<ByteBuffer>();
-				this.mPendingData.put(pConnection.getAddress().getAddress(), queue);
+	/**
+	 * Create a {@link Connection} with the {@link IPeerRegistry} id of the
+	 * remote end, registering it if need be.
+	 * 
+	 * @param pAddress
+	 *            {@link InetSocketAddress} of the remote end.
+	 * @param pSocketChannel
+	 *            {@link SocketChannel} to the remote end.
+	 * @return {@link Connection}
+	 */
+	protected Connection newConnection(final InetSocketAddress pAddress, final SocketChannel pSocketChannel) {
+		final Connection con = new Connection(pAddress, pSocketChannel);
+		con.setSelectorThread(this);
+		con.setPeerID(this.mPeerRegistry.register(pAddress.getAddress()));
+		return con;
+	}
+
+	/**
+	 * Put a {@link Connection} in {@link #mChannelMap} and
+	 * {@link #mConnections}
+	 * 
+	 * @param pConnection
+	 *            {@link Connection} to add.
+	 */
+	protected void addConnection(final Connection pConnection) {
+		synchronized (this.mChannelMap) {
+			this.mChannelMap.put(pConnection.getAddress().getAddress(), pConnection);
+			final int peerID = pConnection.getPeerID();
+			if (this.isPeer(peerID)) {
+				this.mConnections[peerID] = pConnection;
 			}
 		}
 	}
 
+	/**
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id.
+	 * @return {@link Connection} or <code>null</code> if there is not one.
+	 */
+	protected Connection getConnection(final int pPeerID) {
+		synchronized (this.mChannelMap) {
+			return this.isPeer(pPeerID) ? this.mConnections[pPeerID] : null;
+		}
+	}
+
+	protected boolean isPeer(final int pPeerID) {
+		return pPeerID >= 0 && pPeerID < this.mConnections.length;
+	}
+
+	/**
+	 * Hand a received packet to the caller thread, which releases it once
+	 * handled.
+	 * 
+	 * @param pWhat
+	 *            {@link ITCFlags} code.
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id the packet came from.
+	 * @param pBuffer
+	 *            {@link PooledBuffer} holding the packet, the reference is
+	 *            passed on with it.
+	 */
+	protected void passReceived(final int pWhat, final int pPeerID, final PooledBuffer pBuffer) {
+		final Message msg = this.mCallerThreadHandler.obtainMessage();
+		msg.what = pWhat;
+		msg.arg1 = pPeerID;
+		msg.obj = pBuffer;
+		this.mCallerThreadHandler.sendMessage(msg);
+	}
+
+	/**
+	 * Hand a batch of received packets to the caller thread, which releases
+	 * it once handled.
+	 * 
+	 * @param pWhat
+	 *            {@link ITCFlags} code.
+	 * @param pBatch
+	 *            {@link PooledBufferBatch} of packets, passed on with it.
+	 */
+	protected void passReceived(final int pWhat, final PooledBufferBatch pBatch) {
+		final Message msg = this.mCallerThreadHandler.obtainMessage();
+		msg.what = pWhat;
+		msg.arg1 = IPeerRegistry.NO_PEER;
+		msg.obj = pBatch;
+		this.mCallerThreadHandler.sendMessage(msg);
+	}
+
+	/**
+	 * Write what is queued on a connection, gathering many buffers in to each
+	 * call, then drop {@link SelectionKey#OP_WRITE} once all is written.
+	 * 
+	 * @param pKey
+	 *            {@link SelectionKey} of the connection.
+	 * @param pConnection
+	 *            {@link Connection} to write.
+	 * @throws IOException
+	 *             due to {@link SocketChannel#write(ByteBuffer[], int, int)}
+	 */
+	protected void writeQueued(final SelectionKey pKey, final Connection pConnection) throws IOException {
+		final WriteQueue queue = pConnection.getWriteQueue();
+		if (queue.write(pConnection.getSocketChannel(), this.mBufferPool) && queue.finishWriting()) {
+			// We wrote away all data, so we're no longer interested
+			// in writing on this socket. Switch back to waiting for
+			// data.
+			pKey.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
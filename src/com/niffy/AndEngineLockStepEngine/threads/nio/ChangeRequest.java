@@ -23,10 +23,21 @@ public class ChangeRequest {
 	 * This can be null
 	 */
 	public InetSocketAddress mSocketAddress;
+	/**
+	 * For {@link #REGISTER}, the accepted connection being handed over. This
+	 * can be null
+	 */
+	public Connection mConnection;
 
 	// ===========================================================
 	// Constructors
 	// ===========================================================
+	/**
+	 * An empty slot for a {@link ChangeRequestRing}
+	 */
+	public ChangeRequest() {
+	}
+
 	/**
 	 * 
 	 * @param pSocketChannel
@@ -61,6 +72,22 @@ public class ChangeRequest {
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	protected void set(final int pType, final AbstractSelectableChannel pSocketChannel, final int pOps,
+			final InetAddress pAddress, final InetSocketAddress pSocketAddress, final Connection pConnection) {
+		this.mChannel = pSocketChannel;
+		this.mType = pType;
+		this.mOps = pOps;
+		this.mAddress = pAddress;
+		this.mSocketAddress = pSocketAddress;
+		this.mConnection = pConnection;
+	}
+
+	/**
+	 * Drop the references held, so a reused slot keeps nothing alive.
+	 */
+	protected void clear() {
+		this.set(0, null, 0, null, null, null);
+	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
@@ -0,0 +1,226 @@
+package com.niffy.AndEngineLockStepEngine.threads.nio;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link ChangeRequest}s queued by any thread for the thread selecting on a
+ * {@link BaseSelectorThread}s selector. The requests are preallocated slots
+ * in a bounded ring which producers claim without locking and fill in, and
+ * the selector thread applies and hands back, so queuing allocates nothing.
+ * <p>
+ * Each slot carries a sequence number, a producer owns a slot once it has
+ * claimed the tail and the slot is free, and publishes it by moving the
+ * sequence on. The selector thread applies published slots in the order they
+ * were claimed.
+ * <p>
+ * Within one {@link #drain()} a {@link ChangeRequest#CHANGEOPS} which a later
+ * one for the same channel replaces is skipped, as interest ops are set
+ * rather than added to.
+ * <p>
+ * If the ring is full, producers on other threads wake the selector and
+ * yield until it catches up. The selector thread itself drains the ring, or if already
+ * draining, applies its request straight away.
+ */
+public class ChangeRequestRing {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int DefaultCapacity = 256;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final BaseSelectorThread mSelectorThread;
+	protected final ChangeRequest[] mSlots;
+	/**
+	 * Per slot, equal to the position when free for that position, one past
+	 * it once published.
+	 */
+	protected final AtomicLongArray mSequences;
+	protected final int mMask;
+	protected final AtomicLong mTail = new AtomicLong(0);
+	/**
+	 * Next position to apply. Selector thread only.
+	 */
+	protected long mHead = 0;
+	/**
+	 * Thread which last drained, a full ring is not waited on by it.
+	 */
+	protected volatile Thread mConsumer;
+	protected boolean mDraining = false;
+	/**
+	 * Used to apply a request straight away when full while draining.
+	 * Selector thread only.
+	 */
+	protected final ChangeRequest mImmediate = new ChangeRequest();
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 *
+	 * @param pSelectorThread
+	 *            {@link BaseSelectorThread} to apply requests with.
+	 * @param pCapacity
+	 *            {@link Integer} most requests queued, rounded up to a power
+	 *            of two.
+	 */
+	public ChangeRequestRing(final BaseSelectorThread pSelectorThread, final int pCapacity) {
+		this.mSelectorThread = pSelectorThread;
+		int capacity = 1;
+		while (capacity < pCapacity) {
+			capacity <<= 1;
+		}
+		this.mMask = capacity - 1;
+		this.mSlots = new ChangeRequest[capacity];
+		this.mSequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.mSlots[i] = new ChangeRequest();
+			this.mSequences.set(i, i);
+		}
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	public int getCapacity() {
+		return this.mSlots.length;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Queue a {@link ChangeRequest#REGISTER}.
+	 *
+	 * @param pChannel
+	 *            {@link AbstractSelectableChannel} to register.
+	 * @param pOps
+	 *            {@link Integer} of {@link SelectionKey} ops to register for.
+	 * @param pAddress
+	 *            {@link InetAddress} of the client.
+	 * @param pSocketAddress
+	 *            {@link InetSocketAddress} of the client, can be
+	 *            <code>null</code>
+	 * @param pConnection
+	 *            {@link Connection} being handed over, can be
+	 *            <code>null</code>
+	 */
+	public void register(final AbstractSelectableChannel pChannel, final int pOps, final InetAddress pAddress,
+			final InetSocketAddress pSocketAddress, final Connection pConnection) {
+		this.offer(ChangeRequest.REGISTER, pChannel, pOps, pAddress, pSocketAddress, pConnection);
+	}
+
+	/**
+	 * Queue a {@link ChangeRequest#CHANGEOPS}.
+	 *
+	 * @param pChannel
+	 *            {@link AbstractSelectableChannel} already registered.
+	 * @param pOps
+	 *            {@link Integer} of {@link SelectionKey} ops to set.
+	 */
+	public void changeOps(final AbstractSelectableChannel pChannel, final int pOps) {
+		this.offer(ChangeRequest.CHANGEOPS, pChannel, pOps, null, null, null);
+	}
+
+	/**
+	 * Queue a {@link ChangeRequest#REMOVECLIENT}.
+	 *
+	 * @param pChannel
+	 *            {@link AbstractSelectableChannel} to close.
+	 * @param pAddress
+	 *            {@link InetAddress} of the client.
+	 */
+	public void removeClient(final AbstractSelectableChannel pChannel, final InetAddress pAddress) {
+		this.offer(ChangeRequest.REMOVECLIENT, pChannel, SelectionKey.OP_CONNECT, pAddress, null, null);
+	}
+
+	/**
+	 * Apply every published request, in order. Selector thread only.
+	 */
+	public void drain() {
+		this.mConsumer = Thread.currentThread();
+		final long head = this.mHead;
+		long end = head;
+		while (this.mSequences.get((int) end & this.mMask) == end + 1) {
+			end++;
+		}
+		if (end == head) {
+			return;
+		}
+		this.mDraining = true;
+		try {
+			for (long position = head; position < end; position++) {
+				final ChangeRequest request = this.mSlots[(int) position & this.mMask];
+				if (request.mType == ChangeRequest.CHANGEOPS && this.isReplaced(request, position + 1, end)) {
+					continue;
+				}
+				this.mSelectorThread.handleChangeRequest(request);
+			}
+		} finally {
+			for (long position = head; position < end; position++) {
+				final int index = (int) position & this.mMask;
+				this.mSlots[index].clear();
+				this.mSequences.set(index, position + this.mSlots.length);
+			}
+			this.mHead = end;
+			this.mDraining = false;
+		}
+	}
+
+	protected void offer(final int pType, final AbstractSelectableChannel pChannel, final int pOps,
+			final InetAddress pAddress, final InetSocketAddress pSocketAddress, final Connection pConnection) {
+		while (true) {
+			final long position = this.mTail.get();
+			final int index = (int) position & this.mMask;
+			final long sequence = this.mSequences.get(index);
+			if (sequence == position) {
+				if (this.mTail.compareAndSet(position, position + 1)) {
+					this.mSlots[index].set(pType, pChannel, pOps, pAddress, pSocketAddress, pConnection);
+					this.mSequences.set(index, position + 1);
+					return;
+				}
+			} else if (sequence < position) {
+				/* Full, make sure the consumer is not blocked in select */
+				if (Thread.currentThread() != this.mConsumer) {
+					this.mSelectorThread.mSelector.wakeup();
+					Thread.yield();
+				} else if (!this.mDraining) {
+					this.drain();
+				} else {
+					this.mImmediate.set(pType, pChannel, pOps, pAddress, pSocketAddress, pConnection);
+					this.mSelectorThread.handleChangeRequest(this.mImmediate);
+					this.mImmediate.clear();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the next request for the same channel
+	 *         before <code>pEnd</code> also sets its ops.
+	 */
+	protected boolean isReplaced(final ChangeRequest pRequest, final long pFrom, final long pEnd) {
+		for (long position = pFrom; position < pEnd; position++) {
+			final ChangeRequest later = this.mSlots[(int) position & this.mMask];
+			if (later.mChannel == pRequest.mChannel) {
+				return later.mType == ChangeRequest.CHANGEOPS;
+			}
+		}
+		return false;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
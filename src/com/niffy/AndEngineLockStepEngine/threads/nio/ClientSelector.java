@@ -8,8 +8,8 @@ import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NoConnectionPendingException;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 import org.slf4j.Logger;
@@ -22,7 +22,10 @@ import com.niffy.AndEngineLockStepEngine.exceptions.ClientDoesNotExist;
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientPendingClosure;
 import com.niffy.AndEngineLockStepEngine.exceptions.NotConnectedToClient;
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.flags.TraceFlag;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.TraceRing;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
 
@@ -47,6 +50,16 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 		super(pName, pAddress, pCaller, pOptions);
 	}
 
+	/**
+	 * Register on a shared {@link Selector}, see
+	 * {@link BaseSelectorThread#BaseSelectorThread(String, InetSocketAddress, WeakThreadHandler, IBaseOptions, int, Selector)}
+	 */
+	public ClientSelector(final String pName, final InetSocketAddress pAddress,
+			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions, final Selector pSelector)
+			throws IOException {
+		super(pName, pAddress, pCaller, pOptions, DefaultBufferCapacity, pSelector);
+	}
+
 	// ===========================================================
 	// Methods for/from SuperClass/Interfaces BaseSelectorThread
 	// ===========================================================
@@ -60,14 +73,7 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 		while (true) {
 			try {
 				// Process any pending changes
-				synchronized (this.mPendingChanges) {
-					Iterator<ChangeRequest> changes = this.mPendingChanges.iterator();
-					while (changes.hasNext()) {
-						ChangeRequest change = (ChangeRequest) changes.next();
-						this.handleChangeRequest(change);
-					}
-					this.mPendingChanges.clear();
-				}
+				this.processChanges();
 
 				// Wait for an event one of the registered channels
 				this.mSelector.select();
@@ -84,13 +90,7 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 
 					// Check what event is available and deal with it
 					try {
-						if (key.isConnectable()) {
-							this.finishConnection(key);
-						} else if (key.isReadable()) {
-							this.read(key);
-						} else if (key.isWritable()) {
-							this.write(key);
-						}
+						this.handleKey(key);
 					} catch (IOException e) {
 						log.error("IOException on key operation", e);
 					}
@@ -101,6 +101,17 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 		}
 	}
 
+	@Override
+	public void handleKey(SelectionKey pKey) throws IOException, ClientDoesNotExist {
+		if (pKey.isConnectable()) {
+			this.finishConnection(pKey);
+		} else if (pKey.isReadable()) {
+			this.read(pKey);
+		} else if (pKey.isWritable()) {
+			this.write(pKey);
+		}
+	}
+
 	@Override
 	protected void finishConnection(SelectionKey pKey) throws IOException {
 		log.debug("finishConnection");
@@ -113,7 +124,7 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 		} else {
 			socketChannel = (SocketChannel) pKey.channel();
 			address = (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
-			con = new Connection(address, socketChannel);
+			con = this.newConnection(address, socketChannel);
 			pKey.attach(con);
 		}
 
@@ -130,9 +141,7 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
 			return;
 		}
-		synchronized (this.mChannelMap) {
-			this.mChannelMap.put(con.mAddress.getAddress(), con);
-		}
+		this.addConnection(con);
 		pKey.interestOps(SelectionKey.OP_WRITE);
 
 		Message msg = this.mCallerThreadHandler.obtainMessage();
@@ -145,51 +154,43 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 
 	/**
 	 * @throws IOException
-	 *             due to {@link SocketChannel#write(ByteBuffer)} call
+	 *             due to {@link SocketChannel#write(ByteBuffer[], int, int)}
+	 *             call
 	 * @throws CancelledKeyException
 	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread#write(java.nio.channels.SelectionKey)
 	 */
 	@Override
 	protected void write(SelectionKey pKey) throws IOException, CancelledKeyException {
-		SocketChannel socketChannel;
-		String connectionIP;
-		Connection con = (Connection) pKey.attachment();
-		if (con != null) {
-			socketChannel = con.getSocketChannel();
-			connectionIP = con.getAddress().getAddress().getHostAddress();
-		} else {
-			socketChannel = (SocketChannel) pKey.channel();
+		final Connection con = (Connection) pKey.attachment();
+		if (con == null) {
+			final SocketChannel socketChannel = (SocketChannel) pKey.channel();
 			InetSocketAddress address = (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
-			connectionIP = address.getAddress().getHostAddress();
-			log.warn("Could not get Connection attachment for IP: {}", connectionIP);
+			log.warn("Could not get Connection attachment for IP: {}", address);
+			pKey.interestOps(SelectionKey.OP_READ);
+			return;
 		}
+		this.writeQueued(pKey, con);
+	}
 
-		synchronized (this.mPendingData) {
-			ArrayList<ByteBuffer> queue = this.mPendingData.get(con.getAddress().getAddress());
-
-			// Write until there's not more data ...
-			while (!queue.isEmpty()) {
-				ByteBuffer buf = (ByteBuffer) queue.get(0);
-				socketChannel.write(buf);
-				if (buf.remaining() > 0) {
-					// ... or the socket's buffer fills up
-					break;
-				}
-				queue.remove(0);
-			}
-
-			if (queue.isEmpty()) {
-				// We wrote away all data, so we're no longer interested
-				// in writing on this socket. Switch back to waiting for
-				// data.
-				pKey.interestOps(SelectionKey.OP_READ);
-			}
-		}
+	/**
+	 * TCP is a stream, so each message is framed with its length for the
+	 * {@link ServerSelector} on the other end to split them back up.
+	 * 
+	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread#encode(com.niffy.AndEngineLockStepEngine.messages.IMessage)
+	 */
+	@Override
+	protected ByteBuffer encode(IMessage pMessage) {
+		final int size = pMessage.getTransmissionSize();
+		final ByteBuffer buffer = this.mBufferPool.obtain(FrameCodec.PREFIX_SIZE + size);
+		FrameCodec.putPrefix(buffer, size);
+		pMessage.writeTo(buffer);
+		buffer.flip();
+		return buffer;
 	}
 
 	@Override
 	protected void handleChangeRequest(ChangeRequest pChangeRequest) {
-		log.debug("Change Request: {}", pChangeRequest.mType);
+		TraceRing.trace(this.mTrace, TraceFlag.CHANGE_REQUEST, TraceRing.NO_PEER, pChangeRequest.mType);
 		switch (pChangeRequest.mType) {
 		case ChangeRequest.CHANGEOPS:
 			SelectionKey key = pChangeRequest.mChannel.keyFor(this.mSelector);
@@ -223,14 +224,13 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 				 */
 				Connection con = null;
 				if (pChangeRequest.mSocketAddress != null) {
-					con = new Connection(pChangeRequest.mSocketAddress, pChangeRequest.getAsSocketChannel());
+					con = this.newConnection(pChangeRequest.mSocketAddress, pChangeRequest.getAsSocketChannel());
 				} else {
 					InetSocketAddress address = new InetSocketAddress(pChangeRequest.mAddress,
 							this.mBaseOptions.getTCPServerPort());
-					con = new Connection(address, pChangeRequest.getAsSocketChannel());
+					con = this.newConnection(address, pChangeRequest.getAsSocketChannel());
 				}
 				keyFound.attach(con);
-				this.createQueue(con);
 			} catch (ClosedChannelException e) {
 				log.error("ClosedChannelException", e);
 				/* TODO handle this, clean up pending data and pending changes?
@@ -263,28 +263,19 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 	@Override
 	public void send(InetAddress pAddress, byte[] pData) throws NotConnectedToClient, ClientDoesNotExist,
 			ClientPendingClosure {
-		synchronized (this.mPendingClosure) {
-			if (this.mPendingClosure.contains(pAddress)) {
-				final String pMessage = "Address: " + pAddress.toString() + "  is pending closure.";
-				throw new ClientPendingClosure(pMessage);
-			}
-		}
-		synchronized (this.mChannelMap) {
-			if (this.mChannelMap.containsKey(pAddress)) {
-				Connection con = this.mChannelMap.get(pAddress);
-				if (!con.mSocketChannel.isConnected()) {
-					log.error("Went to send a message to: {} but the channel is not connected", pAddress.toString());
-					final String pMessage = "Address: " + pAddress.toString() + " Is added but not is not connected.";
-					throw new NotConnectedToClient(pMessage);
-				} else {
-					/* TODO send message */
-				}
-			} else {
-				log.error("Went to send a message to: {} but no channel exists", pAddress.toString());
-				final String pMessage = "Address: " + pAddress.toString() + "  but no channel exists.";
-				throw new ClientDoesNotExist(pMessage);
-			}
-		}
+		final Connection con = this.getConnectionToSend(pAddress);
+		final ByteBuffer buffer = ByteBuffer.allocate(FrameCodec.PREFIX_SIZE + pData.length);
+		FrameCodec.putPrefix(buffer, pData.length);
+		buffer.put(pData);
+		buffer.flip();
+		this.sendMessage(con, buffer);
+	}
+
+	@Override
+	public void send(InetAddress pAddress, IMessage pMessage) throws NotConnectedToClient, ClientDoesNotExist,
+			ClientPendingClosure {
+		final Connection con = this.getConnectionToSend(pAddress);
+		this.sendMessage(con, this.encode(pMessage));
 	}
 
 	@Override
@@ -311,27 +302,62 @@ public class ClientSelector extends BaseSelectorThread implements IClientSelecto
 		// selecting thread. As part of the registration we'll register
 		// an interest in connection events. These are raised when a channel
 		// is ready to complete connection establishment.
-		synchronized (this.mPendingChanges) {
-			this.mPendingChanges.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT,
-					pAddress.getAddress(), pAddress));
-		}
+		this.mPendingChanges.register(socketChannel, SelectionKey.OP_CONNECT, pAddress.getAddress(), pAddress, null);
 		this.mSelector.wakeup();
 		return socketChannel;
 	}
 
-	protected void sendMessage(final Connection pConnection, final byte[] pData) {
-		synchronized (this.mPendingData) {
-			ArrayList<ByteBuffer> queue = this.mPendingData.get(pConnection.getAddress());
-			if (queue == null) {
-				queue = new ArrayList<ByteBuffer>();
-				this.mPendingData.put(pConnection.getAddress().getAddress(), queue);
+	/**
+	 * Check we can send to a client.
+	 * 
+	 * @param pAddress
+	 *            {@link InetAddress} of client to send to.
+	 * @return {@link Connection} of the client.
+	 * @throws NotConnectedToClient
+	 * @throws ClientDoesNotExist
+	 * @throws ClientPendingClosure
+	 */
+	protected Connection getConnectionToSend(final InetAddress pAddress) throws NotConnectedToClient,
+			ClientDoesNotExist, ClientPendingClosure {
+		synchronized (this.mPendingClosure) {
+			if (this.mPendingClosure.contains(pAddress)) {
+				final String pMessage = "Address: " + pAddress.toString() + "  is pending closure.";
+				throw new ClientPendingClosure(pMessage);
 			}
-			queue.add(ByteBuffer.wrap(pData));
 		}
+		final Connection con = this.getConnection(this.mPeerRegistry.getID(pAddress));
+		if (con != null) {
+			if (!con.mSocketChannel.isConnected()) {
+				log.error("Went to send a message to: {} but the channel is not connected", pAddress);
+				final String pMessage = "Address: " + pAddress.toString() + " Is added but not is not connected.";
+				throw new NotConnectedToClient(pMessage);
+			}
+			return con;
+		} else {
+			log.error("Went to send a message to: {} but no channel exists", pAddress);
+			final String pMessage = "Address: " + pAddress.toString() + "  but no channel exists.";
+			throw new ClientDoesNotExist(pMessage);
+		}
+	}
+
+	/**
+	 * Queue data on the connection, only asking the selector for
+	 * {@link SelectionKey#OP_WRITE} if it is not already writing.
+	 * 
+	 * @param pConnection
+	 *            {@link Connection} to send on.
+	 * @param pData
+	 *            {@link ByteBuffer} flipped and ready to write.
+	 */
+	protected void sendMessage(final Connection pConnection, final ByteBuffer pData) {
+		if (!pConnection.getWriteQueue().offer(pData)) {
+			return;
+		}
+		this.mPendingChanges.changeOps(pConnection.getSocketChannel(), SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 
 		this.mSelector.wakeup();
 	}
-	
+
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
@@ -6,6 +6,8 @@ import java.nio.channels.SocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
+
 public class Connection {
 	// ===========================================================
 	// Constants
@@ -18,6 +20,23 @@ public class Connection {
 	// ===========================================================
 	protected InetSocketAddress mAddress;
 	protected SocketChannel mSocketChannel;
+	/**
+	 * Only created for connections we read a stream from.
+	 */
+	protected FrameCodec mFrameCodec;
+	/**
+	 * {@link IPeerRegistry} id of the remote end.
+	 */
+	protected int mPeerID = IPeerRegistry.NO_PEER;
+	/**
+	 * Buffers waiting to go out on {@link #mSocketChannel}
+	 */
+	protected final WriteQueue mWriteQueue = new WriteQueue();
+	/**
+	 * Selector the channel is registered with, so a thread sharing a
+	 * {@link java.nio.channels.Selector} can pass its keys on.
+	 */
+	protected BaseSelectorThread mSelectorThread;
 
 	// ===========================================================
 	// Constructors
@@ -44,6 +63,34 @@ public class Connection {
 		this.mSocketChannel = pSocketChannel;
 	}
 
+	public FrameCodec getFrameCodec() {
+		return this.mFrameCodec;
+	}
+
+	public void setFrameCodec(FrameCodec pFrameCodec) {
+		this.mFrameCodec = pFrameCodec;
+	}
+
+	public int getPeerID() {
+		return this.mPeerID;
+	}
+
+	public void setPeerID(int pPeerID) {
+		this.mPeerID = pPeerID;
+	}
+
+	public WriteQueue getWriteQueue() {
+		return this.mWriteQueue;
+	}
+
+	public BaseSelectorThread getSelectorThread() {
+		return this.mSelectorThread;
+	}
+
+	public void setSelectorThread(BaseSelectorThread pSelectorThread) {
+		this.mSelectorThread = pSelectorThread;
+	}
+
 	// ===========================================================
 	// Methods for/from SuperClass/Interfaces
 	// ===========================================================
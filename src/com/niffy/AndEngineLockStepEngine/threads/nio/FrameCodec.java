@@ -0,0 +1,162 @@
+package com.niffy.AndEngineLockStepEngine.threads.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Length prefixed framing for TCP streams. Each frame on the wire is a 4 byte
+ * length followed by that many bytes of payload.
+ * <p>
+ * TCP can merge several writes in to one read, or split one write across
+ * several reads. A codec is kept per {@link Connection} and bytes are read
+ * straight in to {@link #getReadBuffer()}. {@link #decode(Connection, IFrameListener)}
+ * then hands out every complete frame in place, and keeps any partial frame
+ * for the next read.
+ */
+public class FrameCodec {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	private final Logger log = LoggerFactory.getLogger(FrameCodec.class);
+	/**
+	 * Size of the length prefix in bytes.
+	 */
+	public static final int PREFIX_SIZE = 4;
+	/**
+	 * Largest frame accepted, anything bigger is treated as a corrupt stream.
+	 */
+	public static final int DefaultMaxFrameSize = 1024 * 1024;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected ByteBuffer mReadBuffer;
+	protected final int mMaxFrameSize;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	/**
+	 * 
+	 * @param pInitialCapacity
+	 *            {@link Integer} starting size of the accumulation buffer. It
+	 *            will grow if a frame bigger than this arrives.
+	 */
+	public FrameCodec(final int pInitialCapacity) {
+		this(pInitialCapacity, DefaultMaxFrameSize);
+	}
+
+	/**
+	 * 
+	 * @param pInitialCapacity
+	 *            {@link Integer} starting size of the accumulation buffer.
+	 * @param pMaxFrameSize
+	 *            {@link Integer} largest payload accepted.
+	 */
+	public FrameCodec(final int pInitialCapacity, final int pMaxFrameSize) {
+		this.mReadBuffer = ByteBuffer.allocate(pInitialCapacity);
+		this.mMaxFrameSize = pMaxFrameSize;
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+	/**
+	 * @return {@link ByteBuffer} in write mode, read from the channel in to
+	 *         this.
+	 */
+	public ByteBuffer getReadBuffer() {
+		return this.mReadBuffer;
+	}
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Pass every complete frame in the read buffer to the listener, then
+	 * compact so the buffer is ready for the next read.
+	 * 
+	 * @param pConnection
+	 *            {@link Connection} the bytes came from.
+	 * @param pListener
+	 *            {@link IFrameListener} to pass frames to.
+	 * @return {@link Integer} of frames decoded.
+	 * @throws IOException
+	 *             when a frame length is negative or over the maximum size,
+	 *             the stream can not be recovered.
+	 */
+	public int decode(final Connection pConnection, final IFrameListener pListener) throws IOException {
+		final ByteBuffer buffer = this.mReadBuffer;
+		buffer.flip();
+		int frames = 0;
+		while (buffer.remaining() >= PREFIX_SIZE) {
+			final int start = buffer.position();
+			final int length = buffer.getInt(start);
+			if (length < 0 || length > this.mMaxFrameSize) {
+				buffer.clear();
+				throw new IOException("Invalid frame length: " + length);
+			}
+			if (buffer.remaining() < PREFIX_SIZE + length) {
+				break;
+			}
+			final int limit = buffer.limit();
+			final int end = start + PREFIX_SIZE + length;
+			buffer.limit(end);
+			buffer.position(start + PREFIX_SIZE);
+			pListener.onFrame(pConnection, buffer);
+			buffer.limit(limit);
+			buffer.position(end);
+			frames++;
+		}
+		buffer.compact();
+		this.ensureCapacityForPartialFrame();
+		return frames;
+	}
+
+	/**
+	 * Write a frame prefix at the buffers current position, the payload of
+	 * <code>pLength</code> should follow it.
+	 * 
+	 * @param pBuffer
+	 *            {@link ByteBuffer} to write to.
+	 * @param pLength
+	 *            {@link Integer} of payload length.
+	 */
+	public static void putPrefix(final ByteBuffer pBuffer, final int pLength) {
+		pBuffer.putInt(pLength);
+	}
+
+	/**
+	 * If the partial frame left over will not fit, grow the buffer so it will.
+	 */
+	protected void ensureCapacityForPartialFrame() {
+		final ByteBuffer buffer = this.mReadBuffer;
+		if (buffer.position() < PREFIX_SIZE) {
+			return;
+		}
+		final int length = buffer.getInt(0);
+		if (length < 0 || length > this.mMaxFrameSize) {
+			/* decode will reject this on the next pass */
+			return;
+		}
+		final int required = PREFIX_SIZE + length;
+		if (required > buffer.capacity()) {
+			log.debug("Growing frame buffer from: {} to: {}", buffer.capacity(), required);
+			final ByteBuffer grown = ByteBuffer.allocate(required);
+			buffer.flip();
+			grown.put(buffer);
+			this.mReadBuffer = grown;
+		}
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -7,6 +7,7 @@ import java.net.InetSocketAddress;
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientDoesNotExist;
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientPendingClosure;
 import com.niffy.AndEngineLockStepEngine.exceptions.NotConnectedToClient;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 
 public interface IClientSelector extends ISelectorThread {
 	/**
@@ -25,6 +26,26 @@ public interface IClientSelector extends ISelectorThread {
 	public void send(final InetAddress pAddress, final byte[] pData) throws NotConnectedToClient, ClientDoesNotExist,
 			ClientPendingClosure, IOException;
 
+	/**
+	 * Serialise a message in to a pooled buffer and queue it to be sent. The
+	 * message is written before this returns, so it can be recycled straight
+	 * away.
+	 * 
+	 * @param pAddress
+	 * @param pMessage
+	 *            {@link IMessage} to send.
+	 * @throws NotConnectedToClient
+	 *             If client is added but channel is not connected
+	 * @throws ClientDoesNotExist
+	 *             If client has never been added to the thread.
+	 * @throws ClientPendingClosure
+	 *             If the connection is pending closure, will not add any more
+	 *             messages to send.
+	 * @throws IOException
+	 */
+	public void send(final InetAddress pAddress, final IMessage pMessage) throws NotConnectedToClient,
+			ClientDoesNotExist, ClientPendingClosure, IOException;
+
 	/**
 	 * Connect to a client-server
 	 * 
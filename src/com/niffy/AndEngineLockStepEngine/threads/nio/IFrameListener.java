@@ -0,0 +1,21 @@
+package com.niffy.AndEngineLockStepEngine.threads.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives complete frames decoded by a {@link FrameCodec}.
+ */
+public interface IFrameListener {
+	/**
+	 * A complete frame has been decoded. The frame is a window on to the
+	 * connections read buffer, so it is only valid until this returns. Copy
+	 * anything which needs to be kept.
+	 * 
+	 * @param pConnection
+	 *            {@link Connection} the frame was read from.
+	 * @param pFrame
+	 *            {@link ByteBuffer} positioned at the start of the frame
+	 *            payload with the limit set to the end of it.
+	 */
+	public void onFrame(final Connection pConnection, final ByteBuffer pFrame);
+}
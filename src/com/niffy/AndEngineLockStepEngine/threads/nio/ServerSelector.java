@@ -1,6 +1,7 @@
 package com.niffy.AndEngineLockStepEngine.threads.nio;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
@@ -24,11 +25,13 @@ import android.os.Message;
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientDoesNotExist;
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 import com.niffy.AndEngineLockStepEngine.threads.CommunicationHandler;
 
-public class ServerSelector extends BaseSelectorThread implements IServerSelector {
+public class ServerSelector extends BaseSelectorThread implements IServerSelector, IFrameListener {
 	// ===========================================================
 	// Constants
 	// ===========================================================
@@ -38,6 +41,12 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 	// Fields
 	// ===========================================================
 	protected ServerSocketChannel mTCPChannel;
+	/**
+	 * Other selectors accepted connections are spread over, <code>null</code>
+	 * if this reads every connection itself.
+	 */
+	protected ServerSelector[] mShards;
+	protected int mNextShard = 0;
 
 	// ===========================================================
 	// Constructors
@@ -50,6 +59,21 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 		super(pName, pAddress, pCaller, pOptions);
 	}
 
+	/**
+	 * Register on a shared {@link Selector}, see
+	 * {@link BaseSelectorThread#BaseSelectorThread(String, InetSocketAddress, WeakThreadHandler, IBaseOptions, int, Selector)}
+	 * 
+	 * @param pAddress
+	 *            {@link InetSocketAddress} to listen on, or <code>null</code>
+	 *            to not listen and only read connections handed over with
+	 *            {@link #adopt(Connection)}
+	 */
+	public ServerSelector(final String pName, final InetSocketAddress pAddress,
+			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions, final Selector pSelector)
+			throws IOException {
+		super(pName, pAddress, pCaller, pOptions, DefaultBufferCapacity, pSelector);
+	}
+
 	// ===========================================================
 	// Methods for/from SuperClass/Interfaces
 	// ===========================================================
@@ -57,20 +81,16 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 	public void run() {
 		log.debug("Running TCP Selector Thread");
 		this.mRunning.set(true);
-		Message msg = this.mCallerThreadHandler.obtainMessage();
-		msg.what = ITCFlags.TCP_SERVER_SELECTOR_START;
-		this.mCallerThreadHandler.sendMessage(msg);
+		if (this.mTCPChannel != null) {
+			/* Shards do not listen, so are not reported */
+			Message msg = this.mCallerThreadHandler.obtainMessage();
+			msg.what = ITCFlags.TCP_SERVER_SELECTOR_START;
+			this.mCallerThreadHandler.sendMessage(msg);
+		}
 		while (true) {
 			try {
 				// Process any pending changes
-				synchronized (this.mPendingChanges) {
-					Iterator<ChangeRequest> changes = this.mPendingChanges.iterator();
-					while (changes.hasNext()) {
-						ChangeRequest change = (ChangeRequest) changes.next();
-						this.handleChangeRequest(change);
-					}
-					this.mPendingChanges.clear();
-				}
+				this.processChanges();
 
 				// Wait for an event one of the registered channels
 				this.mSelector.select();
@@ -87,13 +107,7 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 
 					// Check what event is available and deal with it
 					try {
-						if (key.isAcceptable()) {
-							this.accept(key);
-						} else if (key.isReadable()) {
-							this.read(key);
-						} else if (key.isWritable()) {
-							this.write(key);
-						}
+						this.handleKey(key);
 					} catch (IOException e) {
 						log.error("IOException on key operation", e);
 					} catch (ClientDoesNotExist e) {
@@ -106,9 +120,24 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 		}
 	}
 
+	@Override
+	public void handleKey(SelectionKey pKey) throws IOException, ClientDoesNotExist {
+		if (pKey.isAcceptable()) {
+			this.accept(pKey);
+		} else if (pKey.isReadable()) {
+			this.read(pKey);
+		} else if (pKey.isWritable()) {
+			this.write(pKey);
+		}
+	}
+
 	@Override
 	protected Selector initSelector() throws IOException {
 		Selector found = super.initSelector();
+		if (this.mAddress == null) {
+			/* A shard, only reads connections it is handed */
+			return found;
+		}
 
 		// Create a new non-blocking server socket channel
 		this.mTCPChannel = ServerSocketChannel.open();
@@ -137,10 +166,16 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 		SocketChannel socketChannel = serverSocketChannel.accept();
 		Socket socket = socketChannel.socket();
 		socketChannel.configureBlocking(false);
-		socketChannel.register(this.mSelector, SelectionKey.OP_READ);
-		Connection con = new Connection((InetSocketAddress) socket.getRemoteSocketAddress(), socketChannel);
-		this.mChannelMap.put(con.getAddress().getAddress(), con);
-		pKey.attach(con);
+		Connection con = this.newConnection((InetSocketAddress) socket.getRemoteSocketAddress(), socketChannel);
+		con.setFrameCodec(new FrameCodec(this.mBufferCapacity));
+		final ServerSelector shard = this.nextShard();
+		if (shard == this) {
+			SelectionKey clientKey = socketChannel.register(this.mSelector, SelectionKey.OP_READ);
+			this.addConnection(con);
+			clientKey.attach(con);
+		} else {
+			shard.adopt(con);
+		}
 		Message msg = this.mCallerThreadHandler.obtainMessage();
 		msg.what = ITCFlags.NEW_CLIENT_CONNECTED;
 		Bundle data = new Bundle();
@@ -154,24 +189,26 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 	protected void read(SelectionKey pKey) throws IOException, ClientDoesNotExist {
 		SocketChannel socketChannel;
 		InetSocketAddress address;
-		String connectionIP;
 		Connection con = (Connection) pKey.attachment();
 		if (con != null) {
 			socketChannel = con.getSocketChannel();
 			address = con.getAddress();
-			connectionIP = address.getAddress().getHostAddress();
 		} else {
 			socketChannel = (SocketChannel) pKey.channel();
 			address = (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
-			connectionIP = address.getAddress().getHostAddress();
-			log.warn("Could not get Connection attachment for IP: {}", connectionIP);
+			log.warn("Could not get Connection attachment for IP: {}", address);
+			con = this.newConnection(address, socketChannel);
+			pKey.attach(con);
+		}
+		if (con.getFrameCodec() == null) {
+			con.setFrameCodec(new FrameCodec(this.mBufferCapacity));
 		}
-		this.readBuffer.clear();
+		final FrameCodec codec = con.getFrameCodec();
 
 		// Attempt to read off the channel
 		int numRead = -1;
 		try {
-			numRead = socketChannel.read(this.readBuffer);
+			numRead = socketChannel.read(codec.getReadBuffer());
 		} catch (AsynchronousCloseException e) {
 			log.error("AsynchronousCloseException", e);
 			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
@@ -200,21 +237,42 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 			return;
 		}
 		
-		byte[] dataIn = new byte[numRead];
-		System.arraycopy(this.readBuffer.array(), 0, dataIn, 0, numRead);
-		
-		Message msg = this.mCallerThreadHandler.obtainMessage();
-		msg.what = ITCFlags.TCP_CLIENT_INCOMMING;
-		Bundle data = new Bundle();
-		data.putString("ip", connectionIP);
-		data.putByteArray("data", dataIn);
-		msg.setData(data);
-		this.mCallerThreadHandler.sendMessage(msg);
+		try {
+			codec.decode(con, this);
+		} catch (IOException e) {
+			log.error("Corrupt stream from: {}", address, e);
+			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
+		}
+	}
+
+	/**
+	 * Pass a complete frame on to the {@link CommunicationHandler} with
+	 * {@link ITCFlags#TCP_CLIENT_INCOMMING}
+	 * 
+	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.IFrameListener#onFrame(com.niffy.AndEngineLockStepEngine.threads.nio.Connection,
+	 *      java.nio.ByteBuffer)
+	 */
+	@Override
+	public void onFrame(Connection pConnection, ByteBuffer pFrame) {
+		if (pConnection.getPeerID() == IPeerRegistry.NO_PEER) {
+			pConnection.setPeerID(this.mPeerRegistry.register(pConnection.getAddress().getAddress()));
+			if (pConnection.getPeerID() == IPeerRegistry.NO_PEER) {
+				log.warn("Dropping frame from: {} as it could not be registered", pConnection.getAddress());
+				return;
+			}
+		}
+		/* The frame is a view of the connections read buffer, which is reused */
+		final int length = pFrame.remaining();
+		final PooledBuffer buffer = this.mReceivePool.obtain(length);
+		pFrame.get(buffer.getData(), buffer.getOffset(), length);
+		buffer.setLength(length);
+		this.passReceived(ITCFlags.TCP_CLIENT_INCOMMING, pConnection.getPeerID(), buffer);
 	}
 
 	/**
 	 * @throws IOException
-	 *             due to {@link SocketChannel#write(ByteBuffer)} call
+	 *             due to {@link SocketChannel#write(ByteBuffer[], int, int)}
+	 *             call
 	 * @throws CancelledKeyException
 	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread#write(java.nio.channels.SelectionKey)
 	 */
@@ -223,42 +281,15 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 		/*
 		 * TODO do we need to write on a server selector?
 		 */
-		SocketChannel socketChannel;
-		String connectionIP;
-		InetSocketAddress address;
-		Connection con = (Connection) pKey.attachment();
-		if (con != null) {
-			socketChannel = con.getSocketChannel();
-			connectionIP = con.getAddress().getAddress().getHostAddress();
-			address = con.getAddress();
-		} else {
-			socketChannel = (SocketChannel) pKey.channel();
-			address = (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
-			connectionIP = address.getAddress().getHostAddress();
-			log.warn("Could not get Connection attachment for IP: {}", connectionIP);
-		}
-
-		synchronized (this.mPendingData) {
-			ArrayList<ByteBuffer> queue = this.mPendingData.get(address);
-
-			// Write until there's not more data ...
-			while (!queue.isEmpty()) {
-				ByteBuffer buf = (ByteBuffer) queue.get(0);
-				socketChannel.write(buf);
-				if (buf.remaining() > 0) {
-					// ... or the socket's buffer fills up
-					break;
-				}
-				queue.remove(0);
-			}
-
-			if (queue.isEmpty()) {
-				// We wrote away all data, so we're no longer interested
-				// in writing on this socket. Switch back to waiting for
-				// data.
-				pKey.interestOps(SelectionKey.OP_READ);
-			}
+		final Connection con = (Connection) pKey.attachment();
+		if (con == null) {
+			final SocketChannel socketChannel = (SocketChannel) pKey.channel();
+			final InetSocketAddress address = (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
+			log.warn("Could not get Connection attachment for IP: {}", address);
+			pKey.interestOps(SelectionKey.OP_READ);
+			return;
 		}
+		this.writeQueued(pKey, con);
 	}
 
 	@Override
@@ -284,6 +315,17 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 				}
 			}
 			break;
+		case ChangeRequest.REGISTER:
+			final Connection con = pChangeRequest.mConnection;
+			try {
+				SelectionKey clientKey = con.getSocketChannel().register(this.mSelector, SelectionKey.OP_READ);
+				con.setSelectorThread(this);
+				this.addConnection(con);
+				clientKey.attach(con);
+			} catch (ClosedChannelException e) {
+				log.error("Could not register handed over connection: {}", con.getAddress(), e);
+			}
+			break;
 		case ChangeRequest.REMOVECLIENT:
 			try {
 				this.handleConnectionShutdown(pChangeRequest.mChannel.keyFor(this.mSelector), pChangeRequest.mChannel,
@@ -297,13 +339,89 @@ public class ServerSelector extends BaseSelectorThread implements IServerSelecto
 		}
 	}
 
+	@Override
+	public boolean containsClient(InetAddress pAddress) {
+		if (super.containsClient(pAddress)) {
+			return true;
+		}
+		return this.findShard(pAddress) != null;
+	}
+
+	@Override
+	public void removeClient(InetAddress pAddress) {
+		final ServerSelector shard = this.findShard(pAddress);
+		if (shard != null) {
+			shard.removeClient(pAddress);
+		} else {
+			super.removeClient(pAddress);
+		}
+	}
+
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
+	/**
+	 * Spread accepted connections over other selectors, round robin with this
+	 * one. Each shard must be constructed with no address so it does not
+	 * listen, and be started before connections arrive. Set before starting
+	 * this.
+	 * 
+	 * @param pShards
+	 *            {@link ServerSelector} array, <code>null</code> or empty to
+	 *            read every connection on this selector.
+	 */
+	public void setShards(final ServerSelector[] pShards) {
+		this.mShards = (pShards == null || pShards.length == 0) ? null : pShards;
+	}
+
+	public ServerSelector[] getShards() {
+		return this.mShards;
+	}
 
 	// ===========================================================
 	// Methods
 	// ===========================================================
+	/**
+	 * Take over reading an accepted connection, from any thread. It is
+	 * registered on this selector next time round its loop.
+	 * 
+	 * @param pConnection
+	 *            {@link Connection} accepted by another selector.
+	 */
+	public void adopt(final Connection pConnection) {
+		this.mPendingChanges.register(pConnection.getSocketChannel(), SelectionKey.OP_READ, pConnection.getAddress()
+				.getAddress(), pConnection.getAddress(), pConnection);
+		this.mSelector.wakeup();
+	}
+
+	/**
+	 * @return {@link ServerSelector} to read the next accepted connection,
+	 *         which is this one when not sharded.
+	 */
+	protected ServerSelector nextShard() {
+		if (this.mShards == null) {
+			return this;
+		}
+		final int index = this.mNextShard;
+		this.mNextShard = (index + 1) % (this.mShards.length + 1);
+		return (index == 0) ? this : this.mShards[index - 1];
+	}
+
+	/**
+	 * @return {@link ServerSelector} shard reading the connection from
+	 *         <code>pAddress</code>, or <code>null</code> if none is.
+	 */
+	protected ServerSelector findShard(final InetAddress pAddress) {
+		if (this.mShards == null) {
+			return null;
+		}
+		for (int i = 0; i < this.mShards.length; i++) {
+			if (this.mShards[i].containsClient(pAddress)) {
+				return this.mShards[i];
+			}
+		}
+		return null;
+	}
 
 	// ===========================================================
 	// Inner and Anonymous Classes
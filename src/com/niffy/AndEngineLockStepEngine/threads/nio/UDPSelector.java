@@ -4,30 +4,31 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
-import java.nio.channels.NotYetConnectedException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import android.os.Bundle;
 import android.os.Message;
 
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientDoesNotExist;
 import com.niffy.AndEngineLockStepEngine.exceptions.ClientPendingClosure;
 import com.niffy.AndEngineLockStepEngine.exceptions.NotConnectedToClient;
 import com.niffy.AndEngineLockStepEngine.flags.ITCFlags;
+import com.niffy.AndEngineLockStepEngine.messages.IMessage;
 import com.niffy.AndEngineLockStepEngine.misc.IHandlerMessage;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBuffer;
+import com.niffy.AndEngineLockStepEngine.misc.PooledBufferBatch;
 import com.niffy.AndEngineLockStepEngine.misc.WeakThreadHandler;
 import com.niffy.AndEngineLockStepEngine.options.IBaseOptions;
+import com.niffy.AndEngineLockStepEngine.peer.IPeerRegistry;
 
 public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 	// ===========================================================
@@ -40,6 +41,48 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 	// ===========================================================
 	protected DatagramChannel mUDP;
 	protected int mUDPPort;
+	/**
+	 * Datagrams waiting to be sent, indexed by {@link IPeerRegistry} id.
+	 * Guarded by {@link #mPendingLock}, so taking from the front must stay
+	 * constant time.
+	 */
+	protected ArrayDeque<ByteBuffer>[] mPeerQueues;
+	/**
+	 * Resolved once per peer so queuing a datagram does not allocate an
+	 * {@link InetSocketAddress}. Indexed by {@link IPeerRegistry} id. Guarded
+	 * by {@link #mPendingLock}
+	 */
+	protected InetSocketAddress[] mPeerAddresses;
+	/**
+	 * Ids of peers with data waiting in {@link #mPeerQueues}, in the order
+	 * they were first queued. Guarded by {@link #mPendingLock}
+	 */
+	protected int[] mPeersWithPendingData;
+	protected int mPeersWithPendingDataCount = 0;
+	/**
+	 * Has {@link SelectionKey#OP_WRITE} already been requested on
+	 * {@link #mUDP}. Guarded by {@link #mPendingLock}
+	 */
+	protected boolean mWriteRequested = false;
+	/**
+	 * Queues swapped out of {@link #mPeerQueues} for the selector to send
+	 * without holding {@link #mPendingLock}. Selector thread only, as are
+	 * {@link #mSendAddresses}, {@link #mSendPeers} and their counts.
+	 */
+	protected ArrayDeque<ByteBuffer>[] mSendQueues;
+	protected InetSocketAddress[] mSendAddresses;
+	protected int[] mSendPeers;
+	protected int mSendPeerCount = 0;
+	/**
+	 * Index in {@link #mSendPeers} of the peer being sent to, the queues of
+	 * those before it are empty.
+	 */
+	protected int mSendPeerIndex = 0;
+	protected final int mReceiveBatchSize;
+	/**
+	 * Batches released by the caller thread, ready to fill again.
+	 */
+	protected final ConcurrentLinkedQueue<PooledBufferBatch> mSpareBatches = new ConcurrentLinkedQueue<PooledBufferBatch>();
 	// ===========================================================
 	// Constructors
 	// ===========================================================
@@ -48,7 +91,19 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 	 */
 	public UDPSelector(final String pName, final InetSocketAddress pAddress,
 			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions) throws IOException {
-		super(pName, pAddress, pCaller, pOptions);
+		this(pName, pAddress, pCaller, pOptions, null);
+	}
+
+	/**
+	 * Register on a shared {@link Selector}, see
+	 * {@link BaseSelectorThread#BaseSelectorThread(String, InetSocketAddress, WeakThreadHandler, IBaseOptions, int, Selector)}
+	 */
+	public UDPSelector(final String pName, final InetSocketAddress pAddress,
+			WeakThreadHandler<IHandlerMessage> pCaller, final IBaseOptions pOptions, final Selector pSelector)
+			throws IOException {
+		super(pName, pAddress, pCaller, pOptions, DefaultBufferCapacity, pSelector);
+		this.mReceiveBatchSize = Math.max(1, pOptions.getReceiveBatchSize());
+		this.createPeerTables(this.mPeerRegistry.getMaxPeers());
 	}
 
 	// ===========================================================
@@ -64,14 +119,7 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 		while (true) {
 			try {
 				// Process any pending changes
-				synchronized (this.mPendingChanges) {
-					Iterator<ChangeRequest> changes = this.mPendingChanges.iterator();
-					while (changes.hasNext()) {
-						ChangeRequest change = (ChangeRequest) changes.next();
-						this.handleChangeRequest(change);
-					}
-					this.mPendingChanges.clear();
-				}
+				this.processChanges();
 
 				// Wait for an event one of the registered channels
 				this.mSelector.select();
@@ -88,11 +136,7 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 
 					// Check what event is available and deal with it
 					try {
-						if (key.isReadable()) {
-							this.read(key);
-						} else if (key.isWritable()) {
-							this.write(key);
-						}
+						this.handleKey(key);
 					} catch (IOException e) {
 						log.error("IOException on key operation", e);
 					}
@@ -103,6 +147,16 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 		}
 	}
 
+	@Override
+	public void handleKey(SelectionKey pKey) throws IOException, ClientDoesNotExist {
+		if (pKey.isReadable()) {
+			this.read(pKey);
+		}
+		if (pKey.isValid() && pKey.isWritable()) {
+			this.write(pKey);
+		}
+	}
+
 	@Override
 	protected Selector initSelector() throws IOException {
 		Selector socketSelector = super.initSelector();
@@ -114,95 +168,91 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 		return socketSelector;
 	}
 
+	/**
+	 * Drain the socket, up to {@link IBaseOptions#getReceiveBatchSize()}
+	 * datagrams, each straight in to a pooled buffer. The whole batch goes to
+	 * the caller thread as one message, so the wake up, key iteration and
+	 * handler post are paid once per batch rather than once per datagram.
+	 * Datagrams from an address which is not a registered peer are dropped.
+	 * 
+	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread#read(java.nio.channels.SelectionKey)
+	 */
 	@Override
 	protected void read(SelectionKey pKey) throws IOException, ClientDoesNotExist {
-		DatagramChannel socketChannel;
-		InetSocketAddress address;
-		String connectionIP;
-		socketChannel = (DatagramChannel) pKey.channel();
-		address = (InetSocketAddress) socketChannel.receive(this.readBuffer);
-		connectionIP = address.getAddress().getHostAddress();
-		this.readBuffer.clear();
-
-		// Attempt to read off the channel
-		int numRead = -1;
-		try {
-			numRead = socketChannel.read(this.readBuffer);
-		} catch (AsynchronousCloseException e) {
-			log.error("AsynchronousCloseException", e);
-			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
-		} catch (NotYetConnectedException e) {
-			log.error("NotYetConnectedException", e);
-			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
-		} catch (ClosedChannelException e) {
-			log.error("ClosedChannelException", e);
-			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
-			this.removeClient(address.getAddress());
-		} catch (IOException e) {
-			log.error("IOException", e);
-			// The remote forcibly closed the connection, cancel
-			// the selection key and close the channel.
-			this.handleConnectionFailure(pKey, socketChannel, address.getAddress());
-			return;
-		}
+		final DatagramChannel socketChannel = (DatagramChannel) pKey.channel();
+		final PooledBufferBatch batch = this.obtainBatch();
+		IOException failure = null;
+		while (!batch.isFull()) {
+			final PooledBuffer buffer = this.mReceivePool.obtain();
+			final ByteBuffer in = buffer.prepareForRead();
+			final InetSocketAddress address;
+			try {
+				address = (InetSocketAddress) socketChannel.receive(in);
+			} catch (IOException e) {
+				buffer.release();
+				failure = e;
+				break;
+			}
+			if (address == null) {
+				/* Socket is drained */
+				buffer.release();
+				break;
+			}
 
-		if (numRead == -1) {
-			// Remote entity shut the socket down cleanly. Do the
-			// same from our end and cancel the channel.
-			/* TODO check that closing socketChannel is ok, 
-			 * we were doing pKey.channel().close()
-			 */
-			this.handleConnectionShutdown(pKey, socketChannel, address.getAddress());
-			return;
+			/* Peers are registered when they join, so a lookup without locking */
+			final int peerID = this.mPeerRegistry.getID(address.getAddress());
+			if (peerID == IPeerRegistry.NO_PEER) {
+				log.warn("Dropping datagram from: {} as it is not a registered peer", address);
+				buffer.release();
+				continue;
+			}
+			buffer.setLength(in.position());
+			batch.add(peerID, buffer);
 		}
 
-		byte[] dataIn = new byte[numRead];
-		System.arraycopy(this.readBuffer.array(), 0, dataIn, 0, numRead);
-
-		Message msg = this.mCallerThreadHandler.obtainMessage();
-		msg.what = ITCFlags.UDP_INCOMMING;
-		Bundle data = new Bundle();
-		data.putString("ip", connectionIP);
-		data.putByteArray("data", dataIn);
-		msg.setData(data);
-		this.mCallerThreadHandler.sendMessage(msg);
+		if (batch.getSize() > 0) {
+			this.passReceived(ITCFlags.UDP_INCOMMING, batch);
+		} else {
+			batch.release();
+		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
 	/**
+	 * Drain every peers queue through the one bound {@link #mUDP} channel.
+	 * The queues are swapped out under {@link #mPendingLock} and sent
+	 * without it, so queuing never waits on a send. Stops early if the
+	 * socket send buffer is full, leaving {@link SelectionKey#OP_WRITE} set
+	 * to carry on when there is room; what was swapped out goes before
+	 * anything queued since.
+	 * 
 	 * @throws IOException
-	 *             due to {@link SocketChannel#write(ByteBuffer)} call
+	 *             due to {@link DatagramChannel#send(ByteBuffer, java.net.SocketAddress)}
+	 *             call
 	 * @throws CancelledKeyException
 	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread#write(java.nio.channels.SelectionKey)
 	 */
 	@Override
 	protected void write(SelectionKey pKey) throws IOException, CancelledKeyException {
-		DatagramChannel socketChannel;
-		String connectionIP;
-		socketChannel = (DatagramChannel) pKey.channel();
-		InetSocketAddress address = (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
-		connectionIP = address.getAddress().getHostAddress();
-		InetSocketAddress target = (InetSocketAddress) pKey.attachment();
-
-		synchronized (this.mPendingData) {
-			ArrayList<ByteBuffer> queue = this.mPendingData.get(target.getAddress());
+		while (this.mSendPeerIndex < this.mSendPeerCount || this.swapPendingData(pKey)) {
+			final int peer = this.mSendPeers[this.mSendPeerIndex];
+			final ArrayDeque<ByteBuffer> queue = this.mSendQueues[peer];
+			final InetSocketAddress target = this.mSendAddresses[peer];
 
 			// Write until there's not more data ...
 			while (!queue.isEmpty()) {
-				ByteBuffer buf = (ByteBuffer) queue.get(0);
-				socketChannel.send(buf, target);
-				if (buf.remaining() > 0) {
+				final ByteBuffer buf = queue.peekFirst();
+				if (this.mUDP.send(buf, target) == 0) {
 					// ... or the socket's buffer fills up
-					break;
+					return;
 				}
-				queue.remove(0);
-			}
-
-			if (queue.isEmpty()) {
-				// We wrote away all data, so we're no longer interested
-				// in writing on this socket. Switch back to waiting for
-				// data.
-				pKey.interestOps(SelectionKey.OP_READ);
+				queue.pollFirst();
+				this.mBufferPool.recycle(buf);
 			}
+			this.mSendAddresses[peer] = null;
+			this.mSendPeerIndex++;
 		}
 	}
 
@@ -254,9 +304,30 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 	@Override
 	public void send(InetAddress pAddress, byte[] pData) throws NotConnectedToClient, ClientDoesNotExist,
 			ClientPendingClosure, IOException {
-		InetSocketAddress fullAddress = new InetSocketAddress(pAddress, this.mUDPPort);
-		DatagramChannel channel = this.initiateConnection(fullAddress);
-		this.sendMessage(channel, pData, fullAddress);
+		this.queue(pAddress, ByteBuffer.wrap(pData));
+	}
+
+	@Override
+	public void send(InetAddress pAddress, IMessage pMessage) throws NotConnectedToClient, ClientDoesNotExist,
+			ClientPendingClosure, IOException {
+		this.queue(pAddress, this.encode(pMessage));
+	}
+
+	/**
+	 * There is no connection to close for UDP, so drop anything still queued
+	 * for the peer.
+	 * 
+	 * @see com.niffy.AndEngineLockStepEngine.threads.nio.BaseSelectorThread#removeClient(java.net.InetAddress)
+	 */
+	@Override
+	public void removeClient(InetAddress pAddress) {
+		final int peerID = this.mPeerRegistry.getID(pAddress);
+		if (peerID == IPeerRegistry.NO_PEER) {
+			return;
+		}
+		synchronized (this.mPendingLock) {
+			this.clearPeer(peerID);
+		}
 	}
 
 	/**
@@ -275,30 +346,138 @@ public class UDPSelector extends BaseSelectorThread implements IClientSelector {
 	// ===========================================================
 	// Methods
 	// ===========================================================
-	protected DatagramChannel initiateConnection(final InetSocketAddress pAddress) throws IOException {
-		DatagramChannel channel = DatagramChannel.open();
-		channel.configureBlocking(false);
+	/**
+	 * Queue a datagram for a peer, all peers share {@link #mUDP}. Only the
+	 * first datagram queued since the last drain asks the selector for
+	 * {@link SelectionKey#OP_WRITE}.
+	 * 
+	 * @param pAddress
+	 *            {@link InetAddress} of peer, sent to on {@link #mUDPPort}
+	 * @param pData
+	 *            {@link ByteBuffer} flipped and ready to send.
+	 * @throws ClientDoesNotExist
+	 *             when the peer has no {@link IPeerRegistry} id.
+	 */
+	protected void queue(final InetAddress pAddress, final ByteBuffer pData) throws ClientDoesNotExist {
+		final int peerID = this.mPeerRegistry.getID(pAddress);
+		if (peerID == IPeerRegistry.NO_PEER) {
+			this.mBufferPool.recycle(pData);
+			throw new ClientDoesNotExist("Address: " + pAddress.toString() + " is not registered.");
+		}
+		boolean requestWrite = false;
+		synchronized (this.mPendingLock) {
+			final InetSocketAddress target = this.mPeerAddresses[peerID];
+			if (target == null || !target.getAddress().equals(pAddress)) {
+				/* Id was reused without the old peer being removed */
+				this.clearPeer(peerID);
+				this.mPeerAddresses[peerID] = new InetSocketAddress(pAddress, this.mUDPPort);
+			}
+			final ArrayDeque<ByteBuffer> queue = this.mPeerQueues[peerID];
+			if (queue.isEmpty()) {
+				this.mPeersWithPendingData[this.mPeersWithPendingDataCount++] = peerID;
+			}
+			queue.addLast(pData);
+			if (!this.mWriteRequested) {
+				this.mWriteRequested = true;
+				requestWrite = true;
+			}
+		}
 
-		synchronized (this.mPendingChanges) {
-			this.mPendingChanges.add(new ChangeRequest(channel, ChangeRequest.REGISTER, SelectionKey.OP_READ, pAddress
-					.getAddress(), pAddress));
+		if (requestWrite) {
+			this.mPendingChanges.changeOps(this.mUDP, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			this.mSelector.wakeup();
 		}
-		return channel;
 	}
 
-	public void sendMessage(DatagramChannel pSocket, byte[] data, InetSocketAddress addr) {
-		synchronized (this.mPendingData) {
-			ArrayList<ByteBuffer> queue = this.mPendingData.get(addr.getAddress());
-			if (queue == null) {
-				queue = new ArrayList<ByteBuffer>();
-				this.mPendingData.put(addr.getAddress(), queue);
+	/**
+	 * Swap the queued datagrams for the emptied send queues. If nothing is
+	 * queued switch back to waiting for data, while still holding
+	 * {@link #mPendingLock} so a datagram queued meanwhile asks for
+	 * {@link SelectionKey#OP_WRITE} again.
+	 * 
+	 * @return <code>true</code> if there is something to send.
+	 */
+	protected boolean swapPendingData(final SelectionKey pKey) {
+		synchronized (this.mPendingLock) {
+			if (this.mPeersWithPendingDataCount == 0) {
+				this.mWriteRequested = false;
+				pKey.interestOps(SelectionKey.OP_READ);
+				return false;
+			}
+			final ArrayDeque<ByteBuffer>[] queues = this.mSendQueues;
+			this.mSendQueues = this.mPeerQueues;
+			this.mPeerQueues = queues;
+			final int[] peers = this.mSendPeers;
+			this.mSendPeers = this.mPeersWithPendingData;
+			this.mPeersWithPendingData = peers;
+			this.mSendPeerCount = this.mPeersWithPendingDataCount;
+			this.mPeersWithPendingDataCount = 0;
+			for (int i = 0; i < this.mSendPeerCount; i++) {
+				final int peer = this.mSendPeers[i];
+				this.mSendAddresses[peer] = this.mPeerAddresses[peer];
 			}
-			queue.add(ByteBuffer.wrap(data));
 		}
+		this.mSendPeerIndex = 0;
+		return true;
+	}
 
-		this.mSelector.wakeup();
+	protected PooledBufferBatch obtainBatch() {
+		final PooledBufferBatch batch = this.mSpareBatches.poll();
+		return (batch != null) ? batch : new PooledBufferBatch(this.mReceiveBatchSize, this.mSpareBatches);
 	}
-	
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected void createPeerTables(final int pMaxPeers) {
+		this.mPeerQueues = new ArrayDeque[pMaxPeers];
+		for (int i = 0; i < pMaxPeers; i++) {
+			this.mPeerQueues[i] = new ArrayDeque<ByteBuffer>();
+		}
+		this.mPeerAddresses = new InetSocketAddress[pMaxPeers];
+		this.mPeersWithPendingData = new int[pMaxPeers];
+		this.mSendQueues = new ArrayDeque[pMaxPeers];
+		for (int i = 0; i < pMaxPeers; i++) {
+			this.mSendQueues[i] = new ArrayDeque<ByteBuffer>();
+		}
+		this.mSendAddresses = new InetSocketAddress[pMaxPeers];
+		this.mSendPeers = new int[pMaxPeers];
+	}
+
+	/**
+	 * Drop anything queued for a peer. Must hold {@link #mPendingLock}
+	 * <p>
+	 * Datagrams already swapped out to {@link #mSendQueues} are still sent,
+	 * as those already in the socket buffer are.
+	 * 
+	 * @param pPeerID
+	 *            {@link IPeerRegistry} id.
+	 */
+	protected void clearPeer(final int pPeerID) {
+		final ArrayDeque<ByteBuffer> queue = this.mPeerQueues[pPeerID];
+		ByteBuffer buf;
+		while ((buf = queue.pollFirst()) != null) {
+			this.mBufferPool.recycle(buf);
+		}
+		for (int i = 0; i < this.mPeersWithPendingDataCount; i++) {
+			if (this.mPeersWithPendingData[i] == pPeerID) {
+				this.removePendingPeer(i);
+				break;
+			}
+		}
+		this.mPeerAddresses[pPeerID] = null;
+	}
+
+	/**
+	 * Must hold {@link #mPendingLock}
+	 * 
+	 * @param pIndex
+	 *            {@link Integer} index in {@link #mPeersWithPendingData}
+	 */
+	protected void removePendingPeer(final int pIndex) {
+		this.mPeersWithPendingDataCount--;
+		System.arraycopy(this.mPeersWithPendingData, pIndex + 1, this.mPeersWithPendingData, pIndex,
+				this.mPeersWithPendingDataCount - pIndex);
+	}
+
 	// ===========================================================
 	// Inner and Anonymous Classes
 	// ===========================================================
@@ -0,0 +1,171 @@
+package com.niffy.AndEngineLockStepEngine.threads.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.niffy.AndEngineLockStepEngine.misc.ByteBufferPool;
+
+/**
+ * Buffers waiting to be written to one {@link Connection}. Any thread can
+ * {@link #offer(ByteBuffer)} without locking, only the selector thread
+ * writes.
+ * <p>
+ * Writes gather up to {@link #DefaultGatherSize} buffers in to one
+ * {@link GatheringByteChannel#write(ByteBuffer[], int, int)} call. Only the
+ * first offer since the selector last ran dry asks for
+ * {@link SelectionKey#OP_WRITE}, so a burst of sends costs one change request
+ * and one wake up.
+ */
+public class WriteQueue {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	public static final int DefaultGatherSize = 64;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	protected final ConcurrentLinkedQueue<ByteBuffer> mQueued = new ConcurrentLinkedQueue<ByteBuffer>();
+	/**
+	 * Set by whichever sender asked for {@link SelectionKey#OP_WRITE},
+	 * cleared by the selector once everything is written.
+	 */
+	protected final AtomicBoolean mWriteRequested = new AtomicBoolean(false);
+	/**
+	 * Taken off {@link #mQueued} but not yet fully written, in order. Only
+	 * touched by the selector thread.
+	 */
+	protected final ByteBuffer[] mGathered;
+	protected int mGatheredCount = 0;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+	public WriteQueue() {
+		this(DefaultGatherSize);
+	}
+
+	/**
+	 *
+	 * @param pGatherSize
+	 *            {@link Integer} most buffers written in one call.
+	 */
+	public WriteQueue(final int pGatherSize) {
+		this.mGathered = new ByteBuffer[pGatherSize];
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces
+	// ===========================================================
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	/**
+	 * Queue a buffer, from any thread.
+	 *
+	 * @param pData
+	 *            {@link ByteBuffer} flipped and ready to write.
+	 * @return <code>true</code> if the caller must ask the selector for
+	 *         {@link SelectionKey#OP_WRITE}, <code>false</code> if that is
+	 *         already done.
+	 */
+	public boolean offer(final ByteBuffer pData) {
+		this.mQueued.offer(pData);
+		return this.mWriteRequested.compareAndSet(false, true);
+	}
+
+	/**
+	 * Write as much as the channel takes. Selector thread only.
+	 *
+	 * @param pChannel
+	 *            {@link GatheringByteChannel} to write to.
+	 * @param pPool
+	 *            {@link ByteBufferPool} to recycle written buffers to.
+	 * @return <code>true</code> if everything queued was written,
+	 *         <code>false</code> if the socket buffer filled up first.
+	 * @throws IOException
+	 *             due to {@link GatheringByteChannel#write(ByteBuffer[], int, int)}
+	 */
+	public boolean write(final GatheringByteChannel pChannel, final ByteBufferPool pPool) throws IOException {
+		while (true) {
+			this.gather();
+			if (this.mGatheredCount == 0) {
+				return true;
+			}
+			pChannel.write(this.mGathered, 0, this.mGatheredCount);
+			int written = 0;
+			while (written < this.mGatheredCount && !this.mGathered[written].hasRemaining()) {
+				pPool.recycle(this.mGathered[written]);
+				written++;
+			}
+			this.removeGathered(written);
+			if (this.mGatheredCount > 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Once {@link #write(GatheringByteChannel, ByteBufferPool)} has emptied
+	 * the queue, let the next offer ask for {@link SelectionKey#OP_WRITE}
+	 * again. Selector thread only.
+	 *
+	 * @return <code>true</code> if {@link SelectionKey#OP_WRITE} can be
+	 *         dropped, <code>false</code> if more arrived and it must stay.
+	 */
+	public boolean finishWriting() {
+		this.mWriteRequested.set(false);
+		/* Anything offered in between either saw the flag set and is ours, or will ask again itself */
+		return this.mQueued.isEmpty() || !this.mWriteRequested.compareAndSet(false, true);
+	}
+
+	/**
+	 * Drop everything queued. Selector thread only.
+	 *
+	 * @param pPool
+	 *            {@link ByteBufferPool} to recycle to.
+	 */
+	public void clear(final ByteBufferPool pPool) {
+		for (int i = 0; i < this.mGatheredCount; i++) {
+			pPool.recycle(this.mGathered[i]);
+			this.mGathered[i] = null;
+		}
+		this.mGatheredCount = 0;
+		ByteBuffer buffer;
+		while ((buffer = this.mQueued.poll()) != null) {
+			pPool.recycle(buffer);
+		}
+	}
+
+	protected void gather() {
+		while (this.mGatheredCount < this.mGathered.length) {
+			final ByteBuffer buffer = this.mQueued.poll();
+			if (buffer == null) {
+				break;
+			}
+			this.mGathered[this.mGatheredCount++] = buffer;
+		}
+	}
+
+	protected void removeGathered(final int pCount) {
+		final int remaining = this.mGatheredCount - pCount;
+		System.arraycopy(this.mGathered, pCount, this.mGathered, 0, remaining);
+		for (int i = remaining; i < this.mGatheredCount; i++) {
+			this.mGathered[i] = null;
+		}
+		this.mGatheredCount = remaining;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+}
@@ -66,7 +66,7 @@ public class GenericWindow implements IGenericWindow {
 	@Override
 	public void removeInt(int[] pInts) {
 		for (int i : pInts) {
-			this.remove(pInts[i]);
+			this.remove(i);
 		}
 	}
 
@@ -91,6 +91,16 @@ public class GenericWindow implements IGenericWindow {
 		return this.getLastWindowIntsAndClear();
 	}
 
+	@Override
+	public int getIDsFromLastWindowAndClear(int[] pBuffer) {
+		final ArrayList<Integer> ints = this.mInts.get(this.getLastWindow());
+		int count = 0;
+		while (count < pBuffer.length && !ints.isEmpty()) {
+			pBuffer[count++] = ints.remove(ints.size() - 1);
+		}
+		return count;
+	}
+
 	// ===========================================================
 	// Getter & Setter
 	// ===========================================================
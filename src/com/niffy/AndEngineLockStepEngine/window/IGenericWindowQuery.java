@@ -33,4 +33,15 @@ public interface IGenericWindowQuery {
 	 * @return {@link Integer} array of Int's from last window.
 	 */
 	public int[] getIDsFromLastWindowAndClear();
+
+	/**
+	 * Move the Int's from the last window in to a buffer, clearing them from
+	 * the window. Anything that does not fit stays, so call again while the
+	 * buffer comes back full.
+	 * 
+	 * @param pBuffer
+	 *            {@link Integer} array to fill from the start.
+	 * @return {@link Integer} of Int's put in <code>pBuffer</code>
+	 */
+	public int getIDsFromLastWindowAndClear(final int[] pBuffer);
 }
@@ -0,0 +1,274 @@
+package com.niffy.AndEngineLockStepEngine.window;
+
+import java.net.InetAddress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IGenericWindow} on primitive int arrays, no boxing. Each window in
+ * the ring is a dense array of ints, and an open addressing table maps each
+ * int to its window and position, so adding and removing are constant time.
+ * Arrays only grow when more ints are outstanding than ever before, after
+ * that nothing is allocated.
+ * <p>
+ * Windows and crisis reporting behave as {@link GenericWindow}, except an int
+ * already in a window is not added a second time.
+ */
+public class IntRingWindow implements IGenericWindow {
+	// ===========================================================
+	// Constants
+	// ===========================================================
+	@SuppressWarnings("unused")
+	private final Logger log = LoggerFactory.getLogger(IntRingWindow.class);
+	protected static final int MinimumCapacity = 16;
+	protected static final int EMPTY = -1;
+
+	// ===========================================================
+	// Fields
+	// ===========================================================
+	final protected InetAddress mAddress;
+	/**
+	 * Int's in each window, the first {@link #mWindowSizes} of each are valid.
+	 */
+	protected int[][] mWindows;
+	protected int[] mWindowSizes;
+	/**
+	 * Open addressing table, linear probing. {@link #mTableWindow} is
+	 * {@link #EMPTY} where the slot is free.
+	 */
+	protected int[] mTableKeys;
+	protected int[] mTableWindow;
+	protected int[] mTableIndex;
+	protected int mTableMask;
+	protected int mTableShift;
+	protected int mTableSize = 0;
+	/**
+	 * What current window are we on.
+	 */
+	protected int mCurrentWindow = 0;
+	/**
+	 * How many steps before a crisis
+	 */
+	protected int mStepsBeforeCrisis = 2;
+	protected int mCurrentStep = -1;
+	protected IGenericWindowCrisisListener mWindowListener;
+
+	// ===========================================================
+	// Constructors
+	// ===========================================================
+
+	public IntRingWindow(final InetAddress pAddress, final int pStepsBeforeCrisis, final int pWindowCapacity) {
+		this.mAddress = pAddress;
+		this.mStepsBeforeCrisis = pStepsBeforeCrisis;
+		final int capacity = Math.max(MinimumCapacity, pWindowCapacity);
+		this.mWindows = new int[this.mStepsBeforeCrisis + 1][capacity];
+		this.mWindowSizes = new int[this.mStepsBeforeCrisis + 1];
+		this.createTable(capacity * 2);
+	}
+
+	// ===========================================================
+	// Methods for/from SuperClass/Interfaces IGenericWindow
+	// ===========================================================
+	@Override
+	public void addInt(int pInt) {
+		this.add(pInt);
+	}
+
+	@Override
+	public boolean removeInt(int pInt) {
+		return this.remove(pInt);
+	}
+
+	@Override
+	public void removeInt(int[] pInts) {
+		for (int i = 0; i < pInts.length; i++) {
+			this.remove(pInts[i]);
+		}
+	}
+
+	@Override
+	public boolean currentWindowEmpty() {
+		return this.mWindowSizes[this.mCurrentWindow] == 0;
+	}
+
+	@Override
+	public void slide(int pStep) {
+		this.mCurrentStep = pStep;
+		this.mCurrentWindow = (this.mCurrentWindow >= this.mStepsBeforeCrisis) ? 0 : this.mCurrentWindow + 1;
+		if (this.mWindowListener != null) {
+			if (!this.currentWindowEmpty()) {
+				this.mWindowListener.windowNotEmpty(this.mAddress);
+			}
+		}
+	}
+
+	@Override
+	public void setCrisisListener(IGenericWindowCrisisListener pWindowListener) {
+		this.mWindowListener = pWindowListener;
+	}
+
+	@Override
+	public int[] getIDsFromLastWindowAndClear() {
+		final int[] ids = new int[this.mWindowSizes[this.getLastWindow()]];
+		this.getIDsFromLastWindowAndClear(ids);
+		return ids;
+	}
+
+	@Override
+	public int getIDsFromLastWindowAndClear(int[] pBuffer) {
+		final int window = this.getLastWindow();
+		final int[] ints = this.mWindows[window];
+		int count = 0;
+		while (count < pBuffer.length && this.mWindowSizes[window] > 0) {
+			final int last = --this.mWindowSizes[window];
+			pBuffer[count++] = ints[last];
+			this.deleteSlot(this.findSlot(ints[last]));
+		}
+		return count;
+	}
+
+	// ===========================================================
+	// Getter & Setter
+	// ===========================================================
+
+	// ===========================================================
+	// Methods
+	// ===========================================================
+	protected void add(final int pID) {
+		if (this.findSlot(pID) != EMPTY) {
+			return;
+		}
+		final int window = this.mCurrentWindow;
+		int[] ints = this.mWindows[window];
+		final int index = this.mWindowSizes[window];
+		if (index == ints.length) {
+			final int[] grown = new int[ints.length * 2];
+			System.arraycopy(ints, 0, grown, 0, ints.length);
+			this.mWindows[window] = ints = grown;
+		}
+		ints[index] = pID;
+		this.mWindowSizes[window]++;
+		if ((this.mTableSize + 1) * 2 > this.mTableKeys.length) {
+			this.growTable();
+		}
+		this.insertSlot(pID, window, index);
+	}
+
+	protected boolean remove(final int pID) {
+		final int slot = this.findSlot(pID);
+		if (slot == EMPTY) {
+			return false;
+		}
+		final int window = this.mTableWindow[slot];
+		final int index = this.mTableIndex[slot];
+		final int[] ints = this.mWindows[window];
+		final int last = --this.mWindowSizes[window];
+		this.deleteSlot(slot);
+		if (index != last) {
+			/* Swap the last int in to the gap */
+			final int moved = ints[last];
+			ints[index] = moved;
+			this.mTableIndex[this.findSlot(moved)] = index;
+		}
+		return true;
+	}
+
+	protected int getLastWindow() {
+		return (this.mCurrentWindow == 0) ? this.mStepsBeforeCrisis : this.mCurrentWindow - 1;
+	}
+
+	protected void createTable(final int pCapacity) {
+		int capacity = 1;
+		int bits = 0;
+		while (capacity < pCapacity) {
+			capacity <<= 1;
+			bits++;
+		}
+		this.mTableShift = 32 - bits;
+		this.mTableKeys = new int[capacity];
+		this.mTableWindow = new int[capacity];
+		this.mTableIndex = new int[capacity];
+		this.mTableMask = capacity - 1;
+		this.mTableSize = 0;
+		for (int i = 0; i < capacity; i++) {
+			this.mTableWindow[i] = EMPTY;
+		}
+	}
+
+	protected void growTable() {
+		final int[] keys = this.mTableKeys;
+		final int[] windows = this.mTableWindow;
+		final int[] indexes = this.mTableIndex;
+		this.createTable(keys.length * 2);
+		for (int i = 0; i < keys.length; i++) {
+			if (windows[i] != EMPTY) {
+				this.insertSlot(keys[i], windows[i], indexes[i]);
+			}
+		}
+	}
+
+	protected int home(final int pKey) {
+		return (pKey * 0x9E3779B9) >>> this.mTableShift;
+	}
+
+	/**
+	 * @param pKey
+	 *            {@link Integer} to find.
+	 * @return {@link Integer} slot or {@link #EMPTY} if not in the table.
+	 */
+	protected int findSlot(final int pKey) {
+		int slot = this.home(pKey);
+		while (this.mTableWindow[slot] != EMPTY) {
+			if (this.mTableKeys[slot] == pKey) {
+				return slot;
+			}
+			slot = (slot + 1) & this.mTableMask;
+		}
+		return EMPTY;
+	}
+
+	protected void insertSlot(final int pKey, final int pWindow, final int pIndex) {
+		int slot = this.home(pKey);
+		while (this.mTableWindow[slot] != EMPTY) {
+			slot = (slot + 1) & this.mTableMask;
+		}
+		this.mTableKeys[slot] = pKey;
+		this.mTableWindow[slot] = pWindow;
+		this.mTableIndex[slot] = pIndex;
+		this.mTableSize++;
+	}
+
+	/**
+	 * Free a slot, shifting back any entry that probed past it so lookups do
+	 * not need tombstones.
+	 *
+	 * @param pSlot
+	 *            {@link Integer} slot to free.
+	 */
+	protected void deleteSlot(final int pSlot) {
+		int hole = pSlot;
+		int slot = pSlot;
+		while (true) {
+			slot = (slot + 1) & this.mTableMask;
+			if (this.mTableWindow[slot] == EMPTY) {
+				break;
+			}
+			final int home = this.home(this.mTableKeys[slot]);
+			final boolean stays = (slot > hole) ? (home > hole && home <= slot) : (home > hole || home <= slot);
+			if (!stays) {
+				this.mTableKeys[hole] = this.mTableKeys[slot];
+				this.mTableWindow[hole] = this.mTableWindow[slot];
+				this.mTableIndex[hole] = this.mTableIndex[slot];
+				hole = slot;
+			}
+		}
+		this.mTableWindow[hole] = EMPTY;
+		this.mTableSize--;
+	}
+
+	// ===========================================================
+	// Inner and Anonymous Classes
+	// ===========================================================
+
+}